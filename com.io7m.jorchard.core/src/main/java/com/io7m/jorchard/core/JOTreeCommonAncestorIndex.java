@@ -0,0 +1,282 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * <p>An index over the subtree rooted at a given node that answers lowest
+ * common ancestor queries in constant time.</p>
+ *
+ * <p>The index numbers the nodes of the subtree in preorder. For two distinct
+ * nodes numbered {@code u < v}, the shallowest node numbered in the range
+ * {@code (u, v]} is a child of the lowest common ancestor of the two nodes.
+ * The index stores a sparse table over the depths of the nodes so that the
+ * shallowest node in any range is found with two lookups.</p>
+ *
+ * <p>The index is built lazily on the first query. If the root is a
+ * {@link JOTreeNode}, any change to the structure of the subtree is detected
+ * and the index is rebuilt on the next query. For other implementations of
+ * {@link JOTreeNodeReadableType}, {@link #invalidate()} must be called after
+ * the subtree is modified.</p>
+ *
+ * <p>Queries may be made concurrently from any number of threads, in the same
+ * manner as for {@link JOTreeIntervalIndex}: Each build produces an immutable
+ * snapshot that is published through a volatile field. The tree itself must
+ * not be modified while queries are in progress, and each modification must
+ * happen-before any subsequent query.</p>
+ *
+ * @param <A> The type of values contained within the tree
+ */
+
+public final class JOTreeCommonAncestorIndex<A>
+{
+  private final JOTreeNodeReadableType<A> root;
+  private volatile Snapshot<A> snapshot;
+
+  private JOTreeCommonAncestorIndex(
+    final JOTreeNodeReadableType<A> in_root)
+  {
+    this.root = Objects.requireNonNull(in_root, "Root");
+    this.snapshot = null;
+  }
+
+  /**
+   * Create a new index over the subtree rooted at {@code root}.
+   *
+   * @param root The root node
+   * @param <A>  The type of values
+   *
+   * @return A new index
+   */
+
+  public static <A> JOTreeCommonAncestorIndex<A> create(
+    final JOTreeNodeReadableType<A> root)
+  {
+    return new JOTreeCommonAncestorIndex<>(root);
+  }
+
+  /**
+   * @return The root of the indexed subtree
+   */
+
+  public JOTreeNodeReadableType<A> root()
+  {
+    return this.root;
+  }
+
+  /**
+   * Mark the index as out of date. The index will be rebuilt on the next
+   * query.
+   */
+
+  public void invalidate()
+  {
+    this.snapshot = null;
+  }
+
+  /**
+   * Find the lowest common ancestor of {@code node} and {@code other}: The
+   * deepest node of which both nodes are descendants. A node is considered
+   * to be a descendant of itself. If either node is not in the indexed
+   * subtree, the ancestor is found by walking the parents of the nodes.
+   *
+   * @param node  A node
+   * @param other A node
+   *
+   * @return The lowest common ancestor, or nothing if the nodes are not in
+   * the same tree
+   */
+
+  public Optional<JOTreeNodeReadableType<A>> lowestCommonAncestor(
+    final JOTreeNodeReadableType<A> node,
+    final JOTreeNodeReadableType<A> other)
+  {
+    Objects.requireNonNull(node, "Node");
+    Objects.requireNonNull(other, "Other");
+
+    final Snapshot<A> current = this.check();
+
+    final Integer node_number = current.numbers.get(node);
+    final Integer other_number = current.numbers.get(other);
+    if (node_number == null || other_number == null) {
+      return walk(node, other);
+    }
+
+    final int u = node_number.intValue();
+    final int v = other_number.intValue();
+    if (u == v) {
+      return Optional.of(node);
+    }
+
+    final int shallowest =
+      current.shallowest(Math.min(u, v) + 1, Math.max(u, v));
+    return Optional.of(current.nodes[current.parents[shallowest]]);
+  }
+
+  private static <A> Optional<JOTreeNodeReadableType<A>> walk(
+    final JOTreeNodeReadableType<A> node,
+    final JOTreeNodeReadableType<A> other)
+  {
+    JOTreeNodeReadableType<A> a = node;
+    JOTreeNodeReadableType<A> b = other;
+    int depth_a = a.depth();
+    int depth_b = b.depth();
+
+    while (depth_a > depth_b) {
+      a = a.parentReadable().orElseThrow();
+      --depth_a;
+    }
+    while (depth_b > depth_a) {
+      b = b.parentReadable().orElseThrow();
+      --depth_b;
+    }
+
+    while (a != b) {
+      final Optional<JOTreeNodeReadableType<A>> parent_a = a.parentReadable();
+      final Optional<JOTreeNodeReadableType<A>> parent_b = b.parentReadable();
+      if (parent_a.isEmpty() || parent_b.isEmpty()) {
+        return Optional.empty();
+      }
+      a = parent_a.get();
+      b = parent_b.get();
+    }
+    return Optional.of(a);
+  }
+
+  private Snapshot<A> check()
+  {
+    long modifications = 0L;
+    if (this.root instanceof JOTreeNode<A> node) {
+      modifications = node.modifications();
+    }
+
+    final Snapshot<A> current = this.snapshot;
+    if (current != null && current.modifications == modifications) {
+      return current;
+    }
+
+    final Snapshot<A> built = new Snapshot<>(modifications, this.root);
+    this.snapshot = built;
+    return built;
+  }
+
+  private static final class Snapshot<A>
+  {
+    private final long modifications;
+    private final Map<JOTreeNodeReadableType<A>, Integer> numbers;
+    private final JOTreeNodeReadableType<A>[] nodes;
+    private final int[] parents;
+    private final int[] depths;
+    private final int[][] table;
+
+    @SuppressWarnings("unchecked")
+    Snapshot(
+      final long in_modifications,
+      final JOTreeNodeReadableType<A> in_root)
+    {
+      this.modifications = in_modifications;
+      this.numbers = new IdentityHashMap<>();
+
+      final int size = in_root.subtreeSize();
+      this.nodes =
+        (JOTreeNodeReadableType<A>[]) new JOTreeNodeReadableType<?>[size];
+      this.parents = new int[size];
+      this.depths = new int[size];
+
+      /*
+       * Number the nodes in preorder. The numbers of the nodes on the path
+       * from the root to the current node are held in a separate array indexed
+       * by depth.
+       */
+
+      final JOTreeFrameStack<A> stack = new JOTreeFrameStack<>();
+      final int[] path = new int[size];
+
+      this.nodes[0] = in_root;
+      this.parents[0] = -1;
+      this.depths[0] = 0;
+      this.numbers.put(in_root, Integer.valueOf(0));
+      path[0] = 0;
+      stack.push(in_root);
+
+      int next = 1;
+      while (!stack.isEmpty()) {
+        final JOTreeNodeReadableType<A> child = stack.nextChild();
+        if (child == null) {
+          stack.pop();
+          continue;
+        }
+
+        final int depth = stack.size();
+        this.nodes[next] = child;
+        this.parents[next] = path[depth - 1];
+        this.depths[next] = depth;
+        this.numbers.put(child, Integer.valueOf(next));
+        path[depth] = next;
+        stack.push(child);
+        ++next;
+      }
+
+      /*
+       * Row k of the table holds, for each position i, the number of the
+       * shallowest node in the range [i, i + 2^k).
+       */
+
+      final int levels = 32 - Integer.numberOfLeadingZeros(size);
+      this.table = new int[levels][];
+
+      final int[] first = new int[size];
+      for (int index = 0; index < size; ++index) {
+        first[index] = index;
+      }
+      this.table[0] = first;
+
+      for (int level = 1; level < levels; ++level) {
+        final int[] previous = this.table[level - 1];
+        final int half = 1 << (level - 1);
+        final int count = size - (1 << level) + 1;
+        final int[] row = new int[count];
+        for (int index = 0; index < count; ++index) {
+          final int a = previous[index];
+          final int b = previous[index + half];
+          row[index] = this.depths[a] <= this.depths[b] ? a : b;
+        }
+        this.table[level] = row;
+      }
+    }
+
+    /**
+     * @return The number of the shallowest node numbered in the inclusive
+     * range {@code [low, high]}
+     */
+
+    private int shallowest(
+      final int low,
+      final int high)
+    {
+      final int level = 31 - Integer.numberOfLeadingZeros(high - low + 1);
+      final int[] row = this.table[level];
+      final int a = row[low];
+      final int b = row[high - (1 << level) + 1];
+      return this.depths[a] <= this.depths[b] ? a : b;
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>A codec that encodes values of type {@code A} into a fixed number of
+ * bytes.</p>
+ *
+ * <p>Implementations must use absolute {@link ByteBuffer} operations and must
+ * not modify the position or limit of the buffers they are given.</p>
+ *
+ * @param <A> The type of values
+ */
+
+public interface JOTreeFixedSizeCodecType<A>
+{
+  /**
+   * @return The number of bytes occupied by each encoded value
+   */
+
+  int size();
+
+  /**
+   * Encode a value.
+   *
+   * @param target The target buffer
+   * @param offset The absolute offset at which to encode the value
+   * @param value  The value
+   */
+
+  void write(
+    ByteBuffer target,
+    int offset,
+    A value);
+
+  /**
+   * Decode a value.
+   *
+   * @param source The source buffer
+   * @param offset The absolute offset at which the value was encoded
+   *
+   * @return The decoded value
+   */
+
+  A read(
+    ByteBuffer source,
+    int offset);
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Standard fixed-size codecs.
+ */
+
+public final class JOTreeFixedSizeCodecs
+{
+  private static final JOTreeFixedSizeCodecType<Integer> INTEGERS =
+    new IntegerCodec();
+
+  private static final JOTreeFixedSizeCodecType<Long> LONGS =
+    new LongCodec();
+
+  private static final JOTreeFixedSizeCodecType<Double> DOUBLES =
+    new DoubleCodec();
+
+  private JOTreeFixedSizeCodecs()
+  {
+    throw new AssertionError("Unreachable code");
+  }
+
+  /**
+   * @return A codec for {@code int} values
+   */
+
+  public static JOTreeFixedSizeCodecType<Integer> integers()
+  {
+    return INTEGERS;
+  }
+
+  /**
+   * @return A codec for {@code long} values
+   */
+
+  public static JOTreeFixedSizeCodecType<Long> longs()
+  {
+    return LONGS;
+  }
+
+  /**
+   * @return A codec for {@code double} values
+   */
+
+  public static JOTreeFixedSizeCodecType<Double> doubles()
+  {
+    return DOUBLES;
+  }
+
+  private static final class IntegerCodec
+    implements JOTreeFixedSizeCodecType<Integer>
+  {
+    IntegerCodec()
+    {
+
+    }
+
+    @Override
+    public int size()
+    {
+      return Integer.BYTES;
+    }
+
+    @Override
+    public void write(
+      final ByteBuffer target,
+      final int offset,
+      final Integer value)
+    {
+      target.putInt(offset, value.intValue());
+    }
+
+    @Override
+    public Integer read(
+      final ByteBuffer source,
+      final int offset)
+    {
+      return Integer.valueOf(source.getInt(offset));
+    }
+  }
+
+  private static final class LongCodec
+    implements JOTreeFixedSizeCodecType<Long>
+  {
+    LongCodec()
+    {
+
+    }
+
+    @Override
+    public int size()
+    {
+      return Long.BYTES;
+    }
+
+    @Override
+    public void write(
+      final ByteBuffer target,
+      final int offset,
+      final Long value)
+    {
+      target.putLong(offset, value.longValue());
+    }
+
+    @Override
+    public Long read(
+      final ByteBuffer source,
+      final int offset)
+    {
+      return Long.valueOf(source.getLong(offset));
+    }
+  }
+
+  private static final class DoubleCodec
+    implements JOTreeFixedSizeCodecType<Double>
+  {
+    DoubleCodec()
+    {
+
+    }
+
+    @Override
+    public int size()
+    {
+      return Double.BYTES;
+    }
+
+    @Override
+    public void write(
+      final ByteBuffer target,
+      final int offset,
+      final Double value)
+    {
+      target.putDouble(offset, value.doubleValue());
+    }
+
+    @Override
+    public Double read(
+      final ByteBuffer source,
+      final int offset)
+    {
+      return Double.valueOf(source.getDouble(offset));
+    }
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * <p>A growable stack of aggregate values used by postorder folds.</p>
+ *
+ * <p>During a fold, the aggregates of the children of a node are always the
+ * topmost values on the stack when the node itself is folded. The stack is
+ * therefore also a read-only list view onto a window of its own values, so
+ * that the children's aggregates can be passed to the fold function without
+ * being copied.</p>
+ *
+ * @param <R> The type of aggregate values
+ */
+
+final class JOTreeFoldResults<R> extends AbstractList<R>
+  implements RandomAccess
+{
+  private Object[] values;
+  private int size;
+  private int window_start;
+  private int window_size;
+
+  JOTreeFoldResults()
+  {
+    this.values = new Object[16];
+    this.size = 0;
+    this.window_start = 0;
+    this.window_size = 0;
+  }
+
+  void push(
+    final R value)
+  {
+    if (this.size == this.values.length) {
+      this.values = Arrays.copyOf(this.values, this.values.length * 2);
+    }
+    this.values[this.size] = value;
+    ++this.size;
+  }
+
+  /**
+   * Make the topmost {@code count} values visible through the list view.
+   *
+   * @param count The number of values
+   */
+
+  void windowTop(
+    final int count)
+  {
+    this.window_start = this.size - count;
+    this.window_size = count;
+  }
+
+  /**
+   * Remove the values in the current window from the stack.
+   */
+
+  void windowDiscard()
+  {
+    Arrays.fill(this.values, this.window_start, this.size, null);
+    this.size = this.window_start;
+    this.window_size = 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  R pop()
+  {
+    --this.size;
+    final R value = (R) this.values[this.size];
+    this.values[this.size] = null;
+    return value;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public R get(
+    final int index)
+  {
+    Objects.checkIndex(index, this.window_size);
+    return (R) this.values[this.window_start + index];
+  }
+
+  @Override
+  public int size()
+  {
+    return this.window_size;
+  }
+}
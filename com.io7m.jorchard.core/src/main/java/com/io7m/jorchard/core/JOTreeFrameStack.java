@@ -0,0 +1,110 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <p>A growable stack of traversal frames. Each frame holds a node and the
+ * position of the next child of that node to be visited.</p>
+ *
+ * <p>Frames are stored in parallel arrays that are reused as the stack grows
+ * and shrinks, so pushing and popping frames does not allocate once the
+ * arrays have grown to the depth of the tree.</p>
+ *
+ * @param <A> The type of values
+ */
+
+final class JOTreeFrameStack<A>
+{
+  private JOTreeNodeReadableType<A>[] nodes;
+  private int[] positions;
+  private int size;
+
+  @SuppressWarnings("unchecked")
+  JOTreeFrameStack()
+  {
+    this.nodes = (JOTreeNodeReadableType<A>[]) new JOTreeNodeReadableType<?>[16];
+    this.positions = new int[16];
+    this.size = 0;
+  }
+
+  boolean isEmpty()
+  {
+    return this.size == 0;
+  }
+
+  int size()
+  {
+    return this.size;
+  }
+
+  void push(
+    final JOTreeNodeReadableType<A> node)
+  {
+    if (this.size == this.nodes.length) {
+      final int capacity = this.nodes.length * 2;
+      this.nodes = Arrays.copyOf(this.nodes, capacity);
+      this.positions = Arrays.copyOf(this.positions, capacity);
+    }
+    this.nodes[this.size] = node;
+    this.positions[this.size] = 0;
+    ++this.size;
+  }
+
+  JOTreeNodeReadableType<A> pop()
+  {
+    --this.size;
+    final JOTreeNodeReadableType<A> node = this.nodes[this.size];
+    this.nodes[this.size] = null;
+    return node;
+  }
+
+  JOTreeNodeReadableType<A> peek()
+  {
+    return this.nodes[this.size - 1];
+  }
+
+  /**
+   * @return The next unvisited child of the node in the top frame, advancing
+   * the frame past it, or {@code null} if every child has been visited
+   */
+
+  JOTreeNodeReadableType<A> nextChild()
+  {
+    final int top = this.size - 1;
+    final List<JOTreeNodeReadableType<A>> children =
+      this.nodes[top].childrenReadable();
+    final int position = this.positions[top];
+    if (position < children.size()) {
+      this.positions[top] = position + 1;
+      return children.get(position);
+    }
+    return null;
+  }
+
+  /**
+   * @return {@code true} iff the node in the top frame has unvisited children
+   */
+
+  boolean hasNextChild()
+  {
+    final int top = this.size - 1;
+    return this.positions[top] < this.nodes[top].childrenReadable().size();
+  }
+}
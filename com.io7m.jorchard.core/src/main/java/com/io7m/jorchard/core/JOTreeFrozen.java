@@ -0,0 +1,348 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * <p>An immutable snapshot of a tree, stored as a set of flat arrays.</p>
+ *
+ * <p>Nodes are identified by their position in a preorder (depth-first,
+ * children in order) traversal of the original tree, with the root at
+ * position {@code 0}. For each node, the snapshot records the position of its
+ * parent, its first child, its next sibling, its depth, and its value. The
+ * nodes of any subtree occupy a contiguous range of positions, so depth-first
+ * traversals are simple loops over the arrays and do not allocate.</p>
+ *
+ * <p>Missing parents, children, and siblings are represented by
+ * {@code -1}.</p>
+ *
+ * @param <A> The type of values contained within the tree
+ */
+
+public final class JOTreeFrozen<A> implements JOTreeIndexedType<A>
+{
+  private final int[] parents;
+  private final int[] first_children;
+  private final int[] next_siblings;
+  private final int[] depths;
+  private final Object[] values;
+  private final JOTreeIndexedNode<A>[] views;
+
+  @SuppressWarnings("unchecked")
+  private JOTreeFrozen(
+    final int size)
+  {
+    this.parents = new int[size];
+    this.first_children = new int[size];
+    this.next_siblings = new int[size];
+    this.depths = new int[size];
+    this.values = new Object[size];
+    this.views = (JOTreeIndexedNode<A>[]) new JOTreeIndexedNode<?>[size];
+
+    Arrays.fill(this.first_children, -1);
+    Arrays.fill(this.next_siblings, -1);
+  }
+
+  /**
+   * Create a snapshot of the tree rooted at {@code root}.
+   *
+   * @param root The root node
+   * @param <A>  The type of values
+   *
+   * @return A new snapshot
+   */
+
+  public static <A> JOTreeFrozen<A> freeze(
+    final JOTreeNodeReadableType<A> root)
+  {
+    Objects.requireNonNull(root, "Root");
+
+    final JOTreeFrozen<A> frozen = new JOTreeFrozen<>(root.subtreeSize());
+    final Deque<FreezeItem<A>> stack = new ArrayDeque<>();
+
+    int next = 0;
+    frozen.parents[next] = -1;
+    frozen.depths[next] = 0;
+    frozen.values[next] = root.value();
+    stack.push(new FreezeItem<>(next, root));
+    ++next;
+
+    while (!stack.isEmpty()) {
+      final FreezeItem<A> top = stack.peek();
+      if (!top.children.hasNext()) {
+        stack.pop();
+        continue;
+      }
+
+      final JOTreeNodeReadableType<A> child = top.children.next();
+      final int index = next;
+      ++next;
+
+      frozen.parents[index] = top.index;
+      frozen.depths[index] = frozen.depths[top.index] + 1;
+      frozen.values[index] = child.value();
+      if (top.last == -1) {
+        frozen.first_children[top.index] = index;
+      } else {
+        frozen.next_siblings[top.last] = index;
+      }
+      top.last = index;
+      stack.push(new FreezeItem<>(index, child));
+    }
+
+    return frozen;
+  }
+
+  /**
+   * @return The number of nodes in the snapshot
+   */
+
+  @Override
+  public int size()
+  {
+    return this.values.length;
+  }
+
+  /**
+   * @param node A node position
+   *
+   * @return The value of the node
+   */
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public A value(
+    final int node)
+  {
+    return (A) this.values[node];
+  }
+
+  /**
+   * @param node A node position
+   *
+   * @return The position of the parent of the node, or {@code -1}
+   */
+
+  @Override
+  public int parent(
+    final int node)
+  {
+    return this.parents[node];
+  }
+
+  /**
+   * @param node A node position
+   *
+   * @return The position of the first child of the node, or {@code -1}
+   */
+
+  @Override
+  public int firstChild(
+    final int node)
+  {
+    return this.first_children[node];
+  }
+
+  /**
+   * @param node A node position
+   *
+   * @return The position of the next sibling of the node, or {@code -1}
+   */
+
+  @Override
+  public int nextSibling(
+    final int node)
+  {
+    return this.next_siblings[node];
+  }
+
+  /**
+   * @param node A node position
+   *
+   * @return The depth of the node, with the root at depth {@code 0}
+   */
+
+  @Override
+  public int depth(
+    final int node)
+  {
+    return this.depths[node];
+  }
+
+  /**
+   * @param node A node position
+   *
+   * @return The position one past the last node in the subtree rooted at
+   * {@code node}
+   */
+
+  public int subtreeEnd(
+    final int node)
+  {
+    final int depth = this.depths[node];
+    int end = node + 1;
+    while (end < this.depths.length && this.depths[end] > depth) {
+      ++end;
+    }
+    return end;
+  }
+
+  /**
+   * @param node  A node position
+   * @param other A node position
+   *
+   * @return {@code true} iff {@code node} is a descendant of {@code other}
+   */
+
+  @Override
+  public boolean isDescendantOf(
+    final int node,
+    final int other)
+  {
+    Objects.checkIndex(node, this.values.length);
+    Objects.checkIndex(other, this.values.length);
+
+    if (node < other) {
+      return false;
+    }
+
+    final int depth_other = this.depths[other];
+    int current = node;
+    while (this.depths[current] > depth_other) {
+      current = this.parents[current];
+    }
+    return current == other;
+  }
+
+  /**
+   * @param node A node position
+   *
+   * @return A readable view of the node
+   */
+
+  @Override
+  public JOTreeNodeReadableType<A> node(
+    final int node)
+  {
+    JOTreeIndexedNode<A> view = this.views[node];
+    if (view == null) {
+      view = new JOTreeIndexedNode<>(this, node);
+      this.views[node] = view;
+    }
+    return view;
+  }
+
+  /**
+   * @return A readable view of the root node
+   */
+
+  public JOTreeNodeReadableType<A> root()
+  {
+    return this.node(0);
+  }
+
+  /**
+   * <p>Visit each node in the subtree rooted at {@code node} in depth-first
+   * order. Children are visited in order.</p>
+   *
+   * @param node    The position of the starting node
+   * @param context A context value passed to each application of {@code f}
+   * @param f       A function used to receive each node
+   * @param <T>     The type of context values
+   */
+
+  @Override
+  public <T> void forEachDepthFirst(
+    final int node,
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Objects.checkIndex(node, this.values.length);
+
+    final int depth = this.depths[node];
+    for (int index = node; index < this.values.length; ++index) {
+      final int depth_index = this.depths[index];
+      if (index > node && depth_index <= depth) {
+        return;
+      }
+      f.apply(context, depth_index - depth, this.node(index));
+    }
+  }
+
+  /**
+   * <p>Visit each node in the subtree rooted at {@code node} in breadth-first
+   * order. Children are visited in order.</p>
+   *
+   * @param node    The position of the starting node
+   * @param context A context value passed to each application of {@code f}
+   * @param f       A function used to receive each node
+   * @param <T>     The type of context values
+   */
+
+  @Override
+  public <T> void forEachBreadthFirst(
+    final int node,
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Objects.checkIndex(node, this.values.length);
+
+    final int depth = this.depths[node];
+    final int[] queue = new int[this.subtreeEnd(node) - node];
+    int head = 0;
+    int tail = 0;
+    queue[tail] = node;
+    ++tail;
+
+    while (head < tail) {
+      final int next = queue[head];
+      ++head;
+      f.apply(context, this.depths[next] - depth, this.node(next));
+      for (int child = this.first_children[next];
+           child != -1;
+           child = this.next_siblings[child]) {
+        queue[tail] = child;
+        ++tail;
+      }
+    }
+  }
+
+  private static final class FreezeItem<A>
+  {
+    private final int index;
+    private final Iterator<JOTreeNodeReadableType<A>> children;
+    private int last;
+
+    FreezeItem(
+      final int in_index,
+      final JOTreeNodeReadableType<A> in_node)
+    {
+      this.index = in_index;
+      this.children = in_node.childrenReadable().iterator();
+      this.last = -1;
+    }
+  }
+}
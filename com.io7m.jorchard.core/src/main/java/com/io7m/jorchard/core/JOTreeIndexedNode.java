@@ -0,0 +1,203 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.RandomAccess;
+
+/**
+ * A readable view of a single node in an array-indexed tree such as
+ * {@link JOTreeFrozen} or {@link JOTreeOffHeap}.
+ *
+ * @param <A> The type of values contained within the tree
+ */
+
+final class JOTreeIndexedNode<A> implements JOTreeNodeReadableType<A>
+{
+  private final JOTreeIndexedType<A> tree;
+  private final int index;
+  private List<JOTreeNodeReadableType<A>> children;
+
+  JOTreeIndexedNode(
+    final JOTreeIndexedType<A> in_tree,
+    final int in_index)
+  {
+    this.tree = Objects.requireNonNull(in_tree, "Tree");
+    this.index = in_index;
+  }
+
+  @Override
+  public boolean equals(
+    final Object other)
+  {
+    if (this == other) {
+      return true;
+    }
+    if (other == null || !Objects.equals(this.getClass(), other.getClass())) {
+      return false;
+    }
+    final JOTreeIndexedNode<?> other_node = (JOTreeIndexedNode<?>) other;
+    return this.tree == other_node.tree && this.index == other_node.index;
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return System.identityHashCode(this.tree) * 31 + this.index;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[JOTreeIndexedNode " + this.index + " " + this.value() + "]";
+  }
+
+  @Override
+  public boolean isDetachAllowed()
+  {
+    return false;
+  }
+
+  @Override
+  public A value()
+  {
+    return this.tree.value(this.index);
+  }
+
+  @Override
+  public Optional<JOTreeNodeReadableType<A>> parentReadable()
+  {
+    final int parent = this.tree.parent(this.index);
+    if (parent == -1) {
+      return Optional.empty();
+    }
+    return Optional.of(this.tree.node(parent));
+  }
+
+  @Override
+  public boolean isRoot()
+  {
+    return this.tree.parent(this.index) == -1;
+  }
+
+  @Override
+  public List<JOTreeNodeReadableType<A>> childrenReadable()
+  {
+    if (this.children == null) {
+      int count = 0;
+      for (int child = this.tree.firstChild(this.index);
+           child != -1;
+           child = this.tree.nextSibling(child)) {
+        ++count;
+      }
+
+      final int[] positions = new int[count];
+      int position = 0;
+      for (int child = this.tree.firstChild(this.index);
+           child != -1;
+           child = this.tree.nextSibling(child)) {
+        positions[position] = child;
+        ++position;
+      }
+
+      this.children = new Children<>(this.tree, positions);
+    }
+    return this.children;
+  }
+
+  @Override
+  public int depth()
+  {
+    return this.tree.depth(this.index);
+  }
+
+  @Override
+  public boolean isDescendantOf(
+    final JOTreeNodeReadableType<A> other)
+  {
+    Objects.requireNonNull(other, "Other");
+
+    if (other instanceof JOTreeIndexedNode<A> other_node) {
+      return this.tree == other_node.tree
+        && this.tree.isDescendantOf(this.index, other_node.index);
+    }
+    return false;
+  }
+
+  @Override
+  public <T> void forEachDepthFirst(
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    this.tree.forEachDepthFirst(this.index, context, f);
+  }
+
+  @Override
+  public <T> void forEachBreadthFirst(
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    this.tree.forEachBreadthFirst(this.index, context, f);
+  }
+
+  @Override
+  public <T, B> JOTreeNodeType<B> mapDepthFirst(
+    final T context,
+    final JOTreeNodeMapFunctionType<A, T, B> f)
+  {
+    return JOTreeTraversal.mapDepthFirst(this, context, f);
+  }
+
+  @Override
+  public <T, B> JOTreeNodeType<B> mapBreadthFirst(
+    final T context,
+    final JOTreeNodeMapFunctionType<A, T, B> f)
+  {
+    return JOTreeTraversal.mapBreadthFirst(this, context, f);
+  }
+
+  private static final class Children<A>
+    extends AbstractList<JOTreeNodeReadableType<A>> implements RandomAccess
+  {
+    private final JOTreeIndexedType<A> tree;
+    private final int[] positions;
+
+    Children(
+      final JOTreeIndexedType<A> in_tree,
+      final int[] in_positions)
+    {
+      this.tree = in_tree;
+      this.positions = in_positions;
+    }
+
+    @Override
+    public JOTreeNodeReadableType<A> get(
+      final int position)
+    {
+      return this.tree.node(this.positions[position]);
+    }
+
+    @Override
+    public int size()
+    {
+      return this.positions.length;
+    }
+  }
+}
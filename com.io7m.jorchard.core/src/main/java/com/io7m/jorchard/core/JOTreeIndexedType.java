@@ -0,0 +1,125 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.core;
+
+/**
+ * <p>The type of trees whose nodes are identified by integer positions.</p>
+ *
+ * <p>Missing parents, children, and siblings are represented by
+ * {@code -1}.</p>
+ *
+ * @param <A> The type of values contained within the tree
+ */
+
+interface JOTreeIndexedType<A>
+{
+  /**
+   * @return The number of nodes in the tree
+   */
+
+  int size();
+
+  /**
+   * @param node A node position
+   *
+   * @return The value of the node
+   */
+
+  A value(int node);
+
+  /**
+   * @param node A node position
+   *
+   * @return The position of the parent of the node, or {@code -1}
+   */
+
+  int parent(int node);
+
+  /**
+   * @param node A node position
+   *
+   * @return The position of the first child of the node, or {@code -1}
+   */
+
+  int firstChild(int node);
+
+  /**
+   * @param node A node position
+   *
+   * @return The position of the next sibling of the node, or {@code -1}
+   */
+
+  int nextSibling(int node);
+
+  /**
+   * @param node A node position
+   *
+   * @return The depth of the node, with the root at depth {@code 0}
+   */
+
+  int depth(int node);
+
+  /**
+   * @param node  A node position
+   * @param other A node position
+   *
+   * @return {@code true} iff {@code node} is a descendant of {@code other}
+   */
+
+  boolean isDescendantOf(
+    int node,
+    int other);
+
+  /**
+   * @param node A node position
+   *
+   * @return A readable view of the node
+   */
+
+  JOTreeNodeReadableType<A> node(int node);
+
+  /**
+   * Visit each node in the subtree rooted at {@code node} in depth-first
+   * order.
+   *
+   * @param node    The position of the starting node
+   * @param context A context value passed to each application of {@code f}
+   * @param f       A function used to receive each node
+   * @param <T>     The type of context values
+   */
+
+  <T> void forEachDepthFirst(
+    int node,
+    T context,
+    JOTreeNodeForEachFunctionType<A, T> f);
+
+  /**
+   * Visit each node in the subtree rooted at {@code node} in breadth-first
+   * order.
+   *
+   * @param node    The position of the starting node
+   * @param context A context value passed to each application of {@code f}
+   * @param f       A function used to receive each node
+   * @param <T>     The type of context values
+   */
+
+  <T> void forEachBreadthFirst(
+    int node,
+    T context,
+    JOTreeNodeForEachFunctionType<A, T> f);
+}
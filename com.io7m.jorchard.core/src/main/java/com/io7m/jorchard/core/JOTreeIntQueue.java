@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.core;
+
+/**
+ * A growable first-in, first-out queue of {@code int} values, used by
+ * breadth-first traversals of array-indexed trees.
+ */
+
+final class JOTreeIntQueue
+{
+  private int[] elements;
+  private int head;
+  private int tail;
+
+  JOTreeIntQueue()
+  {
+    this.elements = new int[16];
+    this.head = 0;
+    this.tail = 0;
+  }
+
+  boolean isEmpty()
+  {
+    return this.head == this.tail;
+  }
+
+  void add(
+    final int value)
+  {
+    if (this.tail == this.elements.length) {
+      final int count = this.tail - this.head;
+      if (this.head >= this.elements.length / 2) {
+        System.arraycopy(this.elements, this.head, this.elements, 0, count);
+      } else {
+        final int[] larger = new int[this.elements.length * 2];
+        System.arraycopy(this.elements, this.head, larger, 0, count);
+        this.elements = larger;
+      }
+      this.head = 0;
+      this.tail = count;
+    }
+    this.elements[this.tail] = value;
+    ++this.tail;
+  }
+
+  int poll()
+  {
+    final int value = this.elements[this.head];
+    ++this.head;
+    return value;
+  }
+}
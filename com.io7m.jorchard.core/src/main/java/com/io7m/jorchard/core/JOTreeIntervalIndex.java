@@ -0,0 +1,206 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * <p>An index over the subtree rooted at a given node that answers ancestor
+ * queries in constant time.</p>
+ *
+ * <p>The index labels each node in the subtree with the order in which a
+ * depth-first traversal enters and leaves that node. A node {@code n} is a
+ * descendant of {@code m} iff {@code m} was entered no later than {@code n}
+ * and left no earlier than {@code n}.</p>
+ *
+ * <p>The index is built lazily on the first query. If the root is a
+ * {@link JOTreeNode}, any change to the structure of the subtree is detected
+ * and the index is rebuilt on the next query. For other implementations of
+ * {@link JOTreeNodeReadableType}, {@link #invalidate()} must be called after
+ * the subtree is modified.</p>
+ *
+ * <p>Queries may be made concurrently from any number of threads. Each build
+ * produces an immutable snapshot that is published through a volatile field,
+ * so a query never observes a partially built index; if several threads find
+ * the index out of date at once, each may build a snapshot, and any of them
+ * may be retained. The tree itself must not be modified while queries are in
+ * progress, and each modification must happen-before any subsequent query,
+ * for example by guarding both with the same lock.</p>
+ *
+ * @param <A> The type of values contained within the tree
+ */
+
+public final class JOTreeIntervalIndex<A>
+{
+  private final JOTreeNodeReadableType<A> root;
+  private volatile Snapshot<A> snapshot;
+
+  private JOTreeIntervalIndex(
+    final JOTreeNodeReadableType<A> in_root)
+  {
+    this.root = Objects.requireNonNull(in_root, "Root");
+    this.snapshot = null;
+  }
+
+  /**
+   * Create a new index over the subtree rooted at {@code root}.
+   *
+   * @param root The root node
+   * @param <A>  The type of values
+   *
+   * @return A new index
+   */
+
+  public static <A> JOTreeIntervalIndex<A> create(
+    final JOTreeNodeReadableType<A> root)
+  {
+    return new JOTreeIntervalIndex<>(root);
+  }
+
+  /**
+   * @return The root of the indexed subtree
+   */
+
+  public JOTreeNodeReadableType<A> root()
+  {
+    return this.root;
+  }
+
+  /**
+   * Mark the index as out of date. The index will be rebuilt on the next
+   * query.
+   */
+
+  public void invalidate()
+  {
+    this.snapshot = null;
+  }
+
+  /**
+   * Determine whether {@code node} is a descendant of {@code other}. If either
+   * node is not in the indexed subtree, the result is that of
+   * {@link JOTreeNodeReadableType#isDescendantOf(JOTreeNodeReadableType)}.
+   *
+   * @param node  A node
+   * @param other A potential ancestor of {@code node}
+   *
+   * @return {@code true} iff {@code node} is a descendant of {@code other}
+   */
+
+  public boolean isDescendantOf(
+    final JOTreeNodeReadableType<A> node,
+    final JOTreeNodeReadableType<A> other)
+  {
+    Objects.requireNonNull(node, "Node");
+    Objects.requireNonNull(other, "Other");
+
+    final Map<JOTreeNodeReadableType<A>, Interval> intervals =
+      this.check().intervals;
+
+    final Interval node_interval = intervals.get(node);
+    final Interval other_interval = intervals.get(other);
+    if (node_interval == null || other_interval == null) {
+      return node.isDescendantOf(other);
+    }
+
+    return other_interval.enter <= node_interval.enter
+      && node_interval.leave <= other_interval.leave;
+  }
+
+  private Snapshot<A> check()
+  {
+    long modifications = 0L;
+    if (this.root instanceof JOTreeNode<A> node) {
+      modifications = node.modifications();
+    }
+
+    final Snapshot<A> current = this.snapshot;
+    if (current != null && current.modifications == modifications) {
+      return current;
+    }
+
+    final Snapshot<A> built = new Snapshot<>(modifications, this.build());
+    this.snapshot = built;
+    return built;
+  }
+
+  private Map<JOTreeNodeReadableType<A>, Interval> build()
+  {
+    final Map<JOTreeNodeReadableType<A>, Interval> intervals =
+      new IdentityHashMap<>();
+
+    final Deque<Iterator<JOTreeNodeReadableType<A>>> iterators =
+      new ArrayDeque<>();
+    final Deque<Interval> open = new ArrayDeque<>();
+
+    int time = 0;
+    final Interval root_interval = new Interval(time);
+    ++time;
+    intervals.put(this.root, root_interval);
+    open.push(root_interval);
+    iterators.push(this.root.childrenReadable().iterator());
+
+    while (!iterators.isEmpty()) {
+      final Iterator<JOTreeNodeReadableType<A>> iterator = iterators.peek();
+      if (iterator.hasNext()) {
+        final JOTreeNodeReadableType<A> child = iterator.next();
+        final Interval interval = new Interval(time);
+        ++time;
+        intervals.put(child, interval);
+        open.push(interval);
+        iterators.push(child.childrenReadable().iterator());
+      } else {
+        iterators.pop();
+        open.pop().leave = time;
+        ++time;
+      }
+    }
+    return intervals;
+  }
+
+  private static final class Snapshot<A>
+  {
+    private final long modifications;
+    private final Map<JOTreeNodeReadableType<A>, Interval> intervals;
+
+    Snapshot(
+      final long in_modifications,
+      final Map<JOTreeNodeReadableType<A>, Interval> in_intervals)
+    {
+      this.modifications = in_modifications;
+      this.intervals = in_intervals;
+    }
+  }
+
+  private static final class Interval
+  {
+    private final int enter;
+    private int leave;
+
+    Interval(
+      final int in_enter)
+    {
+      this.enter = in_enter;
+      this.leave = Integer.MAX_VALUE;
+    }
+  }
+}
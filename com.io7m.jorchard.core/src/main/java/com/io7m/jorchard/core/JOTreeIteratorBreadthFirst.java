@@ -0,0 +1,91 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Queue;
+
+/**
+ * <p>An iterator that yields the nodes of a tree in breadth-first order,
+ * with children in order.</p>
+ *
+ * <p>The queue holds nodes that have been yielded but whose children have
+ * not. The children of the node at the head of the queue are yielded one at
+ * a time, and so the children of a node are not examined until the iterator
+ * reaches them.</p>
+ *
+ * @param <A> The type of values
+ */
+
+final class JOTreeIteratorBreadthFirst<A>
+  implements Iterator<JOTreeNodeReadableType<A>>
+{
+  private final Queue<JOTreeNodeReadableType<A>> queue;
+  private JOTreeNodeReadableType<A> root;
+  private List<JOTreeNodeReadableType<A>> children;
+  private int position;
+
+  JOTreeIteratorBreadthFirst(
+    final JOTreeNodeReadableType<A> in_root)
+  {
+    this.root = Objects.requireNonNull(in_root, "Root");
+    this.queue = new ArrayDeque<>();
+    this.children = List.of();
+    this.position = 0;
+  }
+
+  @Override
+  public boolean hasNext()
+  {
+    if (this.root != null) {
+      return true;
+    }
+    while (this.position >= this.children.size()) {
+      final JOTreeNodeReadableType<A> parent = this.queue.poll();
+      if (parent == null) {
+        return false;
+      }
+      this.children = parent.childrenReadable();
+      this.position = 0;
+    }
+    return true;
+  }
+
+  @Override
+  public JOTreeNodeReadableType<A> next()
+  {
+    final JOTreeNodeReadableType<A> start = this.root;
+    if (start != null) {
+      this.root = null;
+      this.queue.add(start);
+      return start;
+    }
+
+    if (!this.hasNext()) {
+      throw new NoSuchElementException();
+    }
+
+    final JOTreeNodeReadableType<A> child = this.children.get(this.position);
+    ++this.position;
+    this.queue.add(child);
+    return child;
+  }
+}
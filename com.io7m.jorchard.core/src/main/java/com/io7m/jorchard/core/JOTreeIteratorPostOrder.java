@@ -0,0 +1,64 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * <p>An iterator that yields the nodes of a tree in depth-first postorder,
+ * with children in order. Each node is yielded after all of its
+ * descendants.</p>
+ *
+ * @param <A> The type of values
+ */
+
+final class JOTreeIteratorPostOrder<A>
+  implements Iterator<JOTreeNodeReadableType<A>>
+{
+  private final JOTreeFrameStack<A> stack;
+
+  JOTreeIteratorPostOrder(
+    final JOTreeNodeReadableType<A> in_root)
+  {
+    this.stack = new JOTreeFrameStack<>();
+    this.stack.push(Objects.requireNonNull(in_root, "Root"));
+  }
+
+  @Override
+  public boolean hasNext()
+  {
+    return !this.stack.isEmpty();
+  }
+
+  @Override
+  public JOTreeNodeReadableType<A> next()
+  {
+    if (this.stack.isEmpty()) {
+      throw new NoSuchElementException();
+    }
+
+    while (true) {
+      final JOTreeNodeReadableType<A> child = this.stack.nextChild();
+      if (child == null) {
+        return this.stack.pop();
+      }
+      this.stack.push(child);
+    }
+  }
+}
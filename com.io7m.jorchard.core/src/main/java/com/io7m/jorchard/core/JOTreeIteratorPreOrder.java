@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * <p>An iterator that yields the nodes of a tree in depth-first preorder,
+ * with children in order.</p>
+ *
+ * <p>The children of a node are not examined until the iterator is asked
+ * for the node that follows it.</p>
+ *
+ * @param <A> The type of values
+ */
+
+final class JOTreeIteratorPreOrder<A>
+  implements Iterator<JOTreeNodeReadableType<A>>
+{
+  private final JOTreeFrameStack<A> stack;
+  private JOTreeNodeReadableType<A> root;
+
+  JOTreeIteratorPreOrder(
+    final JOTreeNodeReadableType<A> in_root)
+  {
+    this.root = Objects.requireNonNull(in_root, "Root");
+    this.stack = new JOTreeFrameStack<>();
+  }
+
+  @Override
+  public boolean hasNext()
+  {
+    if (this.root != null) {
+      return true;
+    }
+    while (!this.stack.isEmpty()) {
+      if (this.stack.hasNextChild()) {
+        return true;
+      }
+      this.stack.pop();
+    }
+    return false;
+  }
+
+  @Override
+  public JOTreeNodeReadableType<A> next()
+  {
+    final JOTreeNodeReadableType<A> start = this.root;
+    if (start != null) {
+      this.root = null;
+      this.stack.push(start);
+      return start;
+    }
+
+    while (!this.stack.isEmpty()) {
+      final JOTreeNodeReadableType<A> child = this.stack.nextChild();
+      if (child != null) {
+        this.stack.push(child);
+        return child;
+      }
+      this.stack.pop();
+    }
+    throw new NoSuchElementException();
+  }
+}
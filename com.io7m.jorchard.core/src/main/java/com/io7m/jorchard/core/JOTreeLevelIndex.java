@@ -0,0 +1,200 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>An index over the subtree rooted at a given node that provides direct
+ * access to the nodes at each depth.</p>
+ *
+ * <p>The index stores the nodes of the subtree in breadth-first order, in
+ * which the nodes at each depth occupy a contiguous range, together with the
+ * position at which each range starts. Depths are relative to the root of the
+ * indexed subtree, which is at depth {@code 0}.</p>
+ *
+ * <p>The index is built lazily on the first query. If the root is a
+ * {@link JOTreeNode}, any change to the structure of the subtree is detected
+ * and the index is rebuilt on the next query. For other implementations of
+ * {@link JOTreeNodeReadableType}, {@link #invalidate()} must be called after
+ * the subtree is modified.</p>
+ *
+ * <p>Queries may be made concurrently from any number of threads, in the same
+ * manner as for {@link JOTreeIntervalIndex}: Each build produces an immutable
+ * snapshot that is published through a volatile field. The tree itself must
+ * not be modified while queries are in progress, and each modification must
+ * happen-before any subsequent query.</p>
+ *
+ * @param <A> The type of values contained within the tree
+ */
+
+public final class JOTreeLevelIndex<A>
+{
+  private final JOTreeNodeReadableType<A> root;
+  private volatile Snapshot<A> snapshot;
+
+  private JOTreeLevelIndex(
+    final JOTreeNodeReadableType<A> in_root)
+  {
+    this.root = Objects.requireNonNull(in_root, "Root");
+    this.snapshot = null;
+  }
+
+  /**
+   * Create a new index over the subtree rooted at {@code root}.
+   *
+   * @param root The root node
+   * @param <A>  The type of values
+   *
+   * @return A new index
+   */
+
+  public static <A> JOTreeLevelIndex<A> create(
+    final JOTreeNodeReadableType<A> root)
+  {
+    return new JOTreeLevelIndex<>(root);
+  }
+
+  /**
+   * @return The root of the indexed subtree
+   */
+
+  public JOTreeNodeReadableType<A> root()
+  {
+    return this.root;
+  }
+
+  /**
+   * Mark the index as out of date. The index will be rebuilt on the next
+   * query.
+   */
+
+  public void invalidate()
+  {
+    this.snapshot = null;
+  }
+
+  /**
+   * @return The greatest depth of any node in the indexed subtree
+   */
+
+  public int height()
+  {
+    return this.check().offsets.length - 2;
+  }
+
+  /**
+   * Retrieve the nodes at the given depth, in breadth-first order. The
+   * returned list is a read-only, random-access view of the nodes at the time
+   * of the call, and is not affected by later changes to the tree.
+   *
+   * @param depth The depth
+   *
+   * @return The nodes at {@code depth}, or an empty list if the depth is
+   * greater than {@link #height()}
+   */
+
+  public List<JOTreeNodeReadableType<A>> nodesAtDepth(
+    final int depth)
+  {
+    if (depth < 0) {
+      throw new IllegalArgumentException(
+        "Depth must be non-negative (received " + depth + ")");
+    }
+
+    final Snapshot<A> current = this.check();
+    final int[] offsets = current.offsets;
+    if (depth >= offsets.length - 1) {
+      return List.of();
+    }
+    return current.nodes.subList(offsets[depth], offsets[depth + 1]);
+  }
+
+  private Snapshot<A> check()
+  {
+    long modifications = 0L;
+    if (this.root instanceof JOTreeNode<A> node) {
+      modifications = node.modifications();
+    }
+
+    final Snapshot<A> current = this.snapshot;
+    if (current != null && current.modifications == modifications) {
+      return current;
+    }
+
+    final Snapshot<A> built = new Snapshot<>(modifications, this.root);
+    this.snapshot = built;
+    return built;
+  }
+
+  private static final class Snapshot<A>
+  {
+    private final long modifications;
+    private final List<JOTreeNodeReadableType<A>> nodes;
+    private final int[] offsets;
+
+    @SuppressWarnings("unchecked")
+    Snapshot(
+      final long in_modifications,
+      final JOTreeNodeReadableType<A> in_root)
+    {
+      this.modifications = in_modifications;
+
+      final int size = in_root.subtreeSize();
+      final JOTreeNodeReadableType<A>[] order =
+        (JOTreeNodeReadableType<A>[]) new JOTreeNodeReadableType<?>[size];
+
+      /*
+       * The array of nodes is its own queue: The nodes at each depth are
+       * appended while the nodes at the previous depth are visited.
+       */
+
+      int[] level_offsets = new int[16];
+      int levels = 0;
+
+      order[0] = in_root;
+      int head = 0;
+      int tail = 1;
+      while (head < tail) {
+        if (levels == level_offsets.length) {
+          level_offsets = Arrays.copyOf(level_offsets, levels * 2);
+        }
+        level_offsets[levels] = head;
+        ++levels;
+
+        final int level_end = tail;
+        while (head < level_end) {
+          final List<JOTreeNodeReadableType<A>> children =
+            order[head].childrenReadable();
+          final int count = children.size();
+          for (int index = 0; index < count; ++index) {
+            order[tail] = children.get(index);
+            ++tail;
+          }
+          ++head;
+        }
+      }
+
+      this.offsets = Arrays.copyOf(level_offsets, levels + 1);
+      this.offsets[levels] = tail;
+      this.nodes = Collections.unmodifiableList(Arrays.asList(order));
+    }
+  }
+}
@@ -0,0 +1,656 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Objects;
+
+/**
+ * <p>A read-only tree served directly from a memory-mapped file.</p>
+ *
+ * <p>A tree is written with {@link #write(Path, JOTreeFixedSizeCodecType,
+ * JOTreeNodeReadableType)} and opened with {@link #open(Path,
+ * JOTreeFixedSizeCodecType)}. Opening a tree maps the file and checks its
+ * header, but does not read any nodes: pages of the file are loaded by the
+ * operating system as they are accessed.</p>
+ *
+ * <p>The file consists of a 16 byte header followed by four arrays of
+ * {@code int} values (parents, first children, next siblings, and depths) and
+ * an array of fixed-size values, each with one element per node. Nodes are
+ * stored in preorder, with the root at position {@code 0}, so the nodes of any
+ * subtree occupy a contiguous range of positions. All integers are
+ * little-endian. The header contains, in order, the magic number
+ * {@code 0x4A4F5452}, the format version {@code 1}, the number of nodes, and
+ * the size in bytes of each value.</p>
+ *
+ * <p>Missing parents, children, and siblings are represented by
+ * {@code -1}.</p>
+ *
+ * @param <A> The type of values contained within the tree
+ */
+
+public final class JOTreeMapped<A> implements JOTreeIndexedType<A>,
+  AutoCloseable
+{
+  private static final int MAGIC = 0x4A4F5452;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+
+  private final JOTreeFixedSizeCodecType<A> codec;
+  private final int size;
+  private Column parents;
+  private Column first_children;
+  private Column next_siblings;
+  private Column depths;
+  private Column values;
+  private boolean closed;
+
+  private JOTreeMapped(
+    final JOTreeFixedSizeCodecType<A> in_codec,
+    final int in_size,
+    final FileChannel channel,
+    final FileChannel.MapMode mode)
+    throws IOException
+  {
+    this.codec = in_codec;
+    this.size = in_size;
+
+    final long count = in_size;
+    final int value_size = in_codec.size();
+    this.parents =
+      Column.map(channel, mode, offsetParents(), count, Integer.BYTES);
+    this.first_children =
+      Column.map(channel, mode, offsetFirstChildren(count), count, Integer.BYTES);
+    this.next_siblings =
+      Column.map(channel, mode, offsetNextSiblings(count), count, Integer.BYTES);
+    this.depths =
+      Column.map(channel, mode, offsetDepths(count), count, Integer.BYTES);
+    this.values =
+      Column.map(channel, mode, offsetValues(count), count, value_size);
+    this.closed = false;
+  }
+
+  private static long offsetParents()
+  {
+    return HEADER_SIZE;
+  }
+
+  private static long offsetFirstChildren(
+    final long count)
+  {
+    return HEADER_SIZE + count * Integer.BYTES;
+  }
+
+  private static long offsetNextSiblings(
+    final long count)
+  {
+    return HEADER_SIZE + count * Integer.BYTES * 2L;
+  }
+
+  private static long offsetDepths(
+    final long count)
+  {
+    return HEADER_SIZE + count * Integer.BYTES * 3L;
+  }
+
+  private static long offsetValues(
+    final long count)
+  {
+    return HEADER_SIZE + count * Integer.BYTES * 4L;
+  }
+
+  private static long fileSize(
+    final long count,
+    final int value_size)
+  {
+    return offsetValues(count) + count * value_size;
+  }
+
+  private static IOException errorFormat(
+    final Path path,
+    final String message,
+    final long expected,
+    final long received)
+  {
+    final StringBuilder sb = new StringBuilder(message);
+    final String separator = System.lineSeparator();
+    sb.append(separator);
+    sb.append("  File: ");
+    sb.append(path);
+    sb.append(separator);
+    sb.append("  Expected: ");
+    sb.append(expected);
+    sb.append(separator);
+    sb.append("  Received: ");
+    sb.append(received);
+    sb.append(separator);
+    return new IOException(sb.toString());
+  }
+
+  /**
+   * <p>Write the tree rooted at {@code root} to {@code path}, replacing any
+   * existing file.</p>
+   *
+   * <p>The tree is written to a temporary file in the same directory as
+   * {@code path}, and the temporary file is then atomically moved over
+   * {@code path}. If writing fails, any existing file at {@code path} is left
+   * unchanged and the temporary file is deleted.</p>
+   *
+   * @param path  The output file
+   * @param codec The codec used to store values
+   * @param root  The root node
+   * @param <A>   The type of values
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static <A> void write(
+    final Path path,
+    final JOTreeFixedSizeCodecType<A> codec,
+    final JOTreeNodeReadableType<A> root)
+    throws IOException
+  {
+    Objects.requireNonNull(path, "Path");
+    Objects.requireNonNull(codec, "Codec");
+    Objects.requireNonNull(root, "Root");
+
+    final int value_size = codec.size();
+    if (value_size < 0) {
+      throw new IllegalArgumentException("Codec size must be non-negative");
+    }
+
+    final int[] count = new int[1];
+    root.forEachDepthFirst(count, (input, depth, node) -> ++input[0]);
+
+    final Path target = path.toAbsolutePath();
+    final Path temporary = Files.createTempFile(
+      target.getParent(), target.getFileName().toString(), ".tmp");
+
+    try {
+      writeFile(temporary, codec, root, count[0], value_size);
+      Files.move(
+        temporary,
+        target,
+        StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    } catch (final IOException | RuntimeException | Error e) {
+      try {
+        Files.deleteIfExists(temporary);
+      } catch (final IOException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw e;
+    }
+  }
+
+  private static <A> void writeFile(
+    final Path path,
+    final JOTreeFixedSizeCodecType<A> codec,
+    final JOTreeNodeReadableType<A> root,
+    final int count,
+    final int value_size)
+    throws IOException
+  {
+    try (FileChannel channel = FileChannel.open(
+      path,
+      StandardOpenOption.TRUNCATE_EXISTING,
+      StandardOpenOption.READ,
+      StandardOpenOption.WRITE)) {
+
+      final ByteBuffer header =
+        ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      header.putInt(MAGIC);
+      header.putInt(VERSION);
+      header.putInt(count);
+      header.putInt(value_size);
+      header.flip();
+      while (header.hasRemaining()) {
+        channel.write(header, header.position());
+      }
+
+      final JOTreeMapped<A> tree = new JOTreeMapped<>(
+        codec, count, channel, FileChannel.MapMode.READ_WRITE);
+      tree.writeNodes(root);
+      tree.force();
+      tree.close();
+    }
+  }
+
+  /**
+   * Open the tree stored in {@code path}.
+   *
+   * @param path  The input file
+   * @param codec The codec used to read values
+   * @param <A>   The type of values
+   *
+   * @return The tree
+   *
+   * @throws IOException On I/O errors, or if the file is not a tree written
+   *                     with a codec of the same size as {@code codec}
+   */
+
+  public static <A> JOTreeMapped<A> open(
+    final Path path,
+    final JOTreeFixedSizeCodecType<A> codec)
+    throws IOException
+  {
+    Objects.requireNonNull(path, "Path");
+    Objects.requireNonNull(codec, "Codec");
+
+    try (FileChannel channel =
+           FileChannel.open(path, StandardOpenOption.READ)) {
+
+      final long file_size = channel.size();
+      if (file_size < HEADER_SIZE) {
+        throw errorFormat(
+          path, "File is too small to contain a tree.", HEADER_SIZE, file_size);
+      }
+
+      final ByteBuffer header =
+        ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+      while (header.hasRemaining()) {
+        if (channel.read(header, header.position()) < 0) {
+          break;
+        }
+      }
+      header.flip();
+
+      final int magic = header.getInt();
+      if (magic != MAGIC) {
+        throw errorFormat(path, "Unrecognized file format.", MAGIC, magic);
+      }
+      final int version = header.getInt();
+      if (version != VERSION) {
+        throw errorFormat(path, "Unsupported format version.", VERSION, version);
+      }
+      final int count = header.getInt();
+      if (count < 1) {
+        throw errorFormat(path, "Invalid node count.", 1L, count);
+      }
+      final int value_size = header.getInt();
+      if (value_size != codec.size()) {
+        throw errorFormat(
+          path, "Value size does not match the codec.", codec.size(), value_size);
+      }
+      final long expected_size = fileSize(count, value_size);
+      if (file_size != expected_size) {
+        throw errorFormat(
+          path, "File size does not match the header.", expected_size, file_size);
+      }
+
+      return new JOTreeMapped<>(
+        codec, count, channel, FileChannel.MapMode.READ_ONLY);
+    }
+  }
+
+  private void writeNodes(
+    final JOTreeNodeReadableType<A> root)
+  {
+    final Deque<WriteItem<A>> stack = new ArrayDeque<>();
+
+    int next = 0;
+    this.writeNode(next, -1, 0, root.value());
+    stack.push(new WriteItem<>(next, root));
+    ++next;
+
+    while (!stack.isEmpty()) {
+      final WriteItem<A> top = stack.peek();
+      if (!top.children.hasNext()) {
+        stack.pop();
+        continue;
+      }
+
+      final JOTreeNodeReadableType<A> child = top.children.next();
+      final int index = next;
+      ++next;
+
+      this.writeNode(
+        index, top.index, this.depths.getInt(top.index) + 1, child.value());
+      if (top.last == -1) {
+        this.first_children.putInt(top.index, index);
+      } else {
+        this.next_siblings.putInt(top.last, index);
+      }
+      top.last = index;
+      stack.push(new WriteItem<>(index, child));
+    }
+  }
+
+  private void writeNode(
+    final int index,
+    final int parent,
+    final int depth,
+    final A value)
+  {
+    this.parents.putInt(index, parent);
+    this.first_children.putInt(index, -1);
+    this.next_siblings.putInt(index, -1);
+    this.depths.putInt(index, depth);
+    this.codec.write(
+      this.values.buffer(index), this.values.offset(index), value);
+  }
+
+  private void force()
+  {
+    this.parents.force();
+    this.first_children.force();
+    this.next_siblings.force();
+    this.depths.force();
+    this.values.force();
+  }
+
+  /**
+   * Release the mappings held by this tree. Any further access raises
+   * {@link IllegalStateException}. The file is unmapped when the released
+   * mappings are collected.
+   */
+
+  @Override
+  public void close()
+  {
+    this.closed = true;
+    this.parents = null;
+    this.first_children = null;
+    this.next_siblings = null;
+    this.depths = null;
+    this.values = null;
+  }
+
+  @Override
+  public int size()
+  {
+    this.checkOpen();
+    return this.size;
+  }
+
+  @Override
+  public A value(
+    final int node)
+  {
+    this.checkNode(node);
+    return this.codec.read(this.values.buffer(node), this.values.offset(node));
+  }
+
+  @Override
+  public int parent(
+    final int node)
+  {
+    this.checkNode(node);
+    return this.parents.getInt(node);
+  }
+
+  @Override
+  public int firstChild(
+    final int node)
+  {
+    this.checkNode(node);
+    return this.first_children.getInt(node);
+  }
+
+  @Override
+  public int nextSibling(
+    final int node)
+  {
+    this.checkNode(node);
+    return this.next_siblings.getInt(node);
+  }
+
+  @Override
+  public int depth(
+    final int node)
+  {
+    this.checkNode(node);
+    return this.depths.getInt(node);
+  }
+
+  @Override
+  public boolean isDescendantOf(
+    final int node,
+    final int other)
+  {
+    this.checkNode(node);
+    this.checkNode(other);
+
+    if (node < other) {
+      return false;
+    }
+
+    final int depth_other = this.depths.getInt(other);
+    int current = node;
+    while (this.depths.getInt(current) > depth_other) {
+      current = this.parents.getInt(current);
+    }
+    return current == other;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Views are created on demand and are not retained by the tree.</p>
+   */
+
+  @Override
+  public JOTreeNodeReadableType<A> node(
+    final int node)
+  {
+    this.checkNode(node);
+    return new JOTreeIndexedNode<>(this, node);
+  }
+
+  /**
+   * @return A readable view of the root node
+   */
+
+  public JOTreeNodeReadableType<A> root()
+  {
+    return this.node(0);
+  }
+
+  /**
+   * <p>Visit each node in the subtree rooted at {@code node} in depth-first
+   * order. Children are visited in order.</p>
+   *
+   * @param node    The position of the starting node
+   * @param context A context value passed to each application of {@code f}
+   * @param f       A function used to receive each node
+   * @param <T>     The type of context values
+   */
+
+  @Override
+  public <T> void forEachDepthFirst(
+    final int node,
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    this.checkNode(node);
+
+    final int depth = this.depths.getInt(node);
+    for (int index = node; index < this.size; ++index) {
+      final int depth_index = this.depths.getInt(index);
+      if (index > node && depth_index <= depth) {
+        return;
+      }
+      f.apply(context, depth_index - depth, this.node(index));
+    }
+  }
+
+  /**
+   * <p>Visit each node in the subtree rooted at {@code node} in breadth-first
+   * order. Children are visited in order.</p>
+   *
+   * @param node    The position of the starting node
+   * @param context A context value passed to each application of {@code f}
+   * @param f       A function used to receive each node
+   * @param <T>     The type of context values
+   */
+
+  @Override
+  public <T> void forEachBreadthFirst(
+    final int node,
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    this.checkNode(node);
+
+    final int depth = this.depths.getInt(node);
+    final JOTreeIntQueue queue = new JOTreeIntQueue();
+    queue.add(node);
+
+    while (!queue.isEmpty()) {
+      final int next = queue.poll();
+      f.apply(context, this.depths.getInt(next) - depth, this.node(next));
+
+      for (int child = this.first_children.getInt(next);
+           child != -1;
+           child = this.next_siblings.getInt(child)) {
+        queue.add(child);
+      }
+    }
+  }
+
+  private void checkOpen()
+  {
+    if (this.closed) {
+      throw new IllegalStateException("Tree is closed");
+    }
+  }
+
+  private void checkNode(
+    final int node)
+  {
+    this.checkOpen();
+    Objects.checkIndex(node, this.size);
+  }
+
+  /**
+   * An array of fixed-size elements mapped in chunks of at most
+   * {@link #CHUNK_SIZE_MAXIMUM} bytes, as a single mapping cannot exceed
+   * {@code 2^31 - 1} bytes.
+   */
+
+  private static final class Column
+  {
+    private static final int CHUNK_SIZE_MAXIMUM = 1 << 30;
+
+    private final MappedByteBuffer[] chunks;
+    private final int element_size;
+    private final int shift;
+    private final int mask;
+
+    private Column(
+      final MappedByteBuffer[] in_chunks,
+      final int in_element_size,
+      final int in_shift)
+    {
+      this.chunks = in_chunks;
+      this.element_size = in_element_size;
+      this.shift = in_shift;
+      this.mask = (1 << in_shift) - 1;
+    }
+
+    static Column map(
+      final FileChannel channel,
+      final FileChannel.MapMode mode,
+      final long base,
+      final long count,
+      final int element_size)
+      throws IOException
+    {
+      int shift = 30;
+      while (shift > 0 && (long) element_size << shift > CHUNK_SIZE_MAXIMUM) {
+        --shift;
+      }
+
+      final long per_chunk = 1L << shift;
+      final int chunk_count = (int) ((count + per_chunk - 1L) / per_chunk);
+      final MappedByteBuffer[] chunks = new MappedByteBuffer[chunk_count];
+      for (int index = 0; index < chunk_count; ++index) {
+        final long first = index * per_chunk;
+        final long elements = Math.min(per_chunk, count - first);
+        final MappedByteBuffer chunk =
+          channel.map(mode, base + first * element_size, elements * element_size);
+        chunk.order(ByteOrder.LITTLE_ENDIAN);
+        chunks[index] = chunk;
+      }
+      return new Column(chunks, element_size, shift);
+    }
+
+    ByteBuffer buffer(
+      final int index)
+    {
+      return this.chunks[index >>> this.shift];
+    }
+
+    int offset(
+      final int index)
+    {
+      return (index & this.mask) * this.element_size;
+    }
+
+    int getInt(
+      final int index)
+    {
+      return this.buffer(index).getInt(this.offset(index));
+    }
+
+    void putInt(
+      final int index,
+      final int value)
+    {
+      this.buffer(index).putInt(this.offset(index), value);
+    }
+
+    void force()
+    {
+      for (final MappedByteBuffer chunk : this.chunks) {
+        chunk.force();
+      }
+    }
+  }
+
+  private static final class WriteItem<A>
+  {
+    private final int index;
+    private final Iterator<JOTreeNodeReadableType<A>> children;
+    private int last;
+
+    WriteItem(
+      final int in_index,
+      final JOTreeNodeReadableType<A> in_node)
+    {
+      this.index = in_index;
+      this.children = in_node.childrenReadable().iterator();
+      this.last = -1;
+    }
+  }
+}
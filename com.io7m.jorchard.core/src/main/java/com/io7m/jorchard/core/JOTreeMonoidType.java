@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+/**
+ * <p>A monoid: an associative binary operation with an identity element.</p>
+ *
+ * <p>Implementations must satisfy
+ * {@code combine(combine(x, y), z) = combine(x, combine(y, z))} and
+ * {@code combine(identity(), x) = x = combine(x, identity())} for all
+ * values.</p>
+ *
+ * @param <M> The type of values
+ *
+ * @see JOTreeAbelianGroupType
+ * @see JOTreeMonoids
+ */
+
+public interface JOTreeMonoidType<M>
+{
+  /**
+   * @return The identity element
+   */
+
+  M identity();
+
+  /**
+   * @param x The left operand
+   * @param y The right operand
+   *
+   * @return The combination of {@code x} and {@code y}
+   */
+
+  M combine(
+    M x,
+    M y);
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+/**
+ * Commonly used monoids.
+ */
+
+public final class JOTreeMonoids
+{
+  private static final JOTreeAbelianGroupType<Long> LONG_SUM =
+    new LongSum();
+
+  private static final JOTreeMonoidType<Long> LONG_MAXIMUM =
+    new LongMaximum();
+
+  private JOTreeMonoids()
+  {
+    throw new AssertionError("Unreachable code");
+  }
+
+  /**
+   * @return The group of {@code long} values under (wrapping) addition
+   */
+
+  public static JOTreeAbelianGroupType<Long> longSum()
+  {
+    return LONG_SUM;
+  }
+
+  /**
+   * @return The monoid of {@code long} values under {@link Math#max(long,
+   * long)}
+   */
+
+  public static JOTreeMonoidType<Long> longMaximum()
+  {
+    return LONG_MAXIMUM;
+  }
+
+  private static final class LongSum
+    implements JOTreeAbelianGroupType<Long>
+  {
+    LongSum()
+    {
+
+    }
+
+    @Override
+    public Long inverse(
+      final Long x)
+    {
+      return Long.valueOf(-x.longValue());
+    }
+
+    @Override
+    public Long identity()
+    {
+      return Long.valueOf(0L);
+    }
+
+    @Override
+    public Long combine(
+      final Long x,
+      final Long y)
+    {
+      return Long.valueOf(x.longValue() + y.longValue());
+    }
+  }
+
+  private static final class LongMaximum
+    implements JOTreeMonoidType<Long>
+  {
+    LongMaximum()
+    {
+
+    }
+
+    @Override
+    public Long identity()
+    {
+      return Long.valueOf(Long.MIN_VALUE);
+    }
+
+    @Override
+    public Long combine(
+      final Long x,
+      final Long y)
+    {
+      return Long.valueOf(Math.max(x.longValue(), y.longValue()));
+    }
+  }
+}
@@ -18,49 +18,59 @@ package com.io7m.jorchard.core;
 
 import com.io7m.jaffirm.core.Invariants;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Deque;
-import java.util.LinkedList;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.Queue;
+import java.util.Set;
 import java.util.function.BooleanSupplier;
 
 /**
- * The default implementation of the {@link JOTreeNodeType} type.
+ * <p>The default implementation of the {@link JOTreeNodeType} type.</p>
+ *
+ * <p>The list of children is not allocated until the first child is
+ * added.</p>
  *
  * @param <A> The type of values contained within the tree
  */
 
 public final class JOTreeNode<A> implements JOTreeNodeType<A>
 {
-  private final List<JOTreeNodeReadableType<A>> children_view_ro;
-  private final List<JOTreeNodeType<A>> children;
   private final A value;
-  private final List<JOTreeNodeType<A>> children_view;
   private final BooleanSupplier detach_check;
+  private List<JOTreeNodeReadableType<A>> children_view_ro;
+  private JOTreeNodeChildren<JOTreeNodeType<A>> children;
+  private List<JOTreeNodeType<A>> children_view;
   private boolean recursing;
   private JOTreeNodeType<A> parent;
+  private int depth;
+  private int subtree_size;
+  private long modifications;
+  private List<JOTreeValueIndex<A, ?>> indexes;
 
   private JOTreeNode(
-    final List<JOTreeNodeType<A>> in_children,
     final BooleanSupplier in_detach_check,
     final A in_value)
   {
-    this.children =
-      Objects.requireNonNull(in_children, "Children");
     this.value =
       Objects.requireNonNull(in_value, "Value");
     this.detach_check =
       Objects.requireNonNull(in_detach_check, "Detach check");
 
     this.parent = null;
-    this.children_view_ro = Collections.unmodifiableList(this.children);
-    this.children_view = Collections.unmodifiableList(this.children);
+    this.depth = 0;
+    this.subtree_size = 1;
+    this.modifications = 0L;
+    this.indexes = null;
+    this.children = null;
+    this.children_view_ro = List.of();
+    this.children_view = List.of();
     this.recursing = false;
   }
 
@@ -76,7 +86,7 @@ public final class JOTreeNode<A> implements JOTreeNodeType<A>
 
   public static <A> JOTreeNodeType<A> create(final A in_value)
   {
-    return new JOTreeNode<>(new ArrayList<>(8), () -> true, in_value);
+    return new JOTreeNode<>(() -> true, in_value);
   }
 
   /**
@@ -96,7 +106,156 @@ public final class JOTreeNode<A> implements JOTreeNodeType<A>
     final A in_value,
     final BooleanSupplier in_detach_check)
   {
-    return new JOTreeNode<>(new ArrayList<>(8), in_detach_check, in_value);
+    return new JOTreeNode<>(in_detach_check, in_value);
+  }
+
+  /**
+   * Create a new node with the given value and attach it as the last child of
+   * {@code in_parent}, if a parent is given. A new node has no children, so
+   * attaching it cannot introduce a cycle, and no checks are performed. The
+   * modification counts and subtree sizes of the ancestors are not updated,
+   * so this must only be used to build new trees that have not yet been
+   * observed, and {@link #subtreeSizesCompute(JOTreeNode)} must be applied to
+   * the root of the new tree once it is complete.
+   *
+   * @param in_parent   The parent node, or {@code null}
+   * @param in_value    The value
+   * @param in_capacity The expected number of children of the new node
+   * @param <A>         The type of values
+   *
+   * @return A new node
+   */
+
+  static <A> JOTreeNode<A> createUnchecked(
+    final JOTreeNode<A> in_parent,
+    final A in_value,
+    final int in_capacity)
+  {
+    final JOTreeNode<A> node = new JOTreeNode<>(() -> true, in_value);
+    node.childrenEnsureCapacity(in_capacity);
+    if (in_parent != null) {
+      node.parent = in_parent;
+      node.depth = in_parent.depth + 1;
+      in_parent.childrenCreate().add(node);
+    }
+    return node;
+  }
+
+  /**
+   * Create a new root node with the given value that records the given
+   * depth. The node is intended to be attached, with
+   * {@link #childAttachUnchecked(JOTreeNode, JOTreeNode)}, to a node at depth
+   * {@code in_depth - 1} once it and its descendants have been built. As with
+   * {@link #createUnchecked(JOTreeNode, Object, int)}, this must only be used
+   * to build new trees that have not yet been observed.
+   *
+   * @param in_value    The value
+   * @param in_depth    The depth the node will have once attached
+   * @param in_capacity The expected number of children of the new node
+   * @param <A>         The type of values
+   *
+   * @return A new node
+   */
+
+  static <A> JOTreeNode<A> createUncheckedAtDepth(
+    final A in_value,
+    final int in_depth,
+    final int in_capacity)
+  {
+    final JOTreeNode<A> node = new JOTreeNode<>(() -> true, in_value);
+    node.childrenEnsureCapacity(in_capacity);
+    node.depth = in_depth;
+    return node;
+  }
+
+  /**
+   * Attach {@code in_child} as the last child of {@code in_parent}. The child
+   * must be a root node of a newly built tree, and must already record the
+   * depth it will have once attached, so no cycle checks or depth updates are
+   * performed.
+   *
+   * @param in_parent The parent node
+   * @param in_child  The child node
+   * @param <A>       The type of values
+   */
+
+  static <A> void childAttachUnchecked(
+    final JOTreeNode<A> in_parent,
+    final JOTreeNode<A> in_child)
+  {
+    Invariants.checkInvariant(
+      in_child.parent == null, "Child must not have a parent");
+    Invariants.checkInvariant(
+      in_child.depth == in_parent.depth + 1,
+      "Child must be one level deeper than its parent");
+
+    in_child.parent = in_parent;
+    in_parent.childrenCreate().add(in_child);
+  }
+
+  /**
+   * Calculate the subtree size of every node in the tree rooted at
+   * {@code in_root}. Children are always visited before their parents, so
+   * each node can derive its size from its (already updated) children. This
+   * is used to complete trees built with the unchecked operations.
+   *
+   * @param in_root The root node
+   * @param <A>     The type of values
+   */
+
+  static <A> void subtreeSizesCompute(
+    final JOTreeNode<A> in_root)
+  {
+    final JOTreeFrameStack<A> stack = new JOTreeFrameStack<>();
+    stack.push(in_root);
+
+    while (!stack.isEmpty()) {
+      final JOTreeNodeReadableType<A> child = stack.nextChild();
+      if (child != null) {
+        stack.push(child);
+        continue;
+      }
+
+      if (stack.pop() instanceof JOTreeNode<A> node) {
+        final JOTreeNodeChildren<JOTreeNodeType<A>> node_children =
+          node.children;
+        int size = 1;
+        if (node_children != null) {
+          final int count = node_children.size();
+          for (int index = 0; index < count; ++index) {
+            size += node_children.get(index).subtreeSize();
+          }
+        }
+        node.subtree_size = size;
+      }
+    }
+  }
+
+  private void childrenEnsureCapacity(
+    final int capacity)
+  {
+    if (capacity > 0) {
+      this.childrenCreate().ensureCapacity(capacity);
+    }
+  }
+
+  private void childrenReserve(
+    final int count)
+  {
+    if (count > 0) {
+      final JOTreeNodeChildren<JOTreeNodeType<A>> list = this.childrenCreate();
+      list.ensureCapacity(list.size() + count);
+    }
+  }
+
+  private JOTreeNodeChildren<JOTreeNodeType<A>> childrenCreate()
+  {
+    if (this.children == null) {
+      this.children = new JOTreeNodeChildren<>();
+      this.children_view_ro = Collections.unmodifiableList(this.children);
+      this.children_view = Collections.unmodifiableList(this.children);
+    }
+    return this.children;
   }
 
   @Override
@@ -136,17 +295,7 @@ public final class JOTreeNode<A> implements JOTreeNodeType<A>
     Objects.requireNonNull(parent_new, "Parent");
 
     if (parent_new.isDescendantOf(this)) {
-      final StringBuilder sb = new StringBuilder(
-        "Cannot set a descendant of this node to be the parent of this node.");
-      final String separator = System.lineSeparator();
-      sb.append(separator);
-      sb.append("  Descendant: ");
-      sb.append(parent_new);
-      sb.append(separator);
-      sb.append("  This: ");
-      sb.append(this);
-      sb.append(separator);
-      throw new JOTreeExceptionCycle(sb.toString());
+      throw errorCycle(parent_new, this);
     }
 
     if (this.parent != null) {
@@ -176,8 +325,10 @@ public final class JOTreeNode<A> implements JOTreeNodeType<A>
         try {
           parent_new.childAdd(this);
           this.parent = parent_new;
+          this.depthUpdate();
         } catch (RuntimeException | Error e) {
           this.parent = null;
+          this.depthUpdate();
           throw e;
         }
 
@@ -189,17 +340,185 @@ public final class JOTreeNode<A> implements JOTreeNodeType<A>
     return this;
   }
 
+  /**
+   * Recalculate the depth of this node and of every node in the subtree
+   * rooted at this node. Parents are always visited before their children,
+   * so each node can derive its depth from its (already updated) parent.
+   */
+
+  private void depthUpdate()
+  {
+    final Deque<JOTreeNodeType<A>> stack = new ArrayDeque<>();
+    stack.push(this);
+
+    while (!stack.isEmpty()) {
+      final JOTreeNodeType<A> next = stack.pop();
+      if (next instanceof JOTreeNode<A> node) {
+        final JOTreeNodeType<A> node_parent = node.parent;
+        node.depth = node_parent == null ? 0 : node_parent.depth() + 1;
+      }
+      for (final JOTreeNodeType<A> child : next.children()) {
+        stack.push(child);
+      }
+    }
+  }
+
+  /**
+   * Record a change to the structure of the subtree rooted at this node. The
+   * modification count of this node and of every ancestor is incremented,
+   * and {@code delta} is added to the subtree size of each of them.
+   *
+   * @param delta The change in the number of nodes in the subtree
+   */
+
+  private void modified(
+    final int delta)
+  {
+    JOTreeNodeType<A> current = this;
+    while (current != null) {
+      if (current instanceof JOTreeNode<A> node) {
+        ++node.modifications;
+        node.subtree_size += delta;
+        current = node.parent;
+      } else {
+        current = current.parent().orElse(null);
+      }
+    }
+  }
+
+  /**
+   * Compute the keys of the subtree rooted at {@code subtree} for each value
+   * index attached to this node or to any ancestor. This is done before the
+   * subtree is attached to, or detached from, this node, so that a failing
+   * key function leaves the tree and its indexes unchanged.
+   *
+   * @param subtree The subtree
+   *
+   * @return The keys for each index, or {@code null} if there are no indexes
+   */
+
+  private List<JOTreeValueIndex.SubtreeKeys<A, ?>> indexesPrepare(
+    final JOTreeNodeReadableType<A> subtree)
+  {
+    List<JOTreeValueIndex.SubtreeKeys<A, ?>> keys = null;
+    JOTreeNodeType<A> current = this;
+    while (current != null) {
+      if (current instanceof JOTreeNode<A> node) {
+        final List<JOTreeValueIndex<A, ?>> node_indexes = node.indexes;
+        if (node_indexes != null) {
+          if (keys == null) {
+            keys = new ArrayList<>(node_indexes.size());
+          }
+          for (int index = 0; index < node_indexes.size(); ++index) {
+            keys.add(node_indexes.get(index).subtreeKeys(subtree));
+          }
+        }
+        current = node.parent;
+      } else {
+        current = current.parent().orElse(null);
+      }
+    }
+    return keys;
+  }
+
+  private static <A> void indexesAttach(
+    final List<JOTreeValueIndex.SubtreeKeys<A, ?>> keys)
+  {
+    if (keys != null) {
+      for (int index = 0; index < keys.size(); ++index) {
+        keys.get(index).attach();
+      }
+    }
+  }
+
+  private static <A> void indexesDetach(
+    final List<JOTreeValueIndex.SubtreeKeys<A, ?>> keys)
+  {
+    if (keys != null) {
+      for (int index = 0; index < keys.size(); ++index) {
+        keys.get(index).detach();
+      }
+    }
+  }
+
+  /**
+   * Attach a value index to this node. The index is informed of every
+   * subtree subsequently attached to or detached from the subtree rooted at
+   * this node.
+   *
+   * @param index The index
+   */
+
+  void indexAttach(
+    final JOTreeValueIndex<A, ?> index)
+  {
+    if (this.indexes == null) {
+      this.indexes = new ArrayList<>(1);
+    }
+    this.indexes.add(index);
+  }
+
+  /**
+   * Detach a value index from this node.
+   *
+   * @param index The index
+   */
+
+  void indexDetach(
+    final JOTreeValueIndex<A, ?> index)
+  {
+    if (this.indexes != null) {
+      this.indexes.remove(index);
+      if (this.indexes.isEmpty()) {
+        this.indexes = null;
+      }
+    }
+  }
+
+  /**
+   * @return A count that changes whenever the structure of the subtree rooted
+   * at this node changes
+   */
+
+  long modifications()
+  {
+    return this.modifications;
+  }
+
+  static JOTreeExceptionCycle errorCycle(
+    final JOTreeNodeReadableType<?> descendant,
+    final JOTreeNodeReadableType<?> node)
+  {
+    final StringBuilder sb = new StringBuilder(
+      "Cannot set a descendant of this node to be the parent of this node.");
+    final String separator = System.lineSeparator();
+    sb.append(separator);
+    sb.append("  Descendant: ");
+    sb.append(descendant);
+    sb.append(separator);
+    sb.append("  This: ");
+    sb.append(node);
+    sb.append(separator);
+    return new JOTreeExceptionCycle(sb.toString());
+  }
+
+  static JOTreeExceptionDetachDenied errorDetachDenied(
+    final JOTreeNodeReadableType<?> node)
+  {
+    final StringBuilder sb =
+      new StringBuilder("This node may not be detached.");
+    final String separator = System.lineSeparator();
+    sb.append(separator);
+    sb.append("  This: ");
+    sb.append(node);
+    sb.append(separator);
+    return new JOTreeExceptionDetachDenied(sb.toString());
+  }
+
   private void checkDetach()
   {
     if (!this.isDetachAllowed()) {
-      final StringBuilder sb =
-        new StringBuilder("This node may not be detached.");
-      final String separator = System.lineSeparator();
-      sb.append(separator);
-      sb.append("  This: ");
-      sb.append(this);
-      sb.append(separator);
-      throw new JOTreeExceptionDetachDenied(sb.toString());
+      throw errorDetachDenied(this);
     }
   }
 
@@ -213,7 +532,10 @@ public final class JOTreeNode<A> implements JOTreeNodeType<A>
   public void childrenSortNodes(
     final Comparator<JOTreeNodeType<A>> comparator)
   {
-    this.children.sort(comparator);
+    if (this.children != null) {
+      this.children.sort(comparator);
+    }
+    this.modified(0);
   }
 
   @Override
@@ -229,6 +551,7 @@ public final class JOTreeNode<A> implements JOTreeNodeType<A>
         if (this.parent != null) {
           this.parent.childRemove(this);
           this.parent = null;
+          this.depthUpdate();
         }
       } finally {
         this.recursing = false;
@@ -251,8 +574,18 @@ public final class JOTreeNode<A> implements JOTreeNodeType<A>
     if (!this.recursing) {
       try {
         this.recursing = true;
+
+        final boolean present =
+          this.children != null && this.children.contains(child);
+        final List<JOTreeValueIndex.SubtreeKeys<A, ?>> keys =
+          present ? this.indexesPrepare(child) : null;
+
         child.detach();
-        this.children.remove(child);
+        if (present) {
+          this.children.remove(child);
+          this.modified(-child.subtreeSize());
+          indexesDetach(keys);
+        }
       } finally {
         this.recursing = false;
       }
@@ -268,9 +601,21 @@ public final class JOTreeNode<A> implements JOTreeNodeType<A>
     if (!this.recursing) {
       try {
         this.recursing = true;
+
+        /*
+         * A child that is already present is only moved to the end of the
+         * list of children, and so does not change the size of the subtree.
+         */
+
+        final boolean present =
+          this.children != null && this.children.contains(child);
+        final List<JOTreeValueIndex.SubtreeKeys<A, ?>> keys =
+          present ? null : this.indexesPrepare(child);
+
         child.setParent(this);
-        this.children.remove(child);
-        this.children.add(child);
+        this.childrenCreate().add(child);
+        this.modified(present ? 0 : child.subtreeSize());
+        indexesAttach(keys);
       } finally {
         this.recursing = false;
       }
@@ -280,161 +625,242 @@ public final class JOTreeNode<A> implements JOTreeNodeType<A>
   }
 
   @Override
-  public boolean isDescendantOf(
-    final JOTreeNodeReadableType<A> other)
+  public JOTreeNodeType<A> childAddAll(
+    final Collection<? extends JOTreeNodeType<A>> in_children)
   {
-    Objects.requireNonNull(other, "Other");
-    if (Objects.equals(other, this)) {
-      return true;
+    Objects.requireNonNull(in_children, "Children");
+
+    /*
+     * Collect the ancestors of this node once. A child would introduce a
+     * cycle iff it is one of these ancestors (or this node itself), and
+     * attaching the other children cannot change the set.
+     */
+
+    final Set<JOTreeNodeReadableType<A>> ancestors =
+      Collections.newSetFromMap(new IdentityHashMap<>());
+
+    JOTreeNodeReadableType<A> ancestor = this;
+    while (ancestor != null) {
+      ancestors.add(ancestor);
+      ancestor = ancestor.parentReadable().orElse(null);
     }
-    return this.parent != null && this.parent.isDescendantOf(other);
-  }
 
-  @Override
-  public <T> void forEachDepthFirst(
-    final T context,
-    final JOTreeNodeForEachFunctionType<A, T> f)
-  {
-    Objects.requireNonNull(context, "Context");
-    Objects.requireNonNull(f, "Function");
+    /*
+     * Check every child before modifying anything, so that a cycle or a
+     * denied detachment leaves the tree untouched.
+     */
 
-    final Deque<TraversalItem<A>> stack = new LinkedList<>();
-    stack.push(new TraversalItem<>(0, this));
+    for (final JOTreeNodeType<A> child : in_children) {
+      Objects.requireNonNull(child, "Child");
+      if (ancestors.contains(child)) {
+        throw errorCycle(this, child);
+      }
+      if (!child.isRoot() && !child.isDetachAllowed()) {
+        throw errorDetachDenied(child);
+      }
+    }
 
-    while (!stack.isEmpty()) {
-      final TraversalItem<A> next = stack.pop();
-      f.apply(context, next.depth, next.node);
-      final Collection<JOTreeNodeReadableType<A>> next_children =
-        next.node.childrenReadable();
-      for (final JOTreeNodeReadableType<A> child : next_children) {
-        stack.push(new TraversalItem<>(next.depth + 1, child));
+    final List<ChildKeys<A>> prepared = this.childKeysPrepare(in_children);
+    this.childrenReserve(in_children.size());
+
+    int added = 0;
+    int position = 0;
+    final List<ChildKeys<A>> attached = new ArrayList<>(in_children.size());
+    for (final JOTreeNodeType<A> child : in_children) {
+      final ChildKeys<A> keys = prepared.get(position);
+      ++position;
+
+      if (child instanceof JOTreeNode<A> node) {
+        final int size = this.childAttachChecked(node, keys);
+        if (size > 0) {
+          added += size;
+          if (keys != null) {
+            attached.add(keys);
+          }
+        }
+      } else {
+        this.childAdd(child);
       }
     }
-  }
 
-  @Override
-  public <T> void forEachBreadthFirst(
-    final T context,
-    final JOTreeNodeForEachFunctionType<A, T> f)
-  {
-    Objects.requireNonNull(context, "Context");
-    Objects.requireNonNull(f, "Function");
+    this.modified(added);
+    for (final ChildKeys<A> keys : attached) {
+      indexesAttach(keys.attached);
+    }
+    return this;
+  }
 
-    final Queue<TraversalItem<A>> queue = new LinkedList<>();
-    queue.add(new TraversalItem<>(0, this));
+  /**
+   * Compute the keys of each child for the value indexes of its current
+   * parent and of this node, before any child is moved. Children of other
+   * node types update the indexes themselves when attached, so their keys
+   * are only computed to check that they can be. Children that are not
+   * affected by any index are represented by {@code null}.
+   */
 
-    while (!queue.isEmpty()) {
-      final TraversalItem<A> next = queue.poll();
-      f.apply(context, next.depth, next.node);
-      final Collection<JOTreeNodeReadableType<A>> next_children =
-        next.node.childrenReadable();
-      for (final JOTreeNodeReadableType<A> child : next_children) {
-        queue.add(new TraversalItem<>(next.depth + 1, child));
+  private List<ChildKeys<A>> childKeysPrepare(
+    final Collection<? extends JOTreeNodeType<A>> in_children)
+  {
+    final List<ChildKeys<A>> prepared = new ArrayList<>(in_children.size());
+    for (final JOTreeNodeType<A> child : in_children) {
+      final JOTreeNodeType<A> parent_previous = child.parent().orElse(null);
+      ChildKeys<A> keys = null;
+      if (parent_previous != this) {
+        List<JOTreeValueIndex.SubtreeKeys<A, ?>> detached = null;
+        if (parent_previous instanceof JOTreeNode<A> previous) {
+          detached = previous.indexesPrepare(child);
+        }
+        final List<JOTreeValueIndex.SubtreeKeys<A, ?>> attached =
+          this.indexesPrepare(child);
+        if (attached != null || detached != null) {
+          keys = new ChildKeys<>(attached, detached);
+        }
       }
+      prepared.add(keys);
     }
+    return prepared;
   }
 
-  @Override
-  public <T, B> JOTreeNodeType<B> mapDepthFirst(
-    final T context,
-    final JOTreeNodeMapFunctionType<A, T, B> f)
-  {
-    Objects.requireNonNull(context, "Context");
-    Objects.requireNonNull(f, "Function");
+  /**
+   * Attach a child that has already passed the cycle and detach checks.
+   *
+   * @return The number of nodes added to the subtree rooted at this node
+   */
 
-    final Deque<MapItem<A, B>> stack = new LinkedList<>();
-    stack.push(new MapItem<>(0, null, this));
+  private int childAttachChecked(
+    final JOTreeNode<A> child,
+    final ChildKeys<A> keys)
+  {
+    final JOTreeNodeType<A> parent_previous = child.parent;
+    if (parent_previous == this) {
+      this.childrenCreate().add(child);
+      return 0;
+    }
 
-    JOTreeNodeType<B> root = null;
-    while (!stack.isEmpty()) {
-      final MapItem<A, B> next = stack.pop();
-      final B r = f.apply(context, next.depth, next.node);
+    try {
+      child.recursing = true;
 
-      final JOTreeNodeType<B> node = create(r);
-      if (next.parent != null) {
-        node.setParent(next.parent);
-      } else {
-        Invariants.checkInvariant(root == null, "Root may only be set once");
-        Invariants.checkInvariant(next.depth == 0, "Root must be depth 0");
-        root = node;
+      if (parent_previous instanceof JOTreeNode<A> previous) {
+        previous.children.remove(child);
+        previous.modified(-child.subtree_size);
+        if (keys != null) {
+          indexesDetach(keys.detached);
+        }
+      } else if (parent_previous != null) {
+        parent_previous.childRemove(child);
       }
 
-      final Collection<JOTreeNodeReadableType<A>> next_children =
-        next.node.childrenReadable();
-      for (final JOTreeNodeReadableType<A> child : next_children) {
-        stack.push(new MapItem<>(next.depth + 1, node, child));
-      }
+      child.parent = this;
+      this.childrenCreate().add(child);
+      child.depthUpdate();
+    } finally {
+      child.recursing = false;
     }
+    return child.subtree_size;
+  }
 
-    return Objects.requireNonNull(root, "Root");
+  @Override
+  public int depth()
+  {
+    return this.depth;
   }
 
   @Override
-  public <T, B> JOTreeNodeType<B> mapBreadthFirst(
-    final T context,
-    final JOTreeNodeMapFunctionType<A, T, B> f)
+  public int subtreeSize()
   {
-    Objects.requireNonNull(context, "Context");
-    Objects.requireNonNull(f, "Function");
+    return this.subtree_size;
+  }
 
-    final Queue<MapItem<A, B>> queue = new LinkedList<>();
-    queue.add(new MapItem<>(0, null, this));
+  @Override
+  public boolean isDescendantOf(
+    final JOTreeNodeReadableType<A> other)
+  {
+    Objects.requireNonNull(other, "Other");
+    if (Objects.equals(other, this)) {
+      return true;
+    }
 
-    JOTreeNodeType<B> root = null;
-    while (!queue.isEmpty()) {
-      final MapItem<A, B> next = queue.poll();
-      final B r = f.apply(context, next.depth, next.node);
+    /*
+     * A node with no children is an ancestor only of itself, and a node
+     * can only be an ancestor of nodes that are strictly deeper than it.
+     */
 
-      final JOTreeNodeType<B> node = create(r);
-      if (next.parent != null) {
-        node.setParent(next.parent);
-      } else {
-        Invariants.checkInvariant(root == null, "Root may only be set once");
-        Invariants.checkInvariant(next.depth == 0, "Root must be depth 0");
-        root = node;
-      }
+    if (other.childrenReadable().isEmpty()) {
+      return false;
+    }
 
-      final Collection<JOTreeNodeReadableType<A>> next_children =
-        next.node.childrenReadable();
-      for (final JOTreeNodeReadableType<A> child : next_children) {
-        queue.add(new MapItem<>(next.depth + 1, node, child));
+    final int depth_other = other.depth();
+    if (depth_other >= this.depth) {
+      return false;
+    }
+
+    /*
+     * Walk up the ancestors of this node until reaching the depth of the
+     * other node, which is the only ancestor that could be equal to it.
+     */
+
+    JOTreeNode<A> current = this;
+    while (true) {
+      final JOTreeNodeType<A> current_parent = current.parent;
+      if (current_parent instanceof JOTreeNode<A> node) {
+        if (node.depth == depth_other) {
+          return Objects.equals(other, node);
+        }
+        current = node;
+      } else {
+        return current_parent != null && current_parent.isDescendantOf(other);
       }
     }
+  }
 
-    return Objects.requireNonNull(root, "Root");
+  @Override
+  public <T> void forEachDepthFirst(
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    JOTreeTraversal.forEachDepthFirst(this, context, f);
   }
 
-  private static final class MapItem<A, B>
+  @Override
+  public <T> void forEachBreadthFirst(
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
   {
-    private final int depth;
-    private final JOTreeNodeType<B> parent;
-    private final JOTreeNodeReadableType<A> node;
+    JOTreeTraversal.forEachBreadthFirst(this, context, f);
+  }
 
-    MapItem(
-      final int in_depth,
-      final JOTreeNodeType<B> in_parent,
-      final JOTreeNodeReadableType<A> in_value)
-    {
-      this.depth = in_depth;
-      this.parent = in_parent;
-      if (this.depth > 0) {
-        Objects.requireNonNull(in_parent, "Parent");
-      }
-      this.node = Objects.requireNonNull(in_value, "Value");
-    }
+  @Override
+  public <T, B> JOTreeNodeType<B> mapDepthFirst(
+    final T context,
+    final JOTreeNodeMapFunctionType<A, T, B> f)
+  {
+    return JOTreeTraversal.mapDepthFirst(this, context, f);
+  }
+
+  @Override
+  public <T, B> JOTreeNodeType<B> mapBreadthFirst(
+    final T context,
+    final JOTreeNodeMapFunctionType<A, T, B> f)
+  {
+    return JOTreeTraversal.mapBreadthFirst(this, context, f);
   }
 
-  private static final class TraversalItem<A>
+  /**
+   * The keys of a child for the value indexes of the node it is attached to,
+   * and of the node it is detached from.
+   */
+
+  private static final class ChildKeys<A>
   {
-    private final int depth;
-    private final JOTreeNodeReadableType<A> node;
+    private final List<JOTreeValueIndex.SubtreeKeys<A, ?>> attached;
+    private final List<JOTreeValueIndex.SubtreeKeys<A, ?>> detached;
 
-    TraversalItem(
-      final int in_depth,
-      final JOTreeNodeReadableType<A> in_value)
+    ChildKeys(
+      final List<JOTreeValueIndex.SubtreeKeys<A, ?>> in_attached,
+      final List<JOTreeValueIndex.SubtreeKeys<A, ?>> in_detached)
     {
-      this.depth = in_depth;
-      this.node = Objects.requireNonNull(in_value, "Value");
+      this.attached = in_attached;
+      this.detached = in_detached;
     }
   }
 }
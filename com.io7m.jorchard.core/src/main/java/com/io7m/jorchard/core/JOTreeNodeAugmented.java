@@ -0,0 +1,450 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * <p>An implementation of the {@link JOTreeNodeType} type that maintains an
+ * aggregate value for every subtree.</p>
+ *
+ * <p>Each node is given a measure of its value when it is created. The
+ * aggregate of a node is the combination, under a monoid, of the measure of
+ * the node followed by the aggregates of each of its children in order. The
+ * aggregate is cached, and so {@link #aggregate()} is a constant-time
+ * operation. Every structural change updates the aggregates of the affected
+ * nodes and their ancestors:</p>
+ *
+ * <ul>
+ *   <li>If the monoid is a {@link JOTreeAbelianGroupType}, the change in the
+ *   aggregate of the modified node is combined into each ancestor, and each
+ *   modification costs {@code O(depth)}. Sorting the children of a node does
+ *   not change any aggregate.</li>
+ *   <li>Otherwise, the aggregate of each ancestor is recomputed from the
+ *   aggregates of its children, stopping at the first ancestor whose
+ *   aggregate is unchanged. Each modification costs time proportional to the
+ *   total number of children of the ancestors that are recomputed.</li>
+ * </ul>
+ *
+ * <p>Augmented nodes may only be connected to other augmented nodes that use
+ * the same monoid instance.</p>
+ *
+ * @param <A> The type of values contained within the tree
+ * @param <M> The type of aggregate values
+ *
+ * @see JOTreeMonoids
+ */
+
+public final class JOTreeNodeAugmented<A, M> implements JOTreeNodeType<A>
+{
+  private final A value;
+  private final M measure;
+  private final JOTreeMonoidType<M> monoid;
+  private final BooleanSupplier detach_check;
+  private final JOTreeNodeChildren<JOTreeNodeAugmented<A, M>> children;
+  private final List<JOTreeNodeType<A>> children_view;
+  private final List<JOTreeNodeReadableType<A>> children_view_ro;
+  private JOTreeNodeAugmented<A, M> parent;
+  private M aggregate;
+
+  private JOTreeNodeAugmented(
+    final BooleanSupplier in_detach_check,
+    final A in_value,
+    final JOTreeMonoidType<M> in_monoid,
+    final M in_measure)
+  {
+    this.detach_check =
+      Objects.requireNonNull(in_detach_check, "Detach check");
+    this.value =
+      Objects.requireNonNull(in_value, "Value");
+    this.monoid =
+      Objects.requireNonNull(in_monoid, "Monoid");
+    this.measure =
+      Objects.requireNonNull(in_measure, "Measure");
+
+    this.children = new JOTreeNodeChildren<>();
+    this.children_view = Collections.unmodifiableList(this.children);
+    this.children_view_ro = Collections.unmodifiableList(this.children);
+    this.parent = null;
+    this.aggregate = in_measure;
+  }
+
+  /**
+   * Create a new node with the given value. The node has no parent and no
+   * children.
+   *
+   * @param in_value   The value
+   * @param in_monoid  The monoid used to combine measures
+   * @param in_measure A function that computes the measure of the value
+   * @param <A>        The type of values
+   * @param <M>        The type of aggregate values
+   *
+   * @return A new node
+   */
+
+  public static <A, M> JOTreeNodeAugmented<A, M> create(
+    final A in_value,
+    final JOTreeMonoidType<M> in_monoid,
+    final Function<? super A, ? extends M> in_measure)
+  {
+    return createWithDetachCheck(in_value, in_monoid, in_measure, () -> true);
+  }
+
+  /**
+   * Create a new node with the given value. The node has no parent and no
+   * children. The node is equipped with a function that is evaluated each
+   * before the node is detached from any node, with a {@code true} value
+   * indicating that the node is allowed to be detached.
+   *
+   * @param in_value        The value
+   * @param in_monoid       The monoid used to combine measures
+   * @param in_measure      A function that computes the measure of the value
+   * @param in_detach_check A detach check function
+   * @param <A>             The type of values
+   * @param <M>             The type of aggregate values
+   *
+   * @return A new node
+   */
+
+  public static <A, M> JOTreeNodeAugmented<A, M> createWithDetachCheck(
+    final A in_value,
+    final JOTreeMonoidType<M> in_monoid,
+    final Function<? super A, ? extends M> in_measure,
+    final BooleanSupplier in_detach_check)
+  {
+    Objects.requireNonNull(in_value, "Value");
+    Objects.requireNonNull(in_measure, "Measure");
+    return new JOTreeNodeAugmented<>(
+      in_detach_check, in_value, in_monoid, in_measure.apply(in_value));
+  }
+
+  /**
+   * @return The measure of the value of this node
+   */
+
+  public M measure()
+  {
+    return this.measure;
+  }
+
+  /**
+   * @return The aggregate of the subtree rooted at this node
+   */
+
+  public M aggregate()
+  {
+    return this.aggregate;
+  }
+
+  /**
+   * @return The monoid used to combine measures
+   */
+
+  public JOTreeMonoidType<M> monoid()
+  {
+    return this.monoid;
+  }
+
+  @SuppressWarnings("unchecked")
+  private JOTreeNodeAugmented<A, M> checkAugmented(
+    final JOTreeNodeType<A> node)
+  {
+    if (node instanceof JOTreeNodeAugmented<A, ?> augmented
+      && augmented.monoid == this.monoid) {
+      return (JOTreeNodeAugmented<A, M>) augmented;
+    }
+    throw new IllegalArgumentException(
+      "Augmented nodes may only be connected to other augmented nodes "
+        + "with the same monoid");
+  }
+
+  @Override
+  public boolean isDetachAllowed()
+  {
+    return this.detach_check.getAsBoolean();
+  }
+
+  @Override
+  public A value()
+  {
+    return this.value;
+  }
+
+  @Override
+  public boolean isRoot()
+  {
+    return this.parent == null;
+  }
+
+  @Override
+  public Optional<JOTreeNodeReadableType<A>> parentReadable()
+  {
+    return Optional.ofNullable(this.parent);
+  }
+
+  @Override
+  public Optional<JOTreeNodeType<A>> parent()
+  {
+    return Optional.ofNullable(this.parent);
+  }
+
+  @Override
+  public List<JOTreeNodeType<A>> children()
+  {
+    return this.children_view;
+  }
+
+  @Override
+  public List<JOTreeNodeReadableType<A>> childrenReadable()
+  {
+    return this.children_view_ro;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[JOTreeNodeAugmented " + this.value + "]";
+  }
+
+  @Override
+  public int depth()
+  {
+    int result = 0;
+    JOTreeNodeAugmented<A, M> current = this.parent;
+    while (current != null) {
+      ++result;
+      current = current.parent;
+    }
+    return result;
+  }
+
+  @Override
+  public boolean isDescendantOf(
+    final JOTreeNodeReadableType<A> other)
+  {
+    Objects.requireNonNull(other, "Other");
+
+    JOTreeNodeAugmented<A, M> current = this;
+    while (current != null) {
+      if (current == other) {
+        return true;
+      }
+      current = current.parent;
+    }
+    return false;
+  }
+
+  @Override
+  public JOTreeNodeType<A> setParent(
+    final JOTreeNodeType<A> parent_new)
+  {
+    Objects.requireNonNull(parent_new, "Parent");
+    this.checkAugmented(parent_new).childAdd(this);
+    return this;
+  }
+
+  @Override
+  public JOTreeNodeType<A> childAdd(
+    final JOTreeNodeType<A> child)
+  {
+    Objects.requireNonNull(child, "Child");
+    final JOTreeNodeAugmented<A, M> node = this.checkAugmented(child);
+
+    if (this.isDescendantOf(node)) {
+      throw JOTreeNode.errorCycle(this, node);
+    }
+
+    final JOTreeNodeAugmented<A, M> parent_previous = node.parent;
+    if (parent_previous != null && !node.isDetachAllowed()) {
+      throw JOTreeNode.errorDetachDenied(node);
+    }
+
+    if (parent_previous == this) {
+      this.children.add(node);
+      this.aggregateReordered();
+      return this;
+    }
+
+    if (parent_previous != null) {
+      parent_previous.children.remove(node);
+      parent_previous.aggregateRemoved(node.aggregate);
+    }
+
+    this.children.add(node);
+    node.parent = this;
+    this.aggregateAppended(node.aggregate);
+    return this;
+  }
+
+  @Override
+  public JOTreeNodeType<A> detach()
+  {
+    final JOTreeNodeAugmented<A, M> parent_previous = this.parent;
+    if (parent_previous != null) {
+      if (!this.isDetachAllowed()) {
+        throw JOTreeNode.errorDetachDenied(this);
+      }
+      parent_previous.children.remove(this);
+      this.parent = null;
+      parent_previous.aggregateRemoved(this.aggregate);
+    }
+    return this;
+  }
+
+  @Override
+  public JOTreeNodeType<A> childRemove(
+    final JOTreeNodeType<A> child)
+  {
+    Objects.requireNonNull(child, "Child");
+    if (child instanceof JOTreeNodeAugmented<A, ?> node
+      && node.parent == this) {
+      node.detach();
+    }
+    return this;
+  }
+
+  @Override
+  public void childrenSortNodes(
+    final Comparator<JOTreeNodeType<A>> comparator)
+  {
+    Objects.requireNonNull(comparator, "Comparator");
+    this.children.sort(comparator);
+    this.aggregateReordered();
+  }
+
+  /**
+   * A child with the given aggregate has been appended to this node.
+   */
+
+  private void aggregateAppended(
+    final M child_aggregate)
+  {
+    if (this.monoid instanceof JOTreeAbelianGroupType) {
+      this.aggregatePropagate(child_aggregate);
+      return;
+    }
+
+    this.aggregate = this.monoid.combine(this.aggregate, child_aggregate);
+    if (this.parent != null) {
+      this.parent.aggregateRecompute();
+    }
+  }
+
+  /**
+   * A child with the given aggregate has been removed from this node.
+   */
+
+  private void aggregateRemoved(
+    final M child_aggregate)
+  {
+    if (this.monoid instanceof JOTreeAbelianGroupType<M> group) {
+      this.aggregatePropagate(group.inverse(child_aggregate));
+      return;
+    }
+    this.aggregateRecompute();
+  }
+
+  /**
+   * The order of the children of this node has changed.
+   */
+
+  private void aggregateReordered()
+  {
+    if (this.monoid instanceof JOTreeAbelianGroupType) {
+      return;
+    }
+    this.aggregateRecompute();
+  }
+
+  /**
+   * Combine {@code delta} into the aggregate of this node and of each of its
+   * ancestors. This is only valid for commutative monoids.
+   */
+
+  private void aggregatePropagate(
+    final M delta)
+  {
+    JOTreeNodeAugmented<A, M> current = this;
+    while (current != null) {
+      current.aggregate = this.monoid.combine(current.aggregate, delta);
+      current = current.parent;
+    }
+  }
+
+  /**
+   * Recompute the aggregate of this node from its children, and then the
+   * aggregates of its ancestors, stopping at the first node whose aggregate
+   * does not change.
+   */
+
+  private void aggregateRecompute()
+  {
+    JOTreeNodeAugmented<A, M> current = this;
+    while (current != null) {
+      M result = current.measure;
+      final int count = current.children.size();
+      for (int index = 0; index < count; ++index) {
+        result = this.monoid.combine(
+          result, current.children.get(index).aggregate);
+      }
+
+      if (Objects.equals(result, current.aggregate)) {
+        return;
+      }
+      current.aggregate = result;
+      current = current.parent;
+    }
+  }
+
+  @Override
+  public <T> void forEachDepthFirst(
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    JOTreeTraversal.forEachDepthFirst(this, context, f);
+  }
+
+  @Override
+  public <T> void forEachBreadthFirst(
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    JOTreeTraversal.forEachBreadthFirst(this, context, f);
+  }
+
+  @Override
+  public <T, B> JOTreeNodeType<B> mapDepthFirst(
+    final T context,
+    final JOTreeNodeMapFunctionType<A, T, B> f)
+  {
+    return JOTreeTraversal.mapDepthFirst(this, context, f);
+  }
+
+  @Override
+  public <T, B> JOTreeNodeType<B> mapBreadthFirst(
+    final T context,
+    final JOTreeNodeMapFunctionType<A, T, B> f)
+  {
+    return JOTreeTraversal.mapBreadthFirst(this, context, f);
+  }
+}
@@ -0,0 +1,415 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import com.io7m.jaffirm.core.Invariants;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.RandomAccess;
+
+/**
+ * <p>An ordered list of child nodes with constant-time membership tests,
+ * insertion, and removal.</p>
+ *
+ * <p>Small lists are searched linearly. Once a list holds more than
+ * {@link #INDEX_THRESHOLD} children, each child is mapped (by identity) to
+ * the slot it occupies in a backing array. Removing a child then clears its
+ * slot rather than shifting the remaining children, and the cleared slots are
+ * compacted away once they outnumber the children. A sequence of removals
+ * therefore costs time proportional to the number of children removed,
+ * rather than the product of that number and the number of children.</p>
+ *
+ * <p>While any slots are cleared, a Fenwick tree counting the occupied slots
+ * maps positions to slots (and back) in logarithmic time. Reading the list
+ * never modifies it, so a list that is not being modified may be read
+ * concurrently.</p>
+ *
+ * @param <N> The type of child nodes
+ */
+
+final class JOTreeNodeChildren<N> extends AbstractList<N>
+  implements RandomAccess
+{
+  private static final int INDEX_THRESHOLD = 8;
+
+  private final ArrayList<N> slots;
+  private IdentityHashMap<N, Integer> index;
+  private int[] occupied;
+  private int size;
+  private int cleared;
+  private int cleared_first;
+
+  JOTreeNodeChildren()
+  {
+    this.slots = new ArrayList<>();
+    this.index = null;
+    this.occupied = null;
+    this.size = 0;
+    this.cleared = 0;
+    this.cleared_first = Integer.MAX_VALUE;
+  }
+
+  /**
+   * Add a child to the end of the list. If the child is already present, it
+   * is moved to the end of the list.
+   *
+   * @param child The child
+   *
+   * @return {@code true}
+   */
+
+  @Override
+  public boolean add(
+    final N child)
+  {
+    Objects.requireNonNull(child, "Child");
+
+    this.removeInternal(child);
+
+    final int slot = this.slots.size();
+    this.slots.add(child);
+    ++this.size;
+
+    if (this.index != null) {
+      this.index.put(child, Integer.valueOf(slot));
+      if (this.occupied != null) {
+        this.occupiedAppend(slot);
+      }
+    } else if (this.size > INDEX_THRESHOLD) {
+      this.indexBuild();
+    }
+
+    ++this.modCount;
+    return true;
+  }
+
+  /**
+   * Ensure that the list can hold at least {@code capacity} children without
+   * growing the backing array.
+   *
+   * @param capacity The required capacity
+   */
+
+  void ensureCapacity(
+    final int capacity)
+  {
+    this.slots.ensureCapacity(capacity + this.cleared);
+  }
+
+  @Override
+  public boolean remove(
+    final Object child)
+  {
+    if (this.removeInternal(child)) {
+      ++this.modCount;
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean contains(
+    final Object child)
+  {
+    if (this.index == null) {
+      return this.search(child) != -1;
+    }
+    return this.index.containsKey(child);
+  }
+
+  @Override
+  public int indexOf(
+    final Object child)
+  {
+    if (this.index == null) {
+      return this.search(child);
+    }
+
+    final Integer existing = this.index.get(child);
+    if (existing == null) {
+      return -1;
+    }
+
+    final int slot = existing.intValue();
+    if (slot < this.cleared_first) {
+      return slot;
+    }
+    return this.occupiedBefore(slot);
+  }
+
+  @Override
+  public int lastIndexOf(
+    final Object child)
+  {
+    return this.indexOf(child);
+  }
+
+  @Override
+  public N get(
+    final int position)
+  {
+    Objects.checkIndex(position, this.size);
+    if (position < this.cleared_first) {
+      return this.slots.get(position);
+    }
+    return this.slots.get(this.occupiedFind(position));
+  }
+
+  @Override
+  public int size()
+  {
+    return this.size;
+  }
+
+  @Override
+  public boolean isEmpty()
+  {
+    return this.size == 0;
+  }
+
+  @Override
+  public Iterator<N> iterator()
+  {
+    return new SlotIterator();
+  }
+
+  @Override
+  public void sort(
+    final Comparator<? super N> comparator)
+  {
+    this.compact();
+    this.slots.sort(comparator);
+    if (this.index != null) {
+      this.reindexFrom(0);
+    }
+    ++this.modCount;
+  }
+
+  private int search(
+    final Object child)
+  {
+    final int count = this.slots.size();
+    for (int slot = 0; slot < count; ++slot) {
+      if (this.slots.get(slot) == child) {
+        return slot;
+      }
+    }
+    return -1;
+  }
+
+  private boolean removeInternal(
+    final Object child)
+  {
+    if (this.index == null) {
+      final int slot = this.search(child);
+      if (slot == -1) {
+        return false;
+      }
+      this.slots.remove(slot);
+      --this.size;
+      return true;
+    }
+
+    final Integer existing = this.index.remove(child);
+    if (existing == null) {
+      return false;
+    }
+
+    final int slot = existing.intValue();
+    if (slot == this.slots.size() - 1) {
+      this.slots.remove(slot);
+    } else {
+      this.clear(slot);
+    }
+    --this.size;
+
+    if (this.cleared > this.size) {
+      this.compact();
+    }
+    return true;
+  }
+
+  private void indexBuild()
+  {
+    final int count = this.slots.size();
+    this.index = new IdentityHashMap<>(count * 2);
+    this.reindexFrom(0);
+  }
+
+  private void clear(
+    final int slot)
+  {
+    this.slots.set(slot, null);
+    this.cleared_first = Math.min(this.cleared_first, slot);
+    ++this.cleared;
+
+    if (this.occupied == null) {
+      this.occupiedBuild();
+    } else {
+      final int count = this.slots.size();
+      for (int node = slot + 1; node <= count; node += node & -node) {
+        --this.occupied[node];
+      }
+    }
+  }
+
+  private void compact()
+  {
+    if (this.cleared == 0) {
+      return;
+    }
+
+    final int first = this.cleared_first;
+    final int count = this.slots.size();
+    int target = first;
+    for (int source = first; source < count; ++source) {
+      final N child = this.slots.get(source);
+      if (child != null) {
+        this.slots.set(target, child);
+        ++target;
+      }
+    }
+
+    this.slots.subList(target, count).clear();
+    this.occupied = null;
+    this.cleared = 0;
+    this.cleared_first = Integer.MAX_VALUE;
+    this.reindexFrom(first);
+
+    Invariants.checkInvariant(
+      this.slots.size() == this.size,
+      "Compacted slots must match the size");
+  }
+
+  private void reindexFrom(
+    final int first)
+  {
+    final int count = this.slots.size();
+    for (int slot = first; slot < count; ++slot) {
+      this.index.put(this.slots.get(slot), Integer.valueOf(slot));
+    }
+  }
+
+  /*
+   * The Fenwick tree is one-based: Entry {@code node} counts the occupied
+   * slots in the range {@code [node - (node & -node), node)}. Its length is
+   * always that of the backing array, and removing the last slot simply
+   * shortens it.
+   */
+
+  private void occupiedBuild()
+  {
+    final int count = this.slots.size();
+    final int[] tree = new int[Math.max(count, 8) + 1];
+    for (int node = 1; node <= count; ++node) {
+      if (this.slots.get(node - 1) != null) {
+        ++tree[node];
+      }
+      final int next = node + (node & -node);
+      if (next <= count) {
+        tree[next] += tree[node];
+      }
+    }
+    this.occupied = tree;
+  }
+
+  private void occupiedAppend(
+    final int slot)
+  {
+    final int node = slot + 1;
+    if (node == this.occupied.length) {
+      this.occupied = Arrays.copyOf(this.occupied, node * 2);
+    }
+    final int first = node - (node & -node);
+    this.occupied[node] =
+      1 + this.occupiedBefore(slot) - this.occupiedBefore(first);
+  }
+
+  private int occupiedBefore(
+    final int slot)
+  {
+    int total = 0;
+    for (int node = slot; node > 0; node -= node & -node) {
+      total += this.occupied[node];
+    }
+    return total;
+  }
+
+  private int occupiedFind(
+    final int position)
+  {
+    final int count = this.slots.size();
+    int node = 0;
+    int remaining = position + 1;
+    for (int step = Integer.highestOneBit(count); step > 0; step >>>= 1) {
+      final int next = node + step;
+      if (next <= count && this.occupied[next] < remaining) {
+        node = next;
+        remaining -= this.occupied[next];
+      }
+    }
+    return node;
+  }
+
+  private final class SlotIterator implements Iterator<N>
+  {
+    private final int expected;
+    private int slot;
+    private int remaining;
+
+    SlotIterator()
+    {
+      this.expected = JOTreeNodeChildren.this.modCount;
+      this.slot = 0;
+      this.remaining = JOTreeNodeChildren.this.size;
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+      return this.remaining > 0;
+    }
+
+    @Override
+    public N next()
+    {
+      if (JOTreeNodeChildren.this.modCount != this.expected) {
+        throw new ConcurrentModificationException();
+      }
+      if (this.remaining == 0) {
+        throw new NoSuchElementException();
+      }
+
+      final ArrayList<N> backing = JOTreeNodeChildren.this.slots;
+      while (backing.get(this.slot) == null) {
+        ++this.slot;
+      }
+      --this.remaining;
+      final N child = backing.get(this.slot);
+      ++this.slot;
+      return child;
+    }
+  }
+}
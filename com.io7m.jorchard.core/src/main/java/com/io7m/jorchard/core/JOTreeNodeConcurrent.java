@@ -0,0 +1,511 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.core;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * <p>A thread-safe implementation of the {@link JOTreeNodeType} type.</p>
+ *
+ * <p>Each node has its own read/write lock guarding its list of children and
+ * its parent reference. A structural operation locks only the nodes it
+ * touches: the node being moved and its old and new parents (for writing),
+ * together with the ancestors of the new parent (for reading, so that no
+ * concurrent operation can move one of them into the subtree being attached
+ * and create a cycle). Locks are always acquired in the order of a unique
+ * per-node serial number, so operations cannot deadlock, and operations on
+ * disjoint parts of a tree proceed in parallel.</p>
+ *
+ * <p>{@link #children()} and {@link #childrenReadable()} return immutable
+ * snapshots, so traversals never observe a list in the middle of an update.
+ * Queries that walk upwards, such as {@link #depth()} and
+ * {@link #isDescendantOf(JOTreeNodeReadableType)}, take no locks and are
+ * linearizable only with respect to operations that have completed.</p>
+ *
+ * <p>Concurrent nodes may only be connected to other concurrent nodes.</p>
+ *
+ * @param <A> The type of values contained within the tree
+ */
+
+public final class JOTreeNodeConcurrent<A> implements JOTreeNodeType<A>
+{
+  private static final AtomicLong SERIALS = new AtomicLong(0L);
+
+  private final long serial;
+  private final ReentrantReadWriteLock lock;
+  private final JOTreeNodeChildren<JOTreeNodeType<A>> children;
+  private final A value;
+  private final BooleanSupplier detach_check;
+  private volatile JOTreeNodeConcurrent<A> parent;
+  private volatile List<JOTreeNodeType<A>> children_snapshot;
+
+  private JOTreeNodeConcurrent(
+    final BooleanSupplier in_detach_check,
+    final A in_value)
+  {
+    this.value =
+      Objects.requireNonNull(in_value, "Value");
+    this.detach_check =
+      Objects.requireNonNull(in_detach_check, "Detach check");
+
+    this.serial = SERIALS.getAndIncrement();
+    this.lock = new ReentrantReadWriteLock();
+    this.children = new JOTreeNodeChildren<>();
+    this.children_snapshot = List.of();
+    this.parent = null;
+  }
+
+  /**
+   * Create a new node with the given value. The node has no parent and no
+   * children.
+   *
+   * @param in_value The value
+   * @param <A>      The type of values
+   *
+   * @return A new node
+   */
+
+  public static <A> JOTreeNodeType<A> create(final A in_value)
+  {
+    return new JOTreeNodeConcurrent<>(() -> true, in_value);
+  }
+
+  /**
+   * Create a new node with the given value. The node has no parent and no
+   * children. The node is equipped with a function that is evaluated each
+   * before the node is detached from any node, with a {@code true} value
+   * indicating that the node is allowed to be detached. The function is
+   * evaluated while locks are held, and must not access the tree.
+   *
+   * @param in_value        The value
+   * @param in_detach_check A detach check function
+   * @param <A>             The type of values
+   *
+   * @return A new node
+   */
+
+  public static <A> JOTreeNodeType<A> createWithDetachCheck(
+    final A in_value,
+    final BooleanSupplier in_detach_check)
+  {
+    return new JOTreeNodeConcurrent<>(in_detach_check, in_value);
+  }
+
+  private static <A> JOTreeNodeConcurrent<A> checkConcurrent(
+    final JOTreeNodeType<A> node)
+  {
+    if (node instanceof JOTreeNodeConcurrent<A> concurrent) {
+      return concurrent;
+    }
+    throw new IllegalArgumentException(
+      "Concurrent nodes may only be connected to other concurrent nodes");
+  }
+
+  @Override
+  public boolean isDetachAllowed()
+  {
+    return this.detach_check.getAsBoolean();
+  }
+
+  @Override
+  public A value()
+  {
+    return this.value;
+  }
+
+  @Override
+  public boolean isRoot()
+  {
+    return this.parent == null;
+  }
+
+  @Override
+  public Optional<JOTreeNodeReadableType<A>> parentReadable()
+  {
+    return Optional.ofNullable(this.parent);
+  }
+
+  @Override
+  public Optional<JOTreeNodeType<A>> parent()
+  {
+    return Optional.ofNullable(this.parent);
+  }
+
+  @Override
+  public List<JOTreeNodeType<A>> children()
+  {
+    List<JOTreeNodeType<A>> snapshot = this.children_snapshot;
+    if (snapshot == null) {
+      this.lock.readLock().lock();
+      try {
+        snapshot = this.children_snapshot;
+        if (snapshot == null) {
+          snapshot = List.copyOf(this.children);
+          this.children_snapshot = snapshot;
+        }
+      } finally {
+        this.lock.readLock().unlock();
+      }
+    }
+    return snapshot;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public List<JOTreeNodeReadableType<A>> childrenReadable()
+  {
+    final List<? extends JOTreeNodeReadableType<A>> nodes = this.children();
+    return (List<JOTreeNodeReadableType<A>>) nodes;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[JOTreeNodeConcurrent " + this.value + "]";
+  }
+
+  @Override
+  public int depth()
+  {
+    int result = 0;
+    JOTreeNodeConcurrent<A> current = this.parent;
+    while (current != null) {
+      ++result;
+      current = current.parent;
+    }
+    return result;
+  }
+
+  @Override
+  public boolean isDescendantOf(
+    final JOTreeNodeReadableType<A> other)
+  {
+    Objects.requireNonNull(other, "Other");
+
+    JOTreeNodeConcurrent<A> current = this;
+    while (current != null) {
+      if (current == other) {
+        return true;
+      }
+      current = current.parent;
+    }
+    return false;
+  }
+
+  @Override
+  public JOTreeNodeType<A> setParent(
+    final JOTreeNodeType<A> parent_new)
+  {
+    Objects.requireNonNull(parent_new, "Parent");
+    attach(checkConcurrent(parent_new), this);
+    return this;
+  }
+
+  @Override
+  public JOTreeNodeType<A> childAdd(
+    final JOTreeNodeType<A> child)
+  {
+    Objects.requireNonNull(child, "Child");
+    attach(this, checkConcurrent(child));
+    return this;
+  }
+
+  @Override
+  public JOTreeNodeType<A> detach()
+  {
+    final JOTreeNodeConcurrent<A> parent_previous = this.parent;
+    if (parent_previous != null) {
+      detachFrom(parent_previous, this);
+    }
+    return this;
+  }
+
+  @Override
+  public JOTreeNodeType<A> childRemove(
+    final JOTreeNodeType<A> child)
+  {
+    Objects.requireNonNull(child, "Child");
+    if (child instanceof JOTreeNodeConcurrent<A> concurrent) {
+      detachFrom(this, concurrent);
+    }
+    return this;
+  }
+
+  @Override
+  public void childrenSortNodes(
+    final Comparator<JOTreeNodeType<A>> comparator)
+  {
+    Objects.requireNonNull(comparator, "Comparator");
+
+    this.lock.writeLock().lock();
+    try {
+      this.children.sort(comparator);
+      this.children_snapshot = null;
+    } finally {
+      this.lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Attach {@code child} as the last child of {@code parent_new}.
+   */
+
+  private static <A> void attach(
+    final JOTreeNodeConcurrent<A> parent_new,
+    final JOTreeNodeConcurrent<A> child)
+  {
+    final LockSet<A> locks = new LockSet<>();
+
+    while (true) {
+      final JOTreeNodeConcurrent<A> parent_previous = child.parent;
+
+      locks.clear();
+      locks.addWrite(child);
+      locks.addWrite(parent_new);
+      if (parent_previous != null) {
+        locks.addWrite(parent_previous);
+      }
+      for (JOTreeNodeConcurrent<A> ancestor = parent_new.parent;
+           ancestor != null;
+           ancestor = ancestor.parent) {
+        locks.addRead(ancestor);
+      }
+
+      locks.lock();
+      if (child.parent == parent_previous && locks.ancestorsValid(parent_new)) {
+        try {
+          attachLocked(parent_new, parent_previous, child);
+          return;
+        } finally {
+          locks.unlock();
+        }
+      }
+      locks.unlock();
+    }
+  }
+
+  private static <A> void attachLocked(
+    final JOTreeNodeConcurrent<A> parent_new,
+    final JOTreeNodeConcurrent<A> parent_previous,
+    final JOTreeNodeConcurrent<A> child)
+  {
+    for (JOTreeNodeConcurrent<A> ancestor = parent_new;
+         ancestor != null;
+         ancestor = ancestor.parent) {
+      if (ancestor == child) {
+        throw JOTreeNode.errorCycle(parent_new, child);
+      }
+    }
+
+    if (parent_previous != null) {
+      if (!child.isDetachAllowed()) {
+        throw JOTreeNode.errorDetachDenied(child);
+      }
+      parent_previous.children.remove(child);
+      parent_previous.children_snapshot = null;
+    }
+
+    parent_new.children.add(child);
+    parent_new.children_snapshot = null;
+    child.parent = parent_new;
+  }
+
+  /**
+   * Detach {@code child} from {@code parent_expected}, if {@code child} is
+   * still a child of it.
+   */
+
+  private static <A> void detachFrom(
+    final JOTreeNodeConcurrent<A> parent_expected,
+    final JOTreeNodeConcurrent<A> child)
+  {
+    final LockSet<A> locks = new LockSet<>();
+    locks.addWrite(child);
+    locks.addWrite(parent_expected);
+    locks.lock();
+    try {
+      if (child.parent != parent_expected) {
+        return;
+      }
+      if (!child.isDetachAllowed()) {
+        throw JOTreeNode.errorDetachDenied(child);
+      }
+      parent_expected.children.remove(child);
+      parent_expected.children_snapshot = null;
+      child.parent = null;
+    } finally {
+      locks.unlock();
+    }
+  }
+
+  @Override
+  public <T> void forEachDepthFirst(
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    JOTreeTraversal.forEachDepthFirst(this, context, f);
+  }
+
+  @Override
+  public <T> void forEachBreadthFirst(
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    JOTreeTraversal.forEachBreadthFirst(this, context, f);
+  }
+
+  @Override
+  public <T, B> JOTreeNodeType<B> mapDepthFirst(
+    final T context,
+    final JOTreeNodeMapFunctionType<A, T, B> f)
+  {
+    return JOTreeTraversal.mapDepthFirst(this, context, f);
+  }
+
+  @Override
+  public <T, B> JOTreeNodeType<B> mapBreadthFirst(
+    final T context,
+    final JOTreeNodeMapFunctionType<A, T, B> f)
+  {
+    return JOTreeTraversal.mapBreadthFirst(this, context, f);
+  }
+
+  /**
+   * A set of nodes to be locked, each for reading or for writing, in
+   * ascending order of serial number.
+   */
+
+  private static final class LockSet<A>
+  {
+    private final List<LockEntry<A>> entries;
+    private final List<JOTreeNodeConcurrent<A>> ancestors;
+    private int locked;
+
+    LockSet()
+    {
+      this.entries = new ArrayList<>(8);
+      this.ancestors = new ArrayList<>(8);
+      this.locked = 0;
+    }
+
+    void clear()
+    {
+      this.entries.clear();
+      this.ancestors.clear();
+    }
+
+    private LockEntry<A> find(
+      final JOTreeNodeConcurrent<A> node)
+    {
+      for (final LockEntry<A> entry : this.entries) {
+        if (entry.node == node) {
+          return entry;
+        }
+      }
+      return null;
+    }
+
+    void addWrite(
+      final JOTreeNodeConcurrent<A> node)
+    {
+      final LockEntry<A> existing = this.find(node);
+      if (existing == null) {
+        this.entries.add(new LockEntry<>(node, true));
+      } else {
+        existing.write = true;
+      }
+    }
+
+    void addRead(
+      final JOTreeNodeConcurrent<A> node)
+    {
+      this.ancestors.add(node);
+      if (this.find(node) == null) {
+        this.entries.add(new LockEntry<>(node, false));
+      }
+    }
+
+    /**
+     * @return {@code true} iff the ancestors of {@code node} are exactly the
+     * ancestors that were recorded with {@link #addRead}
+     */
+
+    boolean ancestorsValid(
+      final JOTreeNodeConcurrent<A> node)
+    {
+      JOTreeNodeConcurrent<A> current = node.parent;
+      for (final JOTreeNodeConcurrent<A> ancestor : this.ancestors) {
+        if (current != ancestor) {
+          return false;
+        }
+        current = current.parent;
+      }
+      return current == null;
+    }
+
+    void lock()
+    {
+      this.entries.sort(Comparator.comparingLong(entry -> entry.node.serial));
+
+      final int count = this.entries.size();
+      for (int index = 0; index < count; ++index) {
+        final LockEntry<A> entry = this.entries.get(index);
+        if (entry.write) {
+          entry.node.lock.writeLock().lock();
+        } else {
+          entry.node.lock.readLock().lock();
+        }
+        this.locked = index + 1;
+      }
+    }
+
+    void unlock()
+    {
+      for (int index = this.locked - 1; index >= 0; --index) {
+        final LockEntry<A> entry = this.entries.get(index);
+        if (entry.write) {
+          entry.node.lock.writeLock().unlock();
+        } else {
+          entry.node.lock.readLock().unlock();
+        }
+      }
+      this.locked = 0;
+    }
+  }
+
+  private static final class LockEntry<A>
+  {
+    private final JOTreeNodeConcurrent<A> node;
+    private boolean write;
+
+    LockEntry(
+      final JOTreeNodeConcurrent<A> in_node,
+      final boolean in_write)
+    {
+      this.node = in_node;
+      this.write = in_write;
+    }
+  }
+}
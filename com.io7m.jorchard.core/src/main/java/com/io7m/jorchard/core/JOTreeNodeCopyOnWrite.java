@@ -0,0 +1,452 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.core;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.RandomAccess;
+import java.util.function.BooleanSupplier;
+
+/**
+ * <p>An implementation of the {@link JOTreeNodeType} type for trees that are
+ * read by many threads and modified by one.</p>
+ *
+ * <p>The children of each node are held in an immutable array published
+ * through a {@code volatile} reference. Every modification builds a new array
+ * and replaces the reference, so readers never take locks:
+ * {@link #children()}, {@link #childrenReadable()}, the traversal methods and
+ * {@link #isDescendantOf(JOTreeNodeReadableType)} may be called from any
+ * thread at any time. Each list of children returned is an immutable
+ * snapshot, observed either entirely before or entirely after any concurrent
+ * change. A traversal that runs concurrently with modifications is weakly
+ * consistent: a subtree that is moved during the traversal may be visited at
+ * its old position, its new position, both, or neither.</p>
+ *
+ * <p>Modifications are not synchronized: at most one thread may modify the
+ * nodes of a tree at any given time. Each modification copies the list of
+ * children of the affected parents, so {@link #childAddAll(Collection)} should
+ * be preferred over repeated calls to {@link #childAdd(JOTreeNodeType)}.</p>
+ *
+ * <p>Copy-on-write nodes may only be connected to other copy-on-write
+ * nodes.</p>
+ *
+ * @param <A> The type of values contained within the tree
+ */
+
+public final class JOTreeNodeCopyOnWrite<A> implements JOTreeNodeType<A>
+{
+  private static final Object[] EMPTY = new Object[0];
+
+  private final A value;
+  private final BooleanSupplier detach_check;
+  private volatile JOTreeNodeCopyOnWrite<A> parent;
+  private volatile Children<A> children;
+
+  private JOTreeNodeCopyOnWrite(
+    final BooleanSupplier in_detach_check,
+    final A in_value)
+  {
+    this.value =
+      Objects.requireNonNull(in_value, "Value");
+    this.detach_check =
+      Objects.requireNonNull(in_detach_check, "Detach check");
+
+    this.parent = null;
+    this.children = new Children<>(EMPTY);
+  }
+
+  /**
+   * Create a new node with the given value. The node has no parent and no
+   * children.
+   *
+   * @param in_value The value
+   * @param <A>      The type of values
+   *
+   * @return A new node
+   */
+
+  public static <A> JOTreeNodeType<A> create(final A in_value)
+  {
+    return new JOTreeNodeCopyOnWrite<>(() -> true, in_value);
+  }
+
+  /**
+   * Create a new node with the given value. The node has no parent and no
+   * children. The node is equipped with a function that is evaluated each
+   * before the node is detached from any node, with a {@code true} value
+   * indicating that the node is allowed to be detached.
+   *
+   * @param in_value        The value
+   * @param in_detach_check A detach check function
+   * @param <A>             The type of values
+   *
+   * @return A new node
+   */
+
+  public static <A> JOTreeNodeType<A> createWithDetachCheck(
+    final A in_value,
+    final BooleanSupplier in_detach_check)
+  {
+    return new JOTreeNodeCopyOnWrite<>(in_detach_check, in_value);
+  }
+
+  private static <A> JOTreeNodeCopyOnWrite<A> checkCopyOnWrite(
+    final JOTreeNodeType<A> node)
+  {
+    if (node instanceof JOTreeNodeCopyOnWrite<A> cow) {
+      return cow;
+    }
+    throw new IllegalArgumentException(
+      "Copy-on-write nodes may only be connected to other copy-on-write nodes");
+  }
+
+  @Override
+  public boolean isDetachAllowed()
+  {
+    return this.detach_check.getAsBoolean();
+  }
+
+  @Override
+  public A value()
+  {
+    return this.value;
+  }
+
+  @Override
+  public boolean isRoot()
+  {
+    return this.parent == null;
+  }
+
+  @Override
+  public Optional<JOTreeNodeReadableType<A>> parentReadable()
+  {
+    return Optional.ofNullable(this.parent);
+  }
+
+  @Override
+  public Optional<JOTreeNodeType<A>> parent()
+  {
+    return Optional.ofNullable(this.parent);
+  }
+
+  @Override
+  public List<JOTreeNodeType<A>> children()
+  {
+    return this.children;
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public List<JOTreeNodeReadableType<A>> childrenReadable()
+  {
+    final List<? extends JOTreeNodeReadableType<A>> nodes = this.children;
+    return (List<JOTreeNodeReadableType<A>>) nodes;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[JOTreeNodeCopyOnWrite " + this.value + "]";
+  }
+
+  @Override
+  public int depth()
+  {
+    int result = 0;
+    JOTreeNodeCopyOnWrite<A> current = this.parent;
+    while (current != null) {
+      ++result;
+      current = current.parent;
+    }
+    return result;
+  }
+
+  @Override
+  public boolean isDescendantOf(
+    final JOTreeNodeReadableType<A> other)
+  {
+    Objects.requireNonNull(other, "Other");
+
+    JOTreeNodeCopyOnWrite<A> current = this;
+    while (current != null) {
+      if (current == other) {
+        return true;
+      }
+      current = current.parent;
+    }
+    return false;
+  }
+
+  @Override
+  public JOTreeNodeType<A> setParent(
+    final JOTreeNodeType<A> parent_new)
+  {
+    Objects.requireNonNull(parent_new, "Parent");
+    checkCopyOnWrite(parent_new).childAdd(this);
+    return this;
+  }
+
+  @Override
+  public JOTreeNodeType<A> childAdd(
+    final JOTreeNodeType<A> child)
+  {
+    Objects.requireNonNull(child, "Child");
+    final JOTreeNodeCopyOnWrite<A> node = checkCopyOnWrite(child);
+    this.checkAttach(node);
+
+    final JOTreeNodeCopyOnWrite<A> parent_previous = node.parent;
+    if (parent_previous != null) {
+      parent_previous.children = parent_previous.children.without(node);
+    }
+    this.children = this.children.with(new Object[]{node});
+    node.parent = this;
+    return this;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The list of children of this node is copied once, regardless of the
+   * number of children added.</p>
+   */
+
+  @Override
+  public JOTreeNodeType<A> childAddAll(
+    final Collection<? extends JOTreeNodeType<A>> in_children)
+  {
+    Objects.requireNonNull(in_children, "Children");
+
+    /*
+     * Check every child before modifying anything, so that a cycle or a
+     * denied detachment leaves the tree untouched. Later occurrences of a
+     * child replace earlier ones, as with repeated calls to childAdd.
+     */
+
+    final IdentityHashMap<JOTreeNodeCopyOnWrite<A>, Integer> positions =
+      new IdentityHashMap<>(in_children.size());
+
+    int position = 0;
+    for (final JOTreeNodeType<A> child : in_children) {
+      Objects.requireNonNull(child, "Child");
+      final JOTreeNodeCopyOnWrite<A> node = checkCopyOnWrite(child);
+      this.checkAttach(node);
+      positions.put(node, Integer.valueOf(position));
+      ++position;
+    }
+
+    final List<JOTreeNodeCopyOnWrite<A>> added =
+      new ArrayList<>(positions.size());
+    position = 0;
+    for (final JOTreeNodeType<A> child : in_children) {
+      final JOTreeNodeCopyOnWrite<A> node = (JOTreeNodeCopyOnWrite<A>) child;
+      if (positions.get(node).intValue() == position) {
+        added.add(node);
+      }
+      ++position;
+    }
+
+    Children<A> children_new = this.children;
+    for (final JOTreeNodeCopyOnWrite<A> node : added) {
+      final JOTreeNodeCopyOnWrite<A> parent_previous = node.parent;
+      if (parent_previous == this) {
+        children_new = children_new.without(node);
+      } else if (parent_previous != null) {
+        parent_previous.children = parent_previous.children.without(node);
+      }
+    }
+
+    this.children = children_new.with(added.toArray());
+    for (final JOTreeNodeCopyOnWrite<A> node : added) {
+      node.parent = this;
+    }
+    return this;
+  }
+
+  private void checkAttach(
+    final JOTreeNodeCopyOnWrite<A> child)
+  {
+    if (this.isDescendantOf(child)) {
+      throw JOTreeNode.errorCycle(this, child);
+    }
+    if (child.parent != null && !child.isDetachAllowed()) {
+      throw JOTreeNode.errorDetachDenied(child);
+    }
+  }
+
+  @Override
+  public JOTreeNodeType<A> detach()
+  {
+    final JOTreeNodeCopyOnWrite<A> parent_previous = this.parent;
+    if (parent_previous != null) {
+      if (!this.isDetachAllowed()) {
+        throw JOTreeNode.errorDetachDenied(this);
+      }
+      parent_previous.children = parent_previous.children.without(this);
+      this.parent = null;
+    }
+    return this;
+  }
+
+  @Override
+  public JOTreeNodeType<A> childRemove(
+    final JOTreeNodeType<A> child)
+  {
+    Objects.requireNonNull(child, "Child");
+    if (child instanceof JOTreeNodeCopyOnWrite<A> node && node.parent == this) {
+      node.detach();
+    }
+    return this;
+  }
+
+  @Override
+  public void childrenSortNodes(
+    final Comparator<JOTreeNodeType<A>> comparator)
+  {
+    Objects.requireNonNull(comparator, "Comparator");
+    this.children = this.children.sorted(comparator);
+  }
+
+  @Override
+  public <T> void forEachDepthFirst(
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    JOTreeTraversal.forEachDepthFirst(this, context, f);
+  }
+
+  @Override
+  public <T> void forEachBreadthFirst(
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    JOTreeTraversal.forEachBreadthFirst(this, context, f);
+  }
+
+  @Override
+  public <T, B> JOTreeNodeType<B> mapDepthFirst(
+    final T context,
+    final JOTreeNodeMapFunctionType<A, T, B> f)
+  {
+    return JOTreeTraversal.mapDepthFirst(this, context, f);
+  }
+
+  @Override
+  public <T, B> JOTreeNodeType<B> mapBreadthFirst(
+    final T context,
+    final JOTreeNodeMapFunctionType<A, T, B> f)
+  {
+    return JOTreeTraversal.mapBreadthFirst(this, context, f);
+  }
+
+  /**
+   * An immutable list of children backed by an array that is never modified
+   * after construction.
+   */
+
+  private static final class Children<A>
+    extends AbstractList<JOTreeNodeType<A>> implements RandomAccess
+  {
+    private final Object[] elements;
+
+    Children(
+      final Object[] in_elements)
+    {
+      this.elements = in_elements;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public JOTreeNodeType<A> get(
+      final int index)
+    {
+      return (JOTreeNodeType<A>) this.elements[index];
+    }
+
+    @Override
+    public int size()
+    {
+      return this.elements.length;
+    }
+
+    @Override
+    public int indexOf(
+      final Object other)
+    {
+      for (int index = 0; index < this.elements.length; ++index) {
+        if (this.elements[index] == other) {
+          return index;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    public boolean contains(
+      final Object other)
+    {
+      return this.indexOf(other) != -1;
+    }
+
+    Children<A> with(
+      final Object[] added)
+    {
+      final Object[] result =
+        Arrays.copyOf(this.elements, this.elements.length + added.length);
+      System.arraycopy(added, 0, result, this.elements.length, added.length);
+      return new Children<>(result);
+    }
+
+    Children<A> without(
+      final JOTreeNodeCopyOnWrite<A> child)
+    {
+      final int index = this.indexOf(child);
+      if (index == -1) {
+        return this;
+      }
+
+      final Object[] result = new Object[this.elements.length - 1];
+      System.arraycopy(this.elements, 0, result, 0, index);
+      System.arraycopy(
+        this.elements,
+        index + 1,
+        result,
+        index,
+        this.elements.length - index - 1);
+      return new Children<>(result);
+    }
+
+    @SuppressWarnings("unchecked")
+    Children<A> sorted(
+      final Comparator<JOTreeNodeType<A>> comparator)
+    {
+      final Object[] result = this.elements.clone();
+      Arrays.sort(
+        result,
+        (x, y) -> comparator.compare((JOTreeNodeType<A>) x, (JOTreeNodeType<A>) y));
+      return new Children<>(result);
+    }
+  }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.Queue;
+
+/**
+ * <p>A tree node holding an unboxed {@code double} value.</p>
+ *
+ * <p>The structure of the tree is managed in the same way as
+ * {@link JOTreeNode}, but values are never boxed, and the traversal and map
+ * functions receive nodes of this type so that values can be read without
+ * boxing.</p>
+ */
+
+public final class JOTreeNodeDouble extends JOTreeNodePrimitive<JOTreeNodeDouble>
+{
+  private final double value;
+
+  private JOTreeNodeDouble(
+    final double in_value)
+  {
+    this.value = in_value;
+  }
+
+  /**
+   * Create a new node with the given value. The node has no parent and no
+   * children.
+   *
+   * @param in_value The value
+   *
+   * @return A new node
+   */
+
+  public static JOTreeNodeDouble create(
+    final double in_value)
+  {
+    return new JOTreeNodeDouble(in_value);
+  }
+
+  @Override
+  JOTreeNodeDouble self()
+  {
+    return this;
+  }
+
+  @Override
+  String valueString()
+  {
+    return Double.toString(this.value);
+  }
+
+  /**
+   * @return The value contained within the node
+   */
+
+  public double value()
+  {
+    return this.value;
+  }
+
+  /**
+   * <p>Visit each node in the tree in depth-first order.</p>
+   *
+   * <p>The function allows for the use of a context value. This is useful for
+   * avoiding the use of capturing lambdas, reducing GC pressure.</p>
+   *
+   * @param context A context value passed to each application of {@code f}
+   * @param f       A function used to receive each node
+   * @param <T>     The type of context values
+   */
+
+  public <T> void forEachDepthFirst(
+    final T context,
+    final JOTreeNodeDoubleForEachFunctionType<T> f)
+  {
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+
+    final int depth_start = this.depth();
+    final Deque<JOTreeNodeDouble> stack = new ArrayDeque<>();
+    stack.push(this);
+
+    while (!stack.isEmpty()) {
+      final JOTreeNodeDouble next = stack.pop();
+      f.apply(context, next.depth() - depth_start, next);
+
+      final JOTreeNodeChildren<JOTreeNodeDouble> next_children =
+        next.childrenInternal();
+      if (next_children != null) {
+        final int count = next_children.size();
+        for (int index = 0; index < count; ++index) {
+          stack.push(next_children.get(index));
+        }
+      }
+    }
+  }
+
+  /**
+   * <p>Visit each node in the tree in breadth-first order.</p>
+   *
+   * <p>The function allows for the use of a context value. This is useful for
+   * avoiding the use of capturing lambdas, reducing GC pressure.</p>
+   *
+   * @param context A context value passed to each application of {@code f}
+   * @param f       A function used to receive each node
+   * @param <T>     The type of context values
+   */
+
+  public <T> void forEachBreadthFirst(
+    final T context,
+    final JOTreeNodeDoubleForEachFunctionType<T> f)
+  {
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+
+    final int depth_start = this.depth();
+    final Queue<JOTreeNodeDouble> queue = new ArrayDeque<>();
+    queue.add(this);
+
+    while (!queue.isEmpty()) {
+      final JOTreeNodeDouble next = queue.poll();
+      f.apply(context, next.depth() - depth_start, next);
+
+      final JOTreeNodeChildren<JOTreeNodeDouble> next_children =
+        next.childrenInternal();
+      if (next_children != null) {
+        final int count = next_children.size();
+        for (int index = 0; index < count; ++index) {
+          queue.add(next_children.get(index));
+        }
+      }
+    }
+  }
+
+  /**
+   * <p>Visit each node in the tree in depth-first order, producing a new
+   * structurally equal tree.</p>
+   *
+   * <p>The function allows for the use of a context value. This is useful for
+   * avoiding the use of capturing lambdas, reducing GC pressure.</p>
+   *
+   * @param context A context value passed to each application of {@code f}
+   * @param f       A function used to receive each node
+   * @param <T>     The type of context values
+   *
+   * @return A new structurally equal tree
+   */
+
+  public <T> JOTreeNodeDouble mapDepthFirst(
+    final T context,
+    final JOTreeNodeDoubleMapFunctionType<T> f)
+  {
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+
+    final int depth_start = this.depth();
+    final Deque<JOTreeNodeDouble> sources = new ArrayDeque<>();
+    final Deque<JOTreeNodeDouble> targets = new ArrayDeque<>();
+
+    final JOTreeNodeDouble root = create(f.apply(context, 0, this));
+    pushChildren(this, root, sources, targets);
+
+    while (!sources.isEmpty()) {
+      final JOTreeNodeDouble source = sources.pop();
+      final JOTreeNodeDouble target_parent = targets.pop();
+      final JOTreeNodeDouble target =
+        create(f.apply(context, source.depth() - depth_start, source));
+      target_parent.childAttachUnchecked(target);
+      pushChildren(source, target, sources, targets);
+    }
+
+    return root;
+  }
+
+  /**
+   * <p>Visit each node in the tree in breadth-first order, producing a new
+   * structurally equal tree.</p>
+   *
+   * <p>The function allows for the use of a context value. This is useful for
+   * avoiding the use of capturing lambdas, reducing GC pressure.</p>
+   *
+   * @param context A context value passed to each application of {@code f}
+   * @param f       A function used to receive each node
+   * @param <T>     The type of context values
+   *
+   * @return A new structurally equal tree
+   */
+
+  public <T> JOTreeNodeDouble mapBreadthFirst(
+    final T context,
+    final JOTreeNodeDoubleMapFunctionType<T> f)
+  {
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+
+    final int depth_start = this.depth();
+    final Queue<JOTreeNodeDouble> sources = new ArrayDeque<>();
+    final Queue<JOTreeNodeDouble> targets = new ArrayDeque<>();
+
+    final JOTreeNodeDouble root = create(f.apply(context, 0, this));
+    addChildren(this, root, sources, targets);
+
+    while (!sources.isEmpty()) {
+      final JOTreeNodeDouble source = sources.poll();
+      final JOTreeNodeDouble target_parent = targets.poll();
+      final JOTreeNodeDouble target =
+        create(f.apply(context, source.depth() - depth_start, source));
+      target_parent.childAttachUnchecked(target);
+      addChildren(source, target, sources, targets);
+    }
+
+    return root;
+  }
+
+  private static void pushChildren(
+    final JOTreeNodeDouble source,
+    final JOTreeNodeDouble target,
+    final Deque<JOTreeNodeDouble> sources,
+    final Deque<JOTreeNodeDouble> targets)
+  {
+    final JOTreeNodeChildren<JOTreeNodeDouble> source_children =
+      source.childrenInternal();
+    if (source_children != null) {
+      final int count = source_children.size();
+      for (int index = 0; index < count; ++index) {
+        sources.push(source_children.get(index));
+        targets.push(target);
+      }
+    }
+  }
+
+  private static void addChildren(
+    final JOTreeNodeDouble source,
+    final JOTreeNodeDouble target,
+    final Queue<JOTreeNodeDouble> sources,
+    final Queue<JOTreeNodeDouble> targets)
+  {
+    final JOTreeNodeChildren<JOTreeNodeDouble> source_children =
+      source.childrenInternal();
+    if (source_children != null) {
+      final int count = source_children.size();
+      for (int index = 0; index < count; ++index) {
+        sources.add(source_children.get(index));
+        targets.add(target);
+      }
+    }
+  }
+}
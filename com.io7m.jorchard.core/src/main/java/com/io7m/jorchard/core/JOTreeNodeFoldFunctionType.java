@@ -0,0 +1,52 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import java.util.List;
+
+/**
+ * A function for computing an aggregate value for each subtree of a tree.
+ *
+ * @param <A> The type of tree values
+ * @param <T> The type of threaded context values
+ * @param <R> The type of aggregate values
+ */
+
+@FunctionalInterface
+public interface JOTreeNodeFoldFunctionType<A, T, R>
+{
+  /**
+   * Compute the aggregate value for the subtree rooted at {@code node}. The
+   * given list of child aggregates is a read-only view that is only valid
+   * for the duration of the call, and must not be retained.
+   *
+   * @param input    The context value passed to the fold
+   * @param depth    The depth of node relative to the starting node of the
+   *                 fold
+   * @param node     The current node
+   * @param children The aggregate values of the children of {@code node}, in
+   *                 order, or an empty list if {@code node} is a leaf
+   *
+   * @return The aggregate value for the subtree
+   */
+
+  R apply(
+    T input,
+    int depth,
+    JOTreeNodeReadableType<A> node,
+    List<R> children);
+}
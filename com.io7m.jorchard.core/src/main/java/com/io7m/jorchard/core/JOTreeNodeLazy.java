@@ -0,0 +1,247 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * <p>A read-only tree node whose children are loaded on demand.</p>
+ *
+ * <p>The children of a node are produced by a
+ * {@link JOTreeNodeLazyLoaderType} the first time they are requested via
+ * {@link #children()} or {@link #childrenReadable()}, and are then retained
+ * until {@link #evict()} is called. An unloaded node holds only its value and
+ * a reference to its parent, so the memory used by a tree is proportional to
+ * the part of the tree that has been visited.</p>
+ *
+ * <p>Operations that walk upwards ({@link #parent()}, {@link #depth()} and
+ * {@link #isDescendantOf(JOTreeNodeReadableType)}) never cause children to be
+ * loaded. Traversals load every node that they visit.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ *
+ * @param <A> The type of values
+ */
+
+public final class JOTreeNodeLazy<A> implements JOTreeNodeReadableType<A>
+{
+  private final JOTreeNodeLazyLoaderType<A> loader;
+  private final JOTreeNodeLazy<A> parent;
+  private final A value;
+  private final int depth;
+  private List<JOTreeNodeLazy<A>> children;
+  private boolean loading;
+
+  private JOTreeNodeLazy(
+    final JOTreeNodeLazyLoaderType<A> in_loader,
+    final JOTreeNodeLazy<A> in_parent,
+    final A in_value)
+  {
+    this.loader = Objects.requireNonNull(in_loader, "Loader");
+    this.value = Objects.requireNonNull(in_value, "Value");
+    this.parent = in_parent;
+    this.depth = in_parent == null ? 0 : in_parent.depth + 1;
+    this.children = null;
+    this.loading = false;
+  }
+
+  /**
+   * Create a new root node. The children of the node, and of each of its
+   * descendants, are produced by {@code loader}.
+   *
+   * @param value  The value of the root node
+   * @param loader The loader
+   * @param <A>    The type of values
+   *
+   * @return A new node
+   */
+
+  public static <A> JOTreeNodeLazy<A> create(
+    final A value,
+    final JOTreeNodeLazyLoaderType<A> loader)
+  {
+    return new JOTreeNodeLazy<>(loader, null, value);
+  }
+
+  /**
+   * @return {@code true} iff the children of this node are currently loaded
+   */
+
+  public boolean isLoaded()
+  {
+    return this.children != null;
+  }
+
+  /**
+   * Discard the children of this node, returning it to the unloaded state.
+   * The children will be loaded again, as new nodes, when they are next
+   * requested. Nodes that were obtained before eviction remain usable, and
+   * still report this node as their parent, but are no longer among its
+   * children.
+   */
+
+  public void evict()
+  {
+    this.children = null;
+  }
+
+  /**
+   * @return The parent node, if any
+   */
+
+  public Optional<JOTreeNodeLazy<A>> parent()
+  {
+    return Optional.ofNullable(this.parent);
+  }
+
+  /**
+   * Load the children of this node if they are not already loaded.
+   *
+   * @return A read-only list containing the children of this node
+   */
+
+  public List<JOTreeNodeLazy<A>> children()
+  {
+    if (this.children == null) {
+      this.children = this.load();
+    }
+    return this.children;
+  }
+
+  private List<JOTreeNodeLazy<A>> load()
+  {
+    if (this.loading) {
+      throw new IllegalStateException(
+        "The loader attempted to access the children of the node being loaded");
+    }
+
+    final List<A> values;
+    try {
+      this.loading = true;
+      values = Objects.requireNonNull(this.loader.load(this), "Values");
+    } finally {
+      this.loading = false;
+    }
+
+    if (values.isEmpty()) {
+      return List.of();
+    }
+
+    final List<JOTreeNodeLazy<A>> nodes = new ArrayList<>(values.size());
+    for (final A child_value : values) {
+      nodes.add(new JOTreeNodeLazy<>(this.loader, this, child_value));
+    }
+    return Collections.unmodifiableList(nodes);
+  }
+
+  @Override
+  public boolean isDetachAllowed()
+  {
+    return false;
+  }
+
+  @Override
+  public A value()
+  {
+    return this.value;
+  }
+
+  @Override
+  public boolean isRoot()
+  {
+    return this.parent == null;
+  }
+
+  @Override
+  public Optional<JOTreeNodeReadableType<A>> parentReadable()
+  {
+    return Optional.ofNullable(this.parent);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public List<JOTreeNodeReadableType<A>> childrenReadable()
+  {
+    final List<? extends JOTreeNodeReadableType<A>> nodes = this.children();
+    return (List<JOTreeNodeReadableType<A>>) nodes;
+  }
+
+  @Override
+  public int depth()
+  {
+    return this.depth;
+  }
+
+  @Override
+  public boolean isDescendantOf(
+    final JOTreeNodeReadableType<A> other)
+  {
+    Objects.requireNonNull(other, "Other");
+
+    if (other instanceof JOTreeNodeLazy<A> other_lazy) {
+      JOTreeNodeLazy<A> current = this;
+      while (current != null && current.depth > other_lazy.depth) {
+        current = current.parent;
+      }
+      return current == other_lazy;
+    }
+    return false;
+  }
+
+  @Override
+  public <T> void forEachDepthFirst(
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    JOTreeTraversal.forEachDepthFirst(this, context, f);
+  }
+
+  @Override
+  public <T> void forEachBreadthFirst(
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    JOTreeTraversal.forEachBreadthFirst(this, context, f);
+  }
+
+  @Override
+  public <T, B> JOTreeNodeType<B> mapDepthFirst(
+    final T context,
+    final JOTreeNodeMapFunctionType<A, T, B> f)
+  {
+    return JOTreeTraversal.mapDepthFirst(this, context, f);
+  }
+
+  @Override
+  public <T, B> JOTreeNodeType<B> mapBreadthFirst(
+    final T context,
+    final JOTreeNodeMapFunctionType<A, T, B> f)
+  {
+    return JOTreeTraversal.mapBreadthFirst(this, context, f);
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[JOTreeNodeLazy " + this.value + "]";
+  }
+}
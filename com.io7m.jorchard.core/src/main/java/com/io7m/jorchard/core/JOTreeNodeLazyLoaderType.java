@@ -0,0 +1,43 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.core;
+
+import java.util.List;
+
+/**
+ * A function that produces the values of the children of a lazily loaded
+ * node.
+ *
+ * @param <A> The type of tree values
+ */
+
+@FunctionalInterface
+public interface JOTreeNodeLazyLoaderType<A>
+{
+  /**
+   * Load the values of the children of a node. The loader must not access
+   * the children of {@code node}, but may freely inspect its value and its
+   * ancestors.
+   *
+   * @param node The node whose children are being loaded
+   *
+   * @return The values of the children of {@code node}, in order
+   */
+
+  List<A> load(JOTreeNodeLazy<A> node);
+}
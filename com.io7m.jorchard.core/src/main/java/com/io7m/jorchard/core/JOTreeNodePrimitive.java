@@ -0,0 +1,321 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import com.io7m.jaffirm.core.Invariants;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * <p>The structure shared by the primitive-valued tree nodes.</p>
+ *
+ * <p>Unlike {@link JOTreeNode}, the children of a primitive-valued node are
+ * always of the same concrete class as the node itself, so the structural
+ * operations manipulate parent and child references directly. The list of
+ * children is not allocated until the first child is added.</p>
+ *
+ * @param <N> The concrete type of nodes
+ */
+
+abstract class JOTreeNodePrimitive<N extends JOTreeNodePrimitive<N>>
+{
+  private JOTreeNodePrimitive<N> parent;
+  private JOTreeNodeChildren<N> children;
+  private List<N> children_view;
+  private int depth;
+
+  JOTreeNodePrimitive()
+  {
+    this.parent = null;
+    this.children = null;
+    this.children_view = List.of();
+    this.depth = 0;
+  }
+
+  abstract N self();
+
+  /**
+   * @return The parent node, if any
+   */
+
+  public final Optional<N> parent()
+  {
+    if (this.parent == null) {
+      return Optional.empty();
+    }
+    return Optional.of(this.parent.self());
+  }
+
+  /**
+   * @return {@code true} iff this node is a root node
+   */
+
+  public final boolean isRoot()
+  {
+    return this.parent == null;
+  }
+
+  /**
+   * @return A read-only list containing the children of this node
+   */
+
+  public final List<N> children()
+  {
+    return this.children_view;
+  }
+
+  /**
+   * The depth of this node: The number of ancestors between this node and the
+   * root of the tree that contains it. Root nodes have depth {@code 0}.
+   *
+   * @return The depth of this node
+   */
+
+  public final int depth()
+  {
+    return this.depth;
+  }
+
+  /**
+   * @param other A node
+   *
+   * @return {@code true} iff this node is a descendant of {@code other}
+   */
+
+  public final boolean isDescendantOf(
+    final N other)
+  {
+    Objects.requireNonNull(other, "Other");
+
+    final JOTreeNodePrimitive<N> ancestor = other;
+    if (ancestor == this) {
+      return true;
+    }
+
+    /*
+     * A node with no children is an ancestor only of itself, and a node
+     * can only be an ancestor of nodes that are strictly deeper than it.
+     */
+
+    if (ancestor.children == null || ancestor.children.isEmpty()) {
+      return false;
+    }
+
+    JOTreeNodePrimitive<N> current = this;
+    while (current != null && current.depth > ancestor.depth) {
+      current = current.parent;
+    }
+    return current == ancestor;
+  }
+
+  /**
+   * Set this node's parent to {@code new_parent}.
+   *
+   * @param new_parent The new parent node
+   *
+   * @return this
+   *
+   * @throws JOTreeExceptionCycle Iff setting the parent would introduce a cycle
+   *                              in the tree
+   */
+
+  public final N setParent(
+    final N new_parent)
+    throws JOTreeExceptionCycle
+  {
+    Objects.requireNonNull(new_parent, "Parent");
+
+    if (new_parent.isDescendantOf(this.self())) {
+      final StringBuilder sb = new StringBuilder(
+        "Cannot set a descendant of this node to be the parent of this node.");
+      final String separator = System.lineSeparator();
+      sb.append(separator);
+      sb.append("  Descendant: ");
+      sb.append(new_parent);
+      sb.append(separator);
+      sb.append("  This: ");
+      sb.append(this);
+      sb.append(separator);
+      throw new JOTreeExceptionCycle(sb.toString());
+    }
+
+    if (this.parent != null) {
+      this.parent.childrenRemove(this.self());
+    }
+
+    final JOTreeNodePrimitive<N> target = new_parent;
+    target.childrenAdd(this.self());
+    this.parent = target;
+    this.depthUpdate();
+    return this.self();
+  }
+
+  /**
+   * Detach this node from its parent node.
+   *
+   * @return this
+   */
+
+  public final N detach()
+  {
+    if (this.parent != null) {
+      this.parent.childrenRemove(this.self());
+      this.parent = null;
+      this.depthUpdate();
+    }
+    return this.self();
+  }
+
+  /**
+   * Add a child to this node. If the child is already a child of this node,
+   * it is moved to the end of the list of children.
+   *
+   * @param child A child node
+   *
+   * @return this
+   *
+   * @throws JOTreeExceptionCycle Iff adding the child would introduce a cycle
+   *                              in the tree
+   */
+
+  public final N childAdd(
+    final N child)
+    throws JOTreeExceptionCycle
+  {
+    Objects.requireNonNull(child, "Child");
+    child.setParent(this.self());
+    return this.self();
+  }
+
+  /**
+   * Remove a child from this node. Has no effect if the given node is not a
+   * child of this node.
+   *
+   * @param child A child node
+   *
+   * @return this
+   */
+
+  public final N childRemove(
+    final N child)
+  {
+    Objects.requireNonNull(child, "Child");
+    final JOTreeNodePrimitive<N> node = child;
+    if (node.parent == this) {
+      node.detach();
+    }
+    return this.self();
+  }
+
+  /**
+   * Sort the children of this node.
+   *
+   * @param comparator A node comparator
+   */
+
+  public final void childrenSortNodes(
+    final Comparator<N> comparator)
+  {
+    Objects.requireNonNull(comparator, "Comparator");
+    if (this.children != null) {
+      this.children.sort(comparator);
+    }
+  }
+
+  /**
+   * @return The modifiable list of children, or {@code null} if this node has
+   * never had any children
+   */
+
+  final JOTreeNodeChildren<N> childrenInternal()
+  {
+    return this.children;
+  }
+
+  /**
+   * Attach {@code child} as the last child of this node. The child must be a
+   * newly created node with no parent and no children, so attaching it cannot
+   * introduce a cycle, and only the depth of the child itself must be set.
+   * This is used to build the results of maps without per-node checks.
+   *
+   * @param child A new child node
+   */
+
+  final void childAttachUnchecked(
+    final N child)
+  {
+    final JOTreeNodePrimitive<N> node = child;
+    Invariants.checkInvariant(
+      node.parent == null, "Child must not have a parent");
+    Invariants.checkInvariant(
+      node.children == null, "Child must not have children");
+
+    this.childrenAdd(child);
+    node.parent = this;
+    node.depth = this.depth + 1;
+  }
+
+  private void childrenAdd(
+    final N child)
+  {
+    if (this.children == null) {
+      this.children = new JOTreeNodeChildren<>();
+      this.children_view = Collections.unmodifiableList(this.children);
+    }
+    this.children.add(child);
+  }
+
+  private void childrenRemove(
+    final N child)
+  {
+    this.children.remove(child);
+  }
+
+  @Override
+  public final String toString()
+  {
+    return String.format(
+      "[%s %s]", this.getClass().getSimpleName(), this.valueString());
+  }
+
+  abstract String valueString();
+
+  private void depthUpdate()
+  {
+    final Deque<JOTreeNodePrimitive<N>> stack = new ArrayDeque<>();
+    stack.push(this);
+
+    while (!stack.isEmpty()) {
+      final JOTreeNodePrimitive<N> next = stack.pop();
+      next.depth = next.parent == null ? 0 : next.parent.depth + 1;
+
+      final JOTreeNodeChildren<N> next_children = next.children;
+      if (next_children != null) {
+        final int count = next_children.size();
+        for (int index = 0; index < count; ++index) {
+          stack.push(next_children.get(index));
+        }
+      }
+    }
+  }
+}
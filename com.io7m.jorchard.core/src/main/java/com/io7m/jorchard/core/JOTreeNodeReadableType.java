@@ -16,8 +16,12 @@
 
 package com.io7m.jorchard.core;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The type of readable tree nodes.
@@ -60,6 +64,38 @@ public interface JOTreeNodeReadableType<A>
 
   List<JOTreeNodeReadableType<A>> childrenReadable();
 
+  /**
+   * The depth of this node: The number of ancestors between this node and the
+   * root of the tree that contains it. Root nodes have depth {@code 0}.
+   *
+   * @return The depth of this node
+   */
+
+  default int depth()
+  {
+    int result = 0;
+    Optional<JOTreeNodeReadableType<A>> current = this.parentReadable();
+    while (current.isPresent()) {
+      ++result;
+      current = current.get().parentReadable();
+    }
+    return result;
+  }
+
+  /**
+   * The size of the subtree rooted at this node: The number of nodes in the
+   * subtree, including this node. Implementations that maintain the size
+   * during mutations answer in constant time; the default implementation
+   * counts the nodes.
+   *
+   * @return The number of nodes in the subtree rooted at this node
+   */
+
+  default int subtreeSize()
+  {
+    return Math.toIntExact(JOTreeTraversal.count(this));
+  }
+
   /**
    * @param other A node
    *
@@ -68,6 +104,20 @@ public interface JOTreeNodeReadableType<A>
 
   boolean isDescendantOf(JOTreeNodeReadableType<A> other);
 
+  /**
+   * Create an immutable, array-based snapshot of the tree rooted at this
+   * node.
+   *
+   * @return A snapshot of the tree
+   *
+   * @see JOTreeFrozen
+   */
+
+  default JOTreeFrozen<A> freeze()
+  {
+    return JOTreeFrozen.freeze(this);
+  }
+
   /**
    * <p>Visit each node in the tree in depth-first order.</p>
    *
@@ -98,6 +148,354 @@ public interface JOTreeNodeReadableType<A>
     T context,
     JOTreeNodeForEachFunctionType<A, T> f);
 
+  /**
+   * <p>Create an iterator over the nodes in the tree in depth-first preorder,
+   * with children in order. Each node is yielded before its descendants.</p>
+   *
+   * <p>The iterator is lazy: The children of a node are not examined until
+   * the iterator is asked for the node that follows it, and so a consumer
+   * may stop at any point without visiting the rest of the tree. The tree
+   * must not be modified whilst the iterator is in use.</p>
+   *
+   * @return An iterator over nodes
+   */
+
+  default Iterator<JOTreeNodeReadableType<A>> iteratorPreOrder()
+  {
+    return new JOTreeIteratorPreOrder<>(this);
+  }
+
+  /**
+   * <p>Create an iterator over the nodes in the tree in depth-first
+   * postorder, with children in order. Each node is yielded after its
+   * descendants.</p>
+   *
+   * <p>The tree must not be modified whilst the iterator is in use.</p>
+   *
+   * @return An iterator over nodes
+   */
+
+  default Iterator<JOTreeNodeReadableType<A>> iteratorPostOrder()
+  {
+    return new JOTreeIteratorPostOrder<>(this);
+  }
+
+  /**
+   * <p>Create an iterator over the nodes in the tree in breadth-first order,
+   * with children in order.</p>
+   *
+   * <p>The iterator is lazy: The children of a node are not examined until
+   * the iterator reaches them. The tree must not be modified whilst the
+   * iterator is in use.</p>
+   *
+   * @return An iterator over nodes
+   */
+
+  default Iterator<JOTreeNodeReadableType<A>> iteratorBreadthFirst()
+  {
+    return new JOTreeIteratorBreadthFirst<>(this);
+  }
+
+  /**
+   * <p>Create a stream of the nodes in the tree in depth-first preorder, with
+   * children in order. The stream is lazy, and nodes are not visited until
+   * they are consumed.</p>
+   *
+   * <p>The underlying spliterator splits work at subtree boundaries, and so
+   * the stream may be used efficiently in parallel. The tree must not be
+   * modified whilst the stream is being consumed.</p>
+   *
+   * @return A stream of nodes
+   */
+
+  default Stream<JOTreeNodeReadableType<A>> streamDepthFirst()
+  {
+    return StreamSupport.stream(
+      JOTreeSpliteratorDepthFirst.create(this), false);
+  }
+
+  /**
+   * <p>Create a stream of the nodes in the tree in breadth-first order, with
+   * children in order. The stream is lazy, and nodes are not visited until
+   * they are consumed.</p>
+   *
+   * <p>A breadth-first traversal cannot be divided at subtree boundaries
+   * without losing its order, so the underlying spliterator splits work by
+   * handing off batches of consecutive nodes. The tree must not be modified
+   * whilst the stream is being consumed.</p>
+   *
+   * @return A stream of nodes
+   */
+
+  default Stream<JOTreeNodeReadableType<A>> streamBreadthFirst()
+  {
+    return StreamSupport.stream(
+      JOTreeSpliteratorBreadthFirst.create(this), false);
+  }
+
+  /**
+   * <p>Walk the tree in depth-first preorder, with children in order. The
+   * value returned by {@code f} for each node determines how the walk
+   * proceeds:</p>
+   *
+   * <ul>
+   *   <li>{@link JOTreeVisitResult#CONTINUE} continues into the descendants
+   *   of the node.</li>
+   *   <li>{@link JOTreeVisitResult#SKIP_SUBTREE} continues without visiting
+   *   the descendants of the node.</li>
+   *   <li>{@link JOTreeVisitResult#SKIP_SIBLINGS} continues without visiting
+   *   the descendants of the node or its remaining siblings.</li>
+   *   <li>{@link JOTreeVisitResult#TERMINATE} ends the walk
+   *   immediately.</li>
+   * </ul>
+   *
+   * @param context A context value passed to each application of {@code f}
+   * @param f       A function used to receive each node
+   * @param <T>     The type of context values
+   *
+   * @return {@link JOTreeVisitResult#TERMINATE} if {@code f} terminated the
+   * walk, or {@link JOTreeVisitResult#CONTINUE} otherwise
+   */
+
+  default <T> JOTreeVisitResult walkDepthFirst(
+    final T context,
+    final JOTreeNodeVisitorType<A, T> f)
+  {
+    return JOTreeTraversal.walkDepthFirst(this, context, f);
+  }
+
+  /**
+   * <p>Walk the tree in breadth-first order, with children in order. The
+   * value returned by {@code f} for each node determines how the walk
+   * proceeds, as with
+   * {@link #walkDepthFirst(Object, JOTreeNodeVisitorType)}. The children of
+   * a node are visited consecutively in a breadth-first walk, and so
+   * {@link JOTreeVisitResult#SKIP_SIBLINGS} skips the remaining children of
+   * the parent of the node.</p>
+   *
+   * @param context A context value passed to each application of {@code f}
+   * @param f       A function used to receive each node
+   * @param <T>     The type of context values
+   *
+   * @return {@link JOTreeVisitResult#TERMINATE} if {@code f} terminated the
+   * walk, or {@link JOTreeVisitResult#CONTINUE} otherwise
+   */
+
+  default <T> JOTreeVisitResult walkBreadthFirst(
+    final T context,
+    final JOTreeNodeVisitorType<A, T> f)
+  {
+    return JOTreeTraversal.walkBreadthFirst(this, context, f);
+  }
+
+  /**
+   * <p>Compute an aggregate value for the tree in a single postorder pass.
+   * The function {@code f} is applied to each node after it has been applied
+   * to all of the children of that node, and receives the values it returned
+   * for those children, in order. The value returned for this node is the
+   * result of the fold.</p>
+   *
+   * <p>The fold is iterative, and so is not limited by the depth of the
+   * tree. No intermediate tree is created, and the lists of child values
+   * passed to {@code f} are views of a single internal stack that must not
+   * be retained by {@code f}.</p>
+   *
+   * @param context A context value passed to each application of {@code f}
+   * @param f       A function used to compute the aggregate for each node
+   * @param <T>     The type of context values
+   * @param <R>     The type of aggregate values
+   *
+   * @return The aggregate value for this node
+   */
+
+  default <T, R> R foldPostOrder(
+    final T context,
+    final JOTreeNodeFoldFunctionType<A, T, R> f)
+  {
+    return JOTreeTraversal.foldPostOrder(this, context, f);
+  }
+
+  /**
+   * <p>Visit each node in the tree, in parallel, using the given pool.</p>
+   *
+   * <p>Each node is visited exactly once, and {@code f} receives the same
+   * depth for each node as it would during a call to
+   * {@link #forEachDepthFirst(Object, JOTreeNodeForEachFunctionType)}, but
+   * the order in which nodes are visited is unspecified: A node is not
+   * guaranteed to be visited before its descendants or its siblings. The
+   * function {@code f} may be applied concurrently from multiple threads, and
+   * so both {@code f} and {@code context} must be thread-safe. The tree must
+   * not be modified for the duration of the traversal. This method returns
+   * when every node has been visited. If {@code f} raises an exception, no
+   * further nodes are visited, and the exception is rethrown by this method
+   * once every application of {@code f} already in progress has
+   * completed.</p>
+   *
+   * <p>The traversal begins as a single task, and a task that has visited
+   * {@code threshold} nodes splits its pending subtrees with a new task. The
+   * threshold is a count of visited nodes, not a minimum subtree size.
+   * Larger thresholds reduce scheduling overhead, whilst smaller thresholds
+   * allow for better load balancing when the per-node work is expensive.</p>
+   *
+   * @param context   A context value passed to each application of {@code f}
+   * @param f         A function used to receive each node
+   * @param pool      The pool used to execute tasks
+   * @param threshold The number of nodes a task visits before splitting
+   * @param <T>       The type of context values
+   *
+   * @throws IllegalArgumentException Iff {@code threshold < 1}
+   */
+
+  default <T> void forEachParallel(
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f,
+    final ForkJoinPool pool,
+    final int threshold)
+  {
+    JOTreeParallel.forEachParallel(this, context, f, pool, threshold);
+  }
+
+  /**
+   * <p>Visit each node in the tree, in parallel, using the given pool and a
+   * default splitting threshold of {@code 1024} nodes.</p>
+   *
+   * @param context A context value passed to each application of {@code f}
+   * @param f       A function used to receive each node
+   * @param pool    The pool used to execute tasks
+   * @param <T>     The type of context values
+   *
+   * @see #forEachParallel(Object, JOTreeNodeForEachFunctionType, ForkJoinPool,
+   * int)
+   */
+
+  default <T> void forEachParallel(
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f,
+    final ForkJoinPool pool)
+  {
+    JOTreeParallel.forEachParallel(
+      this, context, f, pool, JOTreeParallel.THRESHOLD_DEFAULT);
+  }
+
+  /**
+   * <p>Visit each node in the tree, in parallel, using the common pool and a
+   * default splitting threshold of {@code 1024} nodes.</p>
+   *
+   * @param context A context value passed to each application of {@code f}
+   * @param f       A function used to receive each node
+   * @param <T>     The type of context values
+   *
+   * @see #forEachParallel(Object, JOTreeNodeForEachFunctionType, ForkJoinPool,
+   * int)
+   * @see ForkJoinPool#commonPool()
+   */
+
+  default <T> void forEachParallel(
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    JOTreeParallel.forEachParallel(
+      this,
+      context,
+      f,
+      ForkJoinPool.commonPool(),
+      JOTreeParallel.THRESHOLD_DEFAULT);
+  }
+
+  /**
+   * <p>Transform each node in the tree, in parallel, using the given pool.</p>
+   *
+   * <p>The returned tree has the same structure as this tree, with children
+   * in the same order, and {@code f} receives the same depth for each node as
+   * it would during a call to
+   * {@link #mapDepthFirst(Object, JOTreeNodeMapFunctionType)}. The order in
+   * which {@code f} is applied to nodes is unspecified, and {@code f} may be
+   * applied concurrently from multiple threads, so both {@code f} and
+   * {@code context} must be thread-safe. The tree must not be modified for
+   * the duration of the traversal. If {@code f} raises an exception, it is
+   * not applied to any further nodes, and the exception is rethrown by this
+   * method once every application of {@code f} already in progress has
+   * completed.</p>
+   *
+   * <p>Work is split between tasks in the same manner as
+   * {@link #forEachParallel(Object, JOTreeNodeForEachFunctionType,
+   * ForkJoinPool, int)}. The returned tree is assembled without the cycle
+   * checks that {@link JOTreeNodeType#setParent(JOTreeNodeType)} would
+   * perform, and is not observable by any other thread until this method
+   * returns.</p>
+   *
+   * @param context   A context value passed to each application of {@code f}
+   * @param f         A function used to transform each node
+   * @param pool      The pool used to execute tasks
+   * @param threshold The number of nodes a task visits before splitting
+   * @param <T>       The type of context values
+   * @param <B>       The type of values in the returned tree
+   *
+   * @return A new structurally equal tree with nodes of type {@code B}
+   *
+   * @throws IllegalArgumentException Iff {@code threshold < 1}
+   */
+
+  default <T, B> JOTreeNodeType<B> mapParallel(
+    final T context,
+    final JOTreeNodeMapFunctionType<A, T, B> f,
+    final ForkJoinPool pool,
+    final int threshold)
+  {
+    return JOTreeParallel.mapParallel(this, context, f, pool, threshold);
+  }
+
+  /**
+   * <p>Transform each node in the tree, in parallel, using the given pool and
+   * a default splitting threshold of {@code 1024} nodes.</p>
+   *
+   * @param context A context value passed to each application of {@code f}
+   * @param f       A function used to transform each node
+   * @param pool    The pool used to execute tasks
+   * @param <T>     The type of context values
+   * @param <B>     The type of values in the returned tree
+   *
+   * @return A new structurally equal tree with nodes of type {@code B}
+   *
+   * @see #mapParallel(Object, JOTreeNodeMapFunctionType, ForkJoinPool, int)
+   */
+
+  default <T, B> JOTreeNodeType<B> mapParallel(
+    final T context,
+    final JOTreeNodeMapFunctionType<A, T, B> f,
+    final ForkJoinPool pool)
+  {
+    return JOTreeParallel.mapParallel(
+      this, context, f, pool, JOTreeParallel.THRESHOLD_DEFAULT);
+  }
+
+  /**
+   * <p>Transform each node in the tree, in parallel, using the common pool
+   * and a default splitting threshold of {@code 1024} nodes.</p>
+   *
+   * @param context A context value passed to each application of {@code f}
+   * @param f       A function used to transform each node
+   * @param <T>     The type of context values
+   * @param <B>     The type of values in the returned tree
+   *
+   * @return A new structurally equal tree with nodes of type {@code B}
+   *
+   * @see #mapParallel(Object, JOTreeNodeMapFunctionType, ForkJoinPool, int)
+   * @see ForkJoinPool#commonPool()
+   */
+
+  default <T, B> JOTreeNodeType<B> mapParallel(
+    final T context,
+    final JOTreeNodeMapFunctionType<A, T, B> f)
+  {
+    return JOTreeParallel.mapParallel(
+      this,
+      context,
+      f,
+      ForkJoinPool.commonPool(),
+      JOTreeParallel.THRESHOLD_DEFAULT);
+  }
+
   /**
    * <p>Visit each node in the tree in depth-first order.</p>
    *
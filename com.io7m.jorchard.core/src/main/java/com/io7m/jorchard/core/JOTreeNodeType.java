@@ -16,6 +16,7 @@
 
 package com.io7m.jorchard.core;
 
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
@@ -70,6 +71,46 @@ public interface JOTreeNodeType<A> extends JOTreeNodeReadableType<A>
     JOTreeNodeType<A> child)
     throws JOTreeExceptionCycle;
 
+  /**
+   * <p>Add each of the given nodes as children of this node, in iteration
+   * order. The effect is the same as calling {@link #childAdd(JOTreeNodeType)}
+   * for each node in turn, but implementations may check for cycles and
+   * evaluate detach checks once for the whole collection.</p>
+   *
+   * <p>If any of the nodes would introduce a cycle, or may not be detached
+   * from their current parent, an exception is raised before any of the nodes
+   * are added.</p>
+   *
+   * @param children The child nodes
+   *
+   * @return this
+   *
+   * @throws JOTreeExceptionCycle        Iff adding any of the children would
+   *                                     introduce a cycle in the tree
+   * @throws JOTreeExceptionDetachDenied Iff any of the children may not be
+   *                                     detached from their current parent
+   */
+
+  default JOTreeNodeType<A> childAddAll(
+    final Collection<? extends JOTreeNodeType<A>> children)
+    throws JOTreeExceptionCycle, JOTreeExceptionDetachDenied
+  {
+    for (final JOTreeNodeType<A> child : children) {
+      if (this.isDescendantOf(child)) {
+        throw new JOTreeExceptionCycle(
+          "Cannot add an ancestor of this node as a child of this node.");
+      }
+      if (!child.isRoot() && !child.isDetachAllowed()) {
+        throw new JOTreeExceptionDetachDenied("This node may not be detached.");
+      }
+    }
+
+    for (final JOTreeNodeType<A> child : children) {
+      this.childAdd(child);
+    }
+    return this;
+  }
+
   /**
    * Set this node's parent to {@code new_parent}.
    *
@@ -0,0 +1,471 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>A tree stored outside of the Java heap.</p>
+ *
+ * <p>Each node is a fixed-size record in a direct {@link ByteBuffer},
+ * holding the positions of its parent, first child, last child and next
+ * sibling, its depth, and its value encoded with a
+ * {@link JOTreeFixedSizeCodecType}. Records are allocated in pages, so the
+ * garbage collector sees only one small object per page regardless of the
+ * number of nodes in the tree.</p>
+ *
+ * <p>Nodes are identified by the order in which they were added to the tree,
+ * with the root at position {@code 0}. Nodes are always added after their
+ * parents, and cannot be removed. Missing parents, children, and siblings are
+ * represented by {@code -1}.</p>
+ *
+ * <p>The tree owns its memory. After {@link #close()} is called, the pages
+ * are released and any further access raises {@link IllegalStateException}.
+ * The memory itself is returned to the operating system when the released
+ * buffers are collected.</p>
+ *
+ * <p>Instances are not thread-safe.</p>
+ *
+ * @param <A> The type of values contained within the tree
+ */
+
+public final class JOTreeOffHeap<A> implements JOTreeIndexedType<A>,
+  AutoCloseable
+{
+  private static final int FIELD_PARENT = 0;
+  private static final int FIELD_FIRST_CHILD = 4;
+  private static final int FIELD_LAST_CHILD = 8;
+  private static final int FIELD_NEXT_SIBLING = 12;
+  private static final int FIELD_DEPTH = 16;
+  private static final int FIELD_VALUE = 20;
+
+  private static final int PAGE_SHIFT_MAXIMUM = 16;
+  private static final int PAGE_SIZE_MAXIMUM = 1 << 30;
+
+  private final JOTreeFixedSizeCodecType<A> codec;
+  private final List<ByteBuffer> pages;
+  private final int record_size;
+  private final int page_shift;
+  private final int page_mask;
+  private int size;
+  private boolean closed;
+
+  private JOTreeOffHeap(
+    final JOTreeFixedSizeCodecType<A> in_codec)
+  {
+    this.codec = Objects.requireNonNull(in_codec, "Codec");
+
+    final int value_size = in_codec.size();
+    if (value_size < 0 || value_size > PAGE_SIZE_MAXIMUM - FIELD_VALUE) {
+      throw new IllegalArgumentException(
+        "Codec size must be in the range [0, "
+          + (PAGE_SIZE_MAXIMUM - FIELD_VALUE) + "]");
+    }
+
+    this.record_size = FIELD_VALUE + value_size;
+
+    int shift = PAGE_SHIFT_MAXIMUM;
+    while (shift > 0 && (long) this.record_size << shift > PAGE_SIZE_MAXIMUM) {
+      --shift;
+    }
+
+    this.page_shift = shift;
+    this.page_mask = (1 << shift) - 1;
+    this.pages = new ArrayList<>();
+    this.size = 0;
+    this.closed = false;
+  }
+
+  /**
+   * Create a new tree containing a single root node.
+   *
+   * @param codec The codec used to store values
+   * @param value The value of the root node
+   * @param <A>   The type of values
+   *
+   * @return A new tree
+   */
+
+  public static <A> JOTreeOffHeap<A> create(
+    final JOTreeFixedSizeCodecType<A> codec,
+    final A value)
+  {
+    final JOTreeOffHeap<A> tree = new JOTreeOffHeap<>(codec);
+    tree.append(-1, value);
+    return tree;
+  }
+
+  /**
+   * Create a new tree that is structurally equal to the tree rooted at
+   * {@code root}. Children are added in order.
+   *
+   * @param codec The codec used to store values
+   * @param root  The root node
+   * @param <A>   The type of values
+   *
+   * @return A new tree
+   */
+
+  public static <A> JOTreeOffHeap<A> copyOf(
+    final JOTreeFixedSizeCodecType<A> codec,
+    final JOTreeNodeReadableType<A> root)
+  {
+    Objects.requireNonNull(root, "Root");
+
+    final JOTreeOffHeap<A> tree = create(codec, root.value());
+    final Deque<CopyItem<A>> stack = new ArrayDeque<>();
+    stack.push(new CopyItem<>(0, root));
+
+    while (!stack.isEmpty()) {
+      final CopyItem<A> top = stack.peek();
+      if (!top.children.hasNext()) {
+        stack.pop();
+        continue;
+      }
+
+      final JOTreeNodeReadableType<A> child = top.children.next();
+      stack.push(new CopyItem<>(tree.childAdd(top.index, child.value()), child));
+    }
+
+    return tree;
+  }
+
+  /**
+   * Add a new node to the end of the list of children of {@code parent}.
+   *
+   * @param parent The position of the parent node
+   * @param value  The value of the new node
+   *
+   * @return The position of the new node
+   */
+
+  public int childAdd(
+    final int parent,
+    final A value)
+  {
+    this.checkNode(parent);
+    return this.append(parent, value);
+  }
+
+  /**
+   * @return The number of bytes of off-heap memory currently reserved by the
+   * tree
+   */
+
+  public long memoryReserved()
+  {
+    this.checkOpen();
+    return (long) this.pages.size() * ((long) this.record_size << this.page_shift);
+  }
+
+  @Override
+  public void close()
+  {
+    this.closed = true;
+    this.pages.clear();
+  }
+
+  @Override
+  public int size()
+  {
+    this.checkOpen();
+    return this.size;
+  }
+
+  @Override
+  public A value(
+    final int node)
+  {
+    this.checkNode(node);
+    return this.codec.read(this.page(node), this.offset(node) + FIELD_VALUE);
+  }
+
+  @Override
+  public int parent(
+    final int node)
+  {
+    this.checkNode(node);
+    return this.field(node, FIELD_PARENT);
+  }
+
+  @Override
+  public int firstChild(
+    final int node)
+  {
+    this.checkNode(node);
+    return this.field(node, FIELD_FIRST_CHILD);
+  }
+
+  @Override
+  public int nextSibling(
+    final int node)
+  {
+    this.checkNode(node);
+    return this.field(node, FIELD_NEXT_SIBLING);
+  }
+
+  @Override
+  public int depth(
+    final int node)
+  {
+    this.checkNode(node);
+    return this.field(node, FIELD_DEPTH);
+  }
+
+  @Override
+  public boolean isDescendantOf(
+    final int node,
+    final int other)
+  {
+    this.checkNode(node);
+    this.checkNode(other);
+
+    /*
+     * Nodes are always added after their ancestors.
+     */
+
+    if (node < other) {
+      return false;
+    }
+
+    final int depth_other = this.field(other, FIELD_DEPTH);
+    int current = node;
+    while (this.field(current, FIELD_DEPTH) > depth_other) {
+      current = this.field(current, FIELD_PARENT);
+    }
+    return current == other;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Views are created on demand and are not retained by the tree.</p>
+   */
+
+  @Override
+  public JOTreeNodeReadableType<A> node(
+    final int node)
+  {
+    this.checkNode(node);
+    return new JOTreeIndexedNode<>(this, node);
+  }
+
+  /**
+   * @return A readable view of the root node
+   */
+
+  public JOTreeNodeReadableType<A> root()
+  {
+    return this.node(0);
+  }
+
+  /**
+   * <p>Visit each node in the subtree rooted at {@code node} in depth-first
+   * order. Children are visited in order. The traversal follows the links
+   * stored in the tree and requires no auxiliary storage.</p>
+   *
+   * @param node    The position of the starting node
+   * @param context A context value passed to each application of {@code f}
+   * @param f       A function used to receive each node
+   * @param <T>     The type of context values
+   */
+
+  @Override
+  public <T> void forEachDepthFirst(
+    final int node,
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    this.checkNode(node);
+
+    final int depth = this.field(node, FIELD_DEPTH);
+    int current = node;
+    while (true) {
+      f.apply(
+        context,
+        this.field(current, FIELD_DEPTH) - depth,
+        this.node(current));
+
+      final int child = this.field(current, FIELD_FIRST_CHILD);
+      if (child != -1) {
+        current = child;
+        continue;
+      }
+
+      while (true) {
+        if (current == node) {
+          return;
+        }
+        final int sibling = this.field(current, FIELD_NEXT_SIBLING);
+        if (sibling != -1) {
+          current = sibling;
+          break;
+        }
+        current = this.field(current, FIELD_PARENT);
+      }
+    }
+  }
+
+  /**
+   * <p>Visit each node in the subtree rooted at {@code node} in breadth-first
+   * order. Children are visited in order.</p>
+   *
+   * @param node    The position of the starting node
+   * @param context A context value passed to each application of {@code f}
+   * @param f       A function used to receive each node
+   * @param <T>     The type of context values
+   */
+
+  @Override
+  public <T> void forEachBreadthFirst(
+    final int node,
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    this.checkNode(node);
+
+    final int depth = this.field(node, FIELD_DEPTH);
+    final JOTreeIntQueue queue = new JOTreeIntQueue();
+    queue.add(node);
+
+    while (!queue.isEmpty()) {
+      final int next = queue.poll();
+      f.apply(context, this.field(next, FIELD_DEPTH) - depth, this.node(next));
+
+      for (int child = this.field(next, FIELD_FIRST_CHILD);
+           child != -1;
+           child = this.field(child, FIELD_NEXT_SIBLING)) {
+        queue.add(child);
+      }
+    }
+  }
+
+  private int append(
+    final int parent,
+    final A value)
+  {
+    if (this.size == Integer.MAX_VALUE) {
+      throw new IllegalStateException("Tree is full");
+    }
+
+    final int node = this.size;
+    if ((node >>> this.page_shift) == this.pages.size()) {
+      this.pages.add(
+        ByteBuffer.allocateDirect(this.record_size << this.page_shift)
+          .order(ByteOrder.nativeOrder()));
+    }
+
+    /*
+     * The value is written first so that a null value or a failing codec
+     * leaves the tree unchanged: The record is not counted or linked into
+     * its parent until it is complete.
+     */
+
+    Objects.requireNonNull(value, "Value");
+    final ByteBuffer page = this.page(node);
+    final int offset = this.offset(node);
+    this.codec.write(page, offset + FIELD_VALUE, value);
+
+    ++this.size;
+    page.putInt(offset + FIELD_PARENT, parent);
+    page.putInt(offset + FIELD_FIRST_CHILD, -1);
+    page.putInt(offset + FIELD_LAST_CHILD, -1);
+    page.putInt(offset + FIELD_NEXT_SIBLING, -1);
+
+    if (parent == -1) {
+      page.putInt(offset + FIELD_DEPTH, 0);
+    } else {
+      page.putInt(offset + FIELD_DEPTH, this.field(parent, FIELD_DEPTH) + 1);
+      final int last = this.field(parent, FIELD_LAST_CHILD);
+      if (last == -1) {
+        this.fieldSet(parent, FIELD_FIRST_CHILD, node);
+      } else {
+        this.fieldSet(last, FIELD_NEXT_SIBLING, node);
+      }
+      this.fieldSet(parent, FIELD_LAST_CHILD, node);
+    }
+
+    return node;
+  }
+
+  private ByteBuffer page(
+    final int node)
+  {
+    return this.pages.get(node >>> this.page_shift);
+  }
+
+  private int offset(
+    final int node)
+  {
+    return (node & this.page_mask) * this.record_size;
+  }
+
+  private int field(
+    final int node,
+    final int field)
+  {
+    return this.page(node).getInt(this.offset(node) + field);
+  }
+
+  private void fieldSet(
+    final int node,
+    final int field,
+    final int value)
+  {
+    this.page(node).putInt(this.offset(node) + field, value);
+  }
+
+  private void checkOpen()
+  {
+    if (this.closed) {
+      throw new IllegalStateException("Tree is closed");
+    }
+  }
+
+  private void checkNode(
+    final int node)
+  {
+    this.checkOpen();
+    Objects.checkIndex(node, this.size);
+  }
+
+  private static final class CopyItem<A>
+  {
+    private final int index;
+    private final Iterator<JOTreeNodeReadableType<A>> children;
+
+    CopyItem(
+      final int in_index,
+      final JOTreeNodeReadableType<A> in_node)
+    {
+      this.index = in_index;
+      this.children = in_node.childrenReadable().iterator();
+    }
+  }
+}
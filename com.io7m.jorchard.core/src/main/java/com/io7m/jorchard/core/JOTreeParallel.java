@@ -0,0 +1,403 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import com.io7m.jaffirm.core.Invariants;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>Parallel traversal functions shared by the node implementations.</p>
+ *
+ * <p>A traversal begins as a single task that walks the tree depth-first
+ * using a local stack of pending subtrees. Each time a task has visited
+ * {@code threshold} nodes and still has more than one pending subtree, it
+ * forks the shallowest half of its pending subtrees off as a new task. The
+ * shallowest pending subtrees are the ones most likely to be large, and so
+ * the work is split at subtree boundaries without needing to know the size of
+ * any subtree in advance. The threshold is therefore a count of visited
+ * nodes, not a minimum subtree size: Sizes are only cheap to obtain for some
+ * node implementations, and splitting on visits adapts to the shape of the
+ * tree as it is discovered.</p>
+ *
+ * <p>Parallel maps split work in the same way. A task that receives a pending
+ * subtree builds the corresponding output subtree as a detached root that
+ * already records its final depth, and the task that split the work attaches
+ * the results to their parents once it has finished its own work. Every
+ * pending subtree that a task splits off comes after all of the work that
+ * the task retains in a preorder traversal, so attaching the results in the
+ * reverse order of splitting preserves the order of children.</p>
+ *
+ * <p>If a function raises an exception, the task that observed it marks the
+ * traversal as failed, so that every other task stops before visiting another
+ * node, and then waits for the tasks it forked to stop. Forked tasks are not
+ * cancelled, because a cancelled task that is already running would no longer
+ * be waited for; a task that has not yet started simply returns at once. Each
+ * task waits for all of its forked tasks before returning or rethrowing, so no
+ * application of the function is still in progress once the exception reaches
+ * the caller.</p>
+ */
+
+final class JOTreeParallel
+{
+  /**
+   * The default number of nodes visited by a task before it will consider
+   * splitting off work.
+   */
+
+  static final int THRESHOLD_DEFAULT = 1024;
+
+  private JOTreeParallel()
+  {
+    throw new AssertionError("Unreachable code");
+  }
+
+  static <A, T> void forEachParallel(
+    final JOTreeNodeReadableType<A> node,
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f,
+    final ForkJoinPool pool,
+    final int threshold)
+  {
+    Objects.requireNonNull(node, "Node");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Objects.requireNonNull(pool, "Pool");
+    checkThreshold(threshold);
+
+    final Deque<Item<A>> stack = new ArrayDeque<>();
+    stack.push(new Item<>(0, node));
+    pool.invoke(
+      new ForEachTask<>(stack, context, f, threshold, new AtomicBoolean()));
+  }
+
+  static <A, T, B> JOTreeNodeType<B> mapParallel(
+    final JOTreeNodeReadableType<A> node,
+    final T context,
+    final JOTreeNodeMapFunctionType<A, T, B> f,
+    final ForkJoinPool pool,
+    final int threshold)
+  {
+    Objects.requireNonNull(node, "Node");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+    Objects.requireNonNull(pool, "Pool");
+    checkThreshold(threshold);
+
+    final Deque<MapItem<A, B>> stack = new ArrayDeque<>();
+    stack.push(new MapItem<>(0, null, node));
+
+    final List<JOTreeNode<B>> roots =
+      pool.invoke(
+        new MapTask<>(stack, context, f, threshold, new AtomicBoolean()));
+
+    Invariants.checkInvariant(
+      roots.size() == 1, "Exactly one root must be produced");
+
+    final JOTreeNode<B> root = roots.get(0);
+    JOTreeNode.subtreeSizesCompute(root);
+    return root;
+  }
+
+  private static void checkThreshold(
+    final int threshold)
+  {
+    if (threshold < 1) {
+      throw new IllegalArgumentException(
+        "Threshold must be positive (received " + threshold + ")");
+    }
+  }
+
+  /**
+   * Wait for each of the given tasks to stop, ignoring their results.
+   */
+
+  private static void joinQuietly(
+    final List<? extends ForkJoinTask<?>> tasks)
+  {
+    for (final ForkJoinTask<?> task : tasks) {
+      task.quietlyJoin();
+    }
+  }
+
+  private static final class ForEachTask<A, T> extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final transient Deque<Item<A>> stack;
+    private final transient T context;
+    private final transient JOTreeNodeForEachFunctionType<A, T> f;
+    private final transient AtomicBoolean failed;
+    private final int threshold;
+
+    ForEachTask(
+      final Deque<Item<A>> in_stack,
+      final T in_context,
+      final JOTreeNodeForEachFunctionType<A, T> in_f,
+      final int in_threshold,
+      final AtomicBoolean in_failed)
+    {
+      this.stack = Objects.requireNonNull(in_stack, "Stack");
+      this.context = Objects.requireNonNull(in_context, "Context");
+      this.f = Objects.requireNonNull(in_f, "Function");
+      this.failed = Objects.requireNonNull(in_failed, "Failed");
+      this.threshold = in_threshold;
+    }
+
+    @Override
+    protected void compute()
+    {
+      final List<ForEachTask<A, T>> forked = new ArrayList<>();
+
+      try {
+        int visited = 0;
+        while (!this.stack.isEmpty() && !this.failed.get()) {
+          final Item<A> next = this.stack.pop();
+          this.f.apply(this.context, next.depth, next.node);
+
+          final List<JOTreeNodeReadableType<A>> next_children =
+            next.node.childrenReadable();
+          for (final JOTreeNodeReadableType<A> child : next_children) {
+            this.stack.push(new Item<>(next.depth + 1, child));
+          }
+
+          ++visited;
+          if (visited >= this.threshold && this.stack.size() > 1) {
+            forked.add(this.split());
+            visited = 0;
+          }
+        }
+      } catch (final RuntimeException | Error e) {
+        this.failed.set(true);
+        joinQuietly(forked);
+        throw e;
+      }
+
+      for (int index = 0; index < forked.size(); ++index) {
+        try {
+          forked.get(index).join();
+        } catch (final RuntimeException | Error e) {
+          this.failed.set(true);
+          joinQuietly(forked.subList(index + 1, forked.size()));
+          throw e;
+        }
+      }
+    }
+
+    private ForEachTask<A, T> split()
+    {
+      final int count = this.stack.size() / 2;
+      final Deque<Item<A>> taken = new ArrayDeque<>(count);
+      for (int index = 0; index < count; ++index) {
+        taken.push(this.stack.removeLast());
+      }
+
+      final ForEachTask<A, T> task = new ForEachTask<>(
+        taken, this.context, this.f, this.threshold, this.failed);
+      task.fork();
+      return task;
+    }
+  }
+
+  private static final class MapTask<A, T, B>
+    extends RecursiveTask<List<JOTreeNode<B>>>
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final transient Deque<MapItem<A, B>> stack;
+    private final transient Deque<MapSplit<A, T, B>> splits;
+    private final transient T context;
+    private final transient JOTreeNodeMapFunctionType<A, T, B> f;
+    private final transient AtomicBoolean failed;
+    private final int threshold;
+
+    MapTask(
+      final Deque<MapItem<A, B>> in_stack,
+      final T in_context,
+      final JOTreeNodeMapFunctionType<A, T, B> in_f,
+      final int in_threshold,
+      final AtomicBoolean in_failed)
+    {
+      this.stack = Objects.requireNonNull(in_stack, "Stack");
+      this.context = Objects.requireNonNull(in_context, "Context");
+      this.f = Objects.requireNonNull(in_f, "Function");
+      this.failed = Objects.requireNonNull(in_failed, "Failed");
+      this.threshold = in_threshold;
+      this.splits = new ArrayDeque<>();
+    }
+
+    /**
+     * @return The roots of the output subtrees, one for each of the pending
+     * subtrees this task was created with, in preorder
+     */
+
+    @Override
+    protected List<JOTreeNode<B>> compute()
+    {
+      final List<JOTreeNode<B>> roots = new ArrayList<>(this.stack.size());
+
+      try {
+        int visited = 0;
+        while (!this.stack.isEmpty() && !this.failed.get()) {
+          final MapItem<A, B> next = this.stack.pop();
+          final B r = this.f.apply(this.context, next.depth, next.node);
+
+          final List<JOTreeNodeReadableType<A>> next_children =
+            next.node.childrenReadable();
+          final int count = next_children.size();
+
+          final JOTreeNode<B> result;
+          if (next.parent == null) {
+            result = JOTreeNode.createUncheckedAtDepth(r, next.depth, count);
+            roots.add(result);
+          } else {
+            result = JOTreeNode.createUnchecked(next.parent, r, count);
+          }
+
+          for (int index = count - 1; index >= 0; --index) {
+            this.stack.push(
+              new MapItem<>(next.depth + 1, result, next_children.get(index)));
+          }
+
+          ++visited;
+          if (visited >= this.threshold && this.stack.size() > 1) {
+            this.splits.push(this.split());
+            visited = 0;
+          }
+        }
+      } catch (final RuntimeException | Error e) {
+        this.failed.set(true);
+        this.joinSplits();
+        throw e;
+      }
+
+      /*
+       * A task that stopped early because another task failed returns
+       * partial results, but the failure always reaches the caller through
+       * the tasks that forked the failed task, so the partial results are
+       * discarded.
+       */
+
+      while (!this.splits.isEmpty()) {
+        final MapSplit<A, T, B> split = this.splits.pop();
+        final List<JOTreeNode<B>> results;
+        try {
+          results = split.task.join();
+        } catch (final RuntimeException | Error e) {
+          this.failed.set(true);
+          this.joinSplits();
+          throw e;
+        }
+
+        for (int index = 0; index < results.size(); ++index) {
+          final JOTreeNode<B> parent = split.parents.get(index);
+          final JOTreeNode<B> result = results.get(index);
+          if (parent == null) {
+            roots.add(result);
+          } else {
+            JOTreeNode.childAttachUnchecked(parent, result);
+          }
+        }
+      }
+
+      return roots;
+    }
+
+    private void joinSplits()
+    {
+      final List<MapTask<A, T, B>> tasks = new ArrayList<>(this.splits.size());
+      for (final MapSplit<A, T, B> split : this.splits) {
+        tasks.add(split.task);
+      }
+      this.splits.clear();
+      joinQuietly(tasks);
+    }
+
+    private MapSplit<A, T, B> split()
+    {
+      final int count = this.stack.size() / 2;
+      final Deque<MapItem<A, B>> taken = new ArrayDeque<>(count);
+      final List<JOTreeNode<B>> parents = new ArrayList<>(count);
+      for (int index = 0; index < count; ++index) {
+        final MapItem<A, B> item = this.stack.removeLast();
+        parents.add(item.parent);
+        taken.push(new MapItem<>(item.depth, null, item.node));
+      }
+      Collections.reverse(parents);
+
+      final MapTask<A, T, B> task = new MapTask<>(
+        taken, this.context, this.f, this.threshold, this.failed);
+      task.fork();
+      return new MapSplit<>(task, parents);
+    }
+  }
+
+  private static final class MapSplit<A, T, B>
+  {
+    private final MapTask<A, T, B> task;
+    private final List<JOTreeNode<B>> parents;
+
+    MapSplit(
+      final MapTask<A, T, B> in_task,
+      final List<JOTreeNode<B>> in_parents)
+    {
+      this.task = Objects.requireNonNull(in_task, "Task");
+      this.parents = Objects.requireNonNull(in_parents, "Parents");
+    }
+  }
+
+  private static final class MapItem<A, B>
+  {
+    private final int depth;
+    private final JOTreeNode<B> parent;
+    private final JOTreeNodeReadableType<A> node;
+
+    MapItem(
+      final int in_depth,
+      final JOTreeNode<B> in_parent,
+      final JOTreeNodeReadableType<A> in_node)
+    {
+      this.depth = in_depth;
+      this.parent = in_parent;
+      this.node = Objects.requireNonNull(in_node, "Node");
+    }
+  }
+
+  private static final class Item<A>
+  {
+    private final int depth;
+    private final JOTreeNodeReadableType<A> node;
+
+    Item(
+      final int in_depth,
+      final JOTreeNodeReadableType<A> in_node)
+    {
+      this.depth = in_depth;
+      this.node = Objects.requireNonNull(in_node, "Node");
+    }
+  }
+}
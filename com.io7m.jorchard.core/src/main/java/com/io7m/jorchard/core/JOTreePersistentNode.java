@@ -0,0 +1,460 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.UnaryOperator;
+
+/**
+ * <p>An immutable tree node.</p>
+ *
+ * <p>Each update operation returns a new node and leaves the original
+ * unchanged. An update to a node at a given path copies only the nodes on the
+ * path from this node to the updated node; every other subtree is shared
+ * between the original and the updated tree. Many versions of a large tree can
+ * therefore be retained at the cost of only the nodes that differ between
+ * them.</p>
+ *
+ * <p>Because a subtree may be shared between any number of trees, persistent
+ * nodes do not have parents: {@link #parentReadable()} is always empty, and
+ * {@link #depth()} is always {@code 0}. A path is an array of child indices,
+ * each selecting a child of the node reached by the preceding indices. The
+ * empty path refers to the node on which an operation is called.</p>
+ *
+ * @param <A> The type of values contained within the tree
+ */
+
+public final class JOTreePersistentNode<A> implements JOTreeNodeReadableType<A>
+{
+  private final A value;
+  private final List<JOTreePersistentNode<A>> children;
+
+  private JOTreePersistentNode(
+    final A in_value,
+    final List<JOTreePersistentNode<A>> in_children)
+  {
+    this.value = Objects.requireNonNull(in_value, "Value");
+    this.children = Objects.requireNonNull(in_children, "Children");
+  }
+
+  /**
+   * Create a new node with the given value and no children.
+   *
+   * @param in_value The value
+   * @param <A>      The type of values
+   *
+   * @return A new node
+   */
+
+  public static <A> JOTreePersistentNode<A> create(
+    final A in_value)
+  {
+    return new JOTreePersistentNode<>(in_value, List.of());
+  }
+
+  /**
+   * Create a new node with the given value and children.
+   *
+   * @param in_value    The value
+   * @param in_children The children
+   * @param <A>         The type of values
+   *
+   * @return A new node
+   */
+
+  public static <A> JOTreePersistentNode<A> create(
+    final A in_value,
+    final List<JOTreePersistentNode<A>> in_children)
+  {
+    Objects.requireNonNull(in_children, "Children");
+    if (in_children.isEmpty()) {
+      return create(in_value);
+    }
+
+    final ArrayList<JOTreePersistentNode<A>> copy =
+      new ArrayList<>(in_children.size());
+    for (final JOTreePersistentNode<A> child : in_children) {
+      copy.add(Objects.requireNonNull(child, "Child"));
+    }
+    return new JOTreePersistentNode<>(
+      in_value, Collections.unmodifiableList(copy));
+  }
+
+  /**
+   * Create a persistent copy of the tree rooted at {@code node}.
+   *
+   * @param node The root of the tree
+   * @param <A>  The type of values
+   *
+   * @return A new node
+   */
+
+  public static <A> JOTreePersistentNode<A> copyOf(
+    final JOTreeNodeReadableType<A> node)
+  {
+    Objects.requireNonNull(node, "Node");
+
+    final Deque<CopyItem<A>> stack = new ArrayDeque<>();
+    stack.push(new CopyItem<>(node));
+
+    while (true) {
+      final CopyItem<A> top = stack.peek();
+      if (top.iterator.hasNext()) {
+        stack.push(new CopyItem<>(top.iterator.next()));
+        continue;
+      }
+
+      stack.pop();
+      final JOTreePersistentNode<A> result;
+      if (top.copied.isEmpty()) {
+        result = create(top.node.value());
+      } else {
+        result = new JOTreePersistentNode<>(
+          top.node.value(), Collections.unmodifiableList(top.copied));
+      }
+      final CopyItem<A> parent = stack.peek();
+      if (parent == null) {
+        return result;
+      }
+      parent.copied.add(result);
+    }
+  }
+
+  /**
+   * @return The children of this node
+   */
+
+  public List<JOTreePersistentNode<A>> children()
+  {
+    return this.children;
+  }
+
+  /**
+   * @param path The path to a node
+   *
+   * @return The node at the given path
+   *
+   * @throws IndexOutOfBoundsException If the path does not refer to a node
+   */
+
+  public JOTreePersistentNode<A> nodeAt(
+    final int[] path)
+  {
+    Objects.requireNonNull(path, "Path");
+
+    JOTreePersistentNode<A> current = this;
+    for (final int index : path) {
+      current = current.children.get(index);
+    }
+    return current;
+  }
+
+  /**
+   * @param in_value The new value
+   *
+   * @return A copy of this node with the given value
+   */
+
+  public JOTreePersistentNode<A> withValue(
+    final A in_value)
+  {
+    return new JOTreePersistentNode<>(in_value, this.children);
+  }
+
+  /**
+   * @param child The new child
+   *
+   * @return A copy of this node with {@code child} added after the existing
+   * children
+   */
+
+  public JOTreePersistentNode<A> withChildAdded(
+    final JOTreePersistentNode<A> child)
+  {
+    Objects.requireNonNull(child, "Child");
+
+    final ArrayList<JOTreePersistentNode<A>> copy =
+      new ArrayList<>(this.children.size() + 1);
+    copy.addAll(this.children);
+    copy.add(child);
+    return new JOTreePersistentNode<>(
+      this.value, Collections.unmodifiableList(copy));
+  }
+
+  /**
+   * @param index The index of the child to remove
+   *
+   * @return A copy of this node without the child at {@code index}
+   *
+   * @throws IndexOutOfBoundsException If there is no child at {@code index}
+   */
+
+  public JOTreePersistentNode<A> withChildRemoved(
+    final int index)
+  {
+    Objects.checkIndex(index, this.children.size());
+    if (this.children.size() == 1) {
+      return create(this.value);
+    }
+
+    final int size = this.children.size();
+    final ArrayList<JOTreePersistentNode<A>> copy = new ArrayList<>(size - 1);
+    copy.addAll(this.children.subList(0, index));
+    copy.addAll(this.children.subList(index + 1, size));
+    return new JOTreePersistentNode<>(
+      this.value, Collections.unmodifiableList(copy));
+  }
+
+  /**
+   * @param index The index of the child to replace
+   * @param child The new child
+   *
+   * @return A copy of this node with the child at {@code index} replaced by
+   * {@code child}
+   *
+   * @throws IndexOutOfBoundsException If there is no child at {@code index}
+   */
+
+  public JOTreePersistentNode<A> withChildReplaced(
+    final int index,
+    final JOTreePersistentNode<A> child)
+  {
+    Objects.requireNonNull(child, "Child");
+    if (this.children.get(index) == child) {
+      return this;
+    }
+
+    final ArrayList<JOTreePersistentNode<A>> copy =
+      new ArrayList<>(this.children);
+    copy.set(index, child);
+    return new JOTreePersistentNode<>(
+      this.value, Collections.unmodifiableList(copy));
+  }
+
+  /**
+   * Replace the node at {@code path} with the result of applying {@code f} to
+   * it.
+   *
+   * @param path The path to a node
+   * @param f    The update function
+   *
+   * @return A copy of this tree with the node at {@code path} updated
+   *
+   * @throws IndexOutOfBoundsException If the path does not refer to a node
+   */
+
+  public JOTreePersistentNode<A> withUpdateAt(
+    final int[] path,
+    final UnaryOperator<JOTreePersistentNode<A>> f)
+  {
+    Objects.requireNonNull(path, "Path");
+    Objects.requireNonNull(f, "Function");
+
+    final List<JOTreePersistentNode<A>> spine = new ArrayList<>(path.length);
+    JOTreePersistentNode<A> current = this;
+    for (final int index : path) {
+      spine.add(current);
+      current = current.children.get(index);
+    }
+
+    JOTreePersistentNode<A> result =
+      Objects.requireNonNull(f.apply(current), "Result");
+    for (int depth = path.length - 1; depth >= 0; --depth) {
+      result = spine.get(depth).withChildReplaced(path[depth], result);
+    }
+    return result;
+  }
+
+  /**
+   * @param path     The path to a node
+   * @param in_value The new value
+   *
+   * @return A copy of this tree with the value of the node at {@code path}
+   * replaced
+   *
+   * @throws IndexOutOfBoundsException If the path does not refer to a node
+   */
+
+  public JOTreePersistentNode<A> withValueAt(
+    final int[] path,
+    final A in_value)
+  {
+    Objects.requireNonNull(in_value, "Value");
+    return this.withUpdateAt(path, node -> node.withValue(in_value));
+  }
+
+  /**
+   * @param path  The path to a node
+   * @param child The new child
+   *
+   * @return A copy of this tree with {@code child} added to the node at
+   * {@code path}
+   *
+   * @throws IndexOutOfBoundsException If the path does not refer to a node
+   */
+
+  public JOTreePersistentNode<A> withChildAddedAt(
+    final int[] path,
+    final JOTreePersistentNode<A> child)
+  {
+    Objects.requireNonNull(child, "Child");
+    return this.withUpdateAt(path, node -> node.withChildAdded(child));
+  }
+
+  /**
+   * @param path  The path to a node
+   * @param index The index of the child to remove
+   *
+   * @return A copy of this tree with the child at {@code index} removed from
+   * the node at {@code path}
+   *
+   * @throws IndexOutOfBoundsException If the path does not refer to a node
+   */
+
+  public JOTreePersistentNode<A> withChildRemovedAt(
+    final int[] path,
+    final int index)
+  {
+    return this.withUpdateAt(path, node -> node.withChildRemoved(index));
+  }
+
+  @Override
+  public boolean isDetachAllowed()
+  {
+    return false;
+  }
+
+  @Override
+  public A value()
+  {
+    return this.value;
+  }
+
+  @Override
+  public Optional<JOTreeNodeReadableType<A>> parentReadable()
+  {
+    return Optional.empty();
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public List<JOTreeNodeReadableType<A>> childrenReadable()
+  {
+    /*
+     * The list is unmodifiable, so it is safe to view it as a list of a
+     * supertype.
+     */
+
+    return (List<JOTreeNodeReadableType<A>>) (List<?>) this.children;
+  }
+
+  @Override
+  public int depth()
+  {
+    return 0;
+  }
+
+  /**
+   * Persistent nodes do not have parents, so this node is a descendant of
+   * {@code other} iff it is reachable from {@code other}. This requires a
+   * traversal of the subtree rooted at {@code other}.
+   *
+   * @param other A node
+   *
+   * @return {@code true} iff this node is reachable from {@code other}
+   */
+
+  @Override
+  public boolean isDescendantOf(
+    final JOTreeNodeReadableType<A> other)
+  {
+    Objects.requireNonNull(other, "Other");
+
+    final Deque<JOTreeNodeReadableType<A>> stack = new ArrayDeque<>();
+    stack.push(other);
+    while (!stack.isEmpty()) {
+      final JOTreeNodeReadableType<A> next = stack.pop();
+      if (next == this) {
+        return true;
+      }
+      for (final JOTreeNodeReadableType<A> child : next.childrenReadable()) {
+        stack.push(child);
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public <T> void forEachDepthFirst(
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    JOTreeTraversal.forEachDepthFirst(this, context, f);
+  }
+
+  @Override
+  public <T> void forEachBreadthFirst(
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    JOTreeTraversal.forEachBreadthFirst(this, context, f);
+  }
+
+  @Override
+  public <T, B> JOTreeNodeType<B> mapDepthFirst(
+    final T context,
+    final JOTreeNodeMapFunctionType<A, T, B> f)
+  {
+    return JOTreeTraversal.mapDepthFirst(this, context, f);
+  }
+
+  @Override
+  public <T, B> JOTreeNodeType<B> mapBreadthFirst(
+    final T context,
+    final JOTreeNodeMapFunctionType<A, T, B> f)
+  {
+    return JOTreeTraversal.mapBreadthFirst(this, context, f);
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[JOTreePersistentNode " + this.value + "]";
+  }
+
+  private static final class CopyItem<A>
+  {
+    private final JOTreeNodeReadableType<A> node;
+    private final Iterator<JOTreeNodeReadableType<A>> iterator;
+    private final List<JOTreePersistentNode<A>> copied;
+
+    CopyItem(
+      final JOTreeNodeReadableType<A> in_node)
+    {
+      this.node = Objects.requireNonNull(in_node, "Node");
+      this.iterator = in_node.childrenReadable().iterator();
+      this.copied = new ArrayList<>(in_node.childrenReadable().size());
+    }
+  }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * <p>A spliterator that yields the nodes of a tree in breadth-first order,
+ * with children in order.</p>
+ *
+ * <p>A prefix of a breadth-first traversal does not correspond to any set of
+ * subtrees, so this spliterator splits by moving batches of nodes from the
+ * front of the traversal into arrays, in the same manner as the spliterators
+ * the JDK provides for iterators. Batches grow arithmetically so that large
+ * trees are split into a reasonable number of pieces.</p>
+ *
+ * <p>The size of a tree is not known in advance. The first request for an
+ * estimate sums the sizes of the pending subtrees if every one of them is
+ * rooted at a {@link JOTreeNode}, which records the size of each subtree, and
+ * otherwise reports the size as unknown ({@link Long#MAX_VALUE}).</p>
+ *
+ * @param <A> The type of values
+ */
+
+final class JOTreeSpliteratorBreadthFirst<A>
+  implements Spliterator<JOTreeNodeReadableType<A>>
+{
+  private static final int CHARACTERISTICS =
+    Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+
+  private static final long ESTIMATE_UNKNOWN = -1L;
+  private static final int BATCH_UNIT = 1 << 10;
+  private static final int BATCH_MAXIMUM = 1 << 25;
+
+  private final Queue<JOTreeNodeReadableType<A>> queue;
+  private JOTreeNodeReadableType<A> expand;
+  private long estimate;
+  private int batch;
+
+  private JOTreeSpliteratorBreadthFirst(
+    final Queue<JOTreeNodeReadableType<A>> in_queue)
+  {
+    this.queue = Objects.requireNonNull(in_queue, "Queue");
+    this.expand = null;
+    this.estimate = ESTIMATE_UNKNOWN;
+    this.batch = 0;
+  }
+
+  static <A> JOTreeSpliteratorBreadthFirst<A> create(
+    final JOTreeNodeReadableType<A> root)
+  {
+    Objects.requireNonNull(root, "Root");
+    final Queue<JOTreeNodeReadableType<A>> queue = new ArrayDeque<>();
+    queue.add(root);
+    return new JOTreeSpliteratorBreadthFirst<>(queue);
+  }
+
+  @Override
+  public boolean tryAdvance(
+    final Consumer<? super JOTreeNodeReadableType<A>> action)
+  {
+    Objects.requireNonNull(action, "Action");
+
+    final JOTreeNodeReadableType<A> next = this.next();
+    if (next == null) {
+      return false;
+    }
+    action.accept(next);
+    return true;
+  }
+
+  @Override
+  public Spliterator<JOTreeNodeReadableType<A>> trySplit()
+  {
+    this.expandPending();
+
+    if (this.queue.isEmpty()) {
+      return null;
+    }
+
+    final int size = Math.min(this.batch + BATCH_UNIT, BATCH_MAXIMUM);
+    final Object[] nodes = new Object[size];
+    int count = 0;
+    while (count < size) {
+      final JOTreeNodeReadableType<A> next = this.next();
+      if (next == null) {
+        break;
+      }
+      nodes[count] = next;
+      ++count;
+    }
+
+    this.batch = count;
+    return Spliterators.spliterator(nodes, 0, count, CHARACTERISTICS);
+  }
+
+  @Override
+  public long estimateSize()
+  {
+    this.expandPending();
+
+    if (this.queue.isEmpty()) {
+      return 0L;
+    }
+
+    if (this.estimate == ESTIMATE_UNKNOWN) {
+      long total = 0L;
+      for (final JOTreeNodeReadableType<A> node : this.queue) {
+        if (node instanceof JOTreeNode<A> tree_node) {
+          total += tree_node.subtreeSize();
+        } else {
+          total = Long.MAX_VALUE;
+          break;
+        }
+      }
+      this.estimate = total;
+    }
+    return Math.max(1L, this.estimate);
+  }
+
+  @Override
+  public int characteristics()
+  {
+    return CHARACTERISTICS;
+  }
+
+  /**
+   * The children of the most recently yielded node are not queued until
+   * more nodes are requested, so that a consumer that stops early does not
+   * cause the children of the last node to be examined.
+   */
+
+  private void expandPending()
+  {
+    final JOTreeNodeReadableType<A> node = this.expand;
+    if (node != null) {
+      this.expand = null;
+      this.queue.addAll(node.childrenReadable());
+    }
+  }
+
+  private JOTreeNodeReadableType<A> next()
+  {
+    this.expandPending();
+
+    final JOTreeNodeReadableType<A> next = this.queue.poll();
+    if (next != null) {
+      this.expand = next;
+      if (this.estimate > 0L && this.estimate != Long.MAX_VALUE) {
+        --this.estimate;
+      }
+    }
+    return next;
+  }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * <p>A spliterator that yields the nodes of a tree in depth-first preorder,
+ * with children in order.</p>
+ *
+ * <p>The spliterator holds a stack of pending entries, each of which is
+ * either a whole subtree or a single node whose children have already been
+ * pushed as entries of their own. Entries nearer the top of the stack come
+ * first in preorder, so splitting hands the upper half of the stack to a new
+ * spliterator as a prefix and keeps the lower half. A spliterator holding a
+ * single subtree splits it into its root and the subtrees of its children.
+ * Work is therefore always divided at subtree boundaries.</p>
+ *
+ * <p>The size of a tree is not known in advance. The first request for an
+ * estimate sums the sizes of the pending subtrees, and the estimate is
+ * divided between the halves when splitting. The sizes are only used if
+ * every pending subtree is rooted at a {@link JOTreeNode}, which records the
+ * size of each subtree; otherwise, counting the nodes would cost a full
+ * traversal (and would force a lazily loaded tree to be loaded), so the size
+ * is reported as unknown ({@link Long#MAX_VALUE}).</p>
+ *
+ * @param <A> The type of values
+ */
+
+final class JOTreeSpliteratorDepthFirst<A>
+  implements Spliterator<JOTreeNodeReadableType<A>>
+{
+  private static final int CHARACTERISTICS =
+    Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL;
+
+  private static final long ESTIMATE_UNKNOWN = -1L;
+
+  private final Deque<Entry<A>> stack;
+  private JOTreeNodeReadableType<A> expand;
+  private long estimate;
+
+  private JOTreeSpliteratorDepthFirst(
+    final Deque<Entry<A>> in_stack,
+    final long in_estimate)
+  {
+    this.stack = Objects.requireNonNull(in_stack, "Stack");
+    this.expand = null;
+    this.estimate = in_estimate;
+  }
+
+  static <A> JOTreeSpliteratorDepthFirst<A> create(
+    final JOTreeNodeReadableType<A> root)
+  {
+    Objects.requireNonNull(root, "Root");
+    final Deque<Entry<A>> stack = new ArrayDeque<>();
+    stack.push(new Entry<>(root, true));
+    return new JOTreeSpliteratorDepthFirst<>(stack, ESTIMATE_UNKNOWN);
+  }
+
+  @Override
+  public boolean tryAdvance(
+    final Consumer<? super JOTreeNodeReadableType<A>> action)
+  {
+    Objects.requireNonNull(action, "Action");
+    this.expandPending();
+
+    final Entry<A> next = this.stack.poll();
+    if (next == null) {
+      return false;
+    }
+
+    if (next.subtree) {
+      this.expand = next.node;
+    }
+    if (this.estimate > 0L && this.estimate != Long.MAX_VALUE) {
+      --this.estimate;
+    }
+    action.accept(next.node);
+    return true;
+  }
+
+  @Override
+  public Spliterator<JOTreeNodeReadableType<A>> trySplit()
+  {
+    this.expandPending();
+
+    if (this.stack.size() == 1) {
+      final Entry<A> top = this.stack.peek();
+      if (!top.subtree || top.node.childrenReadable().isEmpty()) {
+        return null;
+      }
+      this.stack.pop();
+      this.pushChildren(top.node);
+      this.stack.push(new Entry<>(top.node, false));
+    }
+
+    final int count = this.stack.size() / 2;
+    if (count == 0) {
+      return null;
+    }
+
+    final Deque<Entry<A>> prefix = new ArrayDeque<>(count);
+    for (int index = 0; index < count; ++index) {
+      prefix.addLast(this.stack.pop());
+    }
+
+    long prefix_estimate = ESTIMATE_UNKNOWN;
+    if (this.estimate == Long.MAX_VALUE) {
+      prefix_estimate = Long.MAX_VALUE;
+    } else if (this.estimate != ESTIMATE_UNKNOWN) {
+      prefix_estimate = this.estimate / 2L;
+      this.estimate -= prefix_estimate;
+    }
+    return new JOTreeSpliteratorDepthFirst<>(prefix, prefix_estimate);
+  }
+
+  @Override
+  public long estimateSize()
+  {
+    this.expandPending();
+
+    if (this.stack.isEmpty()) {
+      return 0L;
+    }
+
+    if (this.estimate == ESTIMATE_UNKNOWN) {
+      long total = 0L;
+      for (final Entry<A> entry : this.stack) {
+        if (!entry.subtree) {
+          total += 1L;
+        } else if (entry.node instanceof JOTreeNode<A> node) {
+          total += node.subtreeSize();
+        } else {
+          total = Long.MAX_VALUE;
+          break;
+        }
+      }
+      this.estimate = total;
+    }
+    return Math.max(1L, this.estimate);
+  }
+
+  @Override
+  public int characteristics()
+  {
+    return CHARACTERISTICS;
+  }
+
+  /**
+   * The children of the most recently yielded node are not pushed until
+   * more nodes are requested, so that a consumer that stops early does not
+   * cause the children of the last node to be examined.
+   */
+
+  private void expandPending()
+  {
+    final JOTreeNodeReadableType<A> node = this.expand;
+    if (node != null) {
+      this.expand = null;
+      this.pushChildren(node);
+    }
+  }
+
+  private void pushChildren(
+    final JOTreeNodeReadableType<A> node)
+  {
+    final List<JOTreeNodeReadableType<A>> children = node.childrenReadable();
+    for (int index = children.size() - 1; index >= 0; --index) {
+      this.stack.push(new Entry<>(children.get(index), true));
+    }
+  }
+
+  private static final class Entry<A>
+  {
+    private final JOTreeNodeReadableType<A> node;
+    private final boolean subtree;
+
+    Entry(
+      final JOTreeNodeReadableType<A> in_node,
+      final boolean in_subtree)
+    {
+      this.node = Objects.requireNonNull(in_node, "Node");
+      this.subtree = in_subtree;
+    }
+  }
+}
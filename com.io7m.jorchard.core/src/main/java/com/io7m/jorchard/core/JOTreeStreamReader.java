@@ -0,0 +1,310 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Objects;
+
+/**
+ * <p>A reader that decodes trees written by {@link JOTreeStreamWriter}.</p>
+ *
+ * <p>The tree is decoded in a single pass. Each node is attached to its
+ * parent as it is decoded; as every decoded node is new, no cycle or detach
+ * checks are required. The reader reads from the channel in blocks, and so
+ * may consume bytes beyond the end of the encoded tree. Readers may be reused,
+ * but are not thread-safe.</p>
+ *
+ * <p>Sizes and counts decoded from the stream are not trusted: The list of
+ * children of each node is presized to at most
+ * {@link #CHILDREN_CAPACITY_MAXIMUM} entries and grows as children are
+ * decoded, the decoding buffer grows only as the bytes of a value arrive, and
+ * values larger than a configurable maximum are rejected. A truncated or
+ * malicious stream therefore results in an {@link IOException} rather than an
+ * attempt to allocate memory for data that does not exist.</p>
+ *
+ * @param <A> The type of values
+ */
+
+public final class JOTreeStreamReader<A>
+{
+  /**
+   * The maximum number of children for which space is reserved in advance
+   * when a node is decoded.
+   */
+
+  public static final int CHILDREN_CAPACITY_MAXIMUM = 1024;
+
+  /**
+   * The default maximum size in bytes of an encoded value.
+   */
+
+  public static final int VALUE_SIZE_MAXIMUM_DEFAULT = 16 * 1024 * 1024;
+
+  private final JOTreeValueCodecType<A> codec;
+  private final int value_size_maximum;
+  private ByteBuffer buffer;
+
+  private JOTreeStreamReader(
+    final JOTreeValueCodecType<A> in_codec,
+    final int in_buffer_size,
+    final int in_value_size_maximum)
+  {
+    this.codec = Objects.requireNonNull(in_codec, "Codec");
+    if (in_buffer_size < 16) {
+      throw new IllegalArgumentException("Buffer size must be at least 16");
+    }
+    if (in_value_size_maximum < 0) {
+      throw new IllegalArgumentException(
+        "Maximum value size must be non-negative");
+    }
+    this.buffer = ByteBuffer.allocate(in_buffer_size);
+    this.value_size_maximum = in_value_size_maximum;
+  }
+
+  /**
+   * Create a new reader with a default buffer size.
+   *
+   * @param codec The codec used to decode values
+   * @param <A>   The type of values
+   *
+   * @return A new reader
+   */
+
+  public static <A> JOTreeStreamReader<A> create(
+    final JOTreeValueCodecType<A> codec)
+  {
+    return createWithBufferSize(codec, JOTreeStreamWriter.BUFFER_SIZE_DEFAULT);
+  }
+
+  /**
+   * Create a new reader.
+   *
+   * @param codec       The codec used to decode values
+   * @param buffer_size The initial size of the decoding buffer in bytes
+   * @param <A>         The type of values
+   *
+   * @return A new reader
+   */
+
+  public static <A> JOTreeStreamReader<A> createWithBufferSize(
+    final JOTreeValueCodecType<A> codec,
+    final int buffer_size)
+  {
+    return createWithLimits(codec, buffer_size, VALUE_SIZE_MAXIMUM_DEFAULT);
+  }
+
+  /**
+   * Create a new reader.
+   *
+   * @param codec              The codec used to decode values
+   * @param buffer_size        The initial size of the decoding buffer in bytes
+   * @param value_size_maximum The maximum size in bytes of an encoded value
+   * @param <A>                The type of values
+   *
+   * @return A new reader
+   */
+
+  public static <A> JOTreeStreamReader<A> createWithLimits(
+    final JOTreeValueCodecType<A> codec,
+    final int buffer_size,
+    final int value_size_maximum)
+  {
+    return new JOTreeStreamReader<>(codec, buffer_size, value_size_maximum);
+  }
+
+  private static IOException errorFormat(
+    final String message,
+    final long expected,
+    final long received)
+  {
+    final StringBuilder sb = new StringBuilder(message);
+    final String separator = System.lineSeparator();
+    sb.append(separator);
+    sb.append("  Expected: ");
+    sb.append(expected);
+    sb.append(separator);
+    sb.append("  Received: ");
+    sb.append(received);
+    sb.append(separator);
+    return new IOException(sb.toString());
+  }
+
+  /**
+   * Decode a tree from {@code channel}.
+   *
+   * @param channel The input channel
+   *
+   * @return The root of the decoded tree
+   *
+   * @throws IOException On I/O errors, or if the input is not a valid
+   *                     encoding of a tree
+   */
+
+  public JOTreeNodeType<A> read(
+    final ReadableByteChannel channel)
+    throws IOException
+  {
+    Objects.requireNonNull(channel, "Channel");
+
+    this.buffer.clear();
+    this.buffer.flip();
+
+    this.require(channel, 8);
+    final int magic = this.buffer.getInt();
+    if (magic != JOTreeStreamWriter.MAGIC) {
+      throw errorFormat(
+        "Unrecognized stream format.", JOTreeStreamWriter.MAGIC, magic);
+    }
+    final int version = this.buffer.getInt();
+    if (version != JOTreeStreamWriter.VERSION) {
+      throw errorFormat(
+        "Unsupported format version.", JOTreeStreamWriter.VERSION, version);
+    }
+
+    final A root_value = this.readValue(channel);
+    final int root_count = this.readVarint(channel);
+    final JOTreeNode<A> root =
+      JOTreeNode.createUnchecked(null, root_value, capacity(root_count));
+
+    final Deque<Frame<A>> stack = new ArrayDeque<>();
+    if (root_count > 0) {
+      stack.push(new Frame<>(root, root_count));
+    }
+
+    while (!stack.isEmpty()) {
+      final Frame<A> top = stack.peek();
+      --top.remaining;
+      if (top.remaining == 0) {
+        stack.pop();
+      }
+
+      final A value = this.readValue(channel);
+      final int count = this.readVarint(channel);
+      final JOTreeNode<A> node =
+        JOTreeNode.createUnchecked(top.node, value, capacity(count));
+      if (count > 0) {
+        stack.push(new Frame<>(node, count));
+      }
+    }
+
+    JOTreeNode.subtreeSizesCompute(root);
+    return root;
+  }
+
+  private static int capacity(
+    final int count)
+  {
+    return Math.min(count, CHILDREN_CAPACITY_MAXIMUM);
+  }
+
+  private A readValue(
+    final ReadableByteChannel channel)
+    throws IOException
+  {
+    final int size = this.readVarint(channel);
+    if (size > this.value_size_maximum) {
+      throw errorFormat(
+        "Encoded value is too large.", this.value_size_maximum, size);
+    }
+
+    this.require(channel, size);
+    final int position = this.buffer.position();
+    final ByteBuffer slice = this.buffer.slice(position, size);
+    this.buffer.position(position + size);
+    return this.codec.read(slice);
+  }
+
+  private int readVarint(
+    final ReadableByteChannel channel)
+    throws IOException
+  {
+    int result = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      this.require(channel, 1);
+      final int b = this.buffer.get() & 0xff;
+      result |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        if (result < 0 || (shift == 28 && b > 0x07)) {
+          throw new IOException("Variable-length integer is out of range");
+        }
+        return result;
+      }
+    }
+    throw new IOException("Variable-length integer is too long");
+  }
+
+  private void require(
+    final ReadableByteChannel channel,
+    final int size)
+    throws IOException
+  {
+    if (this.buffer.remaining() >= size) {
+      return;
+    }
+
+    this.buffer.compact();
+    try {
+      while (this.buffer.position() < size) {
+        if (!this.buffer.hasRemaining()) {
+          this.grow(size);
+        }
+        if (channel.read(this.buffer) < 0) {
+          throw new EOFException(
+            "Unexpected end of stream (required " + size + " bytes)");
+        }
+      }
+    } finally {
+      this.buffer.flip();
+    }
+  }
+
+  /**
+   * Double the capacity of the buffer, up to {@code size} bytes. The buffer
+   * must be in the state left by {@link ByteBuffer#compact()}.
+   */
+
+  private void grow(
+    final int size)
+  {
+    final int capacity =
+      (int) Math.min(size, (long) this.buffer.capacity() * 2L);
+    final ByteBuffer larger = ByteBuffer.allocate(capacity);
+    this.buffer.flip();
+    larger.put(this.buffer);
+    this.buffer = larger;
+  }
+
+  private static final class Frame<A>
+  {
+    private final JOTreeNode<A> node;
+    private int remaining;
+
+    Frame(
+      final JOTreeNode<A> in_node,
+      final int in_remaining)
+    {
+      this.node = in_node;
+      this.remaining = in_remaining;
+    }
+  }
+}
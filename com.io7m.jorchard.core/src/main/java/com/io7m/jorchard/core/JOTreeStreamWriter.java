@@ -0,0 +1,215 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>A writer that encodes trees to a channel.</p>
+ *
+ * <p>The encoding consists of the magic number {@code 0x4A4F5453} and the
+ * format version {@code 1} as big-endian 32-bit integers, followed by each node
+ * of the tree in preorder. Each node is encoded as the size of its value in
+ * bytes, the value itself as produced by a {@link JOTreeValueCodecType}, and
+ * the number of children of the node. Sizes and counts are encoded as unsigned
+ * LEB128 variable-length integers.</p>
+ *
+ * <p>The writer encodes into a fixed-size buffer that is written to the
+ * channel whenever it fills, so the complete encoding is never held in memory.
+ * Writers may be reused, but are not thread-safe.</p>
+ *
+ * @param <A> The type of values
+ * @see JOTreeStreamReader
+ */
+
+public final class JOTreeStreamWriter<A>
+{
+  static final int MAGIC = 0x4A4F5453;
+  static final int VERSION = 1;
+  static final int BUFFER_SIZE_DEFAULT = 65536;
+  static final int VARINT_SIZE_MAXIMUM = 5;
+
+  private final JOTreeValueCodecType<A> codec;
+  private final ByteBuffer buffer;
+
+  private JOTreeStreamWriter(
+    final JOTreeValueCodecType<A> in_codec,
+    final int in_buffer_size)
+  {
+    this.codec = Objects.requireNonNull(in_codec, "Codec");
+    if (in_buffer_size < 16) {
+      throw new IllegalArgumentException("Buffer size must be at least 16");
+    }
+    this.buffer = ByteBuffer.allocate(in_buffer_size);
+  }
+
+  /**
+   * Create a new writer with a default buffer size.
+   *
+   * @param codec The codec used to encode values
+   * @param <A>   The type of values
+   *
+   * @return A new writer
+   */
+
+  public static <A> JOTreeStreamWriter<A> create(
+    final JOTreeValueCodecType<A> codec)
+  {
+    return new JOTreeStreamWriter<>(codec, BUFFER_SIZE_DEFAULT);
+  }
+
+  /**
+   * Create a new writer.
+   *
+   * @param codec       The codec used to encode values
+   * @param buffer_size The size of the encoding buffer in bytes
+   * @param <A>         The type of values
+   *
+   * @return A new writer
+   */
+
+  public static <A> JOTreeStreamWriter<A> createWithBufferSize(
+    final JOTreeValueCodecType<A> codec,
+    final int buffer_size)
+  {
+    return new JOTreeStreamWriter<>(codec, buffer_size);
+  }
+
+  /**
+   * Encode the tree rooted at {@code root} to {@code channel}.
+   *
+   * @param channel The output channel
+   * @param root    The root node
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public void write(
+    final WritableByteChannel channel,
+    final JOTreeNodeReadableType<A> root)
+    throws IOException
+  {
+    Objects.requireNonNull(channel, "Channel");
+    Objects.requireNonNull(root, "Root");
+
+    this.buffer.clear();
+    this.buffer.putInt(MAGIC);
+    this.buffer.putInt(VERSION);
+
+    final Deque<Iterator<JOTreeNodeReadableType<A>>> stack = new ArrayDeque<>();
+    stack.push(this.writeNode(channel, root));
+
+    while (!stack.isEmpty()) {
+      final Iterator<JOTreeNodeReadableType<A>> top = stack.peek();
+      if (top.hasNext()) {
+        stack.push(this.writeNode(channel, top.next()));
+      } else {
+        stack.pop();
+      }
+    }
+
+    this.flush(channel);
+  }
+
+  private Iterator<JOTreeNodeReadableType<A>> writeNode(
+    final WritableByteChannel channel,
+    final JOTreeNodeReadableType<A> node)
+    throws IOException
+  {
+    final A value = node.value();
+    final int size = this.codec.sizeOf(value);
+    if (size < 0) {
+      throw new IllegalStateException("Codec returned a negative size");
+    }
+
+    this.reserve(channel, VARINT_SIZE_MAXIMUM);
+    writeVarint(this.buffer, size);
+
+    if (size <= this.buffer.capacity()) {
+      this.reserve(channel, size);
+      this.writeValue(this.buffer, value, size);
+    } else {
+      this.flush(channel);
+      final ByteBuffer large = ByteBuffer.allocate(size);
+      this.writeValue(large, value, size);
+      large.flip();
+      while (large.hasRemaining()) {
+        channel.write(large);
+      }
+    }
+
+    final List<JOTreeNodeReadableType<A>> children = node.childrenReadable();
+    this.reserve(channel, VARINT_SIZE_MAXIMUM);
+    writeVarint(this.buffer, children.size());
+    return children.iterator();
+  }
+
+  private void writeValue(
+    final ByteBuffer target,
+    final A value,
+    final int size)
+  {
+    final int position = target.position();
+    this.codec.write(target, value);
+    final int written = target.position() - position;
+    if (written != size) {
+      throw new IllegalStateException(
+        "Codec wrote " + written + " bytes but declared " + size + " bytes");
+    }
+  }
+
+  private void reserve(
+    final WritableByteChannel channel,
+    final int size)
+    throws IOException
+  {
+    if (this.buffer.remaining() < size) {
+      this.flush(channel);
+    }
+  }
+
+  private void flush(
+    final WritableByteChannel channel)
+    throws IOException
+  {
+    this.buffer.flip();
+    while (this.buffer.hasRemaining()) {
+      channel.write(this.buffer);
+    }
+    this.buffer.clear();
+  }
+
+  private static void writeVarint(
+    final ByteBuffer target,
+    final int value)
+  {
+    int remaining = value;
+    while ((remaining & ~0x7f) != 0) {
+      target.put((byte) ((remaining & 0x7f) | 0x80));
+      remaining >>>= 7;
+    }
+    target.put((byte) remaining);
+  }
+}
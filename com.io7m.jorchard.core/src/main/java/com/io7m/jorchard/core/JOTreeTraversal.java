@@ -0,0 +1,397 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import com.io7m.jaffirm.core.Invariants;
+
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * <p>Traversal and mapping functions shared by the node implementations.</p>
+ *
+ * <p>Pending nodes are held in a {@link JOTreeTraversalBuffer} retained by
+ * the calling thread, and children are accessed by position rather than by
+ * iterator, so that a traversal does not allocate per visited node. Maps
+ * allocate only the nodes of the output tree.</p>
+ */
+
+final class JOTreeTraversal
+{
+  private JOTreeTraversal()
+  {
+
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <A> JOTreeNodeReadableType<A> nodeAt(
+    final JOTreeTraversalBuffer buffer,
+    final int index)
+  {
+    return (JOTreeNodeReadableType<A>) buffer.node(index);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <B> JOTreeNode<B> outputAt(
+    final JOTreeTraversalBuffer buffer,
+    final int index)
+  {
+    return (JOTreeNode<B>) buffer.output(index);
+  }
+
+  static <A> long count(
+    final JOTreeNodeReadableType<A> node)
+  {
+    Objects.requireNonNull(node, "Node");
+
+    final JOTreeTraversalBuffer stack = JOTreeTraversalBuffer.acquire();
+    try {
+      stack.add(node, 0, null);
+
+      long count = 0L;
+      while (!stack.isEmpty()) {
+        final JOTreeNodeReadableType<A> next =
+          nodeAt(stack, stack.removeLast());
+        ++count;
+
+        final List<JOTreeNodeReadableType<A>> next_children =
+          next.childrenReadable();
+        final int child_count = next_children.size();
+        for (int index = 0; index < child_count; ++index) {
+          stack.add(next_children.get(index), 0, null);
+        }
+      }
+      return count;
+    } finally {
+      stack.release();
+    }
+  }
+
+  static <A, T> void forEachDepthFirst(
+    final JOTreeNodeReadableType<A> node,
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    Objects.requireNonNull(node, "Node");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+
+    final JOTreeTraversalBuffer stack = JOTreeTraversalBuffer.acquire();
+    try {
+      stack.add(node, 0, null);
+
+      while (!stack.isEmpty()) {
+        final int top = stack.removeLast();
+        final JOTreeNodeReadableType<A> next = nodeAt(stack, top);
+        final int depth = stack.depth(top);
+        f.apply(context, depth, next);
+
+        final List<JOTreeNodeReadableType<A>> next_children =
+          next.childrenReadable();
+        final int count = next_children.size();
+        for (int index = 0; index < count; ++index) {
+          stack.add(next_children.get(index), depth + 1, null);
+        }
+      }
+    } finally {
+      stack.release();
+    }
+  }
+
+  static <A, T> void forEachBreadthFirst(
+    final JOTreeNodeReadableType<A> node,
+    final T context,
+    final JOTreeNodeForEachFunctionType<A, T> f)
+  {
+    Objects.requireNonNull(node, "Node");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+
+    final JOTreeTraversalBuffer queue = JOTreeTraversalBuffer.acquire();
+    try {
+      queue.add(node, 0, null);
+
+      while (!queue.isEmpty()) {
+        final int first = queue.removeFirst();
+        final JOTreeNodeReadableType<A> next = nodeAt(queue, first);
+        final int depth = queue.depth(first);
+        f.apply(context, depth, next);
+
+        final List<JOTreeNodeReadableType<A>> next_children =
+          next.childrenReadable();
+        final int count = next_children.size();
+        for (int index = 0; index < count; ++index) {
+          queue.add(next_children.get(index), depth + 1, null);
+        }
+      }
+    } finally {
+      queue.release();
+    }
+  }
+
+  static <A, T, B> JOTreeNodeType<B> mapDepthFirst(
+    final JOTreeNodeReadableType<A> node,
+    final T context,
+    final JOTreeNodeMapFunctionType<A, T, B> f)
+  {
+    Objects.requireNonNull(node, "Node");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+
+    final JOTreeTraversalBuffer stack = JOTreeTraversalBuffer.acquire();
+    try {
+      stack.add(node, 0, null);
+
+      JOTreeNode<B> root = null;
+      while (!stack.isEmpty()) {
+        final int top = stack.removeLast();
+        final JOTreeNodeReadableType<A> next = nodeAt(stack, top);
+        final int depth = stack.depth(top);
+        final JOTreeNode<B> parent = outputAt(stack, top);
+        final B r = f.apply(context, depth, next);
+
+        final List<JOTreeNodeReadableType<A>> next_children =
+          next.childrenReadable();
+        final int count = next_children.size();
+
+        final JOTreeNode<B> result =
+          JOTreeNode.createUnchecked(parent, r, count);
+        if (parent == null) {
+          Invariants.checkInvariant(root == null, "Root may only be set once");
+          Invariants.checkInvariant(depth == 0, "Root must be depth 0");
+          root = result;
+        }
+
+        for (int index = 0; index < count; ++index) {
+          stack.add(next_children.get(index), depth + 1, result);
+        }
+      }
+
+      Objects.requireNonNull(root, "Root");
+      JOTreeNode.subtreeSizesCompute(root);
+      return root;
+    } finally {
+      stack.release();
+    }
+  }
+
+  static <A, T, B> JOTreeNodeType<B> mapBreadthFirst(
+    final JOTreeNodeReadableType<A> node,
+    final T context,
+    final JOTreeNodeMapFunctionType<A, T, B> f)
+  {
+    Objects.requireNonNull(node, "Node");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+
+    final JOTreeTraversalBuffer queue = JOTreeTraversalBuffer.acquire();
+    try {
+      queue.add(node, 0, null);
+
+      JOTreeNode<B> root = null;
+      while (!queue.isEmpty()) {
+        final int first = queue.removeFirst();
+        final JOTreeNodeReadableType<A> next = nodeAt(queue, first);
+        final int depth = queue.depth(first);
+        final JOTreeNode<B> parent = outputAt(queue, first);
+        final B r = f.apply(context, depth, next);
+
+        final List<JOTreeNodeReadableType<A>> next_children =
+          next.childrenReadable();
+        final int count = next_children.size();
+
+        final JOTreeNode<B> result =
+          JOTreeNode.createUnchecked(parent, r, count);
+        if (parent == null) {
+          Invariants.checkInvariant(root == null, "Root may only be set once");
+          Invariants.checkInvariant(depth == 0, "Root must be depth 0");
+          root = result;
+        }
+
+        for (int index = 0; index < count; ++index) {
+          queue.add(next_children.get(index), depth + 1, result);
+        }
+      }
+
+      Objects.requireNonNull(root, "Root");
+      JOTreeNode.subtreeSizesCompute(root);
+      return root;
+    } finally {
+      queue.release();
+    }
+  }
+
+  static <A, T> JOTreeVisitResult walkDepthFirst(
+    final JOTreeNodeReadableType<A> node,
+    final T context,
+    final JOTreeNodeVisitorType<A, T> f)
+  {
+    Objects.requireNonNull(node, "Node");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+
+    switch (visit(f, context, 0, node)) {
+      case CONTINUE:
+        break;
+      case SKIP_SUBTREE:
+      case SKIP_SIBLINGS:
+        return JOTreeVisitResult.CONTINUE;
+      case TERMINATE:
+        return JOTreeVisitResult.TERMINATE;
+    }
+
+    /*
+     * The stack holds the nodes whose children are being visited, and the
+     * position of the next child of each. The depth of a child is therefore
+     * the size of the stack.
+     */
+
+    final JOTreeFrameStack<A> stack = new JOTreeFrameStack<>();
+    stack.push(node);
+
+    while (!stack.isEmpty()) {
+      final JOTreeNodeReadableType<A> child = stack.nextChild();
+      if (child == null) {
+        stack.pop();
+        continue;
+      }
+
+      switch (visit(f, context, stack.size(), child)) {
+        case CONTINUE:
+          stack.push(child);
+          break;
+        case SKIP_SUBTREE:
+          break;
+        case SKIP_SIBLINGS:
+          stack.pop();
+          break;
+        case TERMINATE:
+          return JOTreeVisitResult.TERMINATE;
+      }
+    }
+    return JOTreeVisitResult.CONTINUE;
+  }
+
+  static <A, T> JOTreeVisitResult walkBreadthFirst(
+    final JOTreeNodeReadableType<A> node,
+    final T context,
+    final JOTreeNodeVisitorType<A, T> f)
+  {
+    Objects.requireNonNull(node, "Node");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+
+    switch (visit(f, context, 0, node)) {
+      case CONTINUE:
+        break;
+      case SKIP_SUBTREE:
+      case SKIP_SIBLINGS:
+        return JOTreeVisitResult.CONTINUE;
+      case TERMINATE:
+        return JOTreeVisitResult.TERMINATE;
+    }
+
+    /*
+     * The queue holds the nodes whose children have yet to be visited. The
+     * children of each node are visited consecutively, so skipping the
+     * siblings of a node means abandoning the rest of its parent's
+     * children.
+     */
+
+    final JOTreeTraversalBuffer queue = JOTreeTraversalBuffer.acquire();
+    try {
+      queue.add(node, 0, null);
+
+      while (!queue.isEmpty()) {
+        final int first = queue.removeFirst();
+        final JOTreeNodeReadableType<A> parent = nodeAt(queue, first);
+        final int depth = queue.depth(first) + 1;
+
+        final List<JOTreeNodeReadableType<A>> children =
+          parent.childrenReadable();
+        final int count = children.size();
+
+        children:
+        for (int index = 0; index < count; ++index) {
+          final JOTreeNodeReadableType<A> child = children.get(index);
+          switch (visit(f, context, depth, child)) {
+            case CONTINUE:
+              queue.add(child, depth, null);
+              break;
+            case SKIP_SUBTREE:
+              break;
+            case SKIP_SIBLINGS:
+              break children;
+            case TERMINATE:
+              return JOTreeVisitResult.TERMINATE;
+          }
+        }
+      }
+      return JOTreeVisitResult.CONTINUE;
+    } finally {
+      queue.release();
+    }
+  }
+
+  private static <A, T> JOTreeVisitResult visit(
+    final JOTreeNodeVisitorType<A, T> f,
+    final T context,
+    final int depth,
+    final JOTreeNodeReadableType<A> node)
+  {
+    return Objects.requireNonNull(
+      f.apply(context, depth, node), "Visitor result");
+  }
+
+  static <A, T, R> R foldPostOrder(
+    final JOTreeNodeReadableType<A> node,
+    final T context,
+    final JOTreeNodeFoldFunctionType<A, T, R> f)
+  {
+    Objects.requireNonNull(node, "Node");
+    Objects.requireNonNull(context, "Context");
+    Objects.requireNonNull(f, "Function");
+
+    /*
+     * Each node's frame stays on the stack until all of its children have
+     * been folded, at which point the aggregates of its children are the
+     * topmost values on the results stack. The depth of the node in the
+     * top frame is one less than the size of the stack.
+     */
+
+    final JOTreeFrameStack<A> stack = new JOTreeFrameStack<>();
+    final JOTreeFoldResults<R> results = new JOTreeFoldResults<>();
+    stack.push(node);
+
+    while (!stack.isEmpty()) {
+      final JOTreeNodeReadableType<A> child = stack.nextChild();
+      if (child != null) {
+        stack.push(child);
+        continue;
+      }
+
+      final int depth = stack.size() - 1;
+      final JOTreeNodeReadableType<A> next = stack.pop();
+      results.windowTop(next.childrenReadable().size());
+      final R r = f.apply(context, depth, next, results);
+      results.windowDiscard();
+      results.push(r);
+    }
+
+    return results.pop();
+  }
+}
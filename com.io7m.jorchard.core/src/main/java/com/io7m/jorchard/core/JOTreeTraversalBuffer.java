@@ -0,0 +1,201 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import java.util.Arrays;
+
+/**
+ * <p>A reusable buffer of traversal entries, used as either a stack or a
+ * queue. Each entry consists of a node, a depth, and an optional output
+ * node, stored in parallel growable arrays so that pushing and popping
+ * entries does not allocate.</p>
+ *
+ * <p>Each thread retains one buffer, obtained with {@link #acquire()} and
+ * returned with {@link #release()}. A traversal function that starts a
+ * nested traversal on the same thread receives a fresh buffer, as the
+ * retained buffer is still in use. Buffers that have grown beyond
+ * {@link #RETAINED_CAPACITY_MAXIMUM} entries are discarded on release rather
+ * than retained, so that one traversal of a very large tree does not pin a
+ * large amount of memory for the lifetime of the thread.</p>
+ */
+
+final class JOTreeTraversalBuffer
+{
+  private static final int CAPACITY_INITIAL = 64;
+  private static final int RETAINED_CAPACITY_MAXIMUM = 1 << 16;
+
+  private static final ThreadLocal<JOTreeTraversalBuffer> BUFFERS =
+    ThreadLocal.withInitial(JOTreeTraversalBuffer::new);
+
+  private Object[] nodes;
+  private Object[] outputs;
+  private int[] depths;
+  private int head;
+  private int tail;
+  private int used;
+  private boolean busy;
+
+  private JOTreeTraversalBuffer()
+  {
+    this.nodes = new Object[CAPACITY_INITIAL];
+    this.outputs = new Object[CAPACITY_INITIAL];
+    this.depths = new int[CAPACITY_INITIAL];
+    this.head = 0;
+    this.tail = 0;
+    this.used = 0;
+    this.busy = false;
+  }
+
+  /**
+   * @return An empty buffer for the exclusive use of the caller
+   */
+
+  static JOTreeTraversalBuffer acquire()
+  {
+    final JOTreeTraversalBuffer retained = BUFFERS.get();
+    if (retained.busy) {
+      final JOTreeTraversalBuffer fresh = new JOTreeTraversalBuffer();
+      fresh.busy = true;
+      return fresh;
+    }
+    retained.busy = true;
+    return retained;
+  }
+
+  /**
+   * Release this buffer, clearing all references to nodes. The buffer must
+   * not be used again by the caller.
+   */
+
+  void release()
+  {
+    if (this.nodes.length > RETAINED_CAPACITY_MAXIMUM) {
+      this.nodes = new Object[CAPACITY_INITIAL];
+      this.outputs = new Object[CAPACITY_INITIAL];
+      this.depths = new int[CAPACITY_INITIAL];
+    } else {
+      Arrays.fill(this.nodes, 0, this.used, null);
+      Arrays.fill(this.outputs, 0, this.used, null);
+    }
+
+    this.head = 0;
+    this.tail = 0;
+    this.used = 0;
+    this.busy = false;
+  }
+
+  boolean isEmpty()
+  {
+    return this.head == this.tail;
+  }
+
+  /**
+   * Add an entry to the end of the buffer.
+   *
+   * @param node   The node
+   * @param depth  The depth
+   * @param output The output node, if any
+   */
+
+  void add(
+    final Object node,
+    final int depth,
+    final Object output)
+  {
+    if (this.tail == this.nodes.length) {
+      this.makeRoom();
+    }
+
+    final int index = this.tail;
+    this.nodes[index] = node;
+    this.depths[index] = depth;
+    this.outputs[index] = output;
+    ++this.tail;
+    this.used = Math.max(this.used, this.tail);
+  }
+
+  /**
+   * Remove the entry at the end of the buffer. The entry's fields remain
+   * readable at the returned index until the next call to
+   * {@link #add(Object, int, Object)}.
+   *
+   * @return The index of the removed entry
+   */
+
+  int removeLast()
+  {
+    --this.tail;
+    return this.tail;
+  }
+
+  /**
+   * Remove the entry at the start of the buffer. The entry's fields remain
+   * readable at the returned index until the next call to
+   * {@link #add(Object, int, Object)}.
+   *
+   * @return The index of the removed entry
+   */
+
+  int removeFirst()
+  {
+    final int index = this.head;
+    ++this.head;
+    return index;
+  }
+
+  Object node(
+    final int index)
+  {
+    return this.nodes[index];
+  }
+
+  int depth(
+    final int index)
+  {
+    return this.depths[index];
+  }
+
+  Object output(
+    final int index)
+  {
+    return this.outputs[index];
+  }
+
+  private void makeRoom()
+  {
+    final int count = this.tail - this.head;
+    if (this.head >= this.nodes.length / 2) {
+      System.arraycopy(this.nodes, this.head, this.nodes, 0, count);
+      System.arraycopy(this.outputs, this.head, this.outputs, 0, count);
+      System.arraycopy(this.depths, this.head, this.depths, 0, count);
+    } else {
+      final int capacity = this.nodes.length * 2;
+      final Object[] nodes_new = new Object[capacity];
+      final Object[] outputs_new = new Object[capacity];
+      final int[] depths_new = new int[capacity];
+      System.arraycopy(this.nodes, this.head, nodes_new, 0, count);
+      System.arraycopy(this.outputs, this.head, outputs_new, 0, count);
+      System.arraycopy(this.depths, this.head, depths_new, 0, count);
+      this.nodes = nodes_new;
+      this.outputs = outputs_new;
+      this.depths = depths_new;
+    }
+
+    this.head = 0;
+    this.tail = count;
+  }
+}
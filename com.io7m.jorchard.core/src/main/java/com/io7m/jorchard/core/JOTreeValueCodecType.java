@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>A codec that encodes values of type {@code A} into a variable number of
+ * bytes, for use with {@link JOTreeStreamWriter} and
+ * {@link JOTreeStreamReader}.</p>
+ *
+ * @param <A> The type of values
+ */
+
+public interface JOTreeValueCodecType<A>
+{
+  /**
+   * @param value The value
+   *
+   * @return The number of bytes that {@link #write(ByteBuffer, Object)} will
+   * produce for {@code value}
+   */
+
+  int sizeOf(A value);
+
+  /**
+   * Encode a value at the current position of {@code target}, advancing the
+   * position by exactly {@link #sizeOf(Object)} bytes.
+   *
+   * @param target The target buffer
+   * @param value  The value
+   */
+
+  void write(
+    ByteBuffer target,
+    A value);
+
+  /**
+   * Decode a value. The remaining bytes of {@code source} are exactly the
+   * bytes produced by {@link #write(ByteBuffer, Object)}.
+   *
+   * @param source The source buffer
+   *
+   * @return The decoded value
+   */
+
+  A read(ByteBuffer source);
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.core;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+
+/**
+ * Standard variable-size codecs.
+ */
+
+public final class JOTreeValueCodecs
+{
+  private static final JOTreeValueCodecType<String> STRINGS =
+    new StringCodec();
+
+  private JOTreeValueCodecs()
+  {
+    throw new AssertionError("Unreachable code");
+  }
+
+  /**
+   * @return A codec for strings, encoded as UTF-8
+   */
+
+  public static JOTreeValueCodecType<String> strings()
+  {
+    return STRINGS;
+  }
+
+  /**
+   * Adapt a fixed-size codec.
+   *
+   * @param codec The fixed-size codec
+   * @param <A>   The type of values
+   *
+   * @return A codec that encodes each value with {@code codec}
+   */
+
+  public static <A> JOTreeValueCodecType<A> ofFixedSize(
+    final JOTreeFixedSizeCodecType<A> codec)
+  {
+    Objects.requireNonNull(codec, "Codec");
+
+    return new FixedSizeCodec<>(codec);
+  }
+
+  private static final class StringCodec
+    implements JOTreeValueCodecType<String>
+  {
+    StringCodec()
+    {
+
+    }
+
+    @Override
+    public int sizeOf(
+      final String value)
+    {
+      int size = 0;
+      final int length = value.length();
+      int index = 0;
+      while (index < length) {
+        final char c = value.charAt(index);
+        if (c < 0x80) {
+          size += 1;
+        } else if (c < 0x800) {
+          size += 2;
+        } else if (Character.isHighSurrogate(c)
+          && index + 1 < length
+          && Character.isLowSurrogate(value.charAt(index + 1))) {
+          size += 4;
+          ++index;
+        } else if (Character.isSurrogate(c)) {
+          // Unpaired surrogates are encoded as a replacement byte.
+          size += 1;
+        } else {
+          size += 3;
+        }
+        ++index;
+      }
+      return size;
+    }
+
+    @Override
+    public void write(
+      final ByteBuffer target,
+      final String value)
+    {
+      target.put(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String read(
+      final ByteBuffer source)
+    {
+      return StandardCharsets.UTF_8.decode(source).toString();
+    }
+  }
+
+  private static final class FixedSizeCodec<A>
+    implements JOTreeValueCodecType<A>
+  {
+    private final JOTreeFixedSizeCodecType<A> codec;
+
+    FixedSizeCodec(
+      final JOTreeFixedSizeCodecType<A> in_codec)
+    {
+      this.codec = in_codec;
+    }
+
+    @Override
+    public int sizeOf(
+      final A value)
+    {
+      return this.codec.size();
+    }
+
+    @Override
+    public void write(
+      final ByteBuffer target,
+      final A value)
+    {
+      final int position = target.position();
+      this.codec.write(target, position, value);
+      target.position(position + this.codec.size());
+    }
+
+    @Override
+    public A read(
+      final ByteBuffer source)
+    {
+      return this.codec.read(source, source.position());
+    }
+  }
+}
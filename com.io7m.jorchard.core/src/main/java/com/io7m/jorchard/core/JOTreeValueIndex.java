@@ -0,0 +1,365 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * <p>An index over the subtree rooted at a given node that maps keys, derived
+ * from the values of nodes, to the nodes that hold them.</p>
+ *
+ * <p>The index is attached to a {@link JOTreeNode} and is kept up to date as
+ * subtrees are attached to or detached from any node in the subtree rooted at
+ * that node, at a cost proportional to the size of each attached or detached
+ * subtree. Lookups take constant time. Changes made directly to nodes of
+ * other implementations of {@link JOTreeNodeType} within the subtree are not
+ * observed.</p>
+ *
+ * <p>The keys of an attached or detached subtree are computed before the tree
+ * is modified, so a key function that raises an exception or returns
+ * {@code null} causes the modification to fail and leaves both the tree and
+ * the index unchanged.</p>
+ *
+ * @param <A> The type of values contained within the tree
+ * @param <K> The type of keys
+ */
+
+public final class JOTreeValueIndex<A, K>
+{
+  private final JOTreeNode<A> root;
+  private final Function<A, K> key;
+  private final Map<K, Object> entries;
+  private int size;
+  private boolean attached;
+
+  private JOTreeValueIndex(
+    final JOTreeNode<A> in_root,
+    final Function<A, K> in_key)
+  {
+    this.root = Objects.requireNonNull(in_root, "Root");
+    this.key = Objects.requireNonNull(in_key, "Key");
+    this.entries = new HashMap<>();
+    this.size = 0;
+    this.attached = true;
+  }
+
+  /**
+   * Create a new index over the subtree rooted at {@code root}, keyed by the
+   * values of the nodes.
+   *
+   * @param root The root node
+   * @param <A>  The type of values
+   *
+   * @return A new index
+   *
+   * @see #createWithKey(JOTreeNodeType, Function)
+   */
+
+  public static <A> JOTreeValueIndex<A, A> create(
+    final JOTreeNodeType<A> root)
+  {
+    return createWithKey(root, Function.identity());
+  }
+
+  /**
+   * Create a new index over the subtree rooted at {@code root}, keyed by the
+   * result of applying {@code key} to the values of the nodes. The function
+   * must return the same key each time it is applied to a given value.
+   *
+   * @param root The root node
+   * @param key  A function that extracts keys from values
+   * @param <A>  The type of values
+   * @param <K>  The type of keys
+   *
+   * @return A new index
+   *
+   * @throws IllegalArgumentException If {@code root} is not a
+   *                                  {@link JOTreeNode}
+   */
+
+  public static <A, K> JOTreeValueIndex<A, K> createWithKey(
+    final JOTreeNodeType<A> root,
+    final Function<A, K> key)
+  {
+    Objects.requireNonNull(root, "Root");
+    Objects.requireNonNull(key, "Key");
+
+    if (!(root instanceof JOTreeNode<A> node)) {
+      throw new IllegalArgumentException(
+        "Value indexes may only be attached to nodes of type "
+          + JOTreeNode.class.getSimpleName());
+    }
+
+    final JOTreeValueIndex<A, K> index = new JOTreeValueIndex<>(node, key);
+    index.subtreeAttached(node);
+    node.indexAttach(index);
+    return index;
+  }
+
+  /**
+   * @return The root of the indexed subtree
+   */
+
+  public JOTreeNodeReadableType<A> root()
+  {
+    return this.root;
+  }
+
+  /**
+   * @return The number of nodes in the index
+   */
+
+  public int size()
+  {
+    return this.size;
+  }
+
+  /**
+   * Find a node in the indexed subtree with the given key. If more than one
+   * node has the key, an arbitrary one of them is returned.
+   *
+   * @param in_key The key
+   *
+   * @return A node with the given key, if any
+   */
+
+  public Optional<JOTreeNodeReadableType<A>> find(
+    final K in_key)
+  {
+    Objects.requireNonNull(in_key, "Key");
+
+    final Object entry = this.entries.get(in_key);
+    if (entry instanceof Bucket<?> bucket) {
+      return Optional.of(this.bucketNodes(bucket).iterator().next());
+    }
+    return Optional.ofNullable(this.entryNode(entry));
+  }
+
+  /**
+   * Find every node in the indexed subtree with the given key.
+   *
+   * @param in_key The key
+   *
+   * @return A read-only set of the nodes with the given key
+   */
+
+  public Set<JOTreeNodeReadableType<A>> findAll(
+    final K in_key)
+  {
+    Objects.requireNonNull(in_key, "Key");
+
+    final Object entry = this.entries.get(in_key);
+    if (entry instanceof Bucket<?> bucket) {
+      return Collections.unmodifiableSet(this.bucketNodes(bucket));
+    }
+    final JOTreeNodeReadableType<A> node = this.entryNode(entry);
+    return node == null ? Set.of() : Set.of(node);
+  }
+
+  /**
+   * Detach the index from its root. The index is emptied and no longer
+   * observes changes to the tree. Has no effect if the index is already
+   * detached.
+   */
+
+  public void detach()
+  {
+    if (this.attached) {
+      this.root.indexDetach(this);
+      this.entries.clear();
+      this.size = 0;
+      this.attached = false;
+    }
+  }
+
+  /**
+   * @return {@code true} iff the index is attached to its root
+   */
+
+  public boolean isAttached()
+  {
+    return this.attached;
+  }
+
+  void subtreeAttached(
+    final JOTreeNodeReadableType<A> subtree)
+  {
+    this.subtreeKeys(subtree).attach();
+  }
+
+  /**
+   * Compute the keys of every node in the subtree rooted at
+   * {@code subtree}, without modifying the index.
+   *
+   * @param subtree The subtree
+   *
+   * @return The keys, ready to be added to or removed from the index
+   */
+
+  SubtreeKeys<A, K> subtreeKeys(
+    final JOTreeNodeReadableType<A> subtree)
+  {
+    final SubtreeKeys<A, K> keys = new SubtreeKeys<>(this);
+    JOTreeTraversal.forEachDepthFirst(
+      subtree, keys, (input, depth, node) -> input.add(node));
+    return keys;
+  }
+
+  private void put(
+    final JOTreeNodeReadableType<A> node,
+    final K node_key)
+  {
+    final Object existing = this.entries.putIfAbsent(node_key, node);
+    if (existing == null) {
+      ++this.size;
+      return;
+    }
+    if (existing == node) {
+      return;
+    }
+
+    if (existing instanceof Bucket<?> bucket) {
+      if (this.bucketNodes(bucket).add(node)) {
+        ++this.size;
+      }
+      return;
+    }
+
+    final Bucket<A> bucket = new Bucket<>();
+    bucket.nodes.add(this.entryNode(existing));
+    bucket.nodes.add(node);
+    this.entries.put(node_key, bucket);
+    ++this.size;
+  }
+
+  private void remove(
+    final JOTreeNodeReadableType<A> node,
+    final K node_key)
+  {
+    final Object existing = this.entries.get(node_key);
+    if (existing == node) {
+      this.entries.remove(node_key);
+      --this.size;
+      return;
+    }
+
+    if (existing instanceof Bucket<?> bucket) {
+      final Set<JOTreeNodeReadableType<A>> nodes = this.bucketNodes(bucket);
+      if (nodes.remove(node)) {
+        --this.size;
+        if (nodes.size() == 1) {
+          this.entries.put(node_key, nodes.iterator().next());
+        }
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private JOTreeNodeReadableType<A> entryNode(
+    final Object entry)
+  {
+    return (JOTreeNodeReadableType<A>) entry;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Set<JOTreeNodeReadableType<A>> bucketNodes(
+    final Bucket<?> bucket)
+  {
+    return ((Bucket<A>) bucket).nodes;
+  }
+
+  /**
+   * The set of nodes that share a key. Keys held by exactly one node map
+   * directly to that node.
+   */
+
+  private static final class Bucket<A>
+  {
+    private final Set<JOTreeNodeReadableType<A>> nodes;
+
+    Bucket()
+    {
+      this.nodes = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+  }
+
+  /**
+   * The keys of the nodes of a subtree, computed before the subtree is
+   * attached to or detached from the indexed tree. Applying the keys does
+   * not evaluate the key function.
+   *
+   * @param <A> The type of values
+   * @param <K> The type of keys
+   */
+
+  static final class SubtreeKeys<A, K>
+  {
+    private final JOTreeValueIndex<A, K> index;
+    private final List<JOTreeNodeReadableType<A>> nodes;
+    private final List<K> keys;
+
+    SubtreeKeys(
+      final JOTreeValueIndex<A, K> in_index)
+    {
+      this.index = in_index;
+      this.nodes = new ArrayList<>();
+      this.keys = new ArrayList<>();
+    }
+
+    private void add(
+      final JOTreeNodeReadableType<A> node)
+    {
+      final K node_key =
+        Objects.requireNonNull(this.index.key.apply(node.value()), "Key");
+      this.nodes.add(node);
+      this.keys.add(node_key);
+    }
+
+    /**
+     * Add the nodes to the index.
+     */
+
+    void attach()
+    {
+      final int count = this.nodes.size();
+      for (int position = 0; position < count; ++position) {
+        this.index.put(this.nodes.get(position), this.keys.get(position));
+      }
+    }
+
+    /**
+     * Remove the nodes from the index.
+     */
+
+    void detach()
+    {
+      final int count = this.nodes.size();
+      for (int position = 0; position < count; ++position) {
+        this.index.remove(this.nodes.get(position), this.keys.get(position));
+      }
+    }
+  }
+}
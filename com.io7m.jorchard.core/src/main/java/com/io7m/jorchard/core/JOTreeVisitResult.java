@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.core;
+
+/**
+ * The result of visiting a node during a walk of a tree.
+ *
+ * @see JOTreeNodeVisitorType
+ */
+
+public enum JOTreeVisitResult
+{
+  /**
+   * Continue the walk, visiting the descendants of the current node.
+   */
+
+  CONTINUE,
+
+  /**
+   * Continue the walk without visiting the descendants of the current node.
+   */
+
+  SKIP_SUBTREE,
+
+  /**
+   * Continue the walk without visiting the descendants of the current node,
+   * or any siblings of the current node that have not yet been visited.
+   */
+
+  SKIP_SIBLINGS,
+
+  /**
+   * Terminate the walk.
+   */
+
+  TERMINATE
+}
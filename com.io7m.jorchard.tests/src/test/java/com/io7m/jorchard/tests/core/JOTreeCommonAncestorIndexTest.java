@@ -0,0 +1,193 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeCommonAncestorIndex;
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreeNodeReadableType;
+import com.io7m.jorchard.core.JOTreeNodeType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public final class JOTreeCommonAncestorIndexTest
+{
+  /**
+   * Find the lowest common ancestor by intersecting the ancestor chains of
+   * the two nodes.
+   */
+
+  private static Optional<JOTreeNodeReadableType<Integer>> ancestorExpected(
+    final JOTreeNodeReadableType<Integer> node,
+    final JOTreeNodeReadableType<Integer> other)
+  {
+    final Set<JOTreeNodeReadableType<Integer>> ancestors =
+      Collections.newSetFromMap(new IdentityHashMap<>());
+
+    Optional<JOTreeNodeReadableType<Integer>> current = Optional.of(node);
+    while (current.isPresent()) {
+      ancestors.add(current.get());
+      current = current.get().parentReadable();
+    }
+
+    current = Optional.of(other);
+    while (current.isPresent()) {
+      if (ancestors.contains(current.get())) {
+        return current;
+      }
+      current = current.get().parentReadable();
+    }
+    return Optional.empty();
+  }
+
+  private static void checkAgreement(
+    final JOTreeCommonAncestorIndex<Integer> index,
+    final List<JOTreeNodeType<Integer>> nodes)
+  {
+    for (final var node : nodes) {
+      for (final var other : nodes) {
+        final var expected = ancestorExpected(node, other);
+        final var received = index.lowestCommonAncestor(node, other);
+        assertEquals(
+          expected.isPresent(),
+          received.isPresent(),
+          String.format("%s %s", node, other));
+        expected.ifPresent(e -> assertSame(e, received.get()));
+      }
+    }
+  }
+
+  @Test
+  public void testAgreesWithAncestors()
+  {
+    final var random = new Random(0x10L);
+    final var nodes = JOTreeTestTrees.randomTree(random, 300);
+    final var index = JOTreeCommonAncestorIndex.create(nodes.get(0));
+
+    assertEquals(nodes.get(0), index.root());
+    checkAgreement(index, nodes);
+  }
+
+  @Test
+  public void testSingleton()
+  {
+    final var node = JOTreeNode.create(Integer.valueOf(0));
+    final var index = JOTreeCommonAncestorIndex.create(node);
+    assertSame(node, index.lowestCommonAncestor(node, node).orElseThrow());
+  }
+
+  @Test
+  public void testChain()
+  {
+    final List<JOTreeNodeType<Integer>> nodes = new ArrayList<>();
+    nodes.add(JOTreeNode.create(Integer.valueOf(0)));
+    for (var index = 1; index < 100; ++index) {
+      final var node = JOTreeNode.create(Integer.valueOf(index));
+      nodes.get(index - 1).childAdd(node);
+      nodes.add(node);
+    }
+
+    final var index = JOTreeCommonAncestorIndex.create(nodes.get(0));
+    checkAgreement(index, nodes);
+  }
+
+  @Test
+  public void testInvalidatedOnMutation()
+  {
+    final var random = new Random(0x20L);
+    final var nodes = JOTreeTestTrees.randomTree(random, 100);
+    final var index = JOTreeCommonAncestorIndex.create(nodes.get(0));
+
+    checkAgreement(index, nodes);
+
+    for (var move = 0; move < 20; ++move) {
+      final var node = nodes.get(1 + random.nextInt(nodes.size() - 1));
+      final var parent = nodes.get(random.nextInt(nodes.size()));
+      if (random.nextInt(4) == 0) {
+        node.detach();
+        checkAgreement(index, nodes);
+      } else if (!parent.isDescendantOf(node)) {
+        node.setParent(parent);
+        checkAgreement(index, nodes);
+      }
+    }
+  }
+
+  @Test
+  public void testOutsideSubtree()
+  {
+    final var random = new Random(0x30L);
+    final var nodes = JOTreeTestTrees.randomTree(random, 60);
+    final var start = nodes.get(0).children().get(0);
+    final var index = JOTreeCommonAncestorIndex.create(start);
+
+    checkAgreement(index, nodes);
+
+    final var detached = JOTreeNode.create(Integer.valueOf(1000));
+    final List<JOTreeNodeType<Integer>> with_detached = new ArrayList<>(nodes);
+    with_detached.add(detached);
+    checkAgreement(index, with_detached);
+  }
+
+  @Test
+  public void testForeignRootInvalidate()
+  {
+    final var n0 = new DelegatingNode<>(JOTreeNode.create(Integer.valueOf(0)));
+    final var n1 = JOTreeNode.create(Integer.valueOf(1));
+    final var n2 = JOTreeNode.create(Integer.valueOf(2));
+    final var n3 = JOTreeNode.create(Integer.valueOf(3));
+
+    n1.setParent(n0.actual);
+    n2.setParent(n0.actual);
+
+    final var index = JOTreeCommonAncestorIndex.create(n0);
+    assertSame(n0, index.lowestCommonAncestor(n1, n2).orElseThrow());
+
+    n3.setParent(n1);
+    n2.setParent(n1);
+    index.invalidate();
+    assertSame(n1, index.lowestCommonAncestor(n3, n2).orElseThrow());
+  }
+
+  @Test
+  public void testConcurrentQueries()
+    throws Exception
+  {
+    final var random = new Random(0x40L);
+    final var nodes = JOTreeTestTrees.randomTree(random, 80);
+    final var index = JOTreeCommonAncestorIndex.create(nodes.get(0));
+
+    for (var round = 0; round < 10; ++round) {
+      final var node = nodes.get(1 + random.nextInt(nodes.size() - 1));
+      final var parent = nodes.get(random.nextInt(nodes.size()));
+      if (!parent.isDescendantOf(node)) {
+        node.setParent(parent);
+      }
+      JOTreeTestConcurrency.runConcurrently(
+        8, () -> checkAgreement(index, nodes));
+    }
+  }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreeNodeType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class JOTreeFoldTest
+{
+  @Test
+  public void testSizeAndSum()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(3, 4);
+
+    final Integer size = root.foldPostOrder(
+      Integer.valueOf(0),
+      (input, depth, node, children) -> {
+        int total = 1;
+        for (final Integer child : children) {
+          total += child.intValue();
+        }
+        return Integer.valueOf(total);
+      });
+    assertEquals(Integer.valueOf(121), size);
+
+    final Long sum = root.foldPostOrder(
+      Integer.valueOf(0),
+      (input, depth, node, children) -> {
+        long total = node.value().longValue();
+        for (final Long child : children) {
+          total += child.longValue();
+        }
+        return Long.valueOf(total);
+      });
+    assertEquals(Long.valueOf(120L * 121L / 2L), sum);
+  }
+
+  @Test
+  public void testOrderAndDepth()
+  {
+    final JOTreeNodeType<String> r = JOTreeNode.create("r");
+    final JOTreeNodeType<String> a = JOTreeNode.create("a");
+    final JOTreeNodeType<String> b = JOTreeNode.create("b");
+    r.childAdd(a);
+    r.childAdd(b);
+    a.childAdd(JOTreeNode.create("a0"));
+    a.childAdd(JOTreeNode.create("a1"));
+    b.childAdd(JOTreeNode.create("b0"));
+
+    final List<String> order = new ArrayList<>();
+    final String text = r.foldPostOrder(
+      order,
+      (input, depth, node, children) -> {
+        input.add(node.value() + ":" + depth);
+        if (children.isEmpty()) {
+          return node.value();
+        }
+        return node.value() + "(" + String.join(" ", children) + ")";
+      });
+
+    assertEquals("r(a(a0 a1) b(b0))", text);
+    assertEquals(
+      List.of("a0:2", "a1:2", "a:1", "b0:2", "b:1", "r:0"), order);
+
+    final String text_a = a.foldPostOrder(
+      order,
+      (input, depth, node, children) -> {
+        if (children.isEmpty()) {
+          return node.value();
+        }
+        return node.value() + "(" + String.join(" ", children) + ")";
+      });
+    assertEquals("a(a0 a1)", text_a);
+  }
+
+  @Test
+  public void testHeightDeep()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeNode.create(Integer.valueOf(0));
+    JOTreeNodeType<Integer> current = root;
+    for (int index = 1; index < 10_000; ++index) {
+      final JOTreeNodeType<Integer> next =
+        JOTreeNode.create(Integer.valueOf(index));
+      current.childAdd(next);
+      current.childAdd(JOTreeNode.create(Integer.valueOf(-index)));
+      current = next;
+    }
+
+    final Integer height = root.foldPostOrder(
+      Integer.valueOf(0),
+      (input, depth, node, children) -> {
+        int max = 0;
+        for (final Integer child : children) {
+          max = Math.max(max, child.intValue() + 1);
+        }
+        return Integer.valueOf(max);
+      });
+    assertEquals(Integer.valueOf(9_999), height);
+  }
+
+  @Test
+  public void testSingleNode()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeNode.create(Integer.valueOf(23));
+    assertEquals(
+      Integer.valueOf(46),
+      root.foldPostOrder(
+        Integer.valueOf(2),
+        (input, depth, node, children) -> {
+          assertEquals(0, depth);
+          assertEquals(0, children.size());
+          return Integer.valueOf(node.value().intValue() * input.intValue());
+        }));
+  }
+
+  @Test
+  public void testChildrenReadOnly()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(2, 1);
+    assertThrows(
+      UnsupportedOperationException.class,
+      () -> root.foldPostOrder(
+        Integer.valueOf(0),
+        (input, depth, node, children) -> {
+          if (!children.isEmpty()) {
+            children.add(Integer.valueOf(0));
+          }
+          return Integer.valueOf(0);
+        }));
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeFrozen;
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreeNodeReadableType;
+import com.io7m.jorchard.core.JOTreeNodeType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class JOTreeFrozenTest
+{
+  /*
+   * 0
+   * +- 1
+   * |  +- 3
+   * |  +- 4
+   * +- 2
+   *    +- 5
+   */
+
+  private static JOTreeNodeType<Integer> example()
+  {
+    final var n0 = JOTreeNode.create(Integer.valueOf(0));
+    final var n1 = JOTreeNode.create(Integer.valueOf(1));
+    final var n2 = JOTreeNode.create(Integer.valueOf(2));
+    final var n3 = JOTreeNode.create(Integer.valueOf(3));
+    final var n4 = JOTreeNode.create(Integer.valueOf(4));
+    final var n5 = JOTreeNode.create(Integer.valueOf(5));
+    n0.childAddAll(List.of(n1, n2));
+    n1.childAddAll(List.of(n3, n4));
+    n2.childAdd(n5);
+    return n0;
+  }
+
+  @Test
+  public void testLayout()
+  {
+    final JOTreeFrozen<Integer> frozen = example().freeze();
+
+    assertEquals(6, frozen.size());
+
+    final List<Integer> values = new ArrayList<>();
+    for (var index = 0; index < frozen.size(); ++index) {
+      values.add(frozen.value(index));
+    }
+    assertEquals(List.of(0, 1, 3, 4, 2, 5), values);
+
+    assertEquals(-1, frozen.parent(0));
+    assertEquals(0, frozen.parent(1));
+    assertEquals(1, frozen.parent(2));
+    assertEquals(1, frozen.parent(3));
+    assertEquals(0, frozen.parent(4));
+    assertEquals(4, frozen.parent(5));
+
+    assertEquals(1, frozen.firstChild(0));
+    assertEquals(2, frozen.firstChild(1));
+    assertEquals(-1, frozen.firstChild(2));
+    assertEquals(5, frozen.firstChild(4));
+
+    assertEquals(4, frozen.nextSibling(1));
+    assertEquals(3, frozen.nextSibling(2));
+    assertEquals(-1, frozen.nextSibling(3));
+    assertEquals(-1, frozen.nextSibling(0));
+
+    assertEquals(0, frozen.depth(0));
+    assertEquals(1, frozen.depth(1));
+    assertEquals(2, frozen.depth(2));
+    assertEquals(2, frozen.depth(5));
+
+    assertEquals(6, frozen.subtreeEnd(0));
+    assertEquals(4, frozen.subtreeEnd(1));
+    assertEquals(6, frozen.subtreeEnd(4));
+    assertEquals(3, frozen.subtreeEnd(2));
+  }
+
+  @Test
+  public void testIsDescendantOf()
+  {
+    final JOTreeFrozen<Integer> frozen = example().freeze();
+
+    assertTrue(frozen.isDescendantOf(5, 0));
+    assertTrue(frozen.isDescendantOf(5, 4));
+    assertTrue(frozen.isDescendantOf(3, 1));
+    assertTrue(frozen.isDescendantOf(3, 3));
+    assertFalse(frozen.isDescendantOf(5, 1));
+    assertFalse(frozen.isDescendantOf(0, 5));
+    assertFalse(frozen.isDescendantOf(4, 2));
+
+    assertThrows(IndexOutOfBoundsException.class, () -> {
+      frozen.isDescendantOf(6, 0);
+    });
+  }
+
+  @Test
+  public void testTraversals()
+  {
+    final JOTreeFrozen<Integer> frozen = example().freeze();
+
+    final List<Integer> depth_first = new ArrayList<>();
+    frozen.forEachDepthFirst(1, depth_first, (input, depth, node) -> {
+      input.add(node.value());
+      input.add(Integer.valueOf(depth));
+    });
+    assertEquals(List.of(1, 0, 3, 1, 4, 1), depth_first);
+
+    final List<Integer> breadth_first = new ArrayList<>();
+    frozen.root().forEachBreadthFirst(breadth_first, (input, depth, node) -> {
+      input.add(node.value());
+    });
+    assertEquals(List.of(0, 1, 2, 3, 4, 5), breadth_first);
+
+    final List<Integer> all = new ArrayList<>();
+    frozen.root().forEachDepthFirst(all, (input, depth, node) -> {
+      input.add(node.value());
+    });
+    assertEquals(List.of(0, 1, 3, 4, 2, 5), all);
+  }
+
+  @Test
+  public void testReadableViews()
+  {
+    final JOTreeFrozen<Integer> frozen = example().freeze();
+    final JOTreeNodeReadableType<Integer> root = frozen.root();
+    final JOTreeNodeReadableType<Integer> n4 = frozen.node(3);
+
+    assertSame(root, frozen.node(0));
+    assertTrue(root.isRoot());
+    assertFalse(n4.isRoot());
+    assertFalse(n4.isDetachAllowed());
+    assertEquals(Optional.empty(), root.parentReadable());
+    assertEquals(Optional.of(frozen.node(1)), n4.parentReadable());
+    assertEquals(2, n4.depth());
+
+    final var children = root.childrenReadable();
+    assertEquals(2L, children.size());
+    assertEquals(Integer.valueOf(1), children.get(0).value());
+    assertEquals(Integer.valueOf(2), children.get(1).value());
+    assertSame(children, root.childrenReadable());
+    assertTrue(n4.childrenReadable().isEmpty());
+
+    assertTrue(n4.isDescendantOf(root));
+    assertFalse(root.isDescendantOf(n4));
+    assertFalse(n4.isDescendantOf(example()));
+    assertFalse(n4.isDescendantOf(example().freeze().root()));
+    assertNotEquals(n4, root);
+    assertNotEquals(n4, example().freeze().node(3));
+    assertNotEquals(n4, Integer.valueOf(3));
+    assertEquals(n4.hashCode(), frozen.node(3).hashCode());
+    assertTrue(n4.toString().contains("4"));
+
+    final var mapped =
+      root.mapDepthFirst(Integer.valueOf(0), (input, depth, node) -> node.value().toString());
+    assertEquals("0", mapped.value());
+    assertEquals(2L, mapped.children().size());
+
+    final var mapped_breadth =
+      root.mapBreadthFirst(Integer.valueOf(0), (input, depth, node) -> node.value().toString());
+    assertEquals(2L, mapped_breadth.children().size());
+
+    final var refrozen = frozen.node(1).freeze();
+    assertEquals(3, refrozen.size());
+    assertEquals(Integer.valueOf(4), refrozen.value(2));
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeIntervalIndex;
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreeNodeType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class JOTreeIntervalIndexTest
+{
+  private static void checkAgreement(
+    final JOTreeIntervalIndex<Integer> index,
+    final List<JOTreeNodeType<Integer>> nodes)
+  {
+    for (final var node : nodes) {
+      for (final var other : nodes) {
+        assertEquals(
+          node.isDescendantOf(other),
+          index.isDescendantOf(node, other),
+          String.format("%s descendant of %s", node, other));
+      }
+    }
+  }
+
+  @Test
+  public void testAgreesWithNodes()
+  {
+    final var random = new Random(0x10L);
+    final var nodes = JOTreeTestTrees.randomTree(random, 200);
+    final var index = JOTreeIntervalIndex.create(nodes.get(0));
+
+    assertEquals(nodes.get(0), index.root());
+    checkAgreement(index, nodes);
+  }
+
+  @Test
+  public void testInvalidatedOnSetParent()
+  {
+    final var random = new Random(0x20L);
+    final var nodes = JOTreeTestTrees.randomTree(random, 100);
+    final var index = JOTreeIntervalIndex.create(nodes.get(0));
+
+    checkAgreement(index, nodes);
+
+    for (var move = 0; move < 20; ++move) {
+      final var node = nodes.get(1 + random.nextInt(nodes.size() - 1));
+      final var parent = nodes.get(random.nextInt(nodes.size()));
+      if (!parent.isDescendantOf(node)) {
+        node.setParent(parent);
+        checkAgreement(index, nodes);
+      }
+    }
+  }
+
+  @Test
+  public void testInvalidatedOnChildAddRemove()
+  {
+    final var n0 = JOTreeNode.create(Integer.valueOf(0));
+    final var n1 = JOTreeNode.create(Integer.valueOf(1));
+    final var n2 = JOTreeNode.create(Integer.valueOf(2));
+    final var n3 = JOTreeNode.create(Integer.valueOf(3));
+
+    n0.childAdd(n1);
+    n1.childAdd(n2);
+
+    final var index = JOTreeIntervalIndex.create(n0);
+    assertTrue(index.isDescendantOf(n2, n0));
+    assertFalse(index.isDescendantOf(n3, n1));
+
+    n2.childAdd(n3);
+    assertTrue(index.isDescendantOf(n3, n1));
+    assertTrue(index.isDescendantOf(n3, n0));
+
+    n1.childRemove(n2);
+    assertFalse(index.isDescendantOf(n3, n1));
+    assertFalse(index.isDescendantOf(n2, n0));
+    assertTrue(index.isDescendantOf(n3, n2));
+
+    n0.childAddAll(List.of(n2));
+    assertTrue(index.isDescendantOf(n3, n0));
+    assertFalse(index.isDescendantOf(n3, n1));
+  }
+
+  @Test
+  public void testRootMoved()
+  {
+    final var n0 = JOTreeNode.create(Integer.valueOf(0));
+    final var n1 = JOTreeNode.create(Integer.valueOf(1));
+    final var n2 = JOTreeNode.create(Integer.valueOf(2));
+
+    n1.childAdd(n2);
+
+    final var index = JOTreeIntervalIndex.create(n1);
+    assertTrue(index.isDescendantOf(n2, n1));
+    assertFalse(index.isDescendantOf(n1, n0));
+
+    n1.setParent(n0);
+    assertTrue(index.isDescendantOf(n2, n1));
+    assertTrue(index.isDescendantOf(n2, n0));
+    assertTrue(index.isDescendantOf(n1, n0));
+    assertFalse(index.isDescendantOf(n0, n1));
+  }
+
+  @Test
+  public void testForeignRootInvalidate()
+  {
+    final var n0 = new DelegatingNode<>(JOTreeNode.create(Integer.valueOf(0)));
+    final var n1 = JOTreeNode.create(Integer.valueOf(1));
+    final var n2 = JOTreeNode.create(Integer.valueOf(2));
+
+    n1.setParent(n0.actual);
+
+    final var index = JOTreeIntervalIndex.create(n0.actual);
+    final var index_foreign = JOTreeIntervalIndex.create(n0);
+    assertTrue(index_foreign.isDescendantOf(n1, n0.actual));
+    assertFalse(index_foreign.isDescendantOf(n2, n0.actual));
+
+    n2.setParent(n1);
+    assertTrue(index.isDescendantOf(n2, n0.actual));
+
+    index_foreign.invalidate();
+    assertTrue(index_foreign.isDescendantOf(n2, n0.actual));
+
+    n1.detach();
+    index_foreign.invalidate();
+    assertFalse(index_foreign.isDescendantOf(n1, n0.actual));
+    assertFalse(index_foreign.isDescendantOf(n2, n0.actual));
+    assertFalse(index.isDescendantOf(n2, n0.actual));
+  }
+
+  @Test
+  public void testConcurrentQueries()
+    throws Exception
+  {
+    final var random = new Random(0x30L);
+    final var nodes = JOTreeTestTrees.randomTree(random, 100);
+    final var index = JOTreeIntervalIndex.create(nodes.get(0));
+
+    for (var round = 0; round < 10; ++round) {
+      final var node = nodes.get(1 + random.nextInt(nodes.size() - 1));
+      final var parent = nodes.get(random.nextInt(nodes.size()));
+      if (!parent.isDescendantOf(node)) {
+        node.setParent(parent);
+      }
+      JOTreeTestConcurrency.runConcurrently(
+        8, () -> checkAgreement(index, nodes));
+    }
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreeNodeLazy;
+import com.io7m.jorchard.core.JOTreeNodeReadableType;
+import com.io7m.jorchard.core.JOTreeNodeType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class JOTreeIteratorTest
+{
+  private static void preorder(
+    final JOTreeNodeReadableType<Integer> node,
+    final List<Integer> output)
+  {
+    output.add(node.value());
+    for (final JOTreeNodeReadableType<Integer> child : node.childrenReadable()) {
+      preorder(child, output);
+    }
+  }
+
+  private static void postorder(
+    final JOTreeNodeReadableType<Integer> node,
+    final List<Integer> output)
+  {
+    for (final JOTreeNodeReadableType<Integer> child : node.childrenReadable()) {
+      postorder(child, output);
+    }
+    output.add(node.value());
+  }
+
+  private static <A> List<A> drain(
+    final Iterator<JOTreeNodeReadableType<A>> iterator)
+  {
+    final List<A> output = new ArrayList<>();
+    while (iterator.hasNext()) {
+      output.add(iterator.next().value());
+    }
+    assertThrows(NoSuchElementException.class, iterator::next);
+    return output;
+  }
+
+  @Test
+  public void testPreOrder()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(3, 4);
+    final List<Integer> expected = new ArrayList<>();
+    preorder(root, expected);
+    assertEquals(expected, drain(root.iteratorPreOrder()));
+  }
+
+  @Test
+  public void testPostOrder()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(3, 4);
+    final List<Integer> expected = new ArrayList<>();
+    postorder(root, expected);
+    assertEquals(expected, drain(root.iteratorPostOrder()));
+  }
+
+  @Test
+  public void testBreadthFirst()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(3, 4);
+    final List<Integer> expected = new ArrayList<>();
+    root.freeze().root().forEachBreadthFirst(
+      expected, (input, depth, node) -> input.add(node.value()));
+    assertEquals(expected, drain(root.iteratorBreadthFirst()));
+  }
+
+  @Test
+  public void testSingleNode()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeNode.create(Integer.valueOf(23));
+    final List<Integer> expected = List.of(Integer.valueOf(23));
+    assertEquals(expected, drain(root.iteratorPreOrder()));
+    assertEquals(expected, drain(root.iteratorPostOrder()));
+    assertEquals(expected, drain(root.iteratorBreadthFirst()));
+  }
+
+  @Test
+  public void testWithoutHasNext()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(2, 3);
+    final List<Integer> pre = new ArrayList<>();
+    preorder(root, pre);
+    final List<Integer> post = new ArrayList<>();
+    postorder(root, post);
+
+    final Iterator<JOTreeNodeReadableType<Integer>> pre_iter =
+      root.iteratorPreOrder();
+    final Iterator<JOTreeNodeReadableType<Integer>> post_iter =
+      root.iteratorPostOrder();
+    for (int index = 0; index < pre.size(); ++index) {
+      assertEquals(pre.get(index), pre_iter.next().value());
+      assertEquals(post.get(index), post_iter.next().value());
+    }
+    assertFalse(pre_iter.hasNext());
+    assertFalse(post_iter.hasNext());
+  }
+
+  @Test
+  public void testHasNextIdempotent()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(2, 2);
+    final Iterator<JOTreeNodeReadableType<Integer>> iter =
+      root.iteratorBreadthFirst();
+    for (int index = 0; index < 7; ++index) {
+      assertTrue(iter.hasNext());
+      assertTrue(iter.hasNext());
+      iter.next();
+    }
+    assertFalse(iter.hasNext());
+    assertFalse(iter.hasNext());
+  }
+
+  @Test
+  public void testZip()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(3, 3);
+    final JOTreeNodeType<Integer> copy = root.mapDepthFirst(
+      Integer.valueOf(0), (input, depth, node) -> node.value());
+    copy.childrenSortNodes(
+      (x, y) -> Integer.compare(x.value().intValue(), y.value().intValue()));
+    for (final JOTreeNodeType<Integer> child : copy.children()) {
+      child.childrenSortNodes(
+        (x, y) -> Integer.compare(x.value().intValue(), y.value().intValue()));
+    }
+
+    final Iterator<JOTreeNodeReadableType<Integer>> left =
+      root.iteratorPreOrder();
+    final Iterator<JOTreeNodeReadableType<Integer>> right =
+      copy.iteratorPreOrder();
+    int count = 0;
+    while (left.hasNext() && right.hasNext()) {
+      final JOTreeNodeReadableType<Integer> x = left.next();
+      final JOTreeNodeReadableType<Integer> y = right.next();
+      if (x.depth() < 2) {
+        assertEquals(x.value(), y.value());
+      }
+      ++count;
+    }
+    assertFalse(left.hasNext());
+    assertFalse(right.hasNext());
+    assertEquals(40, count);
+  }
+
+  @Test
+  public void testDeep()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeNode.create(Integer.valueOf(0));
+    JOTreeNodeType<Integer> current = root;
+    for (int index = 1; index < 10_000; ++index) {
+      final JOTreeNodeType<Integer> next = JOTreeNode.create(
+        Integer.valueOf(index));
+      current.childAdd(next);
+      current = next;
+    }
+
+    final Iterator<JOTreeNodeReadableType<Integer>> post =
+      root.iteratorPostOrder();
+    assertSame(current, post.next());
+
+    int count = 1;
+    JOTreeNodeReadableType<Integer> last = current;
+    while (post.hasNext()) {
+      last = post.next();
+      ++count;
+    }
+    assertEquals(10_000, count);
+    assertSame(root, last);
+    assertEquals(10_000, drain(root.iteratorPreOrder()).size());
+  }
+
+  @Test
+  public void testLazy()
+  {
+    final AtomicInteger loads = new AtomicInteger();
+    final JOTreeNodeLazy<String> root = JOTreeNodeLazy.create(
+      "r",
+      node -> {
+        loads.incrementAndGet();
+        return List.of(node.value() + "/0", node.value() + "/1");
+      });
+
+    final Iterator<JOTreeNodeReadableType<String>> pre =
+      root.iteratorPreOrder();
+    assertEquals("r", pre.next().value());
+    assertEquals(0, loads.get());
+    assertEquals("r/0", pre.next().value());
+    assertEquals("r/0/0", pre.next().value());
+    assertEquals(2, loads.get());
+
+    final Iterator<JOTreeNodeReadableType<String>> breadth =
+      root.iteratorBreadthFirst();
+    final List<String> values = new ArrayList<>();
+    for (int index = 0; index < 7; ++index) {
+      values.add(breadth.next().value());
+    }
+    assertEquals(
+      List.of("r", "r/0", "r/1", "r/0/0", "r/0/1", "r/1/0", "r/1/1"),
+      values);
+  }
+}
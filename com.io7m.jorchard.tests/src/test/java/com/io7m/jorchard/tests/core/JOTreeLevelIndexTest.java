@@ -0,0 +1,174 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeLevelIndex;
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreeNodeReadableType;
+import com.io7m.jorchard.core.JOTreeNodeType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.RandomAccess;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class JOTreeLevelIndexTest
+{
+  /**
+   * Collect the nodes at each depth with a breadth-first traversal.
+   */
+
+  private static List<List<JOTreeNodeReadableType<Integer>>> levelsExpected(
+    final JOTreeNodeReadableType<Integer> root)
+  {
+    final List<List<JOTreeNodeReadableType<Integer>>> levels =
+      new ArrayList<>();
+    root.forEachBreadthFirst(levels, (input, depth, node) -> {
+      if (depth == input.size()) {
+        input.add(new ArrayList<>());
+      }
+      input.get(depth).add(node);
+    });
+    return levels;
+  }
+
+  private static void checkAgreement(
+    final JOTreeLevelIndex<Integer> index)
+  {
+    final var expected = levelsExpected(index.root());
+    assertEquals(expected.size() - 1, index.height());
+    for (var depth = 0; depth < expected.size(); ++depth) {
+      final var received = index.nodesAtDepth(depth);
+      assertTrue(received instanceof RandomAccess);
+      assertEquals(expected.get(depth), received);
+    }
+    assertEquals(List.of(), index.nodesAtDepth(expected.size()));
+  }
+
+  @Test
+  public void testSingleton()
+  {
+    final var node = JOTreeNode.create(Integer.valueOf(0));
+    final var index = JOTreeLevelIndex.create(node);
+    assertEquals(node, index.root());
+    assertEquals(0, index.height());
+    assertEquals(List.of(node), index.nodesAtDepth(0));
+    assertEquals(List.of(), index.nodesAtDepth(1));
+    assertThrows(IllegalArgumentException.class, () -> index.nodesAtDepth(-1));
+  }
+
+  @Test
+  public void testAgreesWithBreadthFirst()
+  {
+    final var random = new Random(0x10L);
+    final var nodes = JOTreeTestTrees.randomTree(random, 500);
+    final var index = JOTreeLevelIndex.create(nodes.get(0));
+    checkAgreement(index);
+
+    final var subtree = JOTreeLevelIndex.create(nodes.get(0).children().get(0));
+    checkAgreement(subtree);
+  }
+
+  @Test
+  public void testReadOnly()
+  {
+    final var random = new Random(0x20L);
+    final var nodes = JOTreeTestTrees.randomTree(random, 50);
+    final var index = JOTreeLevelIndex.create(nodes.get(0));
+    final var level = index.nodesAtDepth(1);
+    assertThrows(UnsupportedOperationException.class, () -> level.remove(0));
+  }
+
+  @Test
+  public void testInvalidatedOnMutation()
+  {
+    final var random = new Random(0x30L);
+    final var nodes = JOTreeTestTrees.randomTree(random, 200);
+    final var index = JOTreeLevelIndex.create(nodes.get(0));
+    checkAgreement(index);
+
+    for (var move = 0; move < 40; ++move) {
+      final var node = nodes.get(1 + random.nextInt(nodes.size() - 1));
+      final var parent = nodes.get(random.nextInt(nodes.size()));
+      if (random.nextInt(4) == 0) {
+        node.detach();
+        checkAgreement(index);
+      } else if (!parent.isDescendantOf(node)) {
+        node.setParent(parent);
+        checkAgreement(index);
+      }
+    }
+  }
+
+  @Test
+  public void testSnapshotUnaffected()
+  {
+    final var n0 = JOTreeNode.create(Integer.valueOf(0));
+    final var n1 = JOTreeNode.create(Integer.valueOf(1));
+    final var n2 = JOTreeNode.create(Integer.valueOf(2));
+    n0.childAdd(n1);
+
+    final var index = JOTreeLevelIndex.create(n0);
+    final var level = index.nodesAtDepth(1);
+    assertEquals(List.of(n1), level);
+
+    n0.childAdd(n2);
+    assertEquals(List.of(n1), level);
+    assertEquals(List.of(n1, n2), index.nodesAtDepth(1));
+  }
+
+  @Test
+  public void testForeignRootInvalidate()
+  {
+    final var n0 = new DelegatingNode<>(JOTreeNode.create(Integer.valueOf(0)));
+    final var n1 = JOTreeNode.create(Integer.valueOf(1));
+    final var n2 = JOTreeNode.create(Integer.valueOf(2));
+
+    n1.setParent(n0.actual);
+
+    final var index = JOTreeLevelIndex.create(n0);
+    assertEquals(1, index.height());
+
+    n2.setParent(n1);
+    index.invalidate();
+    assertEquals(2, index.height());
+    assertEquals(List.of(n2), index.nodesAtDepth(2));
+  }
+
+  @Test
+  public void testConcurrentQueries()
+    throws Exception
+  {
+    final var random = new Random(0x40L);
+    final var nodes = JOTreeTestTrees.randomTree(random, 80);
+    final var index = JOTreeLevelIndex.create(nodes.get(0));
+
+    for (var round = 0; round < 10; ++round) {
+      final var node = nodes.get(1 + random.nextInt(nodes.size() - 1));
+      final var parent = nodes.get(random.nextInt(nodes.size()));
+      if (!parent.isDescendantOf(node)) {
+        node.setParent(parent);
+      }
+      JOTreeTestConcurrency.runConcurrently(8, () -> checkAgreement(index));
+    }
+  }
+}
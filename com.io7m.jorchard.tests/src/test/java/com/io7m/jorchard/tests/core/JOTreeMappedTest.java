@@ -0,0 +1,339 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeFixedSizeCodecType;
+import com.io7m.jorchard.core.JOTreeFixedSizeCodecs;
+import com.io7m.jorchard.core.JOTreeMapped;
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreeNodeReadableType;
+import com.io7m.jorchard.core.JOTreeNodeType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class JOTreeMappedTest
+{
+  private Path file;
+
+  /*
+   * 0
+   * +- 1
+   * |  +- 3
+   * |  +- 4
+   * +- 2
+   *    +- 5
+   */
+
+  private static JOTreeNodeType<Integer> example()
+  {
+    final var n0 = JOTreeNode.create(Integer.valueOf(0));
+    final var n1 = JOTreeNode.create(Integer.valueOf(1));
+    final var n2 = JOTreeNode.create(Integer.valueOf(2));
+    final var n3 = JOTreeNode.create(Integer.valueOf(3));
+    final var n4 = JOTreeNode.create(Integer.valueOf(4));
+    final var n5 = JOTreeNode.create(Integer.valueOf(5));
+    n0.childAddAll(List.of(n1, n2));
+    n1.childAddAll(List.of(n3, n4));
+    n2.childAdd(n5);
+    return n0;
+  }
+
+  private static void corrupt(
+    final Path path,
+    final long position,
+    final int value)
+    throws IOException
+  {
+    try (var channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      final var buffer =
+        ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+      buffer.putInt(value);
+      buffer.flip();
+      channel.write(buffer, position);
+    }
+  }
+
+  @BeforeEach
+  public void setup()
+    throws IOException
+  {
+    this.file = Files.createTempFile("jorchard-", ".tree");
+  }
+
+  @AfterEach
+  public void tearDown()
+    throws IOException
+  {
+    Files.deleteIfExists(this.file);
+  }
+
+  @Test
+  public void testRoundTrip()
+    throws IOException
+  {
+    JOTreeMapped.write(this.file, JOTreeFixedSizeCodecs.integers(), example());
+    assertEquals(16L + 6L * 20L, Files.size(this.file));
+
+    try (var tree =
+           JOTreeMapped.open(this.file, JOTreeFixedSizeCodecs.integers())) {
+      assertEquals(6, tree.size());
+
+      final List<Integer> values = new ArrayList<>();
+      for (var index = 0; index < tree.size(); ++index) {
+        values.add(tree.value(index));
+      }
+      assertEquals(List.of(0, 1, 3, 4, 2, 5), values);
+
+      assertEquals(-1, tree.parent(0));
+      assertEquals(1, tree.parent(3));
+      assertEquals(4, tree.parent(5));
+      assertEquals(1, tree.firstChild(0));
+      assertEquals(-1, tree.firstChild(2));
+      assertEquals(4, tree.nextSibling(1));
+      assertEquals(-1, tree.nextSibling(3));
+      assertEquals(2, tree.depth(5));
+
+      assertTrue(tree.isDescendantOf(5, 0));
+      assertTrue(tree.isDescendantOf(3, 1));
+      assertFalse(tree.isDescendantOf(5, 1));
+      assertFalse(tree.isDescendantOf(0, 5));
+
+      assertThrows(IndexOutOfBoundsException.class, () -> tree.value(6));
+    }
+  }
+
+  @Test
+  public void testTraversals()
+    throws IOException
+  {
+    JOTreeMapped.write(this.file, JOTreeFixedSizeCodecs.integers(), example());
+
+    try (var tree =
+           JOTreeMapped.open(this.file, JOTreeFixedSizeCodecs.integers())) {
+      final List<Integer> depth_first = new ArrayList<>();
+      tree.forEachDepthFirst(1, depth_first, (input, depth, node) -> {
+        input.add(node.value());
+        input.add(Integer.valueOf(depth));
+      });
+      assertEquals(List.of(1, 0, 3, 1, 4, 1), depth_first);
+
+      final List<Integer> breadth_first = new ArrayList<>();
+      tree.root().forEachBreadthFirst(breadth_first, (input, depth, node) -> {
+        input.add(node.value());
+      });
+      assertEquals(List.of(0, 1, 2, 3, 4, 5), breadth_first);
+    }
+  }
+
+  @Test
+  public void testReadableViews()
+    throws IOException
+  {
+    JOTreeMapped.write(this.file, JOTreeFixedSizeCodecs.integers(), example());
+
+    try (var tree =
+           JOTreeMapped.open(this.file, JOTreeFixedSizeCodecs.integers())) {
+      final JOTreeNodeReadableType<Integer> root = tree.root();
+      final JOTreeNodeReadableType<Integer> n4 = tree.node(3);
+
+      assertTrue(root.isRoot());
+      assertFalse(n4.isDetachAllowed());
+      assertEquals(Optional.empty(), root.parentReadable());
+      assertEquals(Optional.of(tree.node(1)), n4.parentReadable());
+      assertEquals(Integer.valueOf(4), n4.value());
+      assertEquals(2, n4.depth());
+      assertTrue(n4.isDescendantOf(root));
+      assertEquals(2L, root.childrenReadable().size());
+
+      final var copy = JOTreeNode.create(Integer.valueOf(0));
+      final var mapped = root.mapDepthFirst(copy, (input, depth, node) -> node.value());
+      assertEquals(Integer.valueOf(0), mapped.value());
+      assertEquals(2L, mapped.children().size());
+    }
+  }
+
+  @Test
+  public void testRewrite()
+    throws IOException
+  {
+    JOTreeMapped.write(this.file, JOTreeFixedSizeCodecs.integers(), example());
+    JOTreeMapped.write(
+      this.file,
+      JOTreeFixedSizeCodecs.integers(),
+      JOTreeNode.create(Integer.valueOf(23)));
+
+    try (var tree =
+           JOTreeMapped.open(this.file, JOTreeFixedSizeCodecs.integers())) {
+      assertEquals(1, tree.size());
+      assertEquals(Integer.valueOf(23), tree.value(0));
+    }
+  }
+
+  @Test
+  public void testClosed()
+    throws IOException
+  {
+    JOTreeMapped.write(this.file, JOTreeFixedSizeCodecs.integers(), example());
+    final var tree = JOTreeMapped.open(this.file, JOTreeFixedSizeCodecs.integers());
+    tree.close();
+    assertThrows(IllegalStateException.class, tree::size);
+    assertThrows(IllegalStateException.class, () -> tree.depth(0));
+  }
+
+  @Test
+  public void testBadMagic()
+    throws IOException
+  {
+    JOTreeMapped.write(this.file, JOTreeFixedSizeCodecs.integers(), example());
+    corrupt(this.file, 0L, 0x12345678);
+    assertThrows(IOException.class, () -> {
+      JOTreeMapped.open(this.file, JOTreeFixedSizeCodecs.integers());
+    });
+  }
+
+  @Test
+  public void testBadVersion()
+    throws IOException
+  {
+    JOTreeMapped.write(this.file, JOTreeFixedSizeCodecs.integers(), example());
+    corrupt(this.file, 4L, 2);
+    assertThrows(IOException.class, () -> {
+      JOTreeMapped.open(this.file, JOTreeFixedSizeCodecs.integers());
+    });
+  }
+
+  @Test
+  public void testBadCount()
+    throws IOException
+  {
+    JOTreeMapped.write(this.file, JOTreeFixedSizeCodecs.integers(), example());
+    corrupt(this.file, 8L, 0);
+    assertThrows(IOException.class, () -> {
+      JOTreeMapped.open(this.file, JOTreeFixedSizeCodecs.integers());
+    });
+  }
+
+  @Test
+  public void testWrongCodec()
+    throws IOException
+  {
+    JOTreeMapped.write(this.file, JOTreeFixedSizeCodecs.integers(), example());
+    assertThrows(IOException.class, () -> {
+      JOTreeMapped.open(this.file, JOTreeFixedSizeCodecs.longs());
+    });
+  }
+
+  @Test
+  public void testTruncated()
+    throws IOException
+  {
+    JOTreeMapped.write(this.file, JOTreeFixedSizeCodecs.integers(), example());
+    try (var channel = FileChannel.open(this.file, StandardOpenOption.WRITE)) {
+      channel.truncate(Files.size(this.file) - 1L);
+    }
+    assertThrows(IOException.class, () -> {
+      JOTreeMapped.open(this.file, JOTreeFixedSizeCodecs.integers());
+    });
+  }
+
+  @Test
+  public void testTooSmall()
+    throws IOException
+  {
+    Files.write(this.file, new byte[4]);
+    assertThrows(IOException.class, () -> {
+      JOTreeMapped.open(this.file, JOTreeFixedSizeCodecs.integers());
+    });
+  }
+
+  @Test
+  public void testRewriteFailurePreservesFile()
+    throws IOException
+  {
+    JOTreeMapped.write(this.file, JOTreeFixedSizeCodecs.integers(), example());
+
+    final JOTreeFixedSizeCodecType<Integer> integers =
+      JOTreeFixedSizeCodecs.integers();
+    final JOTreeFixedSizeCodecType<Integer> failing =
+      new JOTreeFixedSizeCodecType<>()
+      {
+        @Override
+        public int size()
+        {
+          return integers.size();
+        }
+
+        @Override
+        public void write(
+          final ByteBuffer target,
+          final int offset,
+          final Integer value)
+        {
+          if (value.intValue() == 4) {
+            throw new IllegalStateException("Failed");
+          }
+          integers.write(target, offset, value);
+        }
+
+        @Override
+        public Integer read(
+          final ByteBuffer source,
+          final int offset)
+        {
+          return integers.read(source, offset);
+        }
+      };
+
+    assertThrows(IllegalStateException.class, () -> {
+      JOTreeMapped.write(this.file, failing, example());
+    });
+
+    try (var tree =
+           JOTreeMapped.open(this.file, JOTreeFixedSizeCodecs.integers())) {
+      assertEquals(6, tree.size());
+      assertEquals(Integer.valueOf(5), tree.value(5));
+    }
+
+    final var name = this.file.getFileName().toString();
+    try (Stream<Path> files = Files.list(this.file.getParent())) {
+      assertEquals(
+        List.of(this.file.getFileName()),
+        files.map(Path::getFileName)
+          .filter(p -> p.toString().startsWith(name))
+          .toList());
+    }
+  }
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeExceptionCycle;
+import com.io7m.jorchard.core.JOTreeExceptionDetachDenied;
+import com.io7m.jorchard.core.JOTreeMonoidType;
+import com.io7m.jorchard.core.JOTreeMonoids;
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreeNodeAugmented;
+import com.io7m.jorchard.core.JOTreeNodeReadableType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class JOTreeNodeAugmentedTest
+{
+  /**
+   * A non-commutative monoid: string concatenation.
+   */
+
+  private static final JOTreeMonoidType<String> CONCAT =
+    new JOTreeMonoidType<>()
+    {
+      @Override
+      public String identity()
+      {
+        return "";
+      }
+
+      @Override
+      public String combine(
+        final String x,
+        final String y)
+      {
+        return x + y;
+      }
+    };
+
+  private static <M> M recompute(
+    final JOTreeNodeReadableType<String> node,
+    final JOTreeMonoidType<M> monoid,
+    final Function<String, M> measure)
+  {
+    return node.foldPostOrder(
+      Integer.valueOf(0),
+      (input, depth, current, children) -> {
+        M result = measure.apply(current.value());
+        for (final M child : children) {
+          result = monoid.combine(result, child);
+        }
+        return result;
+      });
+  }
+
+  private static <M> void checkAll(
+    final List<JOTreeNodeAugmented<String, M>> nodes,
+    final Function<String, M> measure)
+  {
+    for (final JOTreeNodeAugmented<String, M> node : nodes) {
+      assertEquals(
+        recompute(node, node.monoid(), measure),
+        node.aggregate(),
+        node.toString());
+    }
+  }
+
+  private static <M> void randomEdits(
+    final JOTreeMonoidType<M> monoid,
+    final Function<String, M> measure)
+  {
+    final Random random = new Random(0x5eedL);
+    final List<JOTreeNodeAugmented<String, M>> nodes = new ArrayList<>();
+    for (int index = 0; index < 200; ++index) {
+      nodes.add(JOTreeNodeAugmented.create(
+        Integer.toString(index % 10), monoid, measure));
+    }
+
+    for (int step = 0; step < 2000; ++step) {
+      final JOTreeNodeAugmented<String, M> x =
+        nodes.get(random.nextInt(nodes.size()));
+      final JOTreeNodeAugmented<String, M> y =
+        nodes.get(random.nextInt(nodes.size()));
+
+      switch (random.nextInt(5)) {
+        case 0:
+        case 1:
+          if (!x.isDescendantOf(y)) {
+            x.childAdd(y);
+          }
+          break;
+        case 2:
+          y.detach();
+          break;
+        case 3:
+          x.childRemove(y);
+          break;
+        case 4:
+          x.childrenSort(Comparator.reverseOrder());
+          break;
+        default:
+          break;
+      }
+
+      if (step % 100 == 0) {
+        checkAll(nodes, measure);
+      }
+    }
+    checkAll(nodes, measure);
+  }
+
+  @Test
+  public void testSum()
+  {
+    final JOTreeNodeAugmented<String, Long> r =
+      JOTreeNodeAugmented.create("r", JOTreeMonoids.longSum(), v -> 1L);
+    final JOTreeNodeAugmented<String, Long> a =
+      JOTreeNodeAugmented.create("a", JOTreeMonoids.longSum(), v -> 1L);
+    final JOTreeNodeAugmented<String, Long> b =
+      JOTreeNodeAugmented.create("b", JOTreeMonoids.longSum(), v -> 1L);
+    final JOTreeNodeAugmented<String, Long> c =
+      JOTreeNodeAugmented.create("c", JOTreeMonoids.longSum(), v -> 1L);
+
+    assertEquals(Long.valueOf(1L), r.aggregate());
+    assertEquals(Long.valueOf(1L), r.measure());
+
+    r.childAdd(a);
+    a.childAdd(b);
+    b.childAdd(c);
+    assertEquals(Long.valueOf(4L), r.aggregate());
+    assertEquals(Long.valueOf(3L), a.aggregate());
+    assertEquals(Long.valueOf(2L), b.aggregate());
+
+    b.setParent(r);
+    assertEquals(Long.valueOf(4L), r.aggregate());
+    assertEquals(Long.valueOf(1L), a.aggregate());
+    assertEquals(Long.valueOf(2L), b.aggregate());
+
+    r.childRemove(b);
+    assertEquals(Long.valueOf(2L), r.aggregate());
+    assertEquals(Long.valueOf(2L), b.aggregate());
+
+    a.detach();
+    assertEquals(Long.valueOf(1L), r.aggregate());
+  }
+
+  @Test
+  public void testNonCommutative()
+  {
+    final JOTreeNodeAugmented<String, String> r =
+      JOTreeNodeAugmented.create("r", CONCAT, Function.identity());
+    final JOTreeNodeAugmented<String, String> a =
+      JOTreeNodeAugmented.create("a", CONCAT, Function.identity());
+    final JOTreeNodeAugmented<String, String> b =
+      JOTreeNodeAugmented.create("b", CONCAT, Function.identity());
+    final JOTreeNodeAugmented<String, String> c =
+      JOTreeNodeAugmented.create("c", CONCAT, Function.identity());
+
+    r.childAdd(b);
+    r.childAdd(a);
+    a.childAdd(c);
+    assertEquals("rbac", r.aggregate());
+
+    r.childrenSort(Comparator.naturalOrder());
+    assertEquals("racb", r.aggregate());
+
+    r.childAdd(a);
+    assertEquals("rbac", r.aggregate());
+
+    c.setParent(b);
+    assertEquals("rbca", r.aggregate());
+    assertEquals("bc", b.aggregate());
+  }
+
+  @Test
+  public void testMaximum()
+  {
+    final JOTreeNodeAugmented<String, Long> r = JOTreeNodeAugmented.create(
+      "1", JOTreeMonoids.longMaximum(), Long::valueOf);
+    final JOTreeNodeAugmented<String, Long> a = JOTreeNodeAugmented.create(
+      "5", JOTreeMonoids.longMaximum(), Long::valueOf);
+    final JOTreeNodeAugmented<String, Long> b = JOTreeNodeAugmented.create(
+      "9", JOTreeMonoids.longMaximum(), Long::valueOf);
+
+    r.childAdd(a);
+    a.childAdd(b);
+    assertEquals(Long.valueOf(9L), r.aggregate());
+    b.detach();
+    assertEquals(Long.valueOf(5L), r.aggregate());
+    assertEquals(Long.valueOf(5L), a.aggregate());
+  }
+
+  @Test
+  public void testRandomSum()
+  {
+    randomEdits(JOTreeMonoids.longSum(), v -> Long.valueOf(v));
+  }
+
+  @Test
+  public void testRandomConcat()
+  {
+    randomEdits(CONCAT, Function.identity());
+  }
+
+  @Test
+  public void testRandomMaximum()
+  {
+    randomEdits(JOTreeMonoids.longMaximum(), v -> Long.valueOf(v));
+  }
+
+  @Test
+  public void testCycle()
+  {
+    final JOTreeNodeAugmented<String, Long> r =
+      JOTreeNodeAugmented.create("r", JOTreeMonoids.longSum(), v -> 1L);
+    final JOTreeNodeAugmented<String, Long> a =
+      JOTreeNodeAugmented.create("a", JOTreeMonoids.longSum(), v -> 1L);
+    r.childAdd(a);
+
+    assertThrows(JOTreeExceptionCycle.class, () -> a.childAdd(r));
+    assertThrows(JOTreeExceptionCycle.class, () -> a.childAdd(a));
+    assertEquals(Long.valueOf(2L), r.aggregate());
+  }
+
+  @Test
+  public void testDetachDenied()
+  {
+    final JOTreeNodeAugmented<String, Long> r =
+      JOTreeNodeAugmented.create("r", JOTreeMonoids.longSum(), v -> 1L);
+    final JOTreeNodeAugmented<String, Long> s =
+      JOTreeNodeAugmented.create("s", JOTreeMonoids.longSum(), v -> 1L);
+    final JOTreeNodeAugmented<String, Long> a =
+      JOTreeNodeAugmented.createWithDetachCheck(
+        "a", JOTreeMonoids.longSum(), v -> 1L, () -> false);
+
+    r.childAdd(a);
+    assertThrows(JOTreeExceptionDetachDenied.class, a::detach);
+    assertThrows(JOTreeExceptionDetachDenied.class, () -> s.childAdd(a));
+    assertEquals(Long.valueOf(2L), r.aggregate());
+    assertEquals(Long.valueOf(1L), s.aggregate());
+  }
+
+  @Test
+  public void testForeign()
+  {
+    final JOTreeNodeAugmented<String, Long> r =
+      JOTreeNodeAugmented.create("r", JOTreeMonoids.longSum(), v -> 1L);
+    final JOTreeNodeAugmented<String, Long> m =
+      JOTreeNodeAugmented.create("m", JOTreeMonoids.longMaximum(), v -> 1L);
+
+    assertThrows(
+      IllegalArgumentException.class, () -> r.childAdd(JOTreeNode.create("x")));
+    assertThrows(IllegalArgumentException.class, () -> r.childAdd(m));
+    assertThrows(
+      IllegalArgumentException.class, () -> r.setParent(JOTreeNode.create("x")));
+  }
+}
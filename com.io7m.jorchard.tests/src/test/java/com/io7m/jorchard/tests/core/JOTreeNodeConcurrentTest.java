@@ -0,0 +1,323 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeExceptionCycle;
+import com.io7m.jorchard.core.JOTreeExceptionDetachDenied;
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreeNodeConcurrent;
+import com.io7m.jorchard.core.JOTreeNodeType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class JOTreeNodeConcurrentTest
+{
+  private static final int THREADS = 8;
+
+  private static void runAll(
+    final List<Runnable> tasks)
+    throws Exception
+  {
+    final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      final List<Future<?>> futures = new ArrayList<>();
+      for (final Runnable task : tasks) {
+        futures.add(executor.submit(task));
+      }
+      for (final Future<?> future : futures) {
+        future.get(60L, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  private static <A> void checkConsistent(
+    final JOTreeNodeType<A> root,
+    final List<JOTreeNodeType<A>> nodes)
+  {
+    for (final JOTreeNodeType<A> node : nodes) {
+      assertTrue(node.isDescendantOf(root), node + " reachable from root");
+
+      final Optional<JOTreeNodeType<A>> parent = node.parent();
+      if (node != root) {
+        assertTrue(parent.isPresent());
+        assertTrue(parent.get().children().contains(node));
+      }
+      for (final JOTreeNodeType<A> child : node.children()) {
+        assertSame(node, child.parent().get());
+      }
+    }
+
+    final int[] count = new int[1];
+    root.forEachBreadthFirst(count, (input, depth, node) -> ++input[0]);
+    assertEquals(nodes.size(), count[0]);
+  }
+
+  @Test
+  public void testStructure()
+  {
+    final var n0 = JOTreeNodeConcurrent.create(Integer.valueOf(0));
+    final var n1 = JOTreeNodeConcurrent.create(Integer.valueOf(1));
+    final var n2 = JOTreeNodeConcurrent.create(Integer.valueOf(2));
+    final var n3 = JOTreeNodeConcurrent.create(Integer.valueOf(3));
+
+    assertTrue(n0.isRoot());
+    assertEquals(List.of(), n0.children());
+
+    n0.childAdd(n1);
+    n0.childAdd(n2);
+    n3.setParent(n1);
+
+    assertEquals(List.of(n1, n2), n0.children());
+    assertEquals(List.of(n1, n2), n0.childrenReadable());
+    assertEquals(Optional.of(n1), n3.parent());
+    assertEquals(Optional.of(n1), n3.parentReadable());
+    assertEquals(2, n3.depth());
+    assertTrue(n3.isDescendantOf(n0));
+    assertTrue(n3.isDescendantOf(n3));
+    assertFalse(n3.isDescendantOf(n2));
+    assertFalse(n0.isDescendantOf(n3));
+    assertEquals("[JOTreeNodeConcurrent 3]", n3.toString());
+
+    n3.setParent(n2);
+    assertEquals(List.of(), n1.children());
+    assertEquals(List.of(n3), n2.children());
+
+    n0.childAdd(n1);
+    assertEquals(List.of(n2, n1), n0.children());
+
+    n0.childrenSortNodes(Comparator.comparing(JOTreeNodeType::value));
+    assertEquals(List.of(n1, n2), n0.children());
+
+    n0.childRemove(n3);
+    assertEquals(Optional.of(n2), n3.parent());
+    n2.childRemove(n3);
+    assertTrue(n3.isRoot());
+    assertEquals(0, n3.depth());
+
+    n1.detach();
+    assertTrue(n1.isRoot());
+    assertEquals(List.of(n2), n0.children());
+    n1.detach();
+    assertTrue(n1.isRoot());
+  }
+
+  @Test
+  public void testChildrenSnapshot()
+  {
+    final var n0 = JOTreeNodeConcurrent.create(Integer.valueOf(0));
+    final var n1 = JOTreeNodeConcurrent.create(Integer.valueOf(1));
+
+    final var before = n0.children();
+    n0.childAdd(n1);
+    final var after = n0.children();
+
+    assertEquals(List.of(), before);
+    assertEquals(List.of(n1), after);
+    assertSame(after, n0.children());
+    assertThrows(UnsupportedOperationException.class, () -> after.remove(0));
+  }
+
+  @Test
+  public void testCycle()
+  {
+    final var n0 = JOTreeNodeConcurrent.create(Integer.valueOf(0));
+    final var n1 = JOTreeNodeConcurrent.create(Integer.valueOf(1));
+    final var n2 = JOTreeNodeConcurrent.create(Integer.valueOf(2));
+    n0.childAdd(n1);
+    n1.childAdd(n2);
+
+    assertThrows(JOTreeExceptionCycle.class, () -> n2.childAdd(n0));
+    assertThrows(JOTreeExceptionCycle.class, () -> n0.setParent(n0));
+    assertThrows(JOTreeExceptionCycle.class, () -> n1.setParent(n2));
+    assertEquals(Optional.of(n1), n2.parent());
+    assertTrue(n0.isRoot());
+  }
+
+  @Test
+  public void testDetachDenied()
+  {
+    final var n0 = JOTreeNodeConcurrent.create(Integer.valueOf(0));
+    final var n1 = JOTreeNodeConcurrent.createWithDetachCheck(
+      Integer.valueOf(1), () -> false);
+    final var n2 = JOTreeNodeConcurrent.create(Integer.valueOf(2));
+
+    n0.childAdd(n1);
+    assertFalse(n1.isDetachAllowed());
+    assertThrows(JOTreeExceptionDetachDenied.class, n1::detach);
+    assertThrows(JOTreeExceptionDetachDenied.class, () -> n0.childRemove(n1));
+    assertThrows(JOTreeExceptionDetachDenied.class, () -> n2.childAdd(n1));
+    assertEquals(List.of(n1), n0.children());
+    assertEquals(List.of(), n2.children());
+  }
+
+  @Test
+  public void testForeignRejected()
+  {
+    final var n0 = JOTreeNodeConcurrent.create(Integer.valueOf(0));
+    final var n1 = JOTreeNode.create(Integer.valueOf(1));
+
+    assertThrows(IllegalArgumentException.class, () -> n0.childAdd(n1));
+    assertThrows(IllegalArgumentException.class, () -> n0.setParent(n1));
+    n0.childRemove(n1);
+    assertEquals(List.of(), n0.children());
+  }
+
+  @Test
+  public void testTraversals()
+  {
+    final var n0 = JOTreeNodeConcurrent.create(Integer.valueOf(0));
+    final var n1 = JOTreeNodeConcurrent.create(Integer.valueOf(1));
+    final var n2 = JOTreeNodeConcurrent.create(Integer.valueOf(2));
+    n0.childAdd(n1);
+    n1.childAdd(n2);
+
+    final List<Integer> values = new ArrayList<>();
+    n0.forEachBreadthFirst(values, (input, depth, node) -> input.add(node.value()));
+    n0.forEachDepthFirst(values, (input, depth, node) -> input.add(node.value()));
+    assertEquals(List.of(0, 1, 2, 0, 1, 2), values);
+
+    final var d = n0.mapDepthFirst(values, (input, depth, node) -> node.value());
+    final var b = n0.mapBreadthFirst(values, (input, depth, node) -> node.value());
+    assertEquals(Integer.valueOf(2), d.children().get(0).children().get(0).value());
+    assertEquals(Integer.valueOf(2), b.children().get(0).children().get(0).value());
+  }
+
+  @Test
+  public void testConcurrentBuild()
+    throws Exception
+  {
+    final var root = JOTreeNodeConcurrent.create(Integer.valueOf(-1));
+    final List<List<JOTreeNodeType<Integer>>> created = new ArrayList<>();
+    final List<Runnable> tasks = new ArrayList<>();
+
+    for (var thread = 0; thread < THREADS; ++thread) {
+      final List<JOTreeNodeType<Integer>> mine = new ArrayList<>();
+      created.add(mine);
+      final var id = thread;
+      tasks.add(() -> {
+        final var top = JOTreeNodeConcurrent.create(Integer.valueOf(id));
+        root.childAdd(top);
+        mine.add(top);
+        for (var index = 0; index < 2_000; ++index) {
+          final var node = JOTreeNodeConcurrent.create(Integer.valueOf(index));
+          mine.get(index / 4).childAdd(node);
+          mine.add(node);
+        }
+      });
+    }
+
+    runAll(tasks);
+
+    final List<JOTreeNodeType<Integer>> nodes = new ArrayList<>();
+    nodes.add(root);
+    created.forEach(nodes::addAll);
+    assertEquals(THREADS, root.children().size());
+    checkConsistent(root, nodes);
+  }
+
+  @Test
+  public void testConcurrentMoves()
+    throws Exception
+  {
+    final var root = JOTreeNodeConcurrent.create(Integer.valueOf(-1));
+    final List<JOTreeNodeType<Integer>> nodes = new ArrayList<>();
+    nodes.add(root);
+    for (var index = 0; index < 64; ++index) {
+      final var node = JOTreeNodeConcurrent.create(Integer.valueOf(index));
+      root.childAdd(node);
+      nodes.add(node);
+    }
+
+    final List<Runnable> tasks = new ArrayList<>();
+    for (var thread = 0; thread < THREADS; ++thread) {
+      final var random = new SplittableRandom(thread);
+      tasks.add(() -> {
+        for (var iteration = 0; iteration < 5_000; ++iteration) {
+          final var child = nodes.get(1 + random.nextInt(nodes.size() - 1));
+          final var parent = nodes.get(random.nextInt(nodes.size()));
+          try {
+            parent.childAdd(child);
+          } catch (final JOTreeExceptionCycle e) {
+            // Expected when parent is a descendant of child
+          }
+        }
+      });
+    }
+
+    runAll(tasks);
+    checkConsistent(root, nodes);
+  }
+
+  @Test
+  public void testConcurrentReadersAfterInteriorRemovals()
+    throws Exception
+  {
+    for (var round = 0; round < 20; ++round) {
+      final var root = JOTreeNodeConcurrent.create(Integer.valueOf(-1));
+      final List<JOTreeNodeType<Integer>> expected = new ArrayList<>();
+      for (var index = 0; index < 20_000; ++index) {
+        final var node = JOTreeNodeConcurrent.create(Integer.valueOf(index));
+        root.childAdd(node);
+        expected.add(node);
+      }
+
+      /*
+       * Remove children from the middle of the list, so that the list of
+       * children is read while it contains cleared slots.
+       */
+
+      for (var index = 19_000; index > 0; index -= 3) {
+        root.childRemove(expected.remove(index));
+      }
+
+      final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+      final List<Runnable> tasks = new ArrayList<>();
+      for (var thread = 0; thread < THREADS; ++thread) {
+        tasks.add(() -> {
+          try {
+            barrier.await(60L, TimeUnit.SECONDS);
+          } catch (final Exception e) {
+            throw new IllegalStateException(e);
+          }
+          assertEquals(expected, root.children());
+        });
+      }
+
+      runAll(tasks);
+      assertEquals(expected, root.children());
+    }
+  }
+}
@@ -34,6 +34,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
 import java.util.function.BooleanSupplier;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -266,6 +267,110 @@ public abstract class JOTreeNodeContract
     assertTrue(n2.isDescendantOf(n1));
   }
 
+  @Test
+  public final void testDepth()
+  {
+    final var n0 = this.create(Integer.valueOf(0));
+    final var n1 = this.create(Integer.valueOf(1));
+    final var n2 = this.create(Integer.valueOf(2));
+    final var n3 = this.create(Integer.valueOf(3));
+    final var n4 = this.create(Integer.valueOf(4));
+
+    assertEquals(0, n0.depth());
+
+    n1.setParent(n0);
+    n2.setParent(n1);
+    n3.setParent(n2);
+
+    assertEquals(0, n0.depth());
+    assertEquals(1, n1.depth());
+    assertEquals(2, n2.depth());
+    assertEquals(3, n3.depth());
+
+    n2.setParent(n0);
+
+    assertEquals(1, n2.depth());
+    assertEquals(2, n3.depth());
+
+    n4.childAdd(n0);
+
+    assertEquals(1, n0.depth());
+    assertEquals(2, n1.depth());
+    assertEquals(2, n2.depth());
+    assertEquals(3, n3.depth());
+
+    n2.detach();
+
+    assertEquals(0, n2.depth());
+    assertEquals(1, n3.depth());
+
+    n4.childRemove(n0);
+
+    assertEquals(0, n0.depth());
+    assertEquals(1, n1.depth());
+  }
+
+  @Test
+  public final void testDepthForeign()
+  {
+    final var n0 = this.create(Integer.valueOf(0));
+    final var n1 = new DelegatingNode<>(this.create(Integer.valueOf(1)));
+    final var n2 = this.create(Integer.valueOf(2));
+    final var n3 = this.create(Integer.valueOf(3));
+
+    n2.setParent(n1);
+    n3.setParent(n2);
+
+    assertEquals(0, n1.depth());
+    assertEquals(1, n2.depth());
+    assertEquals(2, n3.depth());
+
+    n1.setParent(n0);
+
+    assertEquals(1, n1.depth());
+    assertEquals(2, n2.depth());
+    assertEquals(3, n3.depth());
+    assertTrue(n3.isDescendantOf(n0));
+    assertTrue(n3.isDescendantOf(n1.actual));
+  }
+
+  @Test
+  public final void testDepthDeep()
+  {
+    final var count = 20_000;
+    final List<JOTreeNodeType<Integer>> nodes = new ArrayList<>(count);
+
+    var parent = this.create(Integer.valueOf(0));
+    nodes.add(parent);
+    for (var index = 1; index < count; ++index) {
+      final var node = this.create(Integer.valueOf(index));
+      parent.childAdd(node);
+      nodes.add(node);
+      parent = node;
+    }
+
+    final var root = nodes.get(0);
+    final var middle = nodes.get(count / 2);
+    final var leaf = nodes.get(count - 1);
+
+    assertEquals(count - 1, leaf.depth());
+    assertTrue(leaf.isDescendantOf(root));
+    assertTrue(leaf.isDescendantOf(middle));
+    assertFalse(middle.isDescendantOf(leaf));
+    assertFalse(root.isDescendantOf(middle));
+
+    final var other = this.create(Integer.valueOf(-1));
+    assertFalse(leaf.isDescendantOf(other));
+
+    middle.setParent(other);
+
+    assertEquals(0, other.depth());
+    assertEquals(1, middle.depth());
+    assertEquals(count - 1 - (count / 2) + 1, leaf.depth());
+    assertTrue(leaf.isDescendantOf(other));
+    assertFalse(leaf.isDescendantOf(root));
+  }
+
   @Test
   public final void testChildAddCorrect()
   {
@@ -514,6 +619,334 @@ public abstract class JOTreeNodeContract
     }
   }
 
+  @Test
+  public final void testWideChildAddRemove()
+  {
+    final var count = 100_000;
+    final var root = this.create(Integer.valueOf(-1));
+    final List<JOTreeNodeType<Integer>> nodes = new ArrayList<>(count);
+
+    for (var index = 0; index < count; ++index) {
+      final var node = this.create(Integer.valueOf(index));
+      nodes.add(node);
+      root.childAdd(node);
+    }
+
+    assertEquals(count, root.children().size());
+    for (var index = 0; index < count; ++index) {
+      assertEquals(Integer.valueOf(index), root.children().get(index).value());
+    }
+
+    /*
+     * Remove every even-numbered child, front to back.
+     */
+
+    for (var index = 0; index < count; index += 2) {
+      root.childRemove(nodes.get(index));
+    }
+
+    assertEquals(count / 2, root.children().size());
+    for (var index = 0; index < count; ++index) {
+      final var node = nodes.get(index);
+      if (index % 2 == 0) {
+        assertFalse(root.children().contains(node));
+        assertTrue(node.isRoot());
+      } else {
+        assertTrue(root.children().contains(node));
+        assertEquals(Optional.of(root), node.parent());
+      }
+    }
+
+    var expected = 1;
+    for (final var child : root.children()) {
+      assertEquals(Integer.valueOf(expected), child.value());
+      expected += 2;
+    }
+
+    /*
+     * Detach the remaining children, front to back.
+     */
+
+    for (var index = 1; index < count; index += 2) {
+      nodes.get(index).detach();
+    }
+
+    assertEquals(0L, root.children().size());
+    assertTrue(root.children().isEmpty());
+  }
+
+  @Test
+  public final void testWideChildReAddMovesToEnd()
+  {
+    final var root = this.create(Integer.valueOf(-1));
+    final var n0 = this.create(Integer.valueOf(0));
+    final var n1 = this.create(Integer.valueOf(1));
+    final var n2 = this.create(Integer.valueOf(2));
+
+    root.childAdd(n0);
+    root.childAdd(n1);
+    root.childAdd(n2);
+    root.childAdd(n0);
+
+    final var children = root.children();
+    assertEquals(3L, children.size());
+    assertEquals(n1, children.get(0));
+    assertEquals(n2, children.get(1));
+    assertEquals(n0, children.get(2));
+    assertEquals(2, children.indexOf(n0));
+    assertEquals(-1, children.indexOf(root));
+
+    n1.setParent(root);
+
+    assertEquals(3L, children.size());
+    assertEquals(n2, children.get(0));
+    assertEquals(n0, children.get(1));
+    assertEquals(n1, children.get(2));
+  }
+
+  @Test
+  public final void testWideSortAfterRemove()
+  {
+    final var root = this.create(Integer.valueOf(-1));
+    final List<JOTreeNodeType<Integer>> nodes = new ArrayList<>(100);
+
+    for (var index = 0; index < 100; ++index) {
+      final var node = this.create(Integer.valueOf(index));
+      nodes.add(node);
+      root.childAdd(node);
+    }
+
+    for (var index = 0; index < 100; index += 3) {
+      root.childRemove(nodes.get(index));
+    }
+
+    root.childrenSort(Comparator.reverseOrder());
+
+    final var children = root.children();
+    for (var index = 1; index < children.size(); ++index) {
+      assertTrue(
+        children.get(index - 1).value().intValue()
+          > children.get(index).value().intValue());
+      assertEquals(index, children.indexOf(children.get(index)));
+    }
+
+    for (final var node : nodes) {
+      assertEquals(node.value().intValue() % 3 != 0, children.contains(node));
+    }
+  }
+
+  private static void checkChildren(
+    final List<JOTreeNodeType<Integer>> expected,
+    final List<JOTreeNodeType<Integer>> children)
+  {
+    assertEquals(expected.size(), children.size());
+    assertEquals(expected, new ArrayList<>(children));
+    for (var index = 0; index < expected.size(); ++index) {
+      assertEquals(expected.get(index), children.get(index));
+      assertEquals(index, children.indexOf(expected.get(index)));
+    }
+  }
+
+  @Test
+  public final void testWideChildrenAgreeWithList()
+  {
+    final var random = new Random(0x10L);
+    final var root = this.create(Integer.valueOf(-1));
+    final List<JOTreeNodeType<Integer>> nodes = new ArrayList<>(200);
+    for (var index = 0; index < 200; ++index) {
+      nodes.add(this.create(Integer.valueOf(index)));
+    }
+
+    final List<JOTreeNodeType<Integer>> expected = new ArrayList<>(200);
+    for (var step = 0; step < 2_000; ++step) {
+      final var node = nodes.get(random.nextInt(nodes.size()));
+      if (random.nextInt(3) == 0) {
+        root.childRemove(node);
+        expected.remove(node);
+      } else {
+        root.childAdd(node);
+        expected.remove(node);
+        expected.add(node);
+      }
+      checkChildren(expected, root.children());
+    }
+  }
+
+  @Test
+  public final void testWideRemoveFirstRepeatedly()
+  {
+    final var count = 100_000;
+    final var root = this.create(Integer.valueOf(-1));
+    for (var index = 0; index < count; ++index) {
+      root.childAdd(this.create(Integer.valueOf(index)));
+    }
+
+    for (var index = 0; index < count; ++index) {
+      final var first = root.children().get(0);
+      assertEquals(Integer.valueOf(index), first.value());
+      root.childRemove(first);
+    }
+    assertTrue(root.children().isEmpty());
+  }
+
+  @Test
+  public final void testWideConcurrentReadsAfterRemovals()
+    throws Exception
+  {
+    final var count = 10_000;
+    final var root = this.create(Integer.valueOf(-1));
+    final List<JOTreeNodeType<Integer>> nodes = new ArrayList<>(count);
+    for (var index = 0; index < count; ++index) {
+      final var node = this.create(Integer.valueOf(index));
+      nodes.add(node);
+      root.childAdd(node);
+    }
+
+    final List<JOTreeNodeType<Integer>> expected = new ArrayList<>(count);
+    for (var index = 0; index < count; ++index) {
+      if (index % 3 == 1) {
+        root.childRemove(nodes.get(index));
+      } else {
+        expected.add(nodes.get(index));
+      }
+    }
+
+    JOTreeTestConcurrency.runConcurrently(
+      8, () -> checkChildren(expected, root.children()));
+  }
+
+  @Test
+  public final void testChildAddAllCorrect()
+  {
+    final var n0 = this.create(Integer.valueOf(0));
+    final var n1 = this.create(Integer.valueOf(1));
+    final var n2 = this.create(Integer.valueOf(2));
+    final var n3 = this.create(Integer.valueOf(3));
+    final var n4 = this.create(Integer.valueOf(4));
+
+    n4.childAdd(n2);
+    n0.childAdd(n3);
+
+    assertEquals(n0, n0.childAddAll(List.of(n1, n2, n3)));
+
+    final var children = n0.children();
+    assertEquals(3L, children.size());
+    assertEquals(n1, children.get(0));
+    assertEquals(n2, children.get(1));
+    assertEquals(n3, children.get(2));
+
+    assertEquals(Optional.of(n0), n1.parent());
+    assertEquals(Optional.of(n0), n2.parent());
+    assertEquals(Optional.of(n0), n3.parent());
+    assertTrue(n4.children().isEmpty());
+  }
+
+  @Test
+  public final void testChildAddAllWide()
+  {
+    final var count = 100_000;
+    final var root = this.create(Integer.valueOf(-1));
+    final List<JOTreeNodeType<Integer>> nodes = new ArrayList<>(count);
+    for (var index = 0; index < count; ++index) {
+      nodes.add(this.create(Integer.valueOf(index)));
+    }
+
+    root.childAddAll(nodes);
+
+    assertEquals(count, root.children().size());
+    for (var index = 0; index < count; ++index) {
+      final var node = nodes.get(index);
+      assertEquals(node, root.children().get(index));
+      assertEquals(Optional.of(root), node.parent());
+    }
+  }
+
+  @Test
+  public final void testChildAddAllCyclic()
+  {
+    final var n0 = this.create(Integer.valueOf(0));
+    final var n1 = this.create(Integer.valueOf(1));
+    final var n2 = this.create(Integer.valueOf(2));
+    final var n3 = this.create(Integer.valueOf(3));
+
+    n1.setParent(n0);
+    n2.setParent(n1);
+
+    assertThrows(JOTreeExceptionCycle.class, () -> {
+      n2.childAddAll(List.of(n3, n0));
+    });
+    assertThrows(JOTreeExceptionCycle.class, () -> {
+      n2.childAddAll(List.of(n2));
+    });
+
+    assertTrue(n2.children().isEmpty());
+    assertTrue(n3.isRoot());
+    assertTrue(n0.isRoot());
+  }
+
+  @Test
+  public final void testChildAddAllDeniedDetach()
+  {
+    final var n0 = this.create(Integer.valueOf(0));
+    final var n1 = this.create(Integer.valueOf(1));
+    final var n2 = this.create(Integer.valueOf(2));
+    final var n3 =
+      this.createWithDetachCheck(Integer.valueOf(3), () -> false);
+
+    n3.setParent(n1);
+
+    assertThrows(JOTreeExceptionDetachDenied.class, () -> {
+      n0.childAddAll(List.of(n2, n3));
+    });
+
+    assertTrue(n0.children().isEmpty());
+    assertTrue(n2.isRoot());
+    assertEquals(Optional.of(n1), n3.parent());
+  }
+
+  @Test
+  public final void testChildAddAllForeign()
+  {
+    final var n0 = this.create(Integer.valueOf(0));
+    final var n1 = new DelegatingNode<>(this.create(Integer.valueOf(1)));
+    final var n2 = this.create(Integer.valueOf(2));
+    final var n3 = new DelegatingNode<>(this.create(Integer.valueOf(3)));
+
+    n2.setParent(n3);
+
+    n0.childAddAll(List.of(n1, n2));
+
+    assertTrue(n0.children().contains(n2));
+    assertEquals(Optional.of(n0), n2.parent());
+    assertFalse(n3.children().contains(n2));
+    assertEquals(2L, n0.children().size());
+  }
+
+  @Test
+  public final void testChildAddAllDefault()
+  {
+    final var n0 = new DelegatingNode<>(this.create(Integer.valueOf(0)));
+    final var n1 = this.create(Integer.valueOf(1));
+    final var n2 = this.create(Integer.valueOf(2));
+    final var n3 =
+      this.createWithDetachCheck(Integer.valueOf(3), () -> false);
+    final var n4 = this.create(Integer.valueOf(4));
+
+    n4.childAdd(n0.actual);
+    n3.setParent(n4);
+
+    assertThrows(JOTreeExceptionCycle.class, () -> {
+      n0.childAddAll(List.of(n1, n4));
+    });
+    assertThrows(JOTreeExceptionDetachDenied.class, () -> {
+      n0.childAddAll(List.of(n1, n3));
+    });
+    assertTrue(n1.isRoot());
+
+    n0.childAddAll(List.of(n1, n2));
+    assertEquals(List.of(n1, n2), n0.children());
+  }
+
   /**
    * Checks that a parent that raises an exception when a child attempts to
    * setParent it doesn't corrupt the tree.
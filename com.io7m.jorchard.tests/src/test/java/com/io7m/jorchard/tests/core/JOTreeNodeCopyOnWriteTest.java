@@ -0,0 +1,294 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeExceptionCycle;
+import com.io7m.jorchard.core.JOTreeExceptionDetachDenied;
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreeNodeCopyOnWrite;
+import com.io7m.jorchard.core.JOTreeNodeType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class JOTreeNodeCopyOnWriteTest
+{
+  @Test
+  public void testStructure()
+  {
+    final var n0 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(0));
+    final var n1 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(1));
+    final var n2 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(2));
+    final var n3 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(3));
+
+    assertTrue(n0.isRoot());
+    assertEquals(List.of(), n0.children());
+
+    n0.childAdd(n1);
+    n0.childAdd(n2);
+    n3.setParent(n1);
+
+    assertEquals(List.of(n1, n2), n0.children());
+    assertEquals(List.of(n1, n2), n0.childrenReadable());
+    assertEquals(Optional.of(n1), n3.parent());
+    assertEquals(Optional.of(n1), n3.parentReadable());
+    assertEquals(2, n3.depth());
+    assertTrue(n3.isDescendantOf(n0));
+    assertFalse(n3.isDescendantOf(n2));
+    assertFalse(n0.isDescendantOf(n3));
+    assertEquals("[JOTreeNodeCopyOnWrite 3]", n3.toString());
+
+    n3.setParent(n2);
+    assertEquals(List.of(), n1.children());
+    assertEquals(List.of(n3), n2.children());
+
+    n0.childAdd(n1);
+    assertEquals(List.of(n2, n1), n0.children());
+    assertEquals(1, n0.children().indexOf(n1));
+    assertEquals(-1, n0.children().indexOf(n3));
+
+    n0.childrenSortNodes(Comparator.comparing(JOTreeNodeType::value));
+    assertEquals(List.of(n1, n2), n0.children());
+
+    n0.childRemove(n3);
+    assertEquals(Optional.of(n2), n3.parent());
+    n2.childRemove(n3);
+    assertTrue(n3.isRoot());
+
+    n1.detach();
+    assertTrue(n1.isRoot());
+    assertEquals(List.of(n2), n0.children());
+  }
+
+  @Test
+  public void testSnapshots()
+  {
+    final var n0 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(0));
+    final var n1 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(1));
+    final var n2 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(2));
+
+    n0.childAdd(n1);
+    final var before = n0.children();
+    n0.childAdd(n2);
+    n0.childRemove(n1);
+
+    assertEquals(List.of(n1), before);
+    assertEquals(List.of(n2), n0.children());
+    assertSame(n0.children(), n0.children());
+    assertThrows(UnsupportedOperationException.class, () -> before.remove(0));
+  }
+
+  @Test
+  public void testChildAddAll()
+  {
+    final var n0 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(0));
+    final var n1 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(1));
+    final var n2 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(2));
+    final var n3 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(3));
+    final var n4 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(4));
+
+    n4.childAdd(n2);
+    n0.childAdd(n3);
+    n0.childAdd(n1);
+
+    assertSame(n0, n0.childAddAll(List.of(n1, n2, n3, n1)));
+    assertEquals(List.of(n2, n3, n1), n0.children());
+    assertEquals(Optional.of(n0), n2.parent());
+    assertEquals(List.of(), n4.children());
+
+    final var count = 10_000;
+    final List<JOTreeNodeType<Integer>> nodes = new ArrayList<>(count);
+    for (var index = 0; index < count; ++index) {
+      nodes.add(JOTreeNodeCopyOnWrite.create(Integer.valueOf(index)));
+    }
+    n4.childAddAll(nodes);
+    assertEquals(nodes, n4.children());
+  }
+
+  @Test
+  public void testChildAddAllRejected()
+  {
+    final var n0 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(0));
+    final var n1 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(1));
+    final var n2 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(2));
+    final var n3 = JOTreeNodeCopyOnWrite.createWithDetachCheck(
+      Integer.valueOf(3), () -> false);
+    final var n4 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(4));
+    n0.childAdd(n1);
+    n4.childAdd(n3);
+
+    assertThrows(JOTreeExceptionCycle.class, () -> n1.childAddAll(List.of(n2, n0)));
+    assertThrows(
+      JOTreeExceptionDetachDenied.class,
+      () -> n1.childAddAll(List.of(n2, n3)));
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> n1.childAddAll(List.of(n2, JOTreeNode.create(Integer.valueOf(5)))));
+
+    assertEquals(List.of(), n1.children());
+    assertTrue(n2.isRoot());
+    assertEquals(List.of(n3), n4.children());
+  }
+
+  @Test
+  public void testCycle()
+  {
+    final var n0 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(0));
+    final var n1 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(1));
+    final var n2 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(2));
+    n0.childAdd(n1);
+    n1.childAdd(n2);
+
+    assertThrows(JOTreeExceptionCycle.class, () -> n2.childAdd(n0));
+    assertThrows(JOTreeExceptionCycle.class, () -> n0.setParent(n0));
+    assertEquals(Optional.of(n1), n2.parent());
+  }
+
+  @Test
+  public void testDetachDenied()
+  {
+    final var n0 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(0));
+    final var n1 = JOTreeNodeCopyOnWrite.createWithDetachCheck(
+      Integer.valueOf(1), () -> false);
+    final var n2 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(2));
+
+    n0.childAdd(n1);
+    assertFalse(n1.isDetachAllowed());
+    assertThrows(JOTreeExceptionDetachDenied.class, n1::detach);
+    assertThrows(JOTreeExceptionDetachDenied.class, () -> n0.childRemove(n1));
+    assertThrows(JOTreeExceptionDetachDenied.class, () -> n2.childAdd(n1));
+    assertEquals(List.of(n1), n0.children());
+  }
+
+  @Test
+  public void testForeignRejected()
+  {
+    final var n0 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(0));
+    final var n1 = JOTreeNode.create(Integer.valueOf(1));
+
+    assertThrows(IllegalArgumentException.class, () -> n0.childAdd(n1));
+    assertThrows(IllegalArgumentException.class, () -> n0.setParent(n1));
+    n0.childRemove(n1);
+    assertEquals(List.of(), n0.children());
+  }
+
+  @Test
+  public void testTraversals()
+  {
+    final var n0 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(0));
+    final var n1 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(1));
+    final var n2 = JOTreeNodeCopyOnWrite.create(Integer.valueOf(2));
+    n0.childAdd(n1);
+    n1.childAdd(n2);
+
+    final List<Integer> values = new ArrayList<>();
+    n0.forEachBreadthFirst(values, (input, depth, node) -> input.add(node.value()));
+    n0.forEachDepthFirst(values, (input, depth, node) -> input.add(node.value()));
+    assertEquals(List.of(0, 1, 2, 0, 1, 2), values);
+
+    final var d = n0.mapDepthFirst(values, (input, depth, node) -> node.value());
+    final var b = n0.mapBreadthFirst(values, (input, depth, node) -> node.value());
+    assertEquals(Integer.valueOf(2), d.children().get(0).children().get(0).value());
+    assertEquals(Integer.valueOf(2), b.children().get(0).children().get(0).value());
+  }
+
+  @Test
+  public void testConcurrentReaders()
+    throws Exception
+  {
+    final var root = JOTreeNodeCopyOnWrite.create(Integer.valueOf(-1));
+    final List<JOTreeNodeType<Integer>> nodes = new ArrayList<>();
+    nodes.add(root);
+    for (var index = 0; index < 64; ++index) {
+      final var node = JOTreeNodeCopyOnWrite.create(Integer.valueOf(index));
+      root.childAdd(node);
+      nodes.add(node);
+    }
+
+    final var done = new AtomicBoolean(false);
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<?>> readers = new ArrayList<>();
+      for (var thread = 0; thread < 4; ++thread) {
+        readers.add(executor.submit(() -> {
+          while (!done.get()) {
+            final int[] count = new int[1];
+            root.forEachDepthFirst(count, (input, depth, node) -> {
+              ++input[0];
+              for (final var child : node.childrenReadable()) {
+                if (child == null) {
+                  throw new IllegalStateException("Null child");
+                }
+              }
+            });
+            if (count[0] < 1) {
+              throw new IllegalStateException("Visited no nodes");
+            }
+            for (final var node : nodes) {
+              node.isDescendantOf(root);
+            }
+          }
+        }));
+      }
+
+      final var random = new SplittableRandom(23L);
+      for (var iteration = 0; iteration < 20_000; ++iteration) {
+        final var child = nodes.get(1 + random.nextInt(nodes.size() - 1));
+        final var parent = nodes.get(random.nextInt(nodes.size()));
+        try {
+          parent.childAdd(child);
+        } catch (final JOTreeExceptionCycle e) {
+          // Expected when parent is a descendant of child
+        }
+      }
+
+      done.set(true);
+      for (final var reader : readers) {
+        reader.get(60L, TimeUnit.SECONDS);
+      }
+    } finally {
+      done.set(true);
+      executor.shutdown();
+    }
+
+    final int[] count = new int[1];
+    root.forEachDepthFirst(count, (input, depth, node) -> ++input[0]);
+    assertEquals(nodes.size(), count[0]);
+    for (final var node : nodes) {
+      assertTrue(node.isDescendantOf(root));
+      for (final var child : node.children()) {
+        assertSame(node, child.parent().get());
+      }
+    }
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreeNodeLazy;
+import com.io7m.jorchard.core.JOTreeNodeLazyLoaderType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class JOTreeNodeLazyTest
+{
+  /**
+   * A loader that gives every node at depth less than three the children
+   * {@code value/0} and {@code value/1}, recording each load.
+   */
+
+  private static final class PathLoader implements JOTreeNodeLazyLoaderType<String>
+  {
+    private final List<String> loaded = new ArrayList<>();
+
+    @Override
+    public List<String> load(
+      final JOTreeNodeLazy<String> node)
+    {
+      this.loaded.add(node.value());
+      if (node.depth() >= 3) {
+        return List.of();
+      }
+      return List.of(node.value() + "/0", node.value() + "/1");
+    }
+  }
+
+  @Test
+  public void testLoadOnDemand()
+  {
+    final var loader = new PathLoader();
+    final var root = JOTreeNodeLazy.create("r", loader);
+
+    assertFalse(root.isLoaded());
+    assertTrue(root.isRoot());
+    assertEquals(0, root.depth());
+    assertEquals(List.of(), loader.loaded);
+
+    final var children = root.children();
+    assertTrue(root.isLoaded());
+    assertEquals(List.of("r"), loader.loaded);
+    assertEquals(2L, children.size());
+    assertEquals("r/0", children.get(0).value());
+    assertEquals("r/1", children.get(1).value());
+    assertFalse(children.get(0).isLoaded());
+
+    assertSame(children, root.children());
+    assertSame(children, root.childrenReadable());
+    assertEquals(List.of("r"), loader.loaded);
+
+    final var child = children.get(1);
+    assertEquals(Optional.of(root), child.parent());
+    assertEquals(Optional.of(root), child.parentReadable());
+    assertFalse(child.isRoot());
+    assertFalse(child.isDetachAllowed());
+    assertEquals(1, child.depth());
+    assertEquals("[JOTreeNodeLazy r/1]", child.toString());
+
+    assertThrows(
+      UnsupportedOperationException.class,
+      () -> children.remove(0));
+  }
+
+  @Test
+  public void testIsDescendantOfDoesNotLoad()
+  {
+    final var loader = new PathLoader();
+    final var root = JOTreeNodeLazy.create("r", loader);
+    final var a = root.children().get(0);
+    final var b = a.children().get(1);
+    final var c = b.children().get(0);
+    assertEquals("r/0/1/0", c.value());
+    assertEquals(3, c.depth());
+    assertEquals(List.of("r", "r/0", "r/0/1"), loader.loaded);
+
+    final var other = root.children().get(1);
+    assertTrue(c.isDescendantOf(root));
+    assertTrue(c.isDescendantOf(a));
+    assertTrue(c.isDescendantOf(c));
+    assertFalse(c.isDescendantOf(other));
+    assertFalse(root.isDescendantOf(c));
+    assertFalse(c.isDescendantOf(JOTreeNodeLazy.create("r", loader)));
+    assertFalse(c.isDescendantOf(JOTreeNode.create("r")));
+    assertEquals(List.of("r", "r/0", "r/0/1"), loader.loaded);
+  }
+
+  @Test
+  public void testTraversal()
+  {
+    final var loader = new PathLoader();
+    final var root = JOTreeNodeLazy.create("r", loader);
+
+    final List<String> values = new ArrayList<>();
+    root.forEachBreadthFirst(values, (input, depth, node) -> {
+      input.add(node.value());
+    });
+    assertEquals(15L, values.size());
+    assertEquals("r/1/1/1", values.get(14));
+    assertEquals(15L, loader.loaded.size());
+
+    final int[] count = new int[1];
+    root.forEachDepthFirst(count, (input, depth, node) -> ++input[0]);
+    assertEquals(15, count[0]);
+    assertEquals(15L, loader.loaded.size());
+
+    assertEquals(15, root.freeze().size());
+    assertEquals(2L, root.mapDepthFirst(count, (input, depth, node) -> node.value())
+      .children().size());
+    assertEquals(2L, root.mapBreadthFirst(count, (input, depth, node) -> node.value())
+      .children().size());
+  }
+
+  @Test
+  public void testEvict()
+  {
+    final var loader = new PathLoader();
+    final var root = JOTreeNodeLazy.create("r", loader);
+    final var before = root.children().get(0);
+    before.children();
+    assertEquals(List.of("r", "r/0"), loader.loaded);
+
+    root.evict();
+    assertFalse(root.isLoaded());
+    assertEquals(Optional.of(root), before.parent());
+    assertTrue(before.isLoaded());
+
+    final var after = root.children().get(0);
+    assertNotSame(before, after);
+    assertEquals(before.value(), after.value());
+    assertFalse(after.isLoaded());
+    assertEquals(List.of("r", "r/0", "r"), loader.loaded);
+  }
+
+  @Test
+  public void testLoaderReentrant()
+  {
+    final var root = JOTreeNodeLazy.create("r", node -> {
+      node.children();
+      return List.of();
+    });
+
+    assertThrows(IllegalStateException.class, root::children);
+    assertFalse(root.isLoaded());
+  }
+
+  @Test
+  public void testLoaderNull()
+  {
+    final var root = JOTreeNodeLazy.<String>create("r", node -> null);
+    assertThrows(NullPointerException.class, root::children);
+
+    final var nulls = new ArrayList<String>();
+    nulls.add(null);
+    final var root_nulls = JOTreeNodeLazy.<String>create("r", node -> nulls);
+    assertThrows(NullPointerException.class, root_nulls::children);
+  }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeExceptionCycle;
+import com.io7m.jorchard.core.JOTreeNodeDouble;
+import com.io7m.jorchard.core.JOTreeNodeInt;
+import com.io7m.jorchard.core.JOTreeNodeLong;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class JOTreeNodePrimitiveTest
+{
+  /*
+   * 0
+   * +- 1
+   * |  +- 3
+   * |  +- 4
+   * +- 2
+   *    +- 5
+   */
+
+  private static JOTreeNodeInt example()
+  {
+    final var n0 = JOTreeNodeInt.create(0);
+    final var n1 = JOTreeNodeInt.create(1);
+    final var n2 = JOTreeNodeInt.create(2);
+    final var n3 = JOTreeNodeInt.create(3);
+    final var n4 = JOTreeNodeInt.create(4);
+    final var n5 = JOTreeNodeInt.create(5);
+    n0.childAdd(n1);
+    n0.childAdd(n2);
+    n1.childAdd(n3);
+    n1.childAdd(n4);
+    n2.childAdd(n5);
+    return n0;
+  }
+
+  private static List<Integer> valuesDepthFirst(
+    final JOTreeNodeInt root)
+  {
+    final List<Integer> values = new ArrayList<>();
+    root.forEachDepthFirst(values, (input, depth, node) -> input.add(
+      Integer.valueOf(node.value())));
+    return values;
+  }
+
+  @Test
+  public void testStructure()
+  {
+    final var n0 = JOTreeNodeInt.create(0);
+    final var n1 = JOTreeNodeInt.create(1);
+
+    assertTrue(n0.isRoot());
+    assertEquals(List.of(), n0.children());
+    assertEquals(Optional.empty(), n0.parent());
+
+    n0.childAdd(n1);
+    assertTrue(n0.isRoot());
+    assertFalse(n1.isRoot());
+    assertEquals(List.of(n1), n0.children());
+    assertEquals(Optional.of(n0), n1.parent());
+    assertEquals(1, n1.depth());
+    assertTrue(n1.isDescendantOf(n0));
+    assertFalse(n0.isDescendantOf(n1));
+
+    n0.childRemove(n1);
+    assertTrue(n1.isRoot());
+    assertEquals(List.of(), n0.children());
+    assertEquals(0, n1.depth());
+    assertFalse(n1.isDescendantOf(n0));
+  }
+
+  @Test
+  public void testChildrenReadOnly()
+  {
+    final var n0 = example();
+    assertThrows(
+      UnsupportedOperationException.class,
+      () -> n0.children().remove(0));
+  }
+
+  @Test
+  public void testReparent()
+  {
+    final var n0 = example();
+    final var n1 = n0.children().get(0);
+    final var n2 = n0.children().get(1);
+    final var n3 = n1.children().get(0);
+
+    n3.setParent(n2);
+    assertEquals(1, n1.children().size());
+    assertEquals(2, n2.children().size());
+    assertEquals(2, n3.depth());
+    assertTrue(n3.isDescendantOf(n2));
+    assertFalse(n3.isDescendantOf(n1));
+
+    n2.detach();
+    assertEquals(0, n2.depth());
+    assertEquals(1, n3.depth());
+    assertTrue(n3.isDescendantOf(n2));
+    assertFalse(n3.isDescendantOf(n0));
+  }
+
+  @Test
+  public void testCycle()
+  {
+    final var n0 = example();
+    final var n1 = n0.children().get(0);
+    final var n3 = n1.children().get(0);
+
+    assertThrows(JOTreeExceptionCycle.class, () -> n3.childAdd(n0));
+    assertThrows(JOTreeExceptionCycle.class, () -> n0.setParent(n0));
+    assertEquals(List.of(0, 2, 5, 1, 4, 3), valuesDepthFirst(n0));
+  }
+
+  @Test
+  public void testForEach()
+  {
+    final var n0 = example();
+
+    final List<Integer> depths = new ArrayList<>();
+    n0.forEachDepthFirst(depths, (input, depth, node) -> input.add(
+      Integer.valueOf(depth)));
+    assertEquals(List.of(0, 2, 5, 1, 4, 3), valuesDepthFirst(n0));
+    assertEquals(List.of(0, 1, 2, 1, 2, 2), depths);
+
+    final List<Integer> values = new ArrayList<>();
+    n0.forEachBreadthFirst(values, (input, depth, node) -> input.add(
+      Integer.valueOf(node.value())));
+    assertEquals(List.of(0, 1, 2, 3, 4, 5), values);
+
+    final var n1 = n0.children().get(0);
+    final List<Integer> sub_depths = new ArrayList<>();
+    n1.forEachBreadthFirst(sub_depths, (input, depth, node) -> input.add(
+      Integer.valueOf(depth)));
+    assertEquals(List.of(0, 1, 1), sub_depths);
+  }
+
+  @Test
+  public void testMap()
+  {
+    final var n0 = example();
+
+    final var d = n0.mapDepthFirst(
+      Integer.valueOf(10),
+      (input, depth, node) -> node.value() * input.intValue());
+    assertEquals(List.of(0, 10, 30, 40, 20, 50), valuesDepthFirst(d));
+
+    final var b = n0.mapBreadthFirst(
+      Integer.valueOf(1),
+      (input, depth, node) -> node.value() + input.intValue());
+    assertEquals(List.of(1, 3, 6, 2, 5, 4), valuesDepthFirst(b));
+    assertEquals(2, b.children().get(0).children().get(0).depth());
+  }
+
+  @Test
+  public void testMapResultStructure()
+  {
+    final var n0 = example();
+
+    for (final var mapped : List.of(
+      n0.mapDepthFirst(Integer.valueOf(0), (input, depth, node) -> depth),
+      n0.mapBreadthFirst(Integer.valueOf(0), (input, depth, node) -> depth))) {
+      mapped.forEachDepthFirst(mapped, (root, depth, node) -> {
+        assertEquals(depth, node.value());
+        assertEquals(depth, node.depth());
+        assertTrue(node.isDescendantOf(root));
+        for (final var child : node.children()) {
+          assertEquals(Optional.of(node), child.parent());
+        }
+      });
+
+      final var child = mapped.children().get(0);
+      final var grandchild = child.children().get(0);
+      assertThrows(
+        JOTreeExceptionCycle.class, () -> child.setParent(grandchild));
+
+      grandchild.detach();
+      assertEquals(0, grandchild.depth());
+      child.childAdd(grandchild);
+      assertEquals(2, grandchild.depth());
+    }
+  }
+
+  @Test
+  public void testSort()
+  {
+    final var n0 = example();
+    n0.childrenSortNodes(
+      Comparator.comparingInt(JOTreeNodeInt::value).reversed());
+    assertEquals(2, n0.children().get(0).value());
+    assertEquals(1, n0.children().get(1).value());
+  }
+
+  @Test
+  public void testLong()
+  {
+    final var n0 = JOTreeNodeLong.create(0x1_0000_0000L);
+    final var n1 = JOTreeNodeLong.create(2L);
+    n0.childAdd(n1);
+
+    final long[] sum = new long[1];
+    n0.forEachBreadthFirst(sum, (input, depth, node) -> input[0] += node.value());
+    assertEquals(0x1_0000_0002L, sum[0]);
+
+    final var m = n0.mapDepthFirst(sum, (input, depth, node) -> node.value() + 1L);
+    assertEquals(0x1_0000_0001L, m.value());
+    assertEquals(3L, m.children().get(0).value());
+    assertEquals("[JOTreeNodeLong 2]", n1.toString());
+  }
+
+  @Test
+  public void testDouble()
+  {
+    final var n0 = JOTreeNodeDouble.create(1.5);
+    final var n1 = JOTreeNodeDouble.create(2.5);
+    n0.childAdd(n1);
+
+    final double[] sum = new double[1];
+    n0.forEachDepthFirst(sum, (input, depth, node) -> input[0] += node.value());
+    assertEquals(4.0, sum[0], 0.0);
+
+    final var m = n0.mapBreadthFirst(sum, (input, depth, node) -> node.value() * 2.0);
+    assertEquals(3.0, m.value(), 0.0);
+    assertEquals(5.0, m.children().get(0).value(), 0.0);
+    assertEquals("[JOTreeNodeDouble 2.5]", n1.toString());
+  }
+
+  @Test
+  public void testDeep()
+  {
+    var current = JOTreeNodeInt.create(0);
+    final var root = current;
+    for (var index = 1; index < 20_000; ++index) {
+      final var next = JOTreeNodeInt.create(index);
+      current.childAdd(next);
+      current = next;
+    }
+
+    assertEquals(19_999, current.depth());
+    assertTrue(current.isDescendantOf(root));
+
+    final int[] count = new int[1];
+    root.forEachDepthFirst(count, (input, depth, node) -> ++input[0]);
+    assertEquals(20_000, count[0]);
+  }
+}
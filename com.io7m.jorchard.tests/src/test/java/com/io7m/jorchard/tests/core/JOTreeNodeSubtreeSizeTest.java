@@ -0,0 +1,273 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreeNodeReadableType;
+import com.io7m.jorchard.core.JOTreeNodeType;
+import com.io7m.jorchard.core.JOTreeStreamReader;
+import com.io7m.jorchard.core.JOTreeStreamWriter;
+import com.io7m.jorchard.core.JOTreeValueCodecs;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class JOTreeNodeSubtreeSizeTest
+{
+  /**
+   * Check that the maintained size of every node in the subtree rooted at
+   * {@code root} matches a count of the nodes.
+   */
+
+  private static <A> void checkSizes(
+    final JOTreeNodeReadableType<A> root)
+  {
+    final Integer size = root.foldPostOrder(
+      Integer.valueOf(0),
+      (input, depth, node, children) -> {
+        int total = 1;
+        for (final Integer child : children) {
+          total += child.intValue();
+        }
+        assertEquals(total, node.subtreeSize(), node.toString());
+        return Integer.valueOf(total);
+      });
+    assertEquals(root.subtreeSize(), size.intValue());
+  }
+
+  @Test
+  public void testSingleton()
+  {
+    assertEquals(1, JOTreeNode.create("a").subtreeSize());
+  }
+
+  @Test
+  public void testAddRemove()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(3, 3);
+    assertEquals(40, root.subtreeSize());
+    checkSizes(root);
+
+    final JOTreeNodeType<Integer> child = root.children().get(0);
+    final JOTreeNodeType<Integer> grandchild = child.children().get(1);
+    assertEquals(13, child.subtreeSize());
+    assertEquals(4, grandchild.subtreeSize());
+
+    grandchild.detach();
+    assertEquals(4, grandchild.subtreeSize());
+    assertEquals(9, child.subtreeSize());
+    assertEquals(36, root.subtreeSize());
+    checkSizes(root);
+
+    grandchild.childAdd(JOTreeTestTrees.completeTree(2, 2));
+    assertEquals(11, grandchild.subtreeSize());
+    assertEquals(36, root.subtreeSize());
+
+    root.childAdd(grandchild);
+    assertEquals(47, root.subtreeSize());
+    checkSizes(root);
+
+    root.childRemove(child);
+    assertEquals(9, child.subtreeSize());
+    assertEquals(38, root.subtreeSize());
+    checkSizes(root);
+    checkSizes(child);
+  }
+
+  @Test
+  public void testReAdd()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(3, 2);
+    final JOTreeNodeType<Integer> child = root.children().get(0);
+
+    root.childAdd(child);
+    assertEquals(13, root.subtreeSize());
+    child.setParent(root);
+    assertEquals(13, root.subtreeSize());
+    root.childAddAll(List.of(child, root.children().get(0)));
+    assertEquals(13, root.subtreeSize());
+    checkSizes(root);
+  }
+
+  @Test
+  public void testMove()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(2, 4);
+    final JOTreeNodeType<Integer> a = root.children().get(0);
+    final JOTreeNodeType<Integer> b = root.children().get(1);
+    final JOTreeNodeType<Integer> deep = a.children().get(0).children().get(0);
+
+    deep.setParent(b);
+    assertEquals(12, a.subtreeSize());
+    assertEquals(18, b.subtreeSize());
+    assertEquals(31, root.subtreeSize());
+    checkSizes(root);
+
+    /*
+     * Move a subtree upwards, past one of its ancestors.
+     */
+
+    final JOTreeNodeType<Integer> lower = deep.children().get(0);
+    b.childAdd(lower);
+    assertEquals(2, deep.subtreeSize());
+    assertEquals(18, b.subtreeSize());
+    checkSizes(root);
+  }
+
+  @Test
+  public void testAddAll()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(2, 2);
+    final JOTreeNodeType<Integer> other = JOTreeTestTrees.completeTree(3, 2);
+    final JOTreeNodeType<Integer> moved = other.children().get(0);
+
+    final List<JOTreeNodeType<Integer>> children = new ArrayList<>();
+    children.add(moved);
+    children.add(JOTreeTestTrees.completeTree(2, 1));
+    children.add(root.children().get(1));
+    children.add(new DelegatingNode<>(JOTreeNode.create(Integer.valueOf(99))));
+    root.childAddAll(children);
+
+    assertEquals(9, other.subtreeSize());
+    assertEquals(7 + 4 + 3 + 1, root.subtreeSize());
+    checkSizes(root);
+    checkSizes(other);
+  }
+
+  @Test
+  public void testCycleUnchanged()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(2, 3);
+    final JOTreeNodeType<Integer> child = root.children().get(0);
+
+    assertThrows(RuntimeException.class, () -> child.childAdd(root));
+    assertThrows(
+      RuntimeException.class, () -> child.childAddAll(List.of(root)));
+    assertEquals(15, root.subtreeSize());
+    checkSizes(root);
+  }
+
+  @Test
+  public void testSort()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(3, 2);
+    root.childrenSortNodes(
+      (x, y) -> Integer.compare(y.value().intValue(), x.value().intValue()));
+    assertEquals(13, root.subtreeSize());
+    checkSizes(root);
+  }
+
+  @Test
+  public void testRandomized()
+  {
+    final Random random = new Random(0x5eed);
+    final List<JOTreeNodeType<Integer>> nodes = new ArrayList<>();
+    final JOTreeNodeType<Integer> root = JOTreeNode.create(Integer.valueOf(0));
+    nodes.add(root);
+
+    for (int index = 1; index < 500; ++index) {
+      final JOTreeNodeType<Integer> node =
+        JOTreeNode.create(Integer.valueOf(index));
+      nodes.get(random.nextInt(nodes.size())).childAdd(node);
+      nodes.add(node);
+    }
+
+    for (int index = 0; index < 2000; ++index) {
+      final JOTreeNodeType<Integer> node =
+        nodes.get(1 + random.nextInt(nodes.size() - 1));
+      final JOTreeNodeType<Integer> target =
+        nodes.get(random.nextInt(nodes.size()));
+
+      if (random.nextInt(8) == 0) {
+        node.detach();
+      } else if (!target.isDescendantOf(node)) {
+        target.childAdd(node);
+      }
+    }
+
+    for (final JOTreeNodeType<Integer> node : nodes) {
+      if (node.isRoot()) {
+        checkSizes(node);
+      }
+    }
+  }
+
+  @Test
+  public void testMapped()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(3, 4);
+    root.children().get(1).detach();
+
+    final JOTreeNodeType<String> depth_first = root.mapDepthFirst(
+      Integer.valueOf(0), (input, depth, node) -> node.value().toString());
+    assertEquals(root.subtreeSize(), depth_first.subtreeSize());
+    checkSizes(depth_first);
+
+    final JOTreeNodeType<String> breadth_first = root.mapBreadthFirst(
+      Integer.valueOf(0), (input, depth, node) -> node.value().toString());
+    assertEquals(root.subtreeSize(), breadth_first.subtreeSize());
+    checkSizes(breadth_first);
+
+    for (final int threshold : new int[]{1, 3, 1024}) {
+      final JOTreeNodeType<String> parallel = root.mapParallel(
+        Integer.valueOf(0),
+        (input, depth, node) -> node.value().toString(),
+        ForkJoinPool.commonPool(),
+        threshold);
+      assertEquals(root.subtreeSize(), parallel.subtreeSize());
+      checkSizes(parallel);
+
+      parallel.children().get(0).detach();
+      assertEquals(root.subtreeSize() - 40, parallel.subtreeSize());
+    }
+  }
+
+  @Test
+  public void testStreamRead()
+    throws IOException
+  {
+    final JOTreeNodeType<Integer> original = JOTreeTestTrees.completeTree(3, 3);
+    final JOTreeNodeType<String> root = original.mapDepthFirst(
+      Integer.valueOf(0), (input, depth, node) -> node.value().toString());
+
+    final var output = new ByteArrayOutputStream();
+    JOTreeStreamWriter.create(JOTreeValueCodecs.strings())
+      .write(Channels.newChannel(output), root);
+
+    final JOTreeNodeType<String> decoded =
+      JOTreeStreamReader.create(JOTreeValueCodecs.strings())
+        .read(Channels.newChannel(
+          new ByteArrayInputStream(output.toByteArray())));
+
+    assertEquals(40, decoded.subtreeSize());
+    checkSizes(decoded);
+
+    decoded.children().get(2).childAdd(JOTreeNode.create("x"));
+    assertEquals(41, decoded.subtreeSize());
+    checkSizes(decoded);
+  }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeFixedSizeCodecType;
+import com.io7m.jorchard.core.JOTreeFixedSizeCodecs;
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreeNodeReadableType;
+import com.io7m.jorchard.core.JOTreeOffHeap;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class JOTreeOffHeapTest
+{
+  /*
+   * 0
+   * +- 1
+   * |  +- 3
+   * |  +- 4
+   * +- 2
+   *    +- 5
+   */
+
+  private static JOTreeOffHeap<Integer> example()
+  {
+    final var tree =
+      JOTreeOffHeap.create(JOTreeFixedSizeCodecs.integers(), Integer.valueOf(0));
+    tree.childAdd(0, Integer.valueOf(1));
+    tree.childAdd(0, Integer.valueOf(2));
+    tree.childAdd(1, Integer.valueOf(3));
+    tree.childAdd(1, Integer.valueOf(4));
+    tree.childAdd(2, Integer.valueOf(5));
+    return tree;
+  }
+
+  private static List<Integer> valuesDepthFirst(
+    final JOTreeOffHeap<Integer> tree,
+    final int node)
+  {
+    final List<Integer> values = new ArrayList<>();
+    tree.forEachDepthFirst(node, values, (input, depth, n) -> {
+      input.add(n.value());
+    });
+    return values;
+  }
+
+  @Test
+  public void testLayout()
+  {
+    try (var tree = example()) {
+      assertEquals(6, tree.size());
+
+      for (var index = 0; index < tree.size(); ++index) {
+        assertEquals(Integer.valueOf(index), tree.value(index));
+      }
+
+      assertEquals(-1, tree.parent(0));
+      assertEquals(0, tree.parent(1));
+      assertEquals(0, tree.parent(2));
+      assertEquals(1, tree.parent(4));
+      assertEquals(2, tree.parent(5));
+
+      assertEquals(1, tree.firstChild(0));
+      assertEquals(3, tree.firstChild(1));
+      assertEquals(-1, tree.firstChild(3));
+
+      assertEquals(2, tree.nextSibling(1));
+      assertEquals(4, tree.nextSibling(3));
+      assertEquals(-1, tree.nextSibling(4));
+      assertEquals(-1, tree.nextSibling(0));
+
+      assertEquals(0, tree.depth(0));
+      assertEquals(1, tree.depth(2));
+      assertEquals(2, tree.depth(5));
+      assertTrue(tree.memoryReserved() > 0L);
+
+      assertThrows(IndexOutOfBoundsException.class, () -> tree.value(6));
+      assertThrows(IndexOutOfBoundsException.class, () -> {
+        tree.childAdd(-1, Integer.valueOf(0));
+      });
+    }
+  }
+
+  @Test
+  public void testIsDescendantOf()
+  {
+    try (var tree = example()) {
+      assertTrue(tree.isDescendantOf(5, 0));
+      assertTrue(tree.isDescendantOf(5, 2));
+      assertTrue(tree.isDescendantOf(3, 1));
+      assertTrue(tree.isDescendantOf(3, 3));
+      assertFalse(tree.isDescendantOf(5, 1));
+      assertFalse(tree.isDescendantOf(0, 5));
+      assertFalse(tree.isDescendantOf(4, 2));
+    }
+  }
+
+  @Test
+  public void testTraversals()
+  {
+    try (var tree = example()) {
+      assertEquals(List.of(0, 1, 3, 4, 2, 5), valuesDepthFirst(tree, 0));
+      assertEquals(List.of(1, 3, 4), valuesDepthFirst(tree, 1));
+      assertEquals(List.of(3), valuesDepthFirst(tree, 3));
+
+      final List<Integer> depths = new ArrayList<>();
+      tree.forEachDepthFirst(2, depths, (input, depth, node) -> {
+        input.add(Integer.valueOf(depth));
+      });
+      assertEquals(List.of(0, 1), depths);
+
+      final List<Integer> breadth_first = new ArrayList<>();
+      tree.root().forEachBreadthFirst(breadth_first, (input, depth, node) -> {
+        input.add(node.value());
+      });
+      assertEquals(List.of(0, 1, 2, 3, 4, 5), breadth_first);
+    }
+  }
+
+  @Test
+  public void testReadableViews()
+  {
+    try (var tree = example()) {
+      final JOTreeNodeReadableType<Integer> root = tree.root();
+      final JOTreeNodeReadableType<Integer> n4 = tree.node(4);
+
+      assertEquals(root, tree.node(0));
+      assertEquals(root.hashCode(), tree.node(0).hashCode());
+      assertNotEquals(root, n4);
+      assertTrue(root.isRoot());
+      assertFalse(n4.isRoot());
+      assertFalse(n4.isDetachAllowed());
+      assertEquals(Optional.empty(), root.parentReadable());
+      assertEquals(Optional.of(tree.node(1)), n4.parentReadable());
+      assertEquals(2, n4.depth());
+      assertTrue(n4.isDescendantOf(root));
+      assertFalse(root.isDescendantOf(n4));
+
+      final var children = root.childrenReadable();
+      assertEquals(2L, children.size());
+      assertEquals(Integer.valueOf(2), children.get(1).value());
+
+      final var frozen = root.freeze();
+      assertEquals(6, frozen.size());
+      assertEquals(Integer.valueOf(3), frozen.value(2));
+    }
+  }
+
+  @Test
+  public void testCopyOf()
+  {
+    final var n0 = JOTreeNode.create(Long.valueOf(0L));
+    final var n1 = JOTreeNode.create(Long.valueOf(1L));
+    final var n2 = JOTreeNode.create(Long.valueOf(2L));
+    final var n3 = JOTreeNode.create(Long.valueOf(3L));
+    n0.childAddAll(List.of(n1, n2));
+    n2.childAdd(n3);
+
+    try (var tree = JOTreeOffHeap.copyOf(JOTreeFixedSizeCodecs.longs(), n0)) {
+      assertEquals(4, tree.size());
+      assertEquals(Long.valueOf(0L), tree.value(0));
+      assertEquals(Long.valueOf(1L), tree.value(1));
+      assertEquals(Long.valueOf(2L), tree.value(2));
+      assertEquals(Long.valueOf(3L), tree.value(3));
+      assertEquals(2, tree.parent(3));
+      assertEquals(2, tree.depth(3));
+    }
+  }
+
+  @Test
+  public void testDoubles()
+  {
+    try (var tree =
+           JOTreeOffHeap.create(JOTreeFixedSizeCodecs.doubles(), Double.valueOf(0.5))) {
+      tree.childAdd(0, Double.valueOf(1.5));
+      assertEquals(Double.valueOf(0.5), tree.value(0));
+      assertEquals(Double.valueOf(1.5), tree.value(1));
+    }
+  }
+
+  @Test
+  public void testPages()
+  {
+    try (var tree =
+           JOTreeOffHeap.create(JOTreeFixedSizeCodecs.integers(), Integer.valueOf(0))) {
+      final var count = 200_000;
+      var chain = 0;
+      for (var index = 1; index < count; ++index) {
+        if (index % 2 == 0) {
+          tree.childAdd(0, Integer.valueOf(index));
+        } else {
+          chain = tree.childAdd(chain, Integer.valueOf(index));
+        }
+      }
+
+      assertEquals(count, tree.size());
+      assertEquals(Integer.valueOf(count - 1), tree.value(count - 1));
+      assertEquals(count / 2, tree.depth(count - 1));
+
+      final int[] visited = new int[2];
+      tree.forEachDepthFirst(0, visited, (input, depth, node) -> {
+        ++input[0];
+        input[1] = Math.max(input[1], depth);
+      });
+      assertEquals(count, visited[0]);
+      assertEquals(count / 2, visited[1]);
+
+      final int[] breadth = new int[1];
+      tree.forEachBreadthFirst(0, breadth, (input, depth, node) -> ++input[0]);
+      assertEquals(count, breadth[0]);
+    }
+  }
+
+  @Test
+  public void testClosed()
+  {
+    final var tree = example();
+    tree.close();
+    assertThrows(IllegalStateException.class, tree::size);
+    assertThrows(IllegalStateException.class, () -> tree.value(0));
+    assertThrows(IllegalStateException.class, () -> {
+      tree.childAdd(0, Integer.valueOf(1));
+    });
+  }
+
+  @Test
+  public void testCodecSizeInvalid()
+  {
+    final var codec = new JOTreeFixedSizeCodecType<Integer>()
+    {
+      @Override
+      public int size()
+      {
+        return -1;
+      }
+
+      @Override
+      public void write(
+        final ByteBuffer target,
+        final int offset,
+        final Integer value)
+      {
+
+      }
+
+      @Override
+      public Integer read(
+        final ByteBuffer source,
+        final int offset)
+      {
+        return Integer.valueOf(0);
+      }
+    };
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      JOTreeOffHeap.create(codec, Integer.valueOf(0));
+    });
+  }
+
+  @Test
+  public void testChildAddNullUnchanged()
+  {
+    try (var tree = example()) {
+      assertThrows(NullPointerException.class, () -> {
+        tree.childAdd(1, null);
+      });
+
+      assertEquals(6, tree.size());
+      assertEquals(List.of(0, 1, 3, 4, 2, 5), valuesDepthFirst(tree, 0));
+      assertEquals(4, tree.nextSibling(3));
+      assertEquals(-1, tree.nextSibling(4));
+
+      final var node = tree.childAdd(1, Integer.valueOf(6));
+      assertEquals(6, node);
+      assertEquals(List.of(0, 1, 3, 4, 6, 2, 5), valuesDepthFirst(tree, 0));
+    }
+  }
+}
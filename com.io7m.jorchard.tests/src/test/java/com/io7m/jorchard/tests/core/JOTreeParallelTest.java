@@ -0,0 +1,377 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeExceptionCycle;
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreeNodeReadableType;
+import com.io7m.jorchard.core.JOTreeNodeType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class JOTreeParallelTest
+{
+  private ForkJoinPool pool;
+
+  private static Map<Integer, Integer> depthsSequential(
+    final JOTreeNodeReadableType<Integer> root)
+  {
+    final Map<Integer, Integer> depths = new ConcurrentHashMap<>();
+    root.forEachDepthFirst(
+      depths, (input, depth, node) -> input.put(node.value(), depth));
+    return depths;
+  }
+
+  private static void checkMapped(
+    final JOTreeNodeReadableType<Integer> source,
+    final JOTreeNodeReadableType<String> output,
+    final int depth)
+  {
+    assertEquals(source.value() + "@" + depth, output.value());
+    assertEquals(depth, output.depth());
+
+    final List<JOTreeNodeReadableType<Integer>> source_children =
+      source.childrenReadable();
+    final List<JOTreeNodeReadableType<String>> output_children =
+      output.childrenReadable();
+    assertEquals(source_children.size(), output_children.size());
+
+    for (int index = 0; index < source_children.size(); ++index) {
+      final JOTreeNodeReadableType<String> child = output_children.get(index);
+      assertSame(output, child.parentReadable().get());
+      checkMapped(source_children.get(index), child, depth + 1);
+    }
+  }
+
+  @BeforeEach
+  public void setup()
+  {
+    this.pool = new ForkJoinPool(4);
+  }
+
+  @AfterEach
+  public void tearDown()
+  {
+    this.pool.shutdownNow();
+  }
+
+  @Test
+  public void testVisitsEachNodeOnce()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(4, 6);
+    final Map<Integer, Integer> expected = depthsSequential(root);
+
+    for (final int threshold : new int[]{1, 2, 16, 1024, 100000}) {
+      final Map<Integer, Integer> depths = new ConcurrentHashMap<>();
+      final AtomicInteger count = new AtomicInteger();
+      root.forEachParallel(
+        depths,
+        (input, depth, node) -> {
+          count.incrementAndGet();
+          input.put(node.value(), depth);
+        },
+        this.pool,
+        threshold);
+
+      assertEquals(expected.size(), count.get());
+      assertEquals(expected, depths);
+    }
+  }
+
+  @Test
+  public void testSubtree()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(3, 5);
+    final JOTreeNodeType<Integer> child =
+      (JOTreeNodeType<Integer>) root.childrenReadable().get(1);
+
+    final Map<Integer, Integer> depths = new ConcurrentHashMap<>();
+    child.forEachParallel(
+      depths, (input, depth, node) -> input.put(node.value(), depth),
+      this.pool,
+      4);
+
+    assertEquals(depthsSequential(child), depths);
+    assertEquals(Integer.valueOf(0), depths.get(child.value()));
+  }
+
+  @Test
+  public void testSingleNode()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeNode.create(Integer.valueOf(23));
+    final Map<Integer, Integer> depths = new ConcurrentHashMap<>();
+    root.forEachParallel(
+      depths, (input, depth, node) -> input.put(node.value(), depth));
+    assertEquals(Map.of(Integer.valueOf(23), Integer.valueOf(0)), depths);
+  }
+
+  @Test
+  public void testUsesGivenPool()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(4, 5);
+    final AtomicInteger foreign = new AtomicInteger();
+    root.forEachParallel(
+      foreign,
+      (input, depth, node) -> {
+        if (ForkJoinTask.getPool() != this.pool) {
+          input.incrementAndGet();
+        }
+      },
+      this.pool,
+      8);
+    assertEquals(0, foreign.get());
+  }
+
+  @Test
+  public void testFrozen()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(4, 5);
+    final Map<Integer, Integer> depths = new ConcurrentHashMap<>();
+    root.freeze().root().forEachParallel(
+      depths, (input, depth, node) -> input.put(node.value(), depth),
+      this.pool,
+      8);
+    assertEquals(depthsSequential(root), depths);
+  }
+
+  @Test
+  public void testExceptionPropagated()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(4, 5);
+    final IllegalStateException ex = assertThrows(
+      IllegalStateException.class,
+      () -> root.forEachParallel(
+        Integer.valueOf(77),
+        (input, depth, node) -> {
+          if (node.value().equals(input)) {
+            throw new IllegalStateException("Failed");
+          }
+        },
+        this.pool,
+        2));
+    assertTrue(ex.getMessage().contains("Failed"));
+  }
+
+  @Test
+  public void testMapStructure()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(4, 6);
+
+    for (final int threshold : new int[]{1, 2, 3, 16, 1024, 100000}) {
+      final JOTreeNodeType<String> mapped = root.mapParallel(
+        Integer.valueOf(0),
+        (input, depth, node) -> node.value() + "@" + depth,
+        this.pool,
+        threshold);
+
+      assertTrue(mapped.isRoot());
+      checkMapped(root, mapped, 0);
+    }
+  }
+
+  @Test
+  public void testMapSubtreeIrregular()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeNode.create(Integer.valueOf(0));
+    JOTreeNodeType<Integer> chain = root;
+    int next = 1;
+    for (int index = 0; index < 200; ++index) {
+      final JOTreeNodeType<Integer> leaf =
+        JOTreeNode.create(Integer.valueOf(next));
+      ++next;
+      final JOTreeNodeType<Integer> link =
+        JOTreeNode.create(Integer.valueOf(next));
+      ++next;
+      chain.childAdd(leaf);
+      chain.childAdd(link);
+      chain.childAdd(JOTreeTestTrees.completeTree(2, 3));
+      chain = link;
+    }
+
+    final JOTreeNodeType<Integer> start =
+      (JOTreeNodeType<Integer>) root.childrenReadable().get(1);
+
+    for (final int threshold : new int[]{1, 5, 64}) {
+      final JOTreeNodeType<String> mapped = start.mapParallel(
+        Integer.valueOf(0),
+        (input, depth, node) -> node.value() + "@" + depth,
+        this.pool,
+        threshold);
+      checkMapped(start, mapped, 0);
+    }
+  }
+
+  @Test
+  public void testMapResultModifiable()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(3, 4);
+    final JOTreeNodeType<Integer> mapped = root.mapParallel(
+      Integer.valueOf(0),
+      (input, depth, node) -> Integer.valueOf(node.value().intValue() * 2),
+      this.pool,
+      2);
+
+    final JOTreeNodeType<Integer> child = mapped.children().get(0);
+    final JOTreeNodeType<Integer> grandchild = child.children().get(0);
+    assertThrows(
+      JOTreeExceptionCycle.class, () -> child.setParent(grandchild));
+
+    grandchild.detach();
+    assertTrue(grandchild.isRoot());
+    assertEquals(0, grandchild.depth());
+    mapped.childAdd(grandchild);
+    assertEquals(1, grandchild.depth());
+    assertSame(mapped, grandchild.parentReadable().get());
+  }
+
+  @Test
+  public void testMapExceptionPropagated()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(4, 5);
+    final IllegalStateException ex = assertThrows(
+      IllegalStateException.class,
+      () -> root.mapParallel(
+        Integer.valueOf(77),
+        (input, depth, node) -> {
+          if (node.value().equals(input)) {
+            throw new IllegalStateException("Failed");
+          }
+          return node.value();
+        },
+        this.pool,
+        2));
+    assertTrue(ex.getMessage().contains("Failed"));
+  }
+
+  @Test
+  public void testMapThresholdInvalid()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeNode.create(Integer.valueOf(0));
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> root.mapParallel(
+        Integer.valueOf(0),
+        (input, depth, node) -> node.value(),
+        this.pool,
+        0));
+  }
+
+  @Test
+  public void testThresholdInvalid()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeNode.create(Integer.valueOf(0));
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> root.forEachParallel(
+        Integer.valueOf(0), (input, depth, node) -> {
+        }, this.pool, 0));
+  }
+
+  @Test
+  public void testNullPool()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeNode.create(Integer.valueOf(0));
+    assertThrows(
+      NullPointerException.class,
+      () -> root.forEachParallel(
+        Integer.valueOf(0), (input, depth, node) -> {
+        }, null, 1));
+  }
+
+  /**
+   * A function that fails on one node, and records how many applications
+   * have started and how many are in progress.
+   */
+
+  private static final class Failing
+  {
+    private final AtomicInteger started = new AtomicInteger();
+    private final AtomicInteger active = new AtomicInteger();
+
+    Integer apply(
+      final JOTreeNodeReadableType<Integer> node)
+    {
+      this.started.incrementAndGet();
+      this.active.incrementAndGet();
+      try {
+        Thread.sleep(1L);
+        if (node.value().intValue() == 100) {
+          throw new IllegalStateException("Failed");
+        }
+        return node.value();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException(e);
+      } finally {
+        this.active.decrementAndGet();
+      }
+    }
+
+    void checkStopped(
+      final int total)
+      throws InterruptedException
+    {
+      assertEquals(0, this.active.get());
+      final int started_now = this.started.get();
+      Thread.sleep(50L);
+      assertEquals(started_now, this.started.get());
+      assertEquals(0, this.active.get());
+      assertTrue(started_now < total);
+    }
+  }
+
+  @Test
+  public void testExceptionStopsTasks()
+    throws InterruptedException
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(4, 6);
+    final int total = root.subtreeSize();
+
+    final Failing for_each = new Failing();
+    assertThrows(
+      IllegalStateException.class,
+      () -> root.forEachParallel(
+        for_each,
+        (input, depth, node) -> input.apply(node),
+        this.pool,
+        4));
+    for_each.checkStopped(total);
+
+    final Failing map = new Failing();
+    assertThrows(
+      IllegalStateException.class,
+      () -> root.mapParallel(
+        map,
+        (input, depth, node) -> input.apply(node),
+        this.pool,
+        4));
+    map.checkStopped(total);
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreePersistentNode;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class JOTreePersistentNodeTest
+{
+  /*
+   * 0
+   * +- 1
+   * |  +- 3
+   * |  +- 4
+   * +- 2
+   *    +- 5
+   */
+
+  private static JOTreePersistentNode<Integer> example()
+  {
+    return JOTreePersistentNode.create(
+      Integer.valueOf(0),
+      List.of(
+        JOTreePersistentNode.create(
+          Integer.valueOf(1),
+          List.of(
+            JOTreePersistentNode.create(Integer.valueOf(3)),
+            JOTreePersistentNode.create(Integer.valueOf(4)))),
+        JOTreePersistentNode.create(
+          Integer.valueOf(2),
+          List.of(JOTreePersistentNode.create(Integer.valueOf(5))))));
+  }
+
+  private static List<Integer> valuesDepthFirst(
+    final JOTreePersistentNode<Integer> node)
+  {
+    final List<Integer> values = new ArrayList<>();
+    node.forEachDepthFirst(values, (input, depth, n) -> input.add(n.value()));
+    return values;
+  }
+
+  @Test
+  public void testWithValueAtSharesUntouched()
+  {
+    final var v0 = example();
+    final var v1 = v0.withValueAt(new int[]{0, 1}, Integer.valueOf(40));
+
+    assertEquals(Integer.valueOf(4), v0.nodeAt(new int[]{0, 1}).value());
+    assertEquals(Integer.valueOf(40), v1.nodeAt(new int[]{0, 1}).value());
+
+    assertNotSame(v0, v1);
+    assertNotSame(v0.nodeAt(new int[]{0}), v1.nodeAt(new int[]{0}));
+    assertSame(v0.nodeAt(new int[]{0, 0}), v1.nodeAt(new int[]{0, 0}));
+    assertSame(v0.nodeAt(new int[]{1}), v1.nodeAt(new int[]{1}));
+  }
+
+  @Test
+  public void testWithChildAddedAt()
+  {
+    final var v0 = example();
+    final var v1 =
+      v0.withChildAddedAt(
+        new int[]{1}, JOTreePersistentNode.create(Integer.valueOf(6)));
+
+    assertEquals(1L, v0.nodeAt(new int[]{1}).children().size());
+    assertEquals(2L, v1.nodeAt(new int[]{1}).children().size());
+    assertEquals(Integer.valueOf(6), v1.nodeAt(new int[]{1, 1}).value());
+    assertSame(v0.nodeAt(new int[]{0}), v1.nodeAt(new int[]{0}));
+    assertSame(v0.nodeAt(new int[]{1, 0}), v1.nodeAt(new int[]{1, 0}));
+  }
+
+  @Test
+  public void testWithChildRemovedAt()
+  {
+    final var v0 = example();
+    final var v1 = v0.withChildRemovedAt(new int[]{0}, 0);
+    final var v2 = v1.withChildRemovedAt(new int[]{}, 1);
+    final var v3 = v2.withChildRemovedAt(new int[]{0}, 0);
+
+    assertEquals(List.of(0, 2, 5, 1, 4, 3), valuesDepthFirst(v0));
+    assertEquals(List.of(0, 2, 5, 1, 4), valuesDepthFirst(v1));
+    assertEquals(List.of(0, 1, 4), valuesDepthFirst(v2));
+    assertEquals(List.of(0, 1), valuesDepthFirst(v3));
+    assertSame(v0.nodeAt(new int[]{0, 1}), v2.nodeAt(new int[]{0, 0}));
+
+    assertThrows(IndexOutOfBoundsException.class, () -> {
+      v3.withChildRemovedAt(new int[]{0}, 0);
+    });
+    assertThrows(IndexOutOfBoundsException.class, () -> {
+      v3.withValueAt(new int[]{1}, Integer.valueOf(23));
+    });
+  }
+
+  @Test
+  public void testWithChildReplacedSame()
+  {
+    final var v0 = example();
+    assertSame(v0, v0.withChildReplaced(1, v0.children().get(1)));
+    assertSame(v0, v0.withUpdateAt(new int[]{1, 0}, n -> n));
+  }
+
+  @Test
+  public void testCopyOf()
+  {
+    final var n0 = JOTreeNode.create(Integer.valueOf(0));
+    final var n1 = JOTreeNode.create(Integer.valueOf(1));
+    final var n2 = JOTreeNode.create(Integer.valueOf(2));
+    final var n3 = JOTreeNode.create(Integer.valueOf(3));
+    n0.childAdd(n1);
+    n0.childAdd(n2);
+    n1.childAdd(n3);
+
+    final var p = JOTreePersistentNode.copyOf(n0);
+    final List<Integer> expected = new ArrayList<>();
+    n0.forEachDepthFirst(expected, (input, depth, n) -> input.add(n.value()));
+    assertEquals(expected, valuesDepthFirst(p));
+
+    n3.detach();
+    assertEquals(Integer.valueOf(3), p.nodeAt(new int[]{0, 0}).value());
+  }
+
+  @Test
+  public void testReadable()
+  {
+    final var v0 = example();
+    final var n1 = v0.nodeAt(new int[]{0});
+    final var n5 = v0.nodeAt(new int[]{1, 0});
+
+    assertTrue(v0.isRoot());
+    assertTrue(n1.isRoot());
+    assertFalse(v0.isDetachAllowed());
+    assertEquals(Optional.empty(), n1.parentReadable());
+    assertEquals(0, n5.depth());
+    assertEquals(2L, v0.childrenReadable().size());
+    assertSame(n1, v0.childrenReadable().get(0));
+
+    assertTrue(n5.isDescendantOf(v0));
+    assertTrue(n5.isDescendantOf(n5));
+    assertFalse(n5.isDescendantOf(n1));
+    assertFalse(v0.isDescendantOf(n5));
+    assertTrue(v0.toString().contains("0"));
+  }
+
+  @Test
+  public void testTraversals()
+  {
+    final var v0 = example();
+
+    final List<Integer> breadth = new ArrayList<>();
+    v0.forEachBreadthFirst(breadth, (input, depth, n) -> input.add(n.value()));
+    assertEquals(List.of(0, 1, 2, 3, 4, 5), breadth);
+
+    final var m0 =
+      v0.mapDepthFirst(Integer.valueOf(0), (input, depth, n) -> n.value().toString());
+    final var m1 =
+      v0.mapBreadthFirst(Integer.valueOf(0), (input, depth, n) -> n.value().toString());
+
+    assertEquals("0", m0.value());
+    assertEquals("0", m1.value());
+    assertEquals(2L, m0.children().size());
+    assertEquals(2L, m1.children().size());
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreeNodeLazy;
+import com.io7m.jorchard.core.JOTreeNodeReadableType;
+import com.io7m.jorchard.core.JOTreeNodeType;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class JOTreeSpliteratorTest
+{
+  private static void preorder(
+    final JOTreeNodeReadableType<Integer> node,
+    final List<Integer> output)
+  {
+    output.add(node.value());
+    for (final JOTreeNodeReadableType<Integer> child : node.childrenReadable()) {
+      preorder(child, output);
+    }
+  }
+
+  private static List<Integer> levelOrder(
+    final JOTreeNodeReadableType<Integer> root)
+  {
+    final List<Integer> output = new ArrayList<>();
+    root.freeze().root().forEachBreadthFirst(
+      output, (input, depth, node) -> input.add(node.value()));
+    return output;
+  }
+
+  private static void splitAll(
+    final Spliterator<JOTreeNodeReadableType<Integer>> spliterator,
+    final int levels,
+    final List<Integer> output)
+  {
+    if (levels > 0) {
+      final Spliterator<JOTreeNodeReadableType<Integer>> prefix =
+        spliterator.trySplit();
+      if (prefix != null) {
+        splitAll(prefix, levels - 1, output);
+      }
+      splitAll(spliterator, levels - 1, output);
+      return;
+    }
+    spliterator.forEachRemaining(node -> output.add(node.value()));
+  }
+
+  @Test
+  public void testDepthFirstOrder()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(3, 4);
+    final List<Integer> expected = new ArrayList<>();
+    preorder(root, expected);
+
+    assertEquals(
+      expected,
+      root.streamDepthFirst()
+        .map(JOTreeNodeReadableType::value)
+        .collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testBreadthFirstOrder()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(3, 4);
+    assertEquals(
+      levelOrder(root),
+      root.streamBreadthFirst()
+        .map(JOTreeNodeReadableType::value)
+        .collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testParallelOrdered()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(4, 7);
+    final List<Integer> expected = new ArrayList<>();
+    preorder(root, expected);
+
+    assertEquals(
+      expected,
+      root.streamDepthFirst()
+        .parallel()
+        .map(JOTreeNodeReadableType::value)
+        .collect(Collectors.toList()));
+    assertEquals(
+      levelOrder(root),
+      root.streamBreadthFirst()
+        .parallel()
+        .map(JOTreeNodeReadableType::value)
+        .collect(Collectors.toList()));
+    assertEquals(
+      (long) expected.size(),
+      root.streamDepthFirst().parallel().filter(n -> n.value() >= 0).count());
+  }
+
+  @Test
+  public void testDepthFirstSplitsCover()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(3, 5);
+    final List<Integer> expected = new ArrayList<>();
+    preorder(root, expected);
+
+    for (int levels = 0; levels < 12; ++levels) {
+      final List<Integer> output = new ArrayList<>();
+      splitAll(root.streamDepthFirst().spliterator(), levels, output);
+      assertEquals(expected, output);
+    }
+  }
+
+  @Test
+  public void testBreadthFirstSplitsCover()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(4, 6);
+    final List<Integer> expected = levelOrder(root);
+
+    for (int levels = 0; levels < 6; ++levels) {
+      final List<Integer> output = new ArrayList<>();
+      splitAll(root.streamBreadthFirst().spliterator(), levels, output);
+      assertEquals(expected, output);
+    }
+  }
+
+  @Test
+  public void testEstimates()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(2, 5);
+    final Spliterator<JOTreeNodeReadableType<Integer>> depth =
+      root.streamDepthFirst().spliterator();
+    assertEquals(63L, depth.estimateSize());
+    assertTrue(depth.hasCharacteristics(Spliterator.ORDERED));
+
+    final Spliterator<JOTreeNodeReadableType<Integer>> prefix =
+      depth.trySplit();
+    assertEquals(63L, prefix.estimateSize() + depth.estimateSize());
+
+    final Spliterator<JOTreeNodeReadableType<Integer>> breadth =
+      root.streamBreadthFirst().spliterator();
+    assertEquals(63L, breadth.estimateSize());
+    breadth.tryAdvance(node -> {
+    });
+    assertEquals(62L, breadth.estimateSize());
+  }
+
+  @Test
+  public void testSingleNode()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeNode.create(Integer.valueOf(23));
+    final Spliterator<JOTreeNodeReadableType<Integer>> depth =
+      root.streamDepthFirst().spliterator();
+    assertNull(depth.trySplit());
+    assertEquals(1L, depth.estimateSize());
+    assertTrue(depth.tryAdvance(node -> assertEquals(Integer.valueOf(23), node.value())));
+    assertFalse(depth.tryAdvance(node -> {
+    }));
+    assertEquals(0L, depth.estimateSize());
+    assertEquals(
+      List.of(Integer.valueOf(23)),
+      root.streamBreadthFirst()
+        .map(JOTreeNodeReadableType::value)
+        .collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testLazy()
+  {
+    final AtomicInteger loads = new AtomicInteger();
+    final JOTreeNodeLazy<String> root = JOTreeNodeLazy.create(
+      "r",
+      node -> {
+        loads.incrementAndGet();
+        return List.of(node.value() + "/0", node.value() + "/1");
+      });
+
+    assertEquals(
+      List.of("r", "r/0", "r/0/0", "r/0/0/0"),
+      root.streamDepthFirst()
+        .limit(4L)
+        .map(JOTreeNodeReadableType::value)
+        .collect(Collectors.toList()));
+    assertEquals(3, loads.get());
+
+    assertEquals(
+      List.of("r", "r/0", "r/1", "r/0/0", "r/0/1"),
+      root.streamBreadthFirst()
+        .limit(5L)
+        .map(JOTreeNodeReadableType::value)
+        .collect(Collectors.toList()));
+  }
+
+  @Test
+  public void testLazyEstimatesUnknown()
+  {
+    final AtomicInteger loads = new AtomicInteger();
+    final JOTreeNodeLazy<String> root = JOTreeNodeLazy.create(
+      "r",
+      node -> {
+        loads.incrementAndGet();
+        return List.of(node.value() + "/0", node.value() + "/1");
+      });
+
+    final Spliterator<JOTreeNodeReadableType<String>> depth =
+      root.streamDepthFirst().spliterator();
+    assertEquals(Long.MAX_VALUE, depth.estimateSize());
+    assertEquals(0, loads.get());
+
+    final Spliterator<JOTreeNodeReadableType<String>> prefix =
+      depth.trySplit();
+    assertEquals(Long.MAX_VALUE, prefix.estimateSize());
+    assertEquals(Long.MAX_VALUE, depth.estimateSize());
+    assertEquals(1, loads.get());
+
+    final Spliterator<JOTreeNodeReadableType<String>> breadth =
+      root.streamBreadthFirst().spliterator();
+    assertEquals(Long.MAX_VALUE, breadth.estimateSize());
+    assertEquals(1, loads.get());
+  }
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeFixedSizeCodecs;
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreeNodeReadableType;
+import com.io7m.jorchard.core.JOTreeNodeType;
+import com.io7m.jorchard.core.JOTreeStreamReader;
+import com.io7m.jorchard.core.JOTreeStreamWriter;
+import com.io7m.jorchard.core.JOTreeValueCodecType;
+import com.io7m.jorchard.core.JOTreeValueCodecs;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class JOTreeStreamTest
+{
+  /*
+   * a
+   * +- b
+   * |  +- d
+   * |  +- e
+   * +- c
+   *    +- f
+   */
+
+  private static JOTreeNodeType<String> example()
+  {
+    final var a = JOTreeNode.create("a");
+    final var b = JOTreeNode.create("b");
+    final var c = JOTreeNode.create("c");
+    final var d = JOTreeNode.create("d");
+    final var e = JOTreeNode.create("e");
+    final var f = JOTreeNode.create("f");
+    a.childAddAll(List.of(b, c));
+    b.childAddAll(List.of(d, e));
+    c.childAdd(f);
+    return a;
+  }
+
+  private static <A> List<String> describe(
+    final JOTreeNodeReadableType<A> root)
+  {
+    final List<String> items = new ArrayList<>();
+    root.forEachBreadthFirst(items, (input, depth, node) -> {
+      input.add(depth + ":" + node.value() + ":" + node.childrenReadable().size());
+    });
+    return items;
+  }
+
+  private static <A> byte[] encode(
+    final JOTreeStreamWriter<A> writer,
+    final JOTreeNodeReadableType<A> root)
+    throws IOException
+  {
+    final var output = new ByteArrayOutputStream();
+    writer.write(Channels.newChannel(output), root);
+    return output.toByteArray();
+  }
+
+  private static <A> JOTreeNodeType<A> decode(
+    final JOTreeStreamReader<A> reader,
+    final byte[] data)
+    throws IOException
+  {
+    return reader.read(Channels.newChannel(new ByteArrayInputStream(data)));
+  }
+
+  @Test
+  public void testEncoding()
+    throws IOException
+  {
+    final var writer = JOTreeStreamWriter.create(JOTreeValueCodecs.strings());
+    final byte[] data = encode(writer, JOTreeNode.create("xy"));
+    assertArrayEquals(
+      new byte[]{
+        0x4A, 0x4F, 0x54, 0x53,
+        0x00, 0x00, 0x00, 0x01,
+        0x02, 'x', 'y',
+        0x00,
+      },
+      data);
+  }
+
+  @Test
+  public void testRoundTrip()
+    throws IOException
+  {
+    final var original = example();
+    final var writer = JOTreeStreamWriter.create(JOTreeValueCodecs.strings());
+    final var reader = JOTreeStreamReader.create(JOTreeValueCodecs.strings());
+
+    final var decoded = decode(reader, encode(writer, original));
+    assertEquals(describe(original), describe(decoded));
+
+    final var d = decoded.children().get(0).children().get(0);
+    assertEquals("d", d.value());
+    assertEquals(2, d.depth());
+    assertTrue(d.isDescendantOf(decoded));
+
+    final var g = JOTreeNode.create("g");
+    d.childAdd(g);
+    assertEquals(3, g.depth());
+    assertThrows(RuntimeException.class, () -> g.childAdd(decoded));
+  }
+
+  @Test
+  public void testReuse()
+    throws IOException
+  {
+    final var writer = JOTreeStreamWriter.create(JOTreeValueCodecs.strings());
+    final var reader = JOTreeStreamReader.create(JOTreeValueCodecs.strings());
+
+    final byte[] first = encode(writer, example());
+    final byte[] second = encode(writer, example());
+    assertArrayEquals(first, second);
+    assertEquals(describe(example()), describe(decode(reader, first)));
+    assertEquals(describe(example()), describe(decode(reader, second)));
+  }
+
+  @Test
+  public void testSmallBuffers()
+    throws IOException
+  {
+    final var root = JOTreeNode.create("root");
+    for (var index = 0; index < 500; ++index) {
+      final var child = JOTreeNode.create("child " + index);
+      root.childAdd(child);
+      child.childAdd(JOTreeNode.create("x".repeat(index)));
+    }
+
+    final var writer =
+      JOTreeStreamWriter.createWithBufferSize(JOTreeValueCodecs.strings(), 16);
+    final var reader =
+      JOTreeStreamReader.createWithBufferSize(JOTreeValueCodecs.strings(), 16);
+
+    final var decoded = decode(reader, encode(writer, root));
+    assertEquals(describe(root), describe(decoded));
+    assertEquals(
+      "x".repeat(499),
+      decoded.children().get(499).children().get(0).value());
+  }
+
+  @Test
+  public void testDeep()
+    throws IOException
+  {
+    var current = JOTreeNode.create(Integer.valueOf(0));
+    final var root = current;
+    for (var index = 1; index < 20_000; ++index) {
+      final var next = JOTreeNode.create(Integer.valueOf(index));
+      current.childAdd(next);
+      current = next;
+    }
+
+    final var codec = JOTreeValueCodecs.ofFixedSize(JOTreeFixedSizeCodecs.integers());
+    final var data = encode(JOTreeStreamWriter.create(codec), root);
+    assertEquals(8 + 20_000 * 6, data.length);
+
+    final var decoded = decode(JOTreeStreamReader.create(codec), data);
+    assertEquals(describe(root), describe(decoded));
+  }
+
+  @Test
+  public void testUnicode()
+    throws IOException
+  {
+    final var values = List.of(
+      "",
+      "été",
+      "日本",
+      "🌳",
+      "\ud83c",
+      "x\udf33y");
+
+    final var root = JOTreeNode.create("root");
+    for (final var value : values) {
+      root.childAdd(JOTreeNode.create(value));
+    }
+
+    final var codec = JOTreeValueCodecs.strings();
+    for (final var value : values) {
+      final var buffer = ByteBuffer.allocate(16);
+      codec.write(buffer, value);
+      assertEquals(codec.sizeOf(value), buffer.position());
+    }
+
+    final var decoded = decode(
+      JOTreeStreamReader.create(codec),
+      encode(JOTreeStreamWriter.create(codec), root));
+    assertEquals(values.get(3), decoded.children().get(3).value());
+    assertEquals(values.get(2), decoded.children().get(2).value());
+    assertEquals(6L, decoded.children().size());
+  }
+
+  @Test
+  public void testCodecSizeMismatch()
+  {
+    final var codec = new JOTreeValueCodecType<String>()
+    {
+      @Override
+      public int sizeOf(
+        final String value)
+      {
+        return 1;
+      }
+
+      @Override
+      public void write(
+        final ByteBuffer target,
+        final String value)
+      {
+        target.putShort((short) 0);
+      }
+
+      @Override
+      public String read(
+        final ByteBuffer source)
+      {
+        return "";
+      }
+    };
+
+    assertThrows(IllegalStateException.class, () -> {
+      encode(JOTreeStreamWriter.create(codec), JOTreeNode.create("a"));
+    });
+  }
+
+  @Test
+  public void testBadMagic()
+    throws IOException
+  {
+    final var writer = JOTreeStreamWriter.create(JOTreeValueCodecs.strings());
+    final var data = encode(writer, example());
+    data[0] = 0;
+    assertThrows(IOException.class, () -> {
+      decode(JOTreeStreamReader.create(JOTreeValueCodecs.strings()), data);
+    });
+  }
+
+  @Test
+  public void testBadVersion()
+    throws IOException
+  {
+    final var writer = JOTreeStreamWriter.create(JOTreeValueCodecs.strings());
+    final var data = encode(writer, example());
+    data[7] = 2;
+    assertThrows(IOException.class, () -> {
+      decode(JOTreeStreamReader.create(JOTreeValueCodecs.strings()), data);
+    });
+  }
+
+  @Test
+  public void testTruncated()
+    throws IOException
+  {
+    final var writer = JOTreeStreamWriter.create(JOTreeValueCodecs.strings());
+    final var data = encode(writer, example());
+    final var reader = JOTreeStreamReader.create(JOTreeValueCodecs.strings());
+
+    for (var length = 0; length < data.length; ++length) {
+      final var truncated = Arrays.copyOf(data, length);
+      assertThrows(EOFException.class, () -> decode(reader, truncated));
+    }
+  }
+
+  @Test
+  public void testVarintTooLong()
+  {
+    final byte[] data = {
+      0x4A, 0x4F, 0x54, 0x53,
+      0x00, 0x00, 0x00, 0x01,
+      (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x00,
+    };
+
+    assertThrows(IOException.class, () -> {
+      decode(JOTreeStreamReader.create(JOTreeValueCodecs.strings()), data);
+    });
+  }
+
+  @Test
+  public void testVarintOutOfRange()
+  {
+    final byte[] data = {
+      0x4A, 0x4F, 0x54, 0x53,
+      0x00, 0x00, 0x00, 0x01,
+      (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x08,
+    };
+
+    assertThrows(IOException.class, () -> {
+      decode(JOTreeStreamReader.create(JOTreeValueCodecs.strings()), data);
+    });
+  }
+
+  @Test
+  public void testHugeChildCount()
+  {
+    final var reader = JOTreeStreamReader.create(JOTreeValueCodecs.strings());
+
+    final byte[] root_count = {
+      0x4A, 0x4F, 0x54, 0x53,
+      0x00, 0x00, 0x00, 0x01,
+      0x01, 'a',
+      (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07,
+    };
+
+    assertThrows(EOFException.class, () -> decode(reader, root_count));
+
+    final byte[] child_count = {
+      0x4A, 0x4F, 0x54, 0x53,
+      0x00, 0x00, 0x00, 0x01,
+      0x01, 'a',
+      0x01,
+      0x01, 'b',
+      (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07,
+    };
+
+    assertThrows(EOFException.class, () -> decode(reader, child_count));
+  }
+
+  @Test
+  public void testHugeValueSize()
+  {
+    final byte[] data = {
+      0x4A, 0x4F, 0x54, 0x53,
+      0x00, 0x00, 0x00, 0x01,
+      (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x07,
+      'a', 'b', 'c',
+    };
+
+    final var ex = assertThrows(IOException.class, () -> {
+      decode(JOTreeStreamReader.create(JOTreeValueCodecs.strings()), data);
+    });
+    assertTrue(ex.getMessage().contains("too large"));
+
+    /*
+     * With no effective limit, the buffer grows only as bytes arrive, and
+     * the end of the stream is reached long before memory is exhausted.
+     */
+
+    final var reader = JOTreeStreamReader.createWithLimits(
+      JOTreeValueCodecs.strings(), 16, Integer.MAX_VALUE);
+    assertThrows(EOFException.class, () -> decode(reader, data));
+  }
+
+  @Test
+  public void testValueSizeLimit()
+    throws IOException
+  {
+    final var writer = JOTreeStreamWriter.create(JOTreeValueCodecs.strings());
+    final var root = JOTreeNode.create("abcd");
+    root.childAdd(JOTreeNode.create("x".repeat(100)));
+    final var data = encode(writer, root);
+
+    final var strict =
+      JOTreeStreamReader.createWithLimits(JOTreeValueCodecs.strings(), 16, 4);
+    assertThrows(IOException.class, () -> decode(strict, data));
+
+    final var loose =
+      JOTreeStreamReader.createWithLimits(JOTreeValueCodecs.strings(), 16, 100);
+    assertEquals(describe(root), describe(decode(loose, data)));
+
+    assertThrows(IllegalArgumentException.class, () -> {
+      JOTreeStreamReader.createWithLimits(JOTreeValueCodecs.strings(), 16, -1);
+    });
+  }
+}
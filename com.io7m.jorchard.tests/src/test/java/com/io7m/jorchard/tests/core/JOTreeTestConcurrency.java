@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.tests.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Functions for running test code on several threads at once.
+ */
+
+final class JOTreeTestConcurrency
+{
+  private JOTreeTestConcurrency()
+  {
+    throw new AssertionError("Unreachable code");
+  }
+
+  /**
+   * Run {@code task} on {@code threads} threads that are released at the
+   * same moment, and wait for all of them to finish. The first failure of
+   * any thread is rethrown.
+   *
+   * @param threads The number of threads
+   * @param task    The task
+   *
+   * @throws Exception If any thread fails
+   */
+
+  static void runConcurrently(
+    final int threads,
+    final Runnable task)
+    throws Exception
+  {
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      final CyclicBarrier barrier = new CyclicBarrier(threads);
+      final List<Future<?>> futures = new ArrayList<>(threads);
+      for (int index = 0; index < threads; ++index) {
+        futures.add(executor.submit(() -> {
+          barrier.await(60L, TimeUnit.SECONDS);
+          task.run();
+          return null;
+        }));
+      }
+      for (final Future<?> future : futures) {
+        future.get(60L, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreeNodeType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Tree fixtures shared by the tests.
+ */
+
+final class JOTreeTestTrees
+{
+  private JOTreeTestTrees()
+  {
+    throw new AssertionError("Unreachable code");
+  }
+
+  /**
+   * Build a random tree of {@code count} nodes, in which each node is
+   * attached to a randomly chosen earlier node. The node at index {@code i}
+   * holds the value {@code i}, and the root is at index {@code 0}.
+   *
+   * @param random A source of randomness
+   * @param count  The number of nodes
+   *
+   * @return The nodes of the tree, in order of creation
+   */
+
+  static List<JOTreeNodeType<Integer>> randomTree(
+    final Random random,
+    final int count)
+  {
+    final List<JOTreeNodeType<Integer>> nodes = new ArrayList<>(count);
+    nodes.add(JOTreeNode.create(Integer.valueOf(0)));
+    for (var index = 1; index < count; ++index) {
+      final var node = JOTreeNode.create(Integer.valueOf(index));
+      nodes.get(random.nextInt(index)).childAdd(node);
+      nodes.add(node);
+    }
+    return nodes;
+  }
+
+  /**
+   * Build a complete tree in which every node above the deepest level has
+   * exactly {@code fanout} children. Nodes hold consecutive values in
+   * breadth-first order, starting with {@code 0} at the root.
+   *
+   * @param fanout The number of children of each interior node
+   * @param levels The number of levels below the root
+   *
+   * @return The root of the tree
+   */
+
+  static JOTreeNodeType<Integer> completeTree(
+    final int fanout,
+    final int levels)
+  {
+    final JOTreeNodeType<Integer> root = JOTreeNode.create(Integer.valueOf(0));
+    List<JOTreeNodeType<Integer>> frontier = List.of(root);
+    int next = 1;
+    for (int level = 0; level < levels; ++level) {
+      final List<JOTreeNodeType<Integer>> created = new ArrayList<>();
+      for (final JOTreeNodeType<Integer> parent : frontier) {
+        for (int index = 0; index < fanout; ++index) {
+          final JOTreeNodeType<Integer> child =
+            JOTreeNode.create(Integer.valueOf(next));
+          ++next;
+          parent.childAdd(child);
+          created.add(child);
+        }
+      }
+      frontier = created;
+    }
+    return root;
+  }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreeNodeForEachFunctionType;
+import com.io7m.jorchard.core.JOTreeNodeReadableType;
+import com.io7m.jorchard.core.JOTreeNodeType;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class JOTreeTraversalTest
+{
+  private static final JOTreeNodeForEachFunctionType<Integer, long[]> SUM =
+    (input, depth, node) -> input[0] += node.value().intValue() + depth;
+
+  private static com.sun.management.ThreadMXBean threads()
+  {
+    final java.lang.management.ThreadMXBean bean =
+      ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      final com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) bean;
+      if (threads.isThreadAllocatedMemorySupported()
+        && threads.isThreadAllocatedMemoryEnabled()) {
+        return threads;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Traversing a tree of over twenty thousand nodes, once the per-thread
+   * traversal buffer has grown to size, must allocate far less than one
+   * byte per node.
+   */
+
+  @Test
+  public void testTraversalAllocationFree()
+  {
+    final com.sun.management.ThreadMXBean threads = threads();
+    if (threads == null) {
+      return;
+    }
+
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(4, 7);
+    final long[] sum = new long[1];
+
+    for (int index = 0; index < 10; ++index) {
+      root.forEachDepthFirst(sum, SUM);
+      root.forEachBreadthFirst(sum, SUM);
+    }
+
+    final long before_depth = threads.getCurrentThreadAllocatedBytes();
+    root.forEachDepthFirst(sum, SUM);
+    final long after_depth = threads.getCurrentThreadAllocatedBytes();
+    root.forEachBreadthFirst(sum, SUM);
+    final long after_breadth = threads.getCurrentThreadAllocatedBytes();
+
+    assertTrue(
+      after_depth - before_depth < 4096L,
+      "Depth-first allocated " + (after_depth - before_depth));
+    assertTrue(
+      after_breadth - after_depth < 4096L,
+      "Breadth-first allocated " + (after_breadth - after_depth));
+  }
+
+  @Test
+  public void testNestedTraversals()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(3, 4);
+    final long[] expected = new long[1];
+    root.forEachDepthFirst(expected, (input, depth, node) -> {
+      node.forEachDepthFirst(input, (inner, inner_depth, inner_node) -> {
+        ++inner[0];
+      });
+    });
+
+    final long[] breadth = new long[1];
+    root.forEachBreadthFirst(breadth, (input, depth, node) -> {
+      node.forEachBreadthFirst(input, (inner, inner_depth, inner_node) -> {
+        ++inner[0];
+      });
+    });
+
+    /*
+     * Each node is counted once for itself and once for each of its
+     * ancestors.
+     */
+
+    long total = 0L;
+    int count = 1;
+    for (int level = 0; level <= 4; ++level) {
+      total += (long) count * (level + 1);
+      count *= 3;
+    }
+    assertEquals(total, expected[0]);
+    assertEquals(total, breadth[0]);
+  }
+
+  @Test
+  public void testExceptionReleasesBuffer()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeTestTrees.completeTree(2, 3);
+    for (int index = 0; index < 3; ++index) {
+      try {
+        root.forEachDepthFirst(Integer.valueOf(0), (input, depth, node) -> {
+          throw new IllegalStateException();
+        });
+      } catch (final IllegalStateException e) {
+        // Expected
+      }
+    }
+
+    final List<Integer> values = new ArrayList<>();
+    root.forEachBreadthFirst(
+      values, (input, depth, node) -> input.add(node.value()));
+    assertEquals(15, values.size());
+    assertEquals(Integer.valueOf(0), values.get(0));
+  }
+
+  @Test
+  public void testMapDeep()
+  {
+    final JOTreeNodeType<Integer> root = JOTreeNode.create(Integer.valueOf(0));
+    JOTreeNodeType<Integer> current = root;
+    for (int index = 1; index < 10_000; ++index) {
+      final JOTreeNodeType<Integer> next =
+        JOTreeNode.create(Integer.valueOf(index));
+      current.childAdd(next);
+      current = next;
+    }
+
+    for (final JOTreeNodeType<Integer> mapped : List.of(
+      root.mapDepthFirst(
+        Integer.valueOf(0), (input, depth, node) -> Integer.valueOf(depth)),
+      root.mapBreadthFirst(
+        Integer.valueOf(0), (input, depth, node) -> Integer.valueOf(depth)))) {
+      JOTreeNodeReadableType<Integer> node = mapped;
+      int depth = 0;
+      while (true) {
+        assertEquals(Integer.valueOf(depth), node.value());
+        assertEquals(depth, node.depth());
+        if (node.childrenReadable().isEmpty()) {
+          break;
+        }
+        node = node.childrenReadable().get(0);
+        ++depth;
+      }
+      assertEquals(9_999, depth);
+    }
+  }
+}
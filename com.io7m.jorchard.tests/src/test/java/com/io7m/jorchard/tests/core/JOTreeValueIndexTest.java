@@ -0,0 +1,309 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreeNodeReadableType;
+import com.io7m.jorchard.core.JOTreeNodeType;
+import com.io7m.jorchard.core.JOTreeValueIndex;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class JOTreeValueIndexTest
+{
+  /**
+   * Check that the index contains exactly the nodes in the subtree rooted at
+   * the index root.
+   */
+
+  private static void checkAgreement(
+    final JOTreeValueIndex<Integer, Integer> index,
+    final List<JOTreeNodeType<Integer>> nodes,
+    final int modulus)
+  {
+    final JOTreeNodeReadableType<Integer> root = index.root();
+    final int[] count = new int[1];
+    root.forEachDepthFirst(count, (input, depth, node) -> ++input[0]);
+    assertEquals(count[0], index.size());
+
+    for (var key = 0; key < modulus; ++key) {
+      final Set<JOTreeNodeReadableType<Integer>> expected =
+        Collections.newSetFromMap(new IdentityHashMap<>());
+      for (final var node : nodes) {
+        if (node.value().intValue() % modulus == key
+          && node.isDescendantOf(root)) {
+          expected.add(node);
+        }
+      }
+
+      final var received = index.findAll(Integer.valueOf(key));
+      assertEquals(expected.size(), received.size());
+      assertTrue(expected.containsAll(received));
+
+      final Optional<JOTreeNodeReadableType<Integer>> found =
+        index.find(Integer.valueOf(key));
+      assertEquals(!expected.isEmpty(), found.isPresent());
+      found.ifPresent(node -> assertTrue(expected.contains(node)));
+    }
+  }
+
+  @Test
+  public void testFindValues()
+  {
+    final var n0 = JOTreeNode.create("a");
+    final var n1 = JOTreeNode.create("b");
+    final var n2 = JOTreeNode.create("c");
+    n0.childAdd(n1);
+    n1.childAdd(n2);
+
+    final var index = JOTreeValueIndex.create(n0);
+    assertEquals(3, index.size());
+    assertSame(n0, index.find("a").orElseThrow());
+    assertSame(n2, index.find("c").orElseThrow());
+    assertEquals(Optional.empty(), index.find("d"));
+    assertEquals(Set.of(), index.findAll("d"));
+
+    final var n3 = JOTreeNode.create("d");
+    n2.childAdd(n3);
+    assertSame(n3, index.find("d").orElseThrow());
+
+    n1.detach();
+    assertEquals(1, index.size());
+    assertEquals(Optional.empty(), index.find("b"));
+    assertEquals(Optional.empty(), index.find("d"));
+
+    n0.childAddAll(List.of(n2, JOTreeNode.create("e")));
+    assertEquals(4, index.size());
+    assertSame(n3, index.find("d").orElseThrow());
+    assertEquals(Optional.empty(), index.find("b"));
+    assertTrue(index.find("e").isPresent());
+  }
+
+  @Test
+  public void testDuplicateKeys()
+  {
+    final var root = JOTreeNode.create("x");
+    final var a = JOTreeNode.create("y");
+    final var b = JOTreeNode.create("y");
+    final var c = JOTreeNode.create("y");
+    root.childAdd(a);
+
+    final var index = JOTreeValueIndex.create(root);
+    root.childAdd(b);
+    root.childAdd(c);
+    assertEquals(Set.of(a, b, c), index.findAll("y"));
+
+    b.detach();
+    assertEquals(Set.of(a, c), index.findAll("y"));
+    c.detach();
+    assertSame(a, index.find("y").orElseThrow());
+    assertEquals(Set.of(a), index.findAll("y"));
+    assertThrows(
+      UnsupportedOperationException.class,
+      () -> index.findAll("y").clear());
+  }
+
+  @Test
+  public void testReAddUnchanged()
+  {
+    final var root = JOTreeNode.create("x");
+    final var a = JOTreeNode.create("a");
+    root.childAdd(a);
+
+    final var index = JOTreeValueIndex.create(root);
+    root.childAdd(a);
+    a.setParent(root);
+    root.childAddAll(List.of(a));
+    root.childrenSortNodes((p, q) -> 0);
+    assertEquals(2, index.size());
+    assertSame(a, index.find("a").orElseThrow());
+  }
+
+  @Test
+  public void testKeyExtractor()
+  {
+    final var random = new Random(0x10L);
+    final var nodes = JOTreeTestTrees.randomTree(random, 300);
+    final var index = JOTreeValueIndex.createWithKey(
+      nodes.get(0), value -> Integer.valueOf(value.intValue() % 17));
+    checkAgreement(index, nodes, 17);
+  }
+
+  @Test
+  public void testRandomMutations()
+  {
+    final var random = new Random(0x20L);
+    final var nodes = JOTreeTestTrees.randomTree(random, 300);
+    final var index = JOTreeValueIndex.createWithKey(
+      nodes.get(0), value -> Integer.valueOf(value.intValue() % 29));
+    final var inner = JOTreeValueIndex.createWithKey(
+      nodes.get(0).children().get(0),
+      value -> Integer.valueOf(value.intValue() % 29));
+
+    for (var move = 0; move < 300; ++move) {
+      final var node = nodes.get(1 + random.nextInt(nodes.size() - 1));
+      final var parent = nodes.get(random.nextInt(nodes.size()));
+      switch (random.nextInt(4)) {
+        case 0 -> node.detach();
+        case 1 -> {
+          if (!parent.isDescendantOf(node)) {
+            parent.childAddAll(List.of(node));
+          }
+        }
+        default -> {
+          if (!parent.isDescendantOf(node)) {
+            node.setParent(parent);
+          }
+        }
+      }
+    }
+
+    checkAgreement(index, nodes, 29);
+    checkAgreement(inner, nodes, 29);
+  }
+
+  @Test
+  public void testIndexedRootMoved()
+  {
+    final var n0 = JOTreeNode.create("a");
+    final var n1 = JOTreeNode.create("b");
+    final var n2 = JOTreeNode.create("c");
+
+    final var index = JOTreeValueIndex.create(n1);
+    n1.setParent(n0);
+    n1.childAdd(n2);
+    assertSame(n2, index.find("c").orElseThrow());
+    assertEquals(Optional.empty(), index.find("a"));
+
+    n1.detach();
+    n1.childRemove(n2);
+    assertEquals(Optional.empty(), index.find("c"));
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  public void testDetach()
+  {
+    final var root = JOTreeNode.create("x");
+    final var index = JOTreeValueIndex.create(root);
+    assertTrue(index.isAttached());
+
+    index.detach();
+    assertFalse(index.isAttached());
+    assertEquals(0, index.size());
+
+    root.childAdd(JOTreeNode.create("y"));
+    assertEquals(Optional.empty(), index.find("y"));
+    index.detach();
+    assertFalse(index.isAttached());
+  }
+
+  @Test
+  public void testForeignRoot()
+  {
+    final var root = new DelegatingNode<>(JOTreeNode.create("x"));
+    assertThrows(
+      IllegalArgumentException.class, () -> JOTreeValueIndex.create(root));
+  }
+
+  @Test
+  public void testNullKey()
+  {
+    final var root = JOTreeNode.create("x");
+    final var index = JOTreeValueIndex.createWithKey(
+      root, value -> "y".equals(value) ? null : value);
+    assertThrows(
+      NullPointerException.class,
+      () -> root.childAdd(JOTreeNode.create("y")));
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  public void testNullKeyUnchanged()
+  {
+    final var root = JOTreeNode.create("x");
+    final var a = JOTreeNode.create("a");
+    root.childAdd(a);
+    final var index = JOTreeValueIndex.createWithKey(
+      root, value -> "y".equals(value) ? null : value);
+
+    final var b = JOTreeNode.create("b");
+    final var y = JOTreeNode.create("y");
+    b.childAdd(y);
+
+    assertThrows(NullPointerException.class, () -> a.childAdd(b));
+    assertThrows(NullPointerException.class, () -> b.setParent(a));
+    assertThrows(
+      NullPointerException.class,
+      () -> root.childAddAll(List.of(JOTreeNode.create("c"), b)));
+
+    assertTrue(b.isRoot());
+    assertEquals(List.of(a), root.children());
+    assertEquals(List.of(), a.children());
+    assertEquals(2, root.subtreeSize());
+    assertEquals(1, a.subtreeSize());
+    assertEquals(2, index.size());
+    assertEquals(Optional.empty(), index.find("b"));
+    assertEquals(Optional.empty(), index.find("c"));
+  }
+
+  @Test
+  public void testKeyFailureUnchanged()
+  {
+    final var failing = new boolean[1];
+    final var root = JOTreeNode.create("x");
+    final var a = JOTreeNode.create("a");
+    final var b = JOTreeNode.create("b");
+    root.childAdd(a);
+    a.childAdd(b);
+
+    final var index = JOTreeValueIndex.createWithKey(root, value -> {
+      if (failing[0] && "b".equals(value)) {
+        throw new IllegalStateException("Failed");
+      }
+      return value;
+    });
+
+    failing[0] = true;
+    assertThrows(IllegalStateException.class, () -> root.childRemove(a));
+    assertThrows(IllegalStateException.class, () -> a.detach());
+    assertThrows(IllegalStateException.class, () -> b.setParent(root));
+
+    assertEquals(Optional.of(root), a.parent());
+    assertEquals(Optional.of(a), b.parent());
+    assertEquals(List.of(b), a.children());
+    assertEquals(3, root.subtreeSize());
+    assertEquals(3, index.size());
+
+    failing[0] = false;
+    a.detach();
+    assertEquals(1, index.size());
+    assertEquals(Optional.empty(), index.find("b"));
+  }
+}
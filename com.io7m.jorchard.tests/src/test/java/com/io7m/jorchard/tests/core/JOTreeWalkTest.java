@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2016 Mark Raynsford <code@io7m.com> https://www.io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for any
+ * purpose with or without fee is hereby granted, provided that the above
+ * copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL WARRANTIES
+ * WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED WARRANTIES OF
+ * MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR BE LIABLE FOR ANY
+ * SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES OR ANY DAMAGES
+ * WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS, WHETHER IN AN
+ * ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION, ARISING OUT OF OR
+ * IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS SOFTWARE.
+ */
+
+package com.io7m.jorchard.tests.core;
+
+import com.io7m.jorchard.core.JOTreeNode;
+import com.io7m.jorchard.core.JOTreeNodeType;
+import com.io7m.jorchard.core.JOTreeNodeVisitorType;
+import com.io7m.jorchard.core.JOTreeVisitResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class JOTreeWalkTest
+{
+  /**
+   * Build the tree:
+   *
+   * <pre>
+   * r
+   * ├── a
+   * │   ├── a0
+   * │   └── a1
+   * ├── b
+   * │   ├── b0
+   * │   └── b1
+   * └── c
+   *     └── c0
+   * </pre>
+   */
+
+  private static JOTreeNodeType<String> tree()
+  {
+    final JOTreeNodeType<String> r = JOTreeNode.create("r");
+    for (final String name : List.of("a", "b", "c")) {
+      final JOTreeNodeType<String> child = JOTreeNode.create(name);
+      r.childAdd(child);
+      final int count = "c".equals(name) ? 1 : 2;
+      for (int index = 0; index < count; ++index) {
+        child.childAdd(JOTreeNode.create(name + index));
+      }
+    }
+    return r;
+  }
+
+  private static JOTreeNodeVisitorType<String, List<String>> recording(
+    final Map<String, JOTreeVisitResult> results)
+  {
+    return (input, depth, node) -> {
+      input.add(node.value() + ":" + depth);
+      return results.getOrDefault(node.value(), JOTreeVisitResult.CONTINUE);
+    };
+  }
+
+  private static List<String> depthFirst(
+    final Map<String, JOTreeVisitResult> results,
+    final JOTreeVisitResult expected)
+  {
+    final List<String> visited = new ArrayList<>();
+    assertEquals(expected, tree().walkDepthFirst(visited, recording(results)));
+    return visited;
+  }
+
+  private static List<String> breadthFirst(
+    final Map<String, JOTreeVisitResult> results,
+    final JOTreeVisitResult expected)
+  {
+    final List<String> visited = new ArrayList<>();
+    assertEquals(
+      expected, tree().walkBreadthFirst(visited, recording(results)));
+    return visited;
+  }
+
+  @Test
+  public void testContinue()
+  {
+    assertEquals(
+      List.of("r:0", "a:1", "a0:2", "a1:2", "b:1", "b0:2", "b1:2", "c:1",
+              "c0:2"),
+      depthFirst(Map.of(), JOTreeVisitResult.CONTINUE));
+    assertEquals(
+      List.of("r:0", "a:1", "b:1", "c:1", "a0:2", "a1:2", "b0:2", "b1:2",
+              "c0:2"),
+      breadthFirst(Map.of(), JOTreeVisitResult.CONTINUE));
+  }
+
+  @Test
+  public void testSkipSubtree()
+  {
+    final Map<String, JOTreeVisitResult> results =
+      Map.of("b", JOTreeVisitResult.SKIP_SUBTREE);
+    assertEquals(
+      List.of("r:0", "a:1", "a0:2", "a1:2", "b:1", "c:1", "c0:2"),
+      depthFirst(results, JOTreeVisitResult.CONTINUE));
+    assertEquals(
+      List.of("r:0", "a:1", "b:1", "c:1", "a0:2", "a1:2", "c0:2"),
+      breadthFirst(results, JOTreeVisitResult.CONTINUE));
+  }
+
+  @Test
+  public void testSkipSiblings()
+  {
+    final Map<String, JOTreeVisitResult> results =
+      Map.of("a0", JOTreeVisitResult.SKIP_SIBLINGS,
+             "b", JOTreeVisitResult.SKIP_SIBLINGS);
+    assertEquals(
+      List.of("r:0", "a:1", "a0:2", "b:1"),
+      depthFirst(results, JOTreeVisitResult.CONTINUE));
+    assertEquals(
+      List.of("r:0", "a:1", "b:1", "a0:2"),
+      breadthFirst(results, JOTreeVisitResult.CONTINUE));
+  }
+
+  @Test
+  public void testTerminate()
+  {
+    final Map<String, JOTreeVisitResult> results =
+      Map.of("b0", JOTreeVisitResult.TERMINATE);
+    assertEquals(
+      List.of("r:0", "a:1", "a0:2", "a1:2", "b:1", "b0:2"),
+      depthFirst(results, JOTreeVisitResult.TERMINATE));
+    assertEquals(
+      List.of("r:0", "a:1", "b:1", "c:1", "a0:2", "a1:2", "b0:2"),
+      breadthFirst(results, JOTreeVisitResult.TERMINATE));
+  }
+
+  @Test
+  public void testRoot()
+  {
+    for (final JOTreeVisitResult result : List.of(
+      JOTreeVisitResult.SKIP_SUBTREE, JOTreeVisitResult.SKIP_SIBLINGS)) {
+      final Map<String, JOTreeVisitResult> results = Map.of("r", result);
+      assertEquals(
+        List.of("r:0"), depthFirst(results, JOTreeVisitResult.CONTINUE));
+      assertEquals(
+        List.of("r:0"), breadthFirst(results, JOTreeVisitResult.CONTINUE));
+    }
+
+    final Map<String, JOTreeVisitResult> results =
+      Map.of("r", JOTreeVisitResult.TERMINATE);
+    assertEquals(
+      List.of("r:0"), depthFirst(results, JOTreeVisitResult.TERMINATE));
+    assertEquals(
+      List.of("r:0"), breadthFirst(results, JOTreeVisitResult.TERMINATE));
+  }
+
+  @Test
+  public void testSubtree()
+  {
+    final JOTreeNodeType<String> r = tree();
+    final List<String> visited = new ArrayList<>();
+    r.children().get(1).walkDepthFirst(visited, recording(Map.of()));
+    assertEquals(List.of("b:0", "b0:1", "b1:1"), visited);
+  }
+
+  @Test
+  public void testNullResult()
+  {
+    assertThrows(
+      NullPointerException.class,
+      () -> tree().walkDepthFirst(
+        Integer.valueOf(0), (input, depth, node) -> null));
+    assertThrows(
+      NullPointerException.class,
+      () -> tree().walkBreadthFirst(
+        Integer.valueOf(0), (input, depth, node) -> null));
+  }
+}